@@ -0,0 +1,43 @@
+package org.qortal.api;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+
+import org.eclipse.persistence.jaxb.JAXBContextFactory;
+import org.eclipse.persistence.jaxb.MarshallerProperties;
+
+/** Creates MOXy marshallers for API output that is written directly, rather than returned via JAX-RS. */
+public class JsonMarshallers {
+
+	/** JAXB contexts are expensive to create, but thread-safe, so we cache them. */
+	private static final Map<Class<?>, JAXBContext> JAXB_CONTEXTS = new ConcurrentHashMap<>();
+
+	private JsonMarshallers() {
+	}
+
+	/** Returns new marshaller that outputs JSON, without root element, for objects of <tt>objectClass</tt>. */
+	public static Marshaller createMarshaller(Class<?> objectClass) throws JAXBException {
+		// Create JAXB context aware of object's class
+		JAXBContext jc = JAXB_CONTEXTS.get(objectClass);
+		if (jc == null) {
+			jc = JAXBContextFactory.createContext(new Class<?>[] { objectClass }, null);
+			JAXB_CONTEXTS.put(objectClass, jc);
+		}
+
+		// Marshallers aren't thread-safe so we create a new one each time
+		Marshaller marshaller = jc.createMarshaller();
+
+		// Set the marshaller media type to JSON
+		marshaller.setProperty(MarshallerProperties.MEDIA_TYPE, "application/json");
+
+		// Tell marshaller not to include JSON root element in the output
+		marshaller.setProperty(MarshallerProperties.JSON_INCLUDE_ROOT, false);
+
+		return marshaller;
+	}
+
+}
@@ -0,0 +1,106 @@
+package org.qortal.api;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import javax.ws.rs.core.StreamingOutput;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.qortal.repository.DataException;
+import org.qortal.repository.Repository;
+import org.qortal.repository.RepositoryManager;
+
+/**
+ * Streams a JSON array to API client, a page of elements at a time.
+ * <p>
+ * Each page is fetched by a {@link PageSource} using its own read-only repository session,
+ * which is closed again before the page is written, so the whole result set never needs
+ * to be held in memory, and slow clients don't hold on to pooled repository connections.
+ * <p>
+ * As the HTTP status has already been sent by the time elements are produced,
+ * any criteria checks should be performed <i>before</i> returning an instance of this class.
+ */
+public class StreamingJsonArray<T> implements StreamingOutput {
+
+	private static final Logger LOGGER = LogManager.getLogger(StreamingJsonArray.class);
+
+	/** Maximum number of elements fetched per repository session. Well below {@code repositoryApiMaxRows}. */
+	private static final int PAGE_SIZE = 500;
+
+	@FunctionalInterface
+	public interface PageSource<T> {
+		/**
+		 * Returns up to <tt>maxCount</tt> elements following on from the previous page,
+		 * or null once there are no more.
+		 * <p>
+		 * Sources need to keep track of where the previous page ended, as each page uses a new repository session.
+		 */
+		List<T> nextPage(Repository repository, int maxCount) throws DataException;
+	}
+
+	private final Class<T> elementClass;
+	private final PageSource<T> pageSource;
+
+	public StreamingJsonArray(Class<T> elementClass, PageSource<T> pageSource) {
+		this.elementClass = elementClass;
+		this.pageSource = pageSource;
+	}
+
+	@Override
+	public void write(OutputStream outputStream) throws IOException {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+		Marshaller marshaller = createMarshaller(this.elementClass);
+
+		writer.write('[');
+
+		boolean isFirst = true;
+		List<T> page;
+		while ((page = this.fetchPage()) != null) {
+			// Repository session is already closed, so a slow client only holds up this thread
+			for (T element : page) {
+				if (!isFirst)
+					writer.write(',');
+
+				isFirst = false;
+
+				try {
+					marshaller.marshal(element, writer);
+				} catch (JAXBException e) {
+					throw new IOException("Unable to marshall streamed API element", e);
+				}
+			}
+
+			writer.flush();
+		}
+
+		writer.write(']');
+		writer.flush();
+	}
+
+	private List<T> fetchPage() throws IOException {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
+			return this.pageSource.nextPage(repository, PAGE_SIZE);
+		} catch (DataException e) {
+			// Too late to return an API error, so abort response instead
+			LOGGER.warn(String.format("Repository issue while streaming API response: %s", e.getMessage()));
+			throw new IOException("Repository issue while streaming API response", e);
+		}
+	}
+
+	private static Marshaller createMarshaller(Class<?> objectClass) throws IOException {
+		try {
+			return JsonMarshallers.createMarshaller(objectClass);
+		} catch (JAXBException e) {
+			throw new IOException("Unable to create API streaming marshaller", e);
+		}
+	}
+
+}
@@ -81,7 +81,7 @@ public class AddressesResource {
 		if (!Crypto.isValidAddress(address))
 			throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.INVALID_ADDRESS);
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			AccountData accountData = repository.getAccountRepository().getAccount(address);
 			// Not found?
 			if (accountData == null)
@@ -118,7 +118,7 @@ public class AddressesResource {
 		}
 		else {
 			// All other node types request data from local db
-			try (final Repository repository = RepositoryManager.getRepository()) {
+			try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 				accountData = repository.getAccountRepository().getAccount(address);
 			} catch (DataException e) {
 				throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.REPOSITORY_ISSUE, e);
@@ -168,7 +168,7 @@ public class AddressesResource {
 		List<OnlineAccountData> onlineAccounts = OnlineAccountsManager.getInstance().getOnlineAccounts();
 
 		// Map OnlineAccountData entries to OnlineAccount via reward-share data
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			List<ApiOnlineAccount> apiOnlineAccounts = new ArrayList<>();
 
 			for (OnlineAccountData onlineAccountData : onlineAccounts) {
@@ -202,7 +202,7 @@ public class AddressesResource {
 	public List<OnlineAccountLevel> getOnlineAccountsByLevel() {
 		List<OnlineAccountData> onlineAccounts = OnlineAccountsManager.getInstance().getOnlineAccounts();
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			List<OnlineAccountLevel> onlineAccountLevels = new ArrayList<>();
 
 			for (OnlineAccountData onlineAccountData : onlineAccounts) {
@@ -265,7 +265,7 @@ public class AddressesResource {
 		if (!Crypto.isValidAddress(address))
 			throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.INVALID_ADDRESS);
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			Account account = new Account(repository, address);
 
 			if (assetId == null)
@@ -298,7 +298,7 @@ public class AddressesResource {
 		if (!Crypto.isValidAddress(address))
 			throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.INVALID_ADDRESS);
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			AccountData accountData = repository.getAccountRepository().getAccount(address);
 
 			if (accountData == null)
@@ -345,7 +345,7 @@ public class AddressesResource {
 		if (publicKey.length != Transformer.PUBLIC_KEY_LENGTH)
 			throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.INVALID_PUBLIC_KEY);
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			return Crypto.toAddress(publicKey);
 		} catch (ApiException e) {
 			throw e;
@@ -376,7 +376,7 @@ public class AddressesResource {
 			) @QueryParam("offset") Integer offset, @Parameter(
 				ref = "reverse"
 			) @QueryParam("reverse") Boolean reverse) {
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			return repository.getAccountRepository().findRewardShares(mintingAccounts, recipientAccounts, addresses, limit, offset, reverse);
 		} catch (DataException e) {
 			throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.REPOSITORY_ISSUE, e);
@@ -45,6 +45,8 @@ import org.qortal.block.BlockChain;
 import org.qortal.controller.Controller;
 import org.qortal.controller.Synchronizer;
 import org.qortal.controller.Synchronizer.SynchronizationResult;
+import org.qortal.controller.repository.MaintenanceScheduler;
+import org.qortal.controller.repository.PruneManager;
 import org.qortal.data.account.MintingAccountData;
 import org.qortal.data.account.RewardShareData;
 import org.qortal.network.Network;
@@ -53,6 +55,7 @@ import org.qortal.network.PeerAddress;
 import org.qortal.repository.DataException;
 import org.qortal.repository.Repository;
 import org.qortal.repository.RepositoryManager;
+import org.qortal.repository.hsqldb.HSQLDBQueryStats;
 import org.qortal.settings.Settings;
 import org.qortal.utils.Base58;
 import org.qortal.utils.NTP;
@@ -698,6 +701,84 @@ public class AdminResource {
 		}
 	}
 
+	@GET
+	@Path("/repository/querystats")
+	@Operation(
+		summary = "Fetch execution statistics for each repository SQL statement",
+		description = "Timings are in milliseconds, with percentiles approximate. Callers are sampled.",
+		responses = {
+			@ApiResponse(
+				content = @Content(
+					mediaType = MediaType.APPLICATION_JSON,
+					array = @ArraySchema(
+						schema = @Schema(
+							implementation = HSQLDBQueryStats.QuerySummary.class
+						)
+					)
+				)
+			)
+		}
+	)
+	@SecurityRequirement(name = "apiKey")
+	public List<HSQLDBQueryStats.QuerySummary> getRepositoryQueryStats(@HeaderParam(Security.API_KEY_HEADER) String apiKey,
+			@Parameter(
+				description = "Sort order, highest first",
+				schema = @Schema(defaultValue = "TOTAL_TIME")
+			) @QueryParam("orderBy") HSQLDBQueryStats.SortOrder orderBy,
+			@Parameter(ref = "limit") @QueryParam("limit") Integer limit) {
+		Security.checkApiCallAllowed(request);
+
+		if (orderBy == null)
+			orderBy = HSQLDBQueryStats.SortOrder.TOTAL_TIME;
+
+		return HSQLDBQueryStats.getInstance().getSummaries(orderBy, limit != null ? limit : 0);
+	}
+
+	@DELETE
+	@Path("/repository/querystats")
+	@Operation(
+		summary = "Reset execution statistics for repository SQL statements",
+		responses = {
+			@ApiResponse(
+				description = "\"true\"",
+				content = @Content(mediaType = MediaType.TEXT_PLAIN, schema = @Schema(type = "string"))
+			)
+		}
+	)
+	@SecurityRequirement(name = "apiKey")
+	public String resetRepositoryQueryStats(@HeaderParam(Security.API_KEY_HEADER) String apiKey) {
+		Security.checkApiCallAllowed(request);
+
+		HSQLDBQueryStats.getInstance().reset();
+
+		return "true";
+	}
+
+	@GET
+	@Path("/repository/maintenance")
+	@Operation(
+		summary = "Fetch progress and throughput of background repository maintenance jobs, e.g. trimming, pruning and archiving",
+		description = "Times are in milliseconds.",
+		responses = {
+			@ApiResponse(
+				content = @Content(
+					mediaType = MediaType.APPLICATION_JSON,
+					array = @ArraySchema(
+						schema = @Schema(
+							implementation = MaintenanceScheduler.JobSummary.class
+						)
+					)
+				)
+			)
+		}
+	)
+	@SecurityRequirement(name = "apiKey")
+	public List<MaintenanceScheduler.JobSummary> getRepositoryMaintenanceJobs(@HeaderParam(Security.API_KEY_HEADER) String apiKey) {
+		Security.checkApiCallAllowed(request);
+
+		return PruneManager.getInstance().getMaintenanceScheduler().getJobSummaries();
+	}
+
 	@DELETE
 	@Path("/repository")
 	@Operation(
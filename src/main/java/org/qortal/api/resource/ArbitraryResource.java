@@ -24,6 +24,7 @@ import javax.servlet.http.HttpServletResponse;
 import javax.ws.rs.*;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.logging.log4j.LogManager;
@@ -93,18 +94,14 @@ public class ArbitraryResource {
 			@Parameter(description = "Include status") @QueryParam("includestatus") Boolean includeStatus,
 			@Parameter(description = "Include metadata") @QueryParam("includemetadata") Boolean includeMetadata) {
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 
 			// Treat empty identifier as null
 			if (identifier != null && identifier.isEmpty()) {
 				identifier = null;
 			}
 
-			// Ensure that "default" and "identifier" parameters cannot coexist
-			boolean defaultRes = Boolean.TRUE.equals(defaultResource);
-			if (defaultRes == true && identifier != null) {
-				throw ApiExceptionFactory.INSTANCE.createCustomException(request, ApiError.INVALID_CRITERIA, "identifier cannot be specified when requesting a default resource");
-			}
+			boolean defaultRes = this.checkDefaultResourceCriteria(identifier, defaultResource);
 
 			List<ArbitraryResourceInfo> resources = repository.getArbitraryRepository()
 					.getArbitraryResources(service, identifier, null, defaultRes, limit, offset, reverse);
@@ -113,20 +110,65 @@ public class ArbitraryResource {
 				return new ArrayList<>();
 			}
 
-			if (includeStatus != null && includeStatus) {
-				resources = this.addStatusToResources(resources);
-			}
-			if (includeMetadata != null && includeMetadata) {
-				resources = this.addMetadataToResources(resources);
-			}
-
-			return resources;
+			return this.addExtrasToResources(resources, includeStatus, includeMetadata);
 
 		} catch (DataException e) {
 			throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.REPOSITORY_ISSUE, e);
 		}
 	}
 
+	@GET
+	@Path("/resources/stream")
+	@Operation(
+			summary = "List arbitrary resources available on chain, optionally filtered by service and identifier, streaming results",
+			description = "Same criteria as /arbitrary/resources but results are streamed to client as they are fetched, "
+					+ "so there is no limit on how many resources can be returned.",
+			responses = {
+					@ApiResponse(
+							content = @Content(mediaType = MediaType.APPLICATION_JSON, array = @ArraySchema(schema = @Schema(implementation = ArbitraryResourceInfo.class)))
+					)
+			}
+	)
+	@ApiErrors({ApiError.INVALID_CRITERIA, ApiError.REPOSITORY_ISSUE})
+	public StreamingOutput streamResources(
+			@QueryParam("service") Service service,
+			@QueryParam("identifier") String identifier,
+			@Parameter(description = "Default resources (without identifiers) only") @QueryParam("default") Boolean defaultResource,
+			@Parameter(ref = "limit") @QueryParam("limit") Integer limit,
+			@Parameter(ref = "offset") @QueryParam("offset") Integer offset,
+			@Parameter(ref = "reverse") @QueryParam("reverse") Boolean reverse,
+			@Parameter(description = "Include status") @QueryParam("includestatus") Boolean includeStatus,
+			@Parameter(description = "Include metadata") @QueryParam("includemetadata") Boolean includeMetadata) {
+
+		// Treat empty identifier as null
+		final String resourceIdentifier = identifier != null && identifier.isEmpty() ? null : identifier;
+
+		// Criteria need checking before response starts
+		final boolean defaultRes = this.checkDefaultResourceCriteria(resourceIdentifier, defaultResource);
+
+		// Results are ordered by name, service and identifier, so pages can use offsets
+		final int[] nextOffset = new int[] { offset != null && offset > 0 ? offset : 0 };
+		final int[] remaining = new int[] { limit != null && limit > 0 ? limit : Integer.MAX_VALUE };
+
+		return new StreamingJsonArray<>(ArbitraryResourceInfo.class, (repository, maxCount) -> {
+			if (remaining[0] <= 0)
+				return null;
+
+			int pageLimit = Math.min(maxCount, remaining[0]);
+			List<ArbitraryResourceInfo> resources = repository.getArbitraryRepository()
+					.getArbitraryResources(service, resourceIdentifier, null, defaultRes, pageLimit, nextOffset[0], reverse);
+
+			if (resources == null)
+				return null;
+
+			// No more pages after a partial one
+			remaining[0] = resources.size() < pageLimit ? 0 : remaining[0] - resources.size();
+			nextOffset[0] += resources.size();
+
+			return this.addExtrasToResources(resources, includeStatus, includeMetadata);
+		});
+	}
+
 	@GET
 	@Path("/resources/search")
 	@Operation(
@@ -149,7 +191,7 @@ public class ArbitraryResource {
 			@Parameter(description = "Include status") @QueryParam("includestatus") Boolean includeStatus,
 			@Parameter(description = "Include metadata") @QueryParam("includemetadata") Boolean includeMetadata) {
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 
 			boolean defaultRes = Boolean.TRUE.equals(defaultResource);
 
@@ -195,7 +237,7 @@ public class ArbitraryResource {
 			@Parameter(description = "Include status") @QueryParam("includestatus") Boolean includeStatus,
 			@Parameter(description = "Include metadata") @QueryParam("includemetadata") Boolean includeMetadata) {
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 
 			// Treat empty identifier as null
 			if (identifier != null && identifier.isEmpty()) {
@@ -325,7 +367,7 @@ public class ArbitraryResource {
 		List<TransactionType> txTypes = new ArrayList<>();
 		txTypes.add(TransactionType.ARBITRARY);
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			List<byte[]> signatures = repository.getTransactionRepository().getSignaturesMatchingCriteria(startBlock, blockLimit, txGroupId, txTypes,
 					service, name, address, confirmationStatus, limit, offset, reverse);
 
@@ -443,7 +485,7 @@ public class ArbitraryResource {
 																@Parameter(ref = "offset") @QueryParam("offset") Integer offset) {
 		Security.checkApiCallAllowed(request);
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 
 			List<ArbitraryTransactionData> hostedTransactions = ArbitraryDataStorageManager.getInstance().listAllHostedTransactions(repository, limit, offset);
 
@@ -476,7 +518,7 @@ public class ArbitraryResource {
 
 		List<ArbitraryResourceInfo> resources = new ArrayList<>();
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			
 			List<ArbitraryTransactionData> transactionDataList;
 
@@ -1263,6 +1305,28 @@ public class ArbitraryResource {
 		return resource.getStatus(false);
 	}
 
+	/** Returns whether only default resources are requested, after checking that doesn't conflict with identifier. */
+	private boolean checkDefaultResourceCriteria(String identifier, Boolean defaultResource) {
+		// Ensure that "default" and "identifier" parameters cannot coexist
+		boolean defaultRes = Boolean.TRUE.equals(defaultResource);
+		if (defaultRes == true && identifier != null) {
+			throw ApiExceptionFactory.INSTANCE.createCustomException(request, ApiError.INVALID_CRITERIA, "identifier cannot be specified when requesting a default resource");
+		}
+
+		return defaultRes;
+	}
+
+	private List<ArbitraryResourceInfo> addExtrasToResources(List<ArbitraryResourceInfo> resources, Boolean includeStatus, Boolean includeMetadata) {
+		if (includeStatus != null && includeStatus) {
+			resources = this.addStatusToResources(resources);
+		}
+		if (includeMetadata != null && includeMetadata) {
+			resources = this.addMetadataToResources(resources);
+		}
+
+		return resources;
+	}
+
 	private List<ArbitraryResourceInfo> addStatusToResources(List<ArbitraryResourceInfo> resources) {
 		// Determine and add the status of each resource
 		List<ArbitraryResourceInfo> updatedResources = new ArrayList<>();
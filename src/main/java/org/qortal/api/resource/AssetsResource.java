@@ -23,15 +23,18 @@ import javax.ws.rs.PathParam;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.qortal.api.ApiError;
 import org.qortal.api.ApiErrors;
 import org.qortal.api.ApiException;
 import org.qortal.api.ApiExceptionFactory;
+import org.qortal.api.StreamingJsonArray;
 import org.qortal.api.model.AggregatedOrder;
 import org.qortal.api.model.TradeWithOrderInfo;
 import org.qortal.api.resource.TransactionsResource.ConfirmationStatus;
 import org.qortal.asset.Asset;
+import org.qortal.controller.OrderBookManager;
 import org.qortal.crypto.Crypto;
 import org.qortal.data.account.AccountBalanceData;
 import org.qortal.data.account.AccountData;
@@ -94,7 +97,7 @@ public class AssetsResource {
 	) @QueryParam("offset") Integer offset, @Parameter(
 		ref = "reverse"
 	) @QueryParam("reverse") Boolean reverse) {
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			List<AssetData> assets = repository.getAssetRepository().getAllAssets(limit, offset, reverse);
 
 			if (includeData == null || !includeData)
@@ -129,7 +132,7 @@ public class AssetsResource {
 		if (assetId == null && (assetName == null || assetName.isEmpty()))
 			throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.INVALID_CRITERIA);
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			AssetData assetData = null;
 
 			if (assetId != null)
@@ -150,7 +153,9 @@ public class AssetsResource {
 	@Path("/balances")
 	@Operation(
 		summary = "Asset balances owned by addresses and/or filtered to subset of assetIDs",
-		description = "Returns asset balances for these addresses/assetIDs, with balances. At least one address or assetID must be supplied.",
+		description = "Returns asset balances for these addresses/assetIDs, with balances. At least one address or assetID must be supplied. "
+				+ "Fails, rather than returning partial results, if there are more balances than the node's repositoryApiMaxRows setting allows, "
+				+ "in which case use limit/offset or /assets/balances/stream.",
 		responses = {
 			@ApiResponse(
 				content = @Content(
@@ -172,6 +177,72 @@ public class AssetsResource {
 			@Parameter( ref = "limit" ) @QueryParam("limit") Integer limit,
 			@Parameter( ref = "offset" ) @QueryParam("offset") Integer offset,
 			@Parameter( ref = "reverse" ) @QueryParam("reverse") Boolean reverse) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
+			this.checkAssetBalancesCriteria(repository, addresses, assetIds, balanceOrdering);
+
+			return repository.getAccountRepository().getAssetBalances(addresses, assetIds, balanceOrdering, excludeZero, limit, offset, reverse);
+		} catch (ApiException e) {
+			throw e;
+		} catch (DataException e) {
+			throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.REPOSITORY_ISSUE, e);
+		}
+	}
+
+	@GET
+	@Path("/balances/stream")
+	@Operation(
+		summary = "Asset balances owned by addresses and/or filtered to subset of assetIDs, streaming results",
+		description = "Same criteria as /assets/balances but results are streamed to client as they are fetched, "
+				+ "so there is no limit on how many balances can be returned.",
+		responses = {
+			@ApiResponse(
+				content = @Content(
+					array = @ArraySchema(
+						schema = @Schema(
+							implementation = AccountBalanceData.class
+						)
+					)
+				)
+			)
+		}
+	)
+	@ApiErrors({
+		ApiError.INVALID_ADDRESS, ApiError.INVALID_CRITERIA, ApiError.INVALID_ASSET_ID, ApiError.REPOSITORY_ISSUE
+	})
+	public StreamingOutput streamAssetBalances(@QueryParam("address") List<String> addresses, @QueryParam("assetid") List<Long> assetIds,
+			@DefaultValue(value = "ASSET_BALANCE_ACCOUNT") @QueryParam("ordering") BalanceOrdering balanceOrdering,
+			@QueryParam("excludeZero") Boolean excludeZero,
+			@Parameter( ref = "limit" ) @QueryParam("limit") Integer limit,
+			@Parameter( ref = "offset" ) @QueryParam("offset") Integer offset,
+			@Parameter( ref = "reverse" ) @QueryParam("reverse") Boolean reverse) {
+		// Criteria need checking before response starts
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
+			this.checkAssetBalancesCriteria(repository, addresses, assetIds, balanceOrdering);
+		} catch (DataException e) {
+			throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.REPOSITORY_ISSUE, e);
+		}
+
+		// Every ordering covers both account and asset ID, so results are in a fixed order and pages can use offsets
+		final int[] nextOffset = new int[] { offset != null && offset > 0 ? offset : 0 };
+		final int[] remaining = new int[] { limit != null && limit > 0 ? limit : Integer.MAX_VALUE };
+
+		return new StreamingJsonArray<>(AccountBalanceData.class, (repository, maxCount) -> {
+			if (remaining[0] <= 0)
+				return null;
+
+			int pageLimit = Math.min(maxCount, remaining[0]);
+			List<AccountBalanceData> balances = repository.getAccountRepository().getAssetBalances(addresses, assetIds, balanceOrdering,
+					excludeZero, pageLimit, nextOffset[0], reverse);
+
+			// No more pages after a partial one
+			remaining[0] = balances.size() < pageLimit ? 0 : remaining[0] - balances.size();
+			nextOffset[0] += balances.size();
+
+			return balances;
+		});
+	}
+
+	private void checkAssetBalancesCriteria(Repository repository, List<String> addresses, List<Long> assetIds, BalanceOrdering balanceOrdering) throws DataException {
 		if (addresses.isEmpty() && assetIds.isEmpty())
 			throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.INVALID_CRITERIA);
 
@@ -182,17 +253,9 @@ public class AssetsResource {
 		if (balanceOrdering == null)
 			throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.INVALID_CRITERIA);
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
-			for (long assetId : assetIds)
-				if (!repository.getAssetRepository().assetExists(assetId))
-					throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.INVALID_ASSET_ID);
-
-			return repository.getAccountRepository().getAssetBalances(addresses, assetIds, balanceOrdering, excludeZero, limit, offset, reverse);
-		} catch (ApiException e) {
-			throw e;
-		} catch (DataException e) {
-			throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.REPOSITORY_ISSUE, e);
-		}
+		for (long assetId : assetIds)
+			if (!repository.getAssetRepository().assetExists(assetId))
+				throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.INVALID_ASSET_ID);
 	}
 
 	@GET
@@ -227,7 +290,7 @@ public class AssetsResource {
 	) @QueryParam("offset") Integer offset, @Parameter(
 		ref = "reverse"
 	) @QueryParam("reverse") Boolean reverse) {
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			if (!repository.getAssetRepository().assetExists(assetId))
 				throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.INVALID_ASSET_ID);
 
@@ -272,15 +335,14 @@ public class AssetsResource {
 	) @QueryParam("offset") Integer offset, @Parameter(
 		ref = "reverse"
 	) @QueryParam("reverse") Boolean reverse) {
-		try (final Repository repository = RepositoryManager.getRepository()) {
-			if (!repository.getAssetRepository().assetExists(assetId))
-				throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.INVALID_ASSET_ID);
+		try {
+			// Served from cached order book, if possible
+			List<OrderData> orders = OrderBookManager.getInstance().getAggregatedOpenOrders(assetId, otherAssetId, limit, offset, reverse);
 
-			if (!repository.getAssetRepository().assetExists(otherAssetId))
+			// Either asset doesn't exist
+			if (orders == null)
 				throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.INVALID_ASSET_ID);
 
-			List<OrderData> orders = repository.getAssetRepository().getAggregatedOpenOrders(assetId, otherAssetId, limit, offset, reverse);
-
 			// Map to aggregated form
 			return orders.stream().map(AggregatedOrder::new).collect(Collectors.toList());
 		} catch (DataException e) {
@@ -316,7 +378,7 @@ public class AssetsResource {
 	) @QueryParam("offset") Integer offset, @Parameter(
 		ref = "reverse"
 	) @QueryParam("reverse") Boolean reverse) {
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			if (assetIds.isEmpty())
 				assetIds = Collections.singletonList(Asset.QORT);
 			else
@@ -370,7 +432,7 @@ public class AssetsResource {
 	) @QueryParam("offset") Integer offset, @Parameter(
 		ref = "reverse"
 	) @QueryParam("reverse") Boolean reverse) {
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			if (!repository.getAssetRepository().assetExists(assetId))
 				throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.INVALID_ASSET_ID);
 
@@ -421,7 +483,7 @@ public class AssetsResource {
 			throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.INVALID_ORDER_ID, e);
 		}
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			OrderData orderData = repository.getAssetRepository().fromOrderId(orderId);
 			if (orderData == null)
 				throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.ORDER_UNKNOWN);
@@ -468,7 +530,7 @@ public class AssetsResource {
 			throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.INVALID_ORDER_ID, e);
 		}
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			OrderData orderData = repository.getAssetRepository().fromOrderId(orderId);
 			if (orderData == null)
 				throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.ORDER_UNKNOWN);
@@ -510,7 +572,7 @@ public class AssetsResource {
 		if (!Crypto.isValidAddress(address))
 			throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.INVALID_ADDRESS);
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			AccountData accountData = repository.getAccountRepository().getAccount(address);
 
 			if (accountData == null)
@@ -559,7 +621,7 @@ public class AssetsResource {
 		if (!Crypto.isValidAddress(address))
 			throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.INVALID_ADDRESS);
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			AccountData accountData = repository.getAccountRepository().getAccount(address);
 
 			if (accountData == null)
@@ -615,7 +677,7 @@ public class AssetsResource {
 	) @QueryParam("offset") Integer offset, @Parameter(
 		ref = "reverse"
 	) @QueryParam("reverse") Boolean reverse) {
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			if (!repository.getAssetRepository().assetExists(assetId))
 				throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.INVALID_ASSET_ID);
 
@@ -656,7 +718,7 @@ public class AssetsResource {
 	) @QueryParam("offset") Integer offset, @Parameter(
 		ref = "reverse"
 	) @QueryParam("reverse") Boolean reverse) {
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			if (!repository.getAssetRepository().assetExists(assetId))
 				throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.INVALID_ASSET_ID);
 
@@ -27,11 +27,13 @@ import javax.ws.rs.PathParam;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.qortal.account.Account;
 import org.qortal.api.ApiError;
 import org.qortal.api.ApiErrors;
 import org.qortal.api.ApiExceptionFactory;
+import org.qortal.api.StreamingJsonArray;
 import org.qortal.api.model.BlockMintingInfo;
 import org.qortal.api.model.BlockSignerSummary;
 import org.qortal.block.Block;
@@ -85,7 +87,7 @@ public class BlocksResource {
 			throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.INVALID_SIGNATURE, e);
 		}
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 		    // Check the database first
 			BlockData blockData = repository.getBlockRepository().fromSignature(signature);
 			if (blockData != null) {
@@ -134,7 +136,7 @@ public class BlocksResource {
 			throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.INVALID_SIGNATURE, e);
 		}
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 
             // Check the database first
 			BlockData blockData = repository.getBlockRepository().fromSignature(signature);
@@ -196,7 +198,7 @@ public class BlocksResource {
 			throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.INVALID_SIGNATURE, e);
 		}
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 		    // Check if the block exists in either the database or archive
 			if (repository.getBlockRepository().getHeightFromSignature(signature) == 0 &&
 					repository.getBlockArchiveRepository().getHeightFromSignature(signature) == 0) {
@@ -230,7 +232,7 @@ public class BlocksResource {
 		ApiError.REPOSITORY_ISSUE
 	})
 	public BlockData getFirstBlock() {
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			// Check the database first
 			BlockData blockData = repository.getBlockRepository().fromHeight(1);
 			if (blockData != null) {
@@ -269,7 +271,7 @@ public class BlocksResource {
 		ApiError.REPOSITORY_ISSUE
 	})
 	public BlockData getLastBlock(@QueryParam("includeOnlineSignatures") Boolean includeOnlineSignatures) {
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			BlockData blockData = repository.getBlockRepository().getLastBlock();
 
 			if (includeOnlineSignatures == null || includeOnlineSignatures == false) {
@@ -310,7 +312,7 @@ public class BlocksResource {
 			throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.INVALID_SIGNATURE, e);
 		}
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			BlockData childBlockData = null;
 
 			// Check if block exists in database
@@ -361,7 +363,7 @@ public class BlocksResource {
 		ApiError.REPOSITORY_ISSUE
 	})
 	public int getHeight() {
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			return repository.getBlockRepository().getBlockchainHeight();
 		} catch (DataException e) {
 			throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.REPOSITORY_ISSUE, e);
@@ -397,7 +399,7 @@ public class BlocksResource {
 			throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.INVALID_SIGNATURE, e);
 		}
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			// Firstly check the database
 			BlockData blockData = repository.getBlockRepository().fromSignature(signature);
 			if (blockData != null) {
@@ -438,7 +440,7 @@ public class BlocksResource {
 	})
 	public BlockData getByHeight(@PathParam("height") int height,
 								 @QueryParam("includeOnlineSignatures") Boolean includeOnlineSignatures) {
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			// Firstly check the database
 			BlockData blockData = repository.getBlockRepository().fromHeight(height);
 			if (blockData != null) {
@@ -484,7 +486,7 @@ public class BlocksResource {
 			ApiError.BLOCK_UNKNOWN, ApiError.REPOSITORY_ISSUE
 	})
 	public BlockMintingInfo getBlockMintingInfoByHeight(@PathParam("height") int height) {
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			// Try the database
 			BlockData blockData = repository.getBlockRepository().fromHeight(height);
 			if (blockData == null) {
@@ -556,7 +558,7 @@ public class BlocksResource {
 	})
 	public BlockData getByTimestamp(@PathParam("timestamp") long timestamp,
 									@QueryParam("includeOnlineSignatures") Boolean includeOnlineSignatures) {
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			BlockData blockData = null;
 
 			// Try the Blocks table
@@ -616,7 +618,7 @@ public class BlocksResource {
 	public List<BlockData> getBlockRange(@PathParam("height") int height, @Parameter(
 		ref = "count"
 	) @QueryParam("count") int count) {
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			List<BlockData> blocks = new ArrayList<>();
 
 			for (/* count already set */; count > 0; --count, ++height) {
@@ -639,6 +641,57 @@ public class BlocksResource {
 		}
 	}
 
+	@GET
+	@Path("/range/{height}/stream")
+	@Operation(
+		summary = "Fetch blocks starting with given height, streaming results",
+		description = "Returns blocks starting with given height. Blocks are streamed to client as they are fetched.",
+		responses = {
+			@ApiResponse(
+				description = "blocks",
+				content = @Content(
+					array = @ArraySchema(
+						schema = @Schema(
+							implementation = BlockData.class
+						)
+					)
+				)
+			)
+		}
+	)
+	@ApiErrors({
+		ApiError.REPOSITORY_ISSUE
+	})
+	public StreamingOutput streamBlockRange(@PathParam("height") int height, @Parameter(
+		ref = "count"
+	) @QueryParam("count") int count) {
+		final int endHeight = height + count;
+		final int[] nextHeight = new int[] { height };
+
+		return new StreamingJsonArray<>(BlockData.class, (repository, maxCount) -> {
+			if (nextHeight[0] >= endHeight)
+				return null;
+
+			List<BlockData> blocks = new ArrayList<>();
+			for (/* nextHeight already set */; nextHeight[0] < endHeight && blocks.size() < maxCount; ++nextHeight[0]) {
+				BlockData blockData = repository.getBlockRepository().fromHeight(nextHeight[0]);
+				if (blockData == null) {
+					// Not found - try the archive
+					blockData = repository.getBlockArchiveRepository().fromHeight(nextHeight[0]);
+					if (blockData == null) {
+						// Run out of blocks!
+						nextHeight[0] = endHeight;
+						break;
+					}
+				}
+
+				blocks.add(blockData);
+			}
+
+			return blocks;
+		});
+	}
+
 	@GET
 	@Path("/signer/{address}")
 	@Operation(
@@ -667,7 +720,7 @@ public class BlocksResource {
 		if (!Crypto.isValidAddress(address))
 			throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.INVALID_ADDRESS);
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			// Get public key from address
 			AccountData accountData = repository.getAccountRepository().getAccount(address);
 			if (accountData == null || accountData.getPublicKey() == null)
@@ -726,7 +779,7 @@ public class BlocksResource {
 			) @QueryParam("offset") Integer offset, @Parameter(
 				ref = "reverse"
 			) @QueryParam("reverse") Boolean reverse) {
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			for (String address : addresses)
 				if (!Crypto.isValidAddress(address))
 					throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.INVALID_ADDRESS);
@@ -771,7 +824,7 @@ public class BlocksResource {
 		if ((startHeight != null && startHeight < 1) || (endHeight != null && endHeight < 1) || (count != null && count < 1))
 			throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.INVALID_CRITERIA);
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 
 			/*
 			 * start	end		count		result
@@ -51,7 +51,9 @@ public class ChatResource {
 	@Path("/messages")
 	@Operation(
 		summary = "Find chat messages",
-		description = "Returns CHAT messages that match criteria. Must provide EITHER 'txGroupId' OR two 'involving' addresses.",
+		description = "Returns CHAT messages that match criteria. Must provide EITHER 'txGroupId' OR two 'involving' addresses.<br>"
+				+ "For incremental loading, pass signature of last received message as 'afterSignature' "
+				+ "(cannot be combined with 'before', 'after', 'offset' or 'reverse').",
 		responses = {
 			@ApiResponse(
 				description = "CHAT messages",
@@ -65,10 +67,11 @@ public class ChatResource {
 			)
 		}
 	)
-	@ApiErrors({ApiError.INVALID_CRITERIA, ApiError.INVALID_ADDRESS, ApiError.REPOSITORY_ISSUE})
+	@ApiErrors({ApiError.INVALID_CRITERIA, ApiError.INVALID_ADDRESS, ApiError.INVALID_SIGNATURE, ApiError.TRANSACTION_UNKNOWN, ApiError.REPOSITORY_ISSUE})
 	public List<ChatMessage> searchChat(@QueryParam("before") Long before, @QueryParam("after") Long after,
 			@QueryParam("txGroupId") Integer txGroupId,
 			@QueryParam("involving") List<String> involvingAddresses,
+			@QueryParam("afterSignature") String afterSignature58,
 			@Parameter(ref = "limit") @QueryParam("limit") Integer limit,
 			@Parameter(ref = "offset") @QueryParam("offset") Integer offset,
 			@Parameter(ref = "reverse") @QueryParam("reverse") Boolean reverse) {
@@ -87,7 +90,34 @@ public class ChatResource {
 		if (after != null && after < 1500000000000L)
 			throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.INVALID_CRITERIA);
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		if (afterSignature58 != null) {
+			if (before != null || after != null || offset != null || reverse != null)
+				throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.INVALID_CRITERIA);
+
+			byte[] afterSignature;
+			try {
+				afterSignature = Base58.decode(afterSignature58);
+			} catch (NumberFormatException e) {
+				throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.INVALID_SIGNATURE, e);
+			}
+
+			try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
+				List<ChatMessage> chatMessages = repository.getChatRepository().getMessagesAfter(
+						txGroupId,
+						involvingAddresses.isEmpty() ? null : involvingAddresses,
+						afterSignature,
+						limit);
+
+				if (chatMessages == null)
+					throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.TRANSACTION_UNKNOWN);
+
+				return chatMessages;
+			} catch (DataException e) {
+				throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.REPOSITORY_ISSUE, e);
+			}
+		}
+
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			return repository.getChatRepository().getMessagesMatchingCriteria(
 					before,
 					after,
@@ -120,7 +150,7 @@ public class ChatResource {
 		if (address == null || !Crypto.isValidAddress(address))
 			throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.INVALID_ADDRESS);
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			return repository.getChatRepository().getActiveChats(address);
 		} catch (DataException e) {
 			throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.REPOSITORY_ISSUE, e);
@@ -157,7 +187,7 @@ public class ChatResource {
 	public String buildChat(@HeaderParam(Security.API_KEY_HEADER) String apiKey, ChatTransactionData transactionData) {
 		Security.checkApiCallAllowed(request);
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			ChatTransaction chatTransaction = (ChatTransaction) Transaction.fromData(repository, transactionData);
 
 			ValidationResult result = chatTransaction.isValidUnconfirmed();
@@ -205,7 +235,7 @@ public class ChatResource {
 	public String buildChat(@HeaderParam(Security.API_KEY_HEADER) String apiKey, String rawBytes58) {
 		Security.checkApiCallAllowed(request);
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			byte[] rawBytes = Base58.decode(rawBytes58);
 			// We're expecting unsigned transaction, so append empty signature prior to decoding
 			rawBytes = Bytes.concat(rawBytes, new byte[TransactionTransformer.SIGNATURE_LENGTH]);
@@ -26,6 +26,7 @@ import org.qortal.api.Security;
 import org.qortal.api.model.CrossChainCancelRequest;
 import org.qortal.api.model.CrossChainTradeSummary;
 import org.qortal.controller.tradebot.TradeBot;
+import org.qortal.controller.tradebot.TradeOfferIndex;
 import org.qortal.crosschain.SupportedBlockchain;
 import org.qortal.crosschain.ACCT;
 import org.qortal.crosschain.AcctMode;
@@ -87,39 +88,10 @@ public class CrossChainResource {
 		if (limit != null && limit > 100)
 			throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.INVALID_CRITERIA);
 
-		final boolean isExecutable = true;
-		List<CrossChainTradeData> crossChainTrades = new ArrayList<>();
-
-		try (final Repository repository = RepositoryManager.getRepository()) {
-			Map<ByteArray, Supplier<ACCT>> acctsByCodeHash = SupportedBlockchain.getFilteredAcctMap(foreignBlockchain);
-
-			for (Map.Entry<ByteArray, Supplier<ACCT>> acctInfo : acctsByCodeHash.entrySet()) {
-				byte[] codeHash = acctInfo.getKey().value;
-				ACCT acct = acctInfo.getValue().get();
-
-				List<ATData> atsData = repository.getATRepository().getATsByFunctionality(codeHash, isExecutable, limit, offset, reverse);
-
-				for (ATData atData : atsData) {
-					CrossChainTradeData crossChainTradeData = acct.populateTradeData(repository, atData);
-					if (crossChainTradeData.mode == AcctMode.OFFERING) {
-						crossChainTrades.add(crossChainTradeData);
-					}
-				}
-			}
-
-			// Sort the trades by timestamp
-			if (reverse != null && reverse) {
-				crossChainTrades.sort((a, b) -> Longs.compare(b.creationTimestamp, a.creationTimestamp));
-			}
-			else {
-				crossChainTrades.sort((a, b) -> Longs.compare(a.creationTimestamp, b.creationTimestamp));
-			}
-
-			if (limit != null && limit > 0) {
-				// Make sure to not return more than the limit
-				int upperLimit = Math.min(limit, crossChainTrades.size());
-				crossChainTrades = crossChainTrades.subList(0, upperLimit);
-			}
+		try {
+			// Served from incrementally maintained index, so no need to deserialize every trade AT
+			List<CrossChainTradeData> crossChainTrades = TradeOfferIndex.getInstance().getTrades(foreignBlockchain,
+					AcctMode.OFFERING, limit, offset, reverse);
 
 			crossChainTrades.stream().forEach(CrossChainResource::decorateTradeDataWithPresence);
 
@@ -145,7 +117,7 @@ public class CrossChainResource {
 	)
 	@ApiErrors({ApiError.ADDRESS_UNKNOWN, ApiError.INVALID_CRITERIA, ApiError.REPOSITORY_ISSUE})
 	public CrossChainTradeData getTrade(@PathParam("ataddress") String atAddress) {
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			ATData atData = repository.getATRepository().fromATAddress(atAddress);
 			if (atData == null)
 				throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.ADDRESS_UNKNOWN);
@@ -205,7 +177,7 @@ public class CrossChainResource {
 
 		final Boolean isFinished = Boolean.TRUE;
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			Integer minimumFinalHeight = null;
 
 			if (minimumTimestamp != null) {
@@ -315,7 +287,7 @@ public class CrossChainResource {
 		Boolean isFinished = Boolean.TRUE;
 		boolean useInversePrice = (inverse != null && inverse == true);
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			Map<ByteArray, Supplier<ACCT>> acctsByCodeHash = SupportedBlockchain.getFilteredAcctMap(foreignBlockchain);
 
 			long totalForeign = 0;
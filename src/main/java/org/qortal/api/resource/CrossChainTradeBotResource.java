@@ -76,7 +76,7 @@ public class CrossChainTradeBotResource {
 				) @QueryParam("foreignBlockchain") SupportedBlockchain foreignBlockchain) {
 		Security.checkApiCallAllowed(request);
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			List<TradeBotData> allTradeBotData = repository.getCrossChainRepository().getAllTradeBotData();
 
 			if (foreignBlockchain == null)
@@ -71,7 +71,7 @@ public class NamesResource {
 	@ApiErrors({ApiError.REPOSITORY_ISSUE})
 	public List<NameSummary> getAllNames(@Parameter(ref = "limit") @QueryParam("limit") Integer limit, @Parameter(ref = "offset") @QueryParam("offset") Integer offset,
 			@Parameter(ref="reverse") @QueryParam("reverse") Boolean reverse) {
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			List<NameData> names = repository.getNameRepository().getAllNames(limit, offset, reverse);
 
 			// Convert to summary
@@ -101,7 +101,7 @@ public class NamesResource {
 		if (!Crypto.isValidAddress(address))
 			throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.INVALID_ADDRESS);
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			List<NameData> names;
 
 			if (Settings.getInstance().isLite()) {
@@ -133,7 +133,7 @@ public class NamesResource {
 	)
 	@ApiErrors({ApiError.NAME_UNKNOWN, ApiError.REPOSITORY_ISSUE})
 	public NameData getName(@PathParam("name") String name) {
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			NameData nameData;
 
 			if (Settings.getInstance().isLite()) {
@@ -403,7 +403,7 @@ public class NamesResource {
 	@ApiErrors({ApiError.REPOSITORY_ISSUE})
 	public List<NameData> getNamesForSale(@Parameter(ref = "limit") @QueryParam("limit") Integer limit, @Parameter(ref = "offset") @QueryParam("offset") Integer offset,
 			@Parameter(ref="reverse") @QueryParam("reverse") Boolean reverse) {
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			return repository.getNameRepository().getNamesForSale(limit, offset, reverse);
 		} catch (DataException e) {
 			throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.REPOSITORY_ISSUE, e);
@@ -25,12 +25,14 @@ import javax.ws.rs.PathParam;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.qortal.account.PrivateKeyAccount;
 import org.qortal.api.ApiError;
 import org.qortal.api.ApiErrors;
 import org.qortal.api.ApiException;
 import org.qortal.api.ApiExceptionFactory;
+import org.qortal.api.StreamingJsonArray;
 import org.qortal.api.model.SimpleTransactionSignRequest;
 import org.qortal.controller.Controller;
 import org.qortal.controller.LiteNode;
@@ -85,7 +87,7 @@ public class TransactionsResource {
 			throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.INVALID_SIGNATURE, e);
 		}
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			TransactionData transactionData = repository.getTransactionRepository().fromSignature(signature);
 			if (transactionData == null)
 				throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.TRANSACTION_UNKNOWN);
@@ -126,7 +128,7 @@ public class TransactionsResource {
 			throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.INVALID_SIGNATURE, e);
 		}
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			TransactionData transactionData = repository.getTransactionRepository().fromSignature(signature);
 			if (transactionData == null)
 				throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.TRANSACTION_UNKNOWN);
@@ -170,7 +172,7 @@ public class TransactionsResource {
 			throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.INVALID_REFERENCE, e);
 		}
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			TransactionData transactionData = repository.getTransactionRepository().fromReference(reference);
 			if (transactionData == null)
 				throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.TRANSACTION_UNKNOWN);
@@ -219,7 +221,7 @@ public class TransactionsResource {
 			throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.INVALID_SIGNATURE, e);
 		}
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			if (repository.getBlockRepository().getHeightFromSignature(signature) == 0)
 				throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.BLOCK_UNKNOWN);
 
@@ -274,7 +276,7 @@ public class TransactionsResource {
 			}
 		}
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			return repository.getTransactionRepository().getUnconfirmedTransactions(txTypes, creatorPublicKey, limit, offset, reverse);
 		} catch (ApiException e) {
 			throw e;
@@ -311,7 +313,7 @@ public class TransactionsResource {
 	) @QueryParam("offset") Integer offset, @Parameter(
 		ref = "reverse"
 	) @QueryParam("reverse") Boolean reverse) {
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			return repository.getTransactionRepository().getApprovalPendingTransactions(txGroupId, limit, offset, reverse);
 		} catch (ApiException e) {
 			throw e;
@@ -367,7 +369,7 @@ public class TransactionsResource {
 		if (confirmationStatus != ConfirmationStatus.CONFIRMED && (startBlock != null || blockLimit != null))
 			throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.INVALID_CRITERIA);
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			List<byte[]> signatures = repository.getTransactionRepository().getSignaturesMatchingCriteria(startBlock, blockLimit, txGroupId,
 					txTypes, null, null, address, confirmationStatus, limit, offset, reverse);
 
@@ -384,6 +386,107 @@ public class TransactionsResource {
 		}
 	}
 
+	@GET
+	@Path("/search/stream")
+	@Operation(
+		summary = "Find matching transactions, streaming results",
+		description = "Same criteria as /transactions/search but results are streamed to client as they are fetched, "
+				+ "and paging uses signature of last transaction from previous page, instead of offset.",
+		responses = {
+			@ApiResponse(
+				description = "transactions",
+				content = @Content(
+					array = @ArraySchema(
+						schema = @Schema(
+							implementation = TransactionData.class
+						)
+					)
+				)
+			)
+		}
+	)
+	@ApiErrors({
+		ApiError.INVALID_CRITERIA, ApiError.INVALID_SIGNATURE, ApiError.TRANSACTION_UNKNOWN, ApiError.REPOSITORY_ISSUE
+	})
+	public StreamingOutput streamSearchTransactions(@QueryParam("startBlock") Integer startBlock, @QueryParam("blockLimit") Integer blockLimit,
+			@QueryParam("txGroupId") Integer txGroupId,
+			@QueryParam("txType") List<TransactionType> txTypes, @QueryParam("address") String address, @Parameter(
+				description = "whether to include confirmed, unconfirmed or both",
+				required = true
+			) @QueryParam("confirmationStatus") ConfirmationStatus confirmationStatus, @Parameter(
+				description = "signature of last transaction from previous page, in base58"
+			) @QueryParam("after") String afterSignature58, @Parameter(
+				ref = "limit"
+			) @QueryParam("limit") Integer limit, @Parameter(
+				ref = "reverse"
+			) @QueryParam("reverse") Boolean reverse) {
+		// Must have at least one of txType / address / limit <= 20
+		if ((txTypes == null || txTypes.isEmpty()) && (address == null || address.isEmpty()) && (limit == null || limit > 20))
+			throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.INVALID_CRITERIA);
+
+		// You can't ask for unconfirmed and impose a block height range
+		if (confirmationStatus != ConfirmationStatus.CONFIRMED && (startBlock != null || blockLimit != null))
+			throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.INVALID_CRITERIA);
+
+		final byte[] afterSignature;
+		final Long afterTimestamp;
+
+		if (afterSignature58 != null) {
+			try {
+				afterSignature = Base58.decode(afterSignature58);
+			} catch (NumberFormatException e) {
+				throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.INVALID_SIGNATURE, e);
+			}
+
+			// We need previous page's last transaction's timestamp to continue from there
+			try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
+				TransactionData afterTransactionData = repository.getTransactionRepository().fromSignature(afterSignature);
+				if (afterTransactionData == null)
+					throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.TRANSACTION_UNKNOWN);
+
+				afterTimestamp = afterTransactionData.getTimestamp();
+			} catch (DataException e) {
+				throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.REPOSITORY_ISSUE, e);
+			}
+		} else {
+			afterSignature = null;
+			afterTimestamp = null;
+		}
+
+		// Each page continues on from last transaction of previous page, until limit (if any) is reached
+		final Object[] cursor = new Object[] { afterTimestamp, afterSignature };
+		final int[] remaining = new int[] { limit != null && limit > 0 ? limit : Integer.MAX_VALUE };
+
+		return new StreamingJsonArray<>(TransactionData.class, (repository, maxCount) -> {
+			if (remaining[0] <= 0)
+				return null;
+
+			int pageLimit = Math.min(maxCount, remaining[0]);
+			List<byte[]> signatures = repository.getTransactionRepository().getSignaturesMatchingCriteriaAfter(startBlock, blockLimit, txGroupId,
+					txTypes, null, null, address, confirmationStatus, (Long) cursor[0], (byte[]) cursor[1], pageLimit, reverse);
+
+			// No more pages after a partial one
+			remaining[0] = signatures.size() < pageLimit ? 0 : remaining[0] - signatures.size();
+
+			// Expand signatures to transactions
+			List<TransactionData> transactions = new ArrayList<>(signatures.size());
+			for (byte[] signature : signatures) {
+				TransactionData transactionData = repository.getTransactionRepository().fromSignature(signature);
+
+				// Could have been removed since search, e.g. unconfirmed transaction expired,
+				// in which case it won't be found by next page's search either
+				if (transactionData == null)
+					continue;
+
+				transactions.add(transactionData);
+				cursor[0] = transactionData.getTimestamp();
+				cursor[1] = transactionData.getSignature();
+			}
+
+			return transactions;
+		});
+	}
+
 	@GET
 	@Path("/address/{address}")
 	@Operation(
@@ -432,7 +535,7 @@ public class TransactionsResource {
 		}
 		else {
 			// Fetch from local db
-			try (final Repository repository = RepositoryManager.getRepository()) {
+			try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 				List<byte[]> signatures = repository.getTransactionRepository().getSignaturesMatchingCriteria(null, null, null,
 						null, null, null, address, TransactionsResource.ConfirmationStatus.CONFIRMED, limit, offset, reverse);
 
@@ -567,7 +670,7 @@ public class TransactionsResource {
 			throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.INVALID_PUBLIC_KEY, e);
 		}
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			List<byte[]> signatures = repository.getTransactionRepository().getSignaturesMatchingCriteria(null,
 					publicKey, confirmationStatus, limit, offset, reverse);
 
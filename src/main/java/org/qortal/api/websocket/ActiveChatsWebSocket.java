@@ -1,12 +1,10 @@
 package org.qortal.api.websocket;
 
 import java.io.IOException;
-import java.io.StringWriter;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.eclipse.jetty.websocket.api.Session;
-import org.eclipse.jetty.websocket.api.WebSocketException;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketClose;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketConnect;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketError;
@@ -53,6 +51,8 @@ public class ActiveChatsWebSocket extends ApiWebSocket {
 	@Override
 	public void onWebSocketClose(Session session, int statusCode, String reason) {
 		ChatNotifier.getInstance().deregister(session);
+
+		super.onWebSocketClose(session, statusCode, reason);
 	}
 
 	@OnWebSocketError
@@ -74,21 +74,18 @@ public class ActiveChatsWebSocket extends ApiWebSocket {
 				return;
 		}
 
+		// Called from chat processing, so don't wait for a read-only API session
 		try (final Repository repository = RepositoryManager.getRepository()) {
 			ActiveChats activeChats = repository.getChatRepository().getActiveChats(ourAddress);
 
-			StringWriter stringWriter = new StringWriter();
-
-			marshall(stringWriter, activeChats);
-
 			// Only output if something has changed
-			String output = stringWriter.toString();
+			String output = toJson(activeChats);
 			if (output.equals(previousOutput.get()))
 				return;
 
 			previousOutput.set(output);
-			session.getRemote().sendStringByFuture(output);
-		} catch (DataException | IOException | WebSocketException e) {
+			send(session, output);
+		} catch (DataException | IOException e) {
 			// No output this time?
 		}
 	}
@@ -5,11 +5,13 @@ import java.io.StringWriter;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
-import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
 
@@ -17,10 +19,9 @@ import org.eclipse.jetty.http.pathmap.UriTemplatePathSpec;
 import org.eclipse.jetty.websocket.api.Session;
 import org.eclipse.jetty.websocket.servlet.ServletUpgradeRequest;
 import org.eclipse.jetty.websocket.servlet.WebSocketServlet;
-import org.eclipse.persistence.jaxb.JAXBContextFactory;
-import org.eclipse.persistence.jaxb.MarshallerProperties;
 import org.qortal.api.ApiError;
 import org.qortal.api.ApiErrorRoot;
+import org.qortal.api.JsonMarshallers;
 
 @SuppressWarnings("serial")
 abstract class ApiWebSocket extends WebSocketServlet {
@@ -79,21 +80,33 @@ abstract class ApiWebSocket extends WebSocketServlet {
 		}
 	}
 
-	private static Marshaller createMarshaller(Class<?> objectClass) {
-		try {
-			// Create JAXB context aware of object's class
-			JAXBContext jc = JAXBContextFactory.createContext(new Class[] { objectClass }, null);
+	/** Returns object, or collection, marshalled to JSON so the same output can be sent to many sessions. */
+	protected static String toJson(Object object) throws IOException {
+		StringWriter stringWriter = new StringWriter();
 
-			// Create marshaller
-			Marshaller marshaller = jc.createMarshaller();
+		if (object instanceof Collection)
+			marshall(stringWriter, (Collection<?>) object);
+		else
+			marshall(stringWriter, object);
 
-			// Set the marshaller media type to JSON
-			marshaller.setProperty(MarshallerProperties.MEDIA_TYPE, "application/json");
+		return stringWriter.toString();
+	}
+
+	/** Queues output for asynchronous delivery to session, after any output already queued. */
+	protected static void send(Session session, String output) {
+		WebSocketBroadcaster.getInstance().send(session, output);
+	}
 
-			// Tell marshaller not to include JSON root element in the output
-			marshaller.setProperty(MarshallerProperties.JSON_INCLUDE_ROOT, false);
+	/** Queues same output for asynchronous delivery to this websocket's sessions that pass filter. */
+	protected void broadcast(String output, Predicate<Session> sessionFilter) {
+		List<Session> sessions = this.getSessions().stream().filter(sessionFilter).collect(Collectors.toList());
 
-			return marshaller;
+		WebSocketBroadcaster.getInstance().broadcast(sessions, output);
+	}
+
+	private static Marshaller createMarshaller(Class<?> objectClass) {
+		try {
+			return JsonMarshallers.createMarshaller(objectClass);
 		} catch (JAXBException e) {
 			throw new RuntimeException("Unable to create websocket marshaller", e);
 		}
@@ -111,11 +124,13 @@ abstract class ApiWebSocket extends WebSocketServlet {
 			if (sessions != null)
 				sessions.remove(session);
 		}
+
+		WebSocketBroadcaster.getInstance().remove(session);
 	}
 
 	protected List<Session> getSessions() {
 		synchronized (SESSIONS_BY_CLASS) {
-			return new ArrayList<>(SESSIONS_BY_CLASS.get(this.getClass()));
+			return new ArrayList<>(SESSIONS_BY_CLASS.getOrDefault(this.getClass(), Collections.emptyList()));
 		}
 	}
 
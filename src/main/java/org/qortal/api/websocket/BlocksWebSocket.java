@@ -1,11 +1,9 @@
 package org.qortal.api.websocket;
 
 import java.io.IOException;
-import java.io.StringWriter;
 import java.util.List;
 
 import org.eclipse.jetty.websocket.api.Session;
-import org.eclipse.jetty.websocket.api.WebSocketException;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketClose;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketConnect;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketError;
@@ -43,8 +41,16 @@ public class BlocksWebSocket extends ApiWebSocket implements Listener {
 		BlockData blockData = ((Controller.NewBlockEvent) event).getBlockData();
 		BlockSummaryData blockSummary = new BlockSummaryData(blockData);
 
-		for (Session session : getSessions())
-			sendBlockSummary(session, blockSummary);
+		// Marshall once for all sessions
+		String output;
+		try {
+			output = toJson(blockSummary);
+		} catch (IOException e) {
+			// No output this time
+			return;
+		}
+
+		broadcast(output, session -> true);
 	}
 
 	@OnWebSocketConnect
@@ -78,7 +84,7 @@ public class BlocksWebSocket extends ApiWebSocket implements Listener {
 				return;
 			}
 
-			try (final Repository repository = RepositoryManager.getRepository()) {
+			try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 				int height = repository.getBlockRepository().getHeightFromSignature(signature);
 				if (height == 0) {
 					sendError(session, ApiError.BLOCK_UNKNOWN);
@@ -113,7 +119,7 @@ public class BlocksWebSocket extends ApiWebSocket implements Listener {
 			return;
 		}
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			List<BlockSummaryData> blockSummaries = repository.getBlockRepository().getBlockSummaries(height, height);
 			if (blockSummaries == null || blockSummaries.isEmpty()) {
 				sendError(session, ApiError.BLOCK_UNKNOWN);
@@ -127,13 +133,9 @@ public class BlocksWebSocket extends ApiWebSocket implements Listener {
 	}
 
 	private void sendBlockSummary(Session session, BlockSummaryData blockSummary) {
-		StringWriter stringWriter = new StringWriter();
-
 		try {
-			marshall(stringWriter, blockSummary);
-
-			session.getRemote().sendStringByFuture(stringWriter.toString());
-		} catch (IOException | WebSocketException e) {
+			send(session, toJson(blockSummary));
+		} catch (IOException e) {
 			// No output this time
 		}
 	}
@@ -1,34 +1,81 @@
 package org.qortal.api.websocket;
 
 import java.io.IOException;
-import java.io.StringWriter;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
 
 import org.eclipse.jetty.websocket.api.Session;
-import org.eclipse.jetty.websocket.api.WebSocketException;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketClose;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketConnect;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketError;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketMessage;
 import org.eclipse.jetty.websocket.api.annotations.WebSocket;
 import org.eclipse.jetty.websocket.servlet.WebSocketServletFactory;
-import org.qortal.controller.ChatNotifier;
+import org.qortal.controller.Controller;
 import org.qortal.data.chat.ChatMessage;
 import org.qortal.data.transaction.ChatTransactionData;
+import org.qortal.data.transaction.TransactionData;
+import org.qortal.event.Event;
+import org.qortal.event.EventBus;
+import org.qortal.event.Listener;
 import org.qortal.repository.DataException;
 import org.qortal.repository.Repository;
 import org.qortal.repository.RepositoryManager;
+import org.qortal.transaction.Transaction.TransactionType;
+import org.qortal.utils.Base58;
 
 @WebSocket
 @SuppressWarnings("serial")
-public class ChatMessagesWebSocket extends ApiWebSocket {
+public class ChatMessagesWebSocket extends ApiWebSocket implements Listener {
+
+	/** Criteria for which new chat messages are sent to each session. */
+	private static final Map<Session, Predicate<ChatTransactionData>> sessionCriteria = new ConcurrentHashMap<>();
 
 	@Override
 	public void configure(WebSocketServletFactory factory) {
 		factory.register(ChatMessagesWebSocket.class);
+
+		EventBus.INSTANCE.addListener(this::listen);
+	}
+
+	@Override
+	public void listen(Event event) {
+		if (!(event instanceof Controller.NewTransactionEvent))
+			return;
+
+		TransactionData transactionData = ((Controller.NewTransactionEvent) event).getTransactionData();
+		if (transactionData.getType() != TransactionType.CHAT)
+			return;
+
+		ChatTransactionData chatTransactionData = (ChatTransactionData) transactionData;
+
+		List<Session> sessions = getSessions();
+		sessions.removeIf(session -> {
+			Predicate<ChatTransactionData> criteria = sessionCriteria.get(session);
+			return criteria == null || !criteria.test(chatTransactionData);
+		});
+
+		// Don't bother converting chat message if nobody is interested
+		if (sessions.isEmpty())
+			return;
+
+		// Convert ChatTransactionData to ChatMessage, and marshall, once for all sessions
+		String output;
+		// Called from chat processing, so don't wait for a read-only API session
+		try (final Repository repository = RepositoryManager.getRepository()) {
+			ChatMessage chatMessage = repository.getChatRepository().toChatMessage(chatTransactionData);
+
+			output = toJson(Collections.singletonList(chatMessage));
+		} catch (DataException | IOException e) {
+			// No output this time?
+			return;
+		}
+
+		WebSocketBroadcaster.getInstance().broadcast(sessions, output);
 	}
 
 	@OnWebSocketConnect
@@ -36,27 +83,39 @@ public class ChatMessagesWebSocket extends ApiWebSocket {
 	public void onWebSocketConnect(Session session) {
 		Map<String, List<String>> queryParams = session.getUpgradeRequest().getParameterMap();
 
+		// Optional: only send initial messages after this one, e.g. last message received before reconnecting
+		byte[] afterSignature = null;
+		List<String> afterSignatures = queryParams.get("afterSignature");
+		if (afterSignatures != null && afterSignatures.size() == 1) {
+			try {
+				afterSignature = Base58.decode(afterSignatures.get(0));
+			} catch (NumberFormatException e) {
+				session.close(4001, "invalid afterSignature");
+				return;
+			}
+		}
+
+		// Optional: maximum number of initial messages
+		Integer limit = null;
+		List<String> limits = queryParams.get("limit");
+		if (limits != null && limits.size() == 1) {
+			try {
+				limit = Integer.parseInt(limits.get(0));
+			} catch (NumberFormatException e) {
+				session.close(4001, "invalid limit");
+				return;
+			}
+		}
+
 		List<String> txGroupIds = queryParams.get("txGroupId");
 		if (txGroupIds != null && txGroupIds.size() == 1) {
 			int txGroupId = Integer.parseInt(txGroupIds.get(0));
 
-			try (final Repository repository = RepositoryManager.getRepository()) {
-				List<ChatMessage> chatMessages = repository.getChatRepository().getMessagesMatchingCriteria(
-						null,
-						null,
-						txGroupId,
-						null,
-						null, null, null);
-
-				sendMessages(session, chatMessages);
-			} catch (DataException e) {
-				// Not a good start
-				session.close(4001, "Couldn't fetch initial messages from repository");
+			if (!sendInitialMessages(session, txGroupId, null, afterSignature, limit))
 				return;
-			}
 
-			ChatNotifier.Listener listener = chatTransactionData -> onNotify(session, chatTransactionData, txGroupId);
-			ChatNotifier.getInstance().register(session, listener);
+			sessionCriteria.put(session, chatTransactionData -> isGroupMatch(chatTransactionData, txGroupId));
+			super.onWebSocketConnect(session);
 
 			return;
 		}
@@ -67,29 +126,19 @@ public class ChatMessagesWebSocket extends ApiWebSocket {
 			return;
 		}
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
-			List<ChatMessage> chatMessages = repository.getChatRepository().getMessagesMatchingCriteria(
-					null,
-					null,
-					null,
-					involvingAddresses,
-					null, null, null);
-
-			sendMessages(session, chatMessages);
-		} catch (DataException e) {
-			// Not a good start
-			session.close(4001, "Couldn't fetch initial messages from repository");
+		if (!sendInitialMessages(session, null, involvingAddresses, afterSignature, limit))
 			return;
-		}
 
-		ChatNotifier.Listener listener = chatTransactionData -> onNotify(session, chatTransactionData, involvingAddresses);
-		ChatNotifier.getInstance().register(session, listener);
+		sessionCriteria.put(session, chatTransactionData -> isDirectMatch(chatTransactionData, involvingAddresses));
+		super.onWebSocketConnect(session);
 	}
 
 	@OnWebSocketClose
 	@Override
 	public void onWebSocketClose(Session session, int statusCode, String reason) {
-		ChatNotifier.getInstance().deregister(session);
+		sessionCriteria.remove(session);
+
+		super.onWebSocketClose(session, statusCode, reason);
 	}
 
 	@OnWebSocketError
@@ -102,58 +151,51 @@ public class ChatMessagesWebSocket extends ApiWebSocket {
 		/* ignored */
 	}
 
-	private void onNotify(Session session, ChatTransactionData chatTransactionData, int txGroupId) {
-		if (chatTransactionData == null)
-			// There has been a group-membership change, but we're not interested
-			return;
-
+	private static boolean isGroupMatch(ChatTransactionData chatTransactionData, int txGroupId) {
 		// We only want group-based messages with our txGroupId
-		if (chatTransactionData.getRecipient() != null || chatTransactionData.getTxGroupId() != txGroupId)
-			return;
-
-		sendChat(session, chatTransactionData);
+		return chatTransactionData.getRecipient() == null && chatTransactionData.getTxGroupId() == txGroupId;
 	}
 
-	private void onNotify(Session session, ChatTransactionData chatTransactionData, List<String> involvingAddresses) {
-		if (chatTransactionData == null)
-			return;
-
+	private static boolean isDirectMatch(ChatTransactionData chatTransactionData, List<String> involvingAddresses) {
 		// We only want direct/non-group messages where sender/recipient match our addresses
 		String recipient = chatTransactionData.getRecipient();
 		if (recipient == null)
-			return;
+			return false;
 
 		List<String> transactionAddresses = Arrays.asList(recipient, chatTransactionData.getSender());
 
-		if (!transactionAddresses.containsAll(involvingAddresses))
-			return;
-
-		sendChat(session, chatTransactionData);
+		return transactionAddresses.containsAll(involvingAddresses);
 	}
 
-	private void sendMessages(Session session, List<ChatMessage> chatMessages) {
-		StringWriter stringWriter = new StringWriter();
+	private boolean sendInitialMessages(Session session, Integer txGroupId, List<String> involvingAddresses, byte[] afterSignature, Integer limit) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
+			List<ChatMessage> chatMessages = repository.getChatRepository().getMessagesAfter(
+					txGroupId,
+					involvingAddresses,
+					afterSignature,
+					limit);
 
-		try {
-			marshall(stringWriter, chatMessages);
+			if (chatMessages == null) {
+				session.close(4001, "unknown afterSignature");
+				return false;
+			}
 
-			session.getRemote().sendStringByFuture(stringWriter.toString());
-		} catch (IOException | WebSocketException e) {
-			// No output this time?
+			sendMessages(session, chatMessages);
+		} catch (DataException e) {
+			// Not a good start
+			session.close(4001, "Couldn't fetch initial messages from repository");
+			return false;
 		}
+
+		return true;
 	}
 
-	private void sendChat(Session session, ChatTransactionData chatTransactionData) {
-		// Convert ChatTransactionData to ChatMessage
-		ChatMessage chatMessage;
-		try (final Repository repository = RepositoryManager.getRepository()) {
-			chatMessage = repository.getChatRepository().toChatMessage(chatTransactionData);
-		} catch (DataException e) {
+	private void sendMessages(Session session, List<ChatMessage> chatMessages) {
+		try {
+			send(session, toJson(chatMessages));
+		} catch (IOException e) {
 			// No output this time?
-			return;
 		}
-
-		sendMessages(session, Collections.singletonList(chatMessage));
 	}
 
 }
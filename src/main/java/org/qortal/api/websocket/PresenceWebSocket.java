@@ -1,7 +1,6 @@
 package org.qortal.api.websocket;
 
 import java.io.IOException;
-import java.io.StringWriter;
 import java.util.Collections;
 import java.util.EnumMap;
 import java.util.HashMap;
@@ -88,7 +87,7 @@ public class PresenceWebSocket extends ApiWebSocket implements Listener {
 	public void configure(WebSocketServletFactory factory) {
 		factory.register(PresenceWebSocket.class);
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			populateCurrentInfo(repository);
 		} catch (DataException e) {
 			// How to fail properly?
@@ -129,13 +128,20 @@ public class PresenceWebSocket extends ApiWebSocket implements Listener {
 
 		List<PresenceInfo> presenceInfo = Collections.singletonList(new PresenceInfo(presenceType, pubKey58, computedTimestamp));
 
-		// Notify sessions
-		for (Session session : getSessions()) {
-			PresenceType sessionPresenceType = sessionPresenceTypes.get(session);
-
-			if (sessionPresenceType == null || sessionPresenceType == presenceType)
-				sendPresenceInfo(session, presenceInfo);
+		// Marshall once for all sessions
+		String output;
+		try {
+			output = toJson(presenceInfo);
+		} catch (IOException e) {
+			// No output this time?
+			return;
 		}
+
+		// Notify sessions with this/no preferred presence type
+		broadcast(output, session -> {
+			PresenceType sessionPresenceType = sessionPresenceTypes.get(session);
+			return sessionPresenceType == null || sessionPresenceType == presenceType;
+		});
 	}
 
 	@OnWebSocketConnect
@@ -197,11 +203,7 @@ public class PresenceWebSocket extends ApiWebSocket implements Listener {
 
 	private boolean sendPresenceInfo(Session session, List<PresenceInfo> presenceInfo) {
 		try {
-			StringWriter stringWriter = new StringWriter();
-			marshall(stringWriter, presenceInfo);
-
-			String output = stringWriter.toString();
-			session.getRemote().sendStringByFuture(output);
+			send(session, toJson(presenceInfo));
 		} catch (IOException e) {
 			// No output this time?
 			return false;
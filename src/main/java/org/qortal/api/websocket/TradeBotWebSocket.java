@@ -39,7 +39,7 @@ public class TradeBotWebSocket extends ApiWebSocket implements Listener {
 	public void configure(WebSocketServletFactory factory) {
 		factory.register(TradeBotWebSocket.class);
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			List<TradeBotData> tradeBotEntries = repository.getCrossChainRepository().getAllTradeBotData();
 			if (tradeBotEntries == null)
 				// How do we properly fail here?
@@ -99,7 +99,7 @@ public class TradeBotWebSocket extends ApiWebSocket implements Listener {
 		sessionBlockchain.put(session, foreignBlockchain);
 
 		// Send all known trade-bot entries
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			List<TradeBotData> tradeBotEntries = repository.getCrossChainRepository().getAllTradeBotData();
 
 			// Optional filtering
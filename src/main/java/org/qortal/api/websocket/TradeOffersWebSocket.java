@@ -1,13 +1,13 @@
 package org.qortal.api.websocket;
 
 import java.io.IOException;
-import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -22,8 +22,7 @@ import org.eclipse.jetty.websocket.api.annotations.OnWebSocketMessage;
 import org.eclipse.jetty.websocket.api.annotations.WebSocket;
 import org.eclipse.jetty.websocket.servlet.WebSocketServletFactory;
 import org.qortal.api.model.CrossChainOfferSummary;
-import org.qortal.controller.Controller;
-import org.qortal.controller.Synchronizer;
+import org.qortal.controller.tradebot.TradeOfferIndex;
 import org.qortal.crosschain.SupportedBlockchain;
 import org.qortal.crosschain.ACCT;
 import org.qortal.crosschain.AcctMode;
@@ -53,8 +52,8 @@ public class TradeOffersWebSocket extends ApiWebSocket implements Listener {
 		// REDEEMED/REFUNDED/CANCELLED
 		public final Map<String, CrossChainOfferSummary> historicSummaries = new HashMap<>();
 	}
-	// Manual synchronization
-	private static final Map<String, CachedOfferInfo> cachedInfoByBlockchain = new HashMap<>();
+	// Each CachedOfferInfo is manually synchronized, so blockchains don't contend with each other
+	private static final Map<String, CachedOfferInfo> cachedInfoByBlockchain = new ConcurrentHashMap<>();
 
 	private static final Predicate<CrossChainOfferSummary> isHistoric = offerSummary
 			-> offerSummary.getMode() == AcctMode.REDEEMED
@@ -67,9 +66,14 @@ public class TradeOffersWebSocket extends ApiWebSocket implements Listener {
 	public void configure(WebSocketServletFactory factory) {
 		factory.register(TradeOffersWebSocket.class);
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
-			populateCurrentSummaries(repository);
+		try {
+			populateCurrentSummaries();
+		} catch (DataException e) {
+			// How to fail properly?
+			return;
+		}
 
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
 			populateHistoricSummaries(repository);
 		} catch (DataException e) {
 			// How to fail properly?
@@ -81,90 +85,78 @@ public class TradeOffersWebSocket extends ApiWebSocket implements Listener {
 
 	@Override
 	public void listen(Event event) {
-		if (!(event instanceof Synchronizer.NewChainTipEvent))
+		if (!(event instanceof TradeOfferIndex.TradesChangedEvent))
 			return;
 
-		BlockData blockData = ((Synchronizer.NewChainTipEvent) event).getNewChainTip();
-
-		// Process any new info
-
-		try (final Repository repository = RepositoryManager.getRepository()) {
-			// Find any new/changed trade ATs since this block
-			final Boolean isFinished = null;
-			final Integer dataByteOffset = null;
-			final Long expectedValue = null;
-			final Integer minimumFinalHeight = blockData.getHeight();
-
-			for (SupportedBlockchain blockchain : SupportedBlockchain.values()) {
-				Map<ByteArray, Supplier<ACCT>> acctsByCodeHash = SupportedBlockchain.getFilteredAcctMap(blockchain);
-
-				List<CrossChainOfferSummary> crossChainOfferSummaries = new ArrayList<>();
-
-				synchronized (cachedInfoByBlockchain) {
-					CachedOfferInfo cachedInfo = cachedInfoByBlockchain.computeIfAbsent(blockchain.name(), k -> new CachedOfferInfo());
-
-					for (Map.Entry<ByteArray, Supplier<ACCT>> acctInfo : acctsByCodeHash.entrySet()) {
-						byte[] codeHash = acctInfo.getKey().value;
-						ACCT acct = acctInfo.getValue().get();
+		TradeOfferIndex.TradesChangedEvent tradesChangedEvent = (TradeOfferIndex.TradesChangedEvent) event;
+		BlockData blockData = tradesChangedEvent.getBlockData();
 
-						List<ATStateData> atStates = repository.getATRepository().getMatchingFinalATStates(codeHash,
-								isFinished, dataByteOffset, expectedValue, minimumFinalHeight,
-								null, null, null);
+		// Trade data for new/changed trade ATs since last block has already been produced by trade offer index
+		Map<String, List<CrossChainTradeData>> changedTradesByBlockchain = tradesChangedEvent.getChangedTrades().stream()
+				.collect(Collectors.groupingBy(tradeData -> tradeData.foreignBlockchain));
 
-						crossChainOfferSummaries.addAll(produceSummaries(repository, acct, atStates, blockData.getTimestamp()));
-					}
+		for (SupportedBlockchain blockchain : SupportedBlockchain.values()) {
+			List<CrossChainOfferSummary> crossChainOfferSummaries = new ArrayList<>();
 
-					// Remove any entries unchanged from last time
-					crossChainOfferSummaries.removeIf(offerSummary -> cachedInfo.previousAtModes.get(offerSummary.getQortalAtAddress()) == offerSummary.getMode());
+			for (CrossChainTradeData crossChainTradeData : changedTradesByBlockchain.getOrDefault(blockchain.name(), Collections.emptyList()))
+				crossChainOfferSummaries.add(produceSummary(crossChainTradeData, blockData.getTimestamp()));
 
-					// Skip to next blockchain if nothing has changed (for this blockchain)
-					if (crossChainOfferSummaries.isEmpty())
-						continue;
+			CachedOfferInfo cachedInfo = cachedInfoByBlockchain.computeIfAbsent(blockchain.name(), k -> new CachedOfferInfo());
 
-					// Update
-					for (CrossChainOfferSummary offerSummary : crossChainOfferSummaries) {
-						String offerAtAddress = offerSummary.getQortalAtAddress();
-
-						cachedInfo.previousAtModes.put(offerAtAddress, offerSummary.getMode());
-						LOGGER.trace(() -> String.format("Block height: %d, AT: %s, mode: %s", blockData.getHeight(), offerAtAddress, offerSummary.getMode().name()));
-
-						switch (offerSummary.getMode()) {
-							case OFFERING:
-								cachedInfo.currentSummaries.put(offerAtAddress, offerSummary);
-								cachedInfo.historicSummaries.remove(offerAtAddress);
-								break;
-
-							case REDEEMED:
-							case REFUNDED:
-							case CANCELLED:
-								cachedInfo.currentSummaries.remove(offerAtAddress);
-								cachedInfo.historicSummaries.put(offerAtAddress, offerSummary);
-								break;
-
-							case TRADING:
-								cachedInfo.currentSummaries.remove(offerAtAddress);
-								cachedInfo.historicSummaries.remove(offerAtAddress);
-								break;
-						}
+			synchronized (cachedInfo) {
+				// Remove any entries unchanged from last time
+				crossChainOfferSummaries.removeIf(offerSummary -> cachedInfo.previousAtModes.get(offerSummary.getQortalAtAddress()) == offerSummary.getMode());
+
+				// Skip to next blockchain if nothing has changed (for this blockchain)
+				if (crossChainOfferSummaries.isEmpty())
+					continue;
+
+				// Update
+				for (CrossChainOfferSummary offerSummary : crossChainOfferSummaries) {
+					String offerAtAddress = offerSummary.getQortalAtAddress();
+
+					cachedInfo.previousAtModes.put(offerAtAddress, offerSummary.getMode());
+					LOGGER.trace(() -> String.format("Block height: %d, AT: %s, mode: %s", blockData.getHeight(), offerAtAddress, offerSummary.getMode().name()));
+
+					switch (offerSummary.getMode()) {
+						case OFFERING:
+							cachedInfo.currentSummaries.put(offerAtAddress, offerSummary);
+							cachedInfo.historicSummaries.remove(offerAtAddress);
+							break;
+
+						case REDEEMED:
+						case REFUNDED:
+						case CANCELLED:
+							cachedInfo.currentSummaries.remove(offerAtAddress);
+							cachedInfo.historicSummaries.put(offerAtAddress, offerSummary);
+							break;
+
+						case TRADING:
+							cachedInfo.currentSummaries.remove(offerAtAddress);
+							cachedInfo.historicSummaries.remove(offerAtAddress);
+							break;
 					}
-
-					// Remove any historic offers that are over 24 hours old
-					final long tooOldTimestamp = NTP.getTime() - 24 * 60 * 60 * 1000L;
-					cachedInfo.historicSummaries.values().removeIf(historicSummary -> historicSummary.getTimestamp() < tooOldTimestamp);
 				}
 
-				// Notify sessions
-				for (Session session : getSessions()) {
-					// Only send if this session has this/no preferred blockchain
-					String preferredBlockchain = sessionBlockchain.get(session);
-
-					if (preferredBlockchain == null || preferredBlockchain.equals(blockchain.name()))
-						sendOfferSummaries(session, crossChainOfferSummaries);
-				}
+				// Remove any historic offers that are over 24 hours old
+				final long tooOldTimestamp = NTP.getTime() - 24 * 60 * 60 * 1000L;
+				cachedInfo.historicSummaries.values().removeIf(historicSummary -> historicSummary.getTimestamp() < tooOldTimestamp);
+			}
 
+			// Marshall once for all sessions
+			String output;
+			try {
+				output = toJson(crossChainOfferSummaries);
+			} catch (IOException e) {
+				// No output this time?
+				continue;
 			}
-		} catch (DataException e) {
-			// No output this time
+
+			// Notify sessions, but only if session has this/no preferred blockchain
+			broadcast(output, session -> {
+				String preferredBlockchain = sessionBlockchain.get(session);
+				return preferredBlockchain == null || preferredBlockchain.equals(blockchain.name());
+			});
 		}
 	}
 
@@ -189,22 +181,21 @@ public class TradeOffersWebSocket extends ApiWebSocket implements Listener {
 
 		List<CrossChainOfferSummary> crossChainOfferSummaries = new ArrayList<>();
 
-		synchronized (cachedInfoByBlockchain) {
-			Collection<CachedOfferInfo> cachedInfos;
+		Collection<CachedOfferInfo> cachedInfos;
 
-			if (foreignBlockchain == null)
-				// No preferred blockchain, so iterate through all of them
-				cachedInfos = cachedInfoByBlockchain.values();
-			else
-				cachedInfos = Collections.singleton(cachedInfoByBlockchain.computeIfAbsent(foreignBlockchain, k -> new CachedOfferInfo()));
+		if (foreignBlockchain == null)
+			// No preferred blockchain, so iterate through all of them
+			cachedInfos = cachedInfoByBlockchain.values();
+		else
+			cachedInfos = Collections.singleton(cachedInfoByBlockchain.computeIfAbsent(foreignBlockchain, k -> new CachedOfferInfo()));
 
-			for (CachedOfferInfo cachedInfo : cachedInfos) {
+		for (CachedOfferInfo cachedInfo : cachedInfos)
+			synchronized (cachedInfo) {
 				crossChainOfferSummaries.addAll(cachedInfo.currentSummaries.values());
 
 				if (includeHistoric)
 					crossChainOfferSummaries.addAll(cachedInfo.historicSummaries.values());
 			}
-		}
 
 		if (!sendOfferSummaries(session, crossChainOfferSummaries)) {
 			session.close(4002, "websocket issue");
@@ -235,11 +226,7 @@ public class TradeOffersWebSocket extends ApiWebSocket implements Listener {
 
 	private boolean sendOfferSummaries(Session session, List<CrossChainOfferSummary> crossChainOfferSummaries) {
 		try {
-			StringWriter stringWriter = new StringWriter();
-			marshall(stringWriter, crossChainOfferSummaries);
-
-			String output = stringWriter.toString();
-			session.getRemote().sendStringByFuture(output);
+			send(session, toJson(crossChainOfferSummaries));
 		} catch (IOException e) {
 			// No output this time?
 			return false;
@@ -248,35 +235,19 @@ public class TradeOffersWebSocket extends ApiWebSocket implements Listener {
 		return true;
 	}
 
-	private static void populateCurrentSummaries(Repository repository) throws DataException {
+	private static void populateCurrentSummaries() throws DataException {
 		// We want ALL OFFERING trades
-		Boolean isFinished = Boolean.FALSE;
-		Long expectedValue = (long) AcctMode.OFFERING.value;
-		Integer minimumFinalHeight = null;
-
 		for (SupportedBlockchain blockchain : SupportedBlockchain.values()) {
-			Map<ByteArray, Supplier<ACCT>> acctsByCodeHash = SupportedBlockchain.getFilteredAcctMap(blockchain);
-
 			CachedOfferInfo cachedInfo = cachedInfoByBlockchain.computeIfAbsent(blockchain.name(), k -> new CachedOfferInfo());
 
-			for (Map.Entry<ByteArray, Supplier<ACCT>> acctInfo : acctsByCodeHash.entrySet()) {
-				byte[] codeHash = acctInfo.getKey().value;
-				ACCT acct = acctInfo.getValue().get();
-
-				Integer dataByteOffset = acct.getModeByteOffset();
-				List<ATStateData> initialAtStates = repository.getATRepository().getMatchingFinalATStates(codeHash,
-					isFinished, dataByteOffset, expectedValue, minimumFinalHeight,
-					null, null, null);
-
-				if (initialAtStates == null)
-					throw new DataException("Couldn't fetch current trades from repository");
+			List<CrossChainTradeData> offeringTrades = TradeOfferIndex.getInstance().getTrades(blockchain, AcctMode.OFFERING, null, null, null);
 
-				// Save initial AT modes
-				cachedInfo.previousAtModes.putAll(initialAtStates.stream().collect(Collectors.toMap(ATStateData::getATAddress, atState -> AcctMode.OFFERING)));
+			for (CrossChainTradeData crossChainTradeData : offeringTrades) {
+				// Save initial AT mode
+				cachedInfo.previousAtModes.put(crossChainTradeData.qortalAtAddress, AcctMode.OFFERING);
 
-				// Convert to offer summaries
-				cachedInfo.currentSummaries.putAll(produceSummaries(repository, acct, initialAtStates, null).stream()
-										.collect(Collectors.toMap(CrossChainOfferSummary::getQortalAtAddress, offerSummary -> offerSummary)));
+				// Convert to offer summary, using when trade was created
+				cachedInfo.currentSummaries.put(crossChainTradeData.qortalAtAddress, new CrossChainOfferSummary(crossChainTradeData, crossChainTradeData.creationTimestamp));
 			}
 		}
 	}
@@ -329,24 +300,22 @@ public class TradeOffersWebSocket extends ApiWebSocket implements Listener {
 	private static CrossChainOfferSummary produceSummary(Repository repository, ACCT acct, ATStateData atState, Long timestamp) throws DataException {
 		CrossChainTradeData crossChainTradeData = acct.populateTradeData(repository, atState);
 
+		if (crossChainTradeData.mode != AcctMode.OFFERING && timestamp == null)
+			timestamp = repository.getBlockRepository().getTimestampFromHeight(atState.getHeight());
+
+		return produceSummary(crossChainTradeData, timestamp);
+	}
+
+	private static CrossChainOfferSummary produceSummary(CrossChainTradeData crossChainTradeData, Long timestamp) {
 		long atStateTimestamp;
 
 		if (crossChainTradeData.mode == AcctMode.OFFERING)
 			// We want when trade was created, not when it was last updated
 			atStateTimestamp = crossChainTradeData.creationTimestamp;
 		else
-			atStateTimestamp = timestamp != null ? timestamp : repository.getBlockRepository().getTimestampFromHeight(atState.getHeight());
+			atStateTimestamp = timestamp;
 
 		return new CrossChainOfferSummary(crossChainTradeData, atStateTimestamp);
 	}
 
-	private static List<CrossChainOfferSummary> produceSummaries(Repository repository, ACCT acct, List<ATStateData> atStates, Long timestamp) throws DataException {
-		List<CrossChainOfferSummary> offerSummaries = new ArrayList<>();
-
-		for (ATStateData atState : atStates)
-			offerSummaries.add(produceSummary(repository, acct, atState, timestamp));
-
-		return offerSummaries;
-	}
-
 }
@@ -0,0 +1,177 @@
+package org.qortal.api.websocket;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WebSocketException;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+
+/**
+ * Fan-out of already-serialized websocket messages to many sessions.
+ * <p>
+ * Callers build and serialize each payload once, then hand the same String to every interested session.
+ * Each session has its own outbound queue which is drained one asynchronous write at a time,
+ * so a slow client never blocks the caller (typically an EventBus thread) or other clients.
+ * <p>
+ * If a session's queue grows beyond {@link #MAX_QUEUED_MESSAGES} or {@link #MAX_QUEUED_CHARS}
+ * then the client isn't keeping up, so the session is closed instead of buffering without limit.
+ */
+class WebSocketBroadcaster {
+
+	private static final Logger LOGGER = LogManager.getLogger(WebSocketBroadcaster.class);
+
+	/** Maximum number of messages waiting to be written to a session before it is evicted. */
+	private static final int MAX_QUEUED_MESSAGES = 256;
+	/** Maximum number of chars waiting to be written to a session before it is evicted. */
+	private static final long MAX_QUEUED_CHARS = 4 * 1024 * 1024L; // chars
+
+	private static final int SLOW_CONSUMER_STATUS_CODE = 4004;
+
+	private class SessionQueue implements WriteCallback {
+		private final Session session;
+
+		/** Messages waiting for the in-flight write to complete. Guarded by <tt>this</tt>. */
+		private final Deque<String> queuedMessages = new ArrayDeque<>();
+		private long queuedChars = 0;
+		private boolean isWriting = false;
+		private boolean isEvicted = false;
+
+		private SessionQueue(Session session) {
+			this.session = session;
+		}
+
+		private void enqueue(String message) {
+			boolean isTooSlow = false;
+
+			synchronized (this) {
+				if (this.isEvicted)
+					return;
+
+				if (this.isWriting) {
+					if (this.queuedMessages.size() >= MAX_QUEUED_MESSAGES || this.queuedChars + message.length() > MAX_QUEUED_CHARS) {
+						isTooSlow = true;
+						this.isEvicted = true;
+						this.queuedMessages.clear();
+						this.queuedChars = 0;
+					} else {
+						this.queuedMessages.add(message);
+						this.queuedChars += message.length();
+						return;
+					}
+				} else {
+					this.isWriting = true;
+				}
+			}
+
+			if (isTooSlow) {
+				evictSlowConsumer(this);
+				return;
+			}
+
+			this.write(message);
+		}
+
+		private void write(String message) {
+			try {
+				this.session.getRemote().sendString(message, this);
+			} catch (WebSocketException e) {
+				this.writeFailed(e);
+			}
+		}
+
+		@Override
+		public void writeSuccess() {
+			messagesSent.incrementAndGet();
+
+			String nextMessage;
+
+			synchronized (this) {
+				nextMessage = this.queuedMessages.poll();
+
+				if (nextMessage == null) {
+					this.isWriting = false;
+					return;
+				}
+
+				this.queuedChars -= nextMessage.length();
+			}
+
+			this.write(nextMessage);
+		}
+
+		@Override
+		public void writeFailed(Throwable throwable) {
+			// Remote end probably closed
+			synchronized (this) {
+				this.isEvicted = true;
+				this.queuedMessages.clear();
+				this.queuedChars = 0;
+			}
+
+			remove(this.session);
+		}
+	}
+
+	private static WebSocketBroadcaster instance;
+
+	private final Map<Session, SessionQueue> sessionQueues = new ConcurrentHashMap<>();
+
+	private final AtomicLong messagesSent = new AtomicLong();
+	private final AtomicLong sessionsEvicted = new AtomicLong();
+
+	private WebSocketBroadcaster() {
+	}
+
+	public static synchronized WebSocketBroadcaster getInstance() {
+		if (instance == null)
+			instance = new WebSocketBroadcaster();
+
+		return instance;
+	}
+
+	/** Queues message for asynchronous delivery to session. */
+	public void send(Session session, String message) {
+		if (!session.isOpen()) {
+			this.remove(session);
+			return;
+		}
+
+		this.sessionQueues.computeIfAbsent(session, SessionQueue::new).enqueue(message);
+	}
+
+	/** Queues same message for asynchronous delivery to all passed sessions. */
+	public void broadcast(Collection<Session> sessions, String message) {
+		for (Session session : sessions)
+			this.send(session, message);
+	}
+
+	/** Discards any messages still queued for session. */
+	public void remove(Session session) {
+		this.sessionQueues.remove(session);
+	}
+
+	public long getMessagesSent() {
+		return this.messagesSent.get();
+	}
+
+	public long getSessionsEvicted() {
+		return this.sessionsEvicted.get();
+	}
+
+	private void evictSlowConsumer(SessionQueue sessionQueue) {
+		this.remove(sessionQueue.session);
+		this.sessionsEvicted.incrementAndGet();
+
+		LOGGER.debug(() -> String.format("Closing websocket session from %s as it isn't keeping up", sessionQueue.session.getRemoteAddress()));
+
+		sessionQueue.session.close(SLOW_CONSUMER_STATUS_CODE, "too slow");
+	}
+
+}
@@ -15,6 +15,10 @@ public class ArbitraryDataBuildQueueItem extends ArbitraryDataResource {
     private Long buildEndTimestamp = null;
     private Integer priority = 0;
     private boolean failed = false;
+    /** Set when a newer transaction arrives while this build is in progress, so that it is rebuilt afterwards */
+    private volatile boolean superseded = false;
+    /** Order of arrival in the build queue, so that items with equal priority are built first come, first served */
+    private long queueSequence = 0;
 
     private static int HIGH_PRIORITY_THRESHOLD = 5;
 
@@ -30,10 +34,23 @@ public class ArbitraryDataBuildQueueItem extends ArbitraryDataResource {
         this.creationTimestamp = NTP.getTime();
     }
 
-    public void prepareForBuild() {
+    public synchronized void prepareForBuild() {
         this.buildStartTimestamp = NTP.getTime();
     }
 
+    /**
+     * Marks this item as being built, unless it has already been claimed, e.g. by another builder thread.
+     *
+     * @return true if the caller should build it
+     */
+    public synchronized boolean claimForBuild() {
+        if (!this.isQueued()) {
+            return false;
+        }
+        this.prepareForBuild();
+        return this.buildStartTimestamp != null;
+    }
+
     public void build() throws IOException, DataException, MissingDataException {
         Long now = NTP.getTime();
         if (now == null) {
@@ -54,11 +71,11 @@ public class ArbitraryDataBuildQueueItem extends ArbitraryDataResource {
         }
     }
 
-    public boolean isBuilding() {
+    public synchronized boolean isBuilding() {
         return this.buildStartTimestamp != null;
     }
 
-    public boolean isQueued() {
+    public synchronized boolean isQueued() {
         return this.buildStartTimestamp == null;
     }
 
@@ -76,10 +93,18 @@ public class ArbitraryDataBuildQueueItem extends ArbitraryDataResource {
         return now - this.buildStartTimestamp > FAILURE_TIMEOUT;
     }
 
+    public Long getCreationTimestamp() {
+        return this.creationTimestamp;
+    }
+
     public Long getBuildStartTimestamp() {
         return this.buildStartTimestamp;
     }
 
+    public Long getBuildEndTimestamp() {
+        return this.buildEndTimestamp;
+    }
+
     public Integer getPriority() {
         if (this.priority != null) {
             return this.priority;
@@ -98,4 +123,20 @@ public class ArbitraryDataBuildQueueItem extends ArbitraryDataResource {
     public void setFailed(boolean failed) {
         this.failed = failed;
     }
+
+    public boolean isSuperseded() {
+        return this.superseded;
+    }
+
+    public void setSuperseded(boolean superseded) {
+        this.superseded = superseded;
+    }
+
+    public long getQueueSequence() {
+        return this.queueSequence;
+    }
+
+    public void setQueueSequence(long queueSequence) {
+        this.queueSequence = queueSequence;
+    }
 }
@@ -13,19 +13,43 @@ import org.qortal.repository.RepositoryManager;
 import org.qortal.arbitrary.ArbitraryDataFile.ResourceIdType;
 import org.qortal.settings.Settings;
 import org.qortal.utils.Base58;
+import org.qortal.utils.FilesystemUtils;
 import org.qortal.utils.NTP;
 
 import java.io.IOException;
+import java.io.InvalidObjectException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Builds the latest state of a resource by applying each PATCH layer on top of the latest PUT.
+ * <p>
+ * The most recently built state is kept as a snapshot alongside the resource's cached data,
+ * together with the signature of the layer it was built from. Subsequent builds start from that
+ * snapshot and only apply layers published since, rather than replaying every layer from the PUT.
+ * Snapshots share file data with the built output via hard links, where supported, so keeping
+ * one costs little extra disk space.
+ */
 public class ArbitraryDataBuilder {
 
     private static final Logger LOGGER = LogManager.getLogger(ArbitraryDataBuilder.class);
 
+    public static final String SNAPSHOT_DIRECTORY = "snapshot";
+
+    /**
+     * Locks serializing access to each resource's snapshot, keyed by snapshot path, as the same resource
+     * can be built by a reader and a writer at once. Different resources don't need to wait for each other.
+     */
+    private static final Map<String, Object> SNAPSHOT_LOCKS = new ConcurrentHashMap<>();
+
     private final String name;
     private final Service service;
     private final String identifier;
@@ -39,11 +63,18 @@ public class ArbitraryDataBuilder {
     private Path finalPath;
     private int layerCount;
 
+    private final Path snapshotPath;
+    private final Object snapshotLock;
+    /** Index into transactions of the layer that the snapshot was built from, or -1 if there is no usable snapshot */
+    private int snapshotLayerIndex = -1;
+
     public ArbitraryDataBuilder(String name, Service service, String identifier) {
         this.name = name;
         this.service = service;
         this.identifier = identifier;
         this.paths = new ArrayList<>();
+        this.snapshotPath = this.buildSnapshotPath();
+        this.snapshotLock = SNAPSHOT_LOCKS.computeIfAbsent(this.snapshotPath.toAbsolutePath().toString(), k -> new Object());
 
         // By default we can request missing files
         // Callers can use setCanRequestMissingFiles(false) to prevent it
@@ -61,6 +92,7 @@ public class ArbitraryDataBuilder {
     public void process() throws DataException, IOException, MissingDataException {
         this.fetchTransactions();
         this.validateTransactions();
+        this.findSnapshot();
         this.processTransactions();
         this.validatePaths();
         this.findLatestSignature();
@@ -75,8 +107,23 @@ public class ArbitraryDataBuilder {
      */
     public void build() throws DataException, IOException, MissingDataException {
         this.process();
-        this.buildLatestState();
+        try {
+            this.buildLatestState();
+        } catch (InvalidObjectException e) {
+            // Hash validation failed, so don't build on top of this snapshot again
+            this.deleteSnapshot();
+            throw e;
+        }
         this.cacheLatestSignature();
+        this.updateSnapshot();
+    }
+
+    private Path buildSnapshotPath() {
+        // Kept inside the reader's working directory for this resource, so that it is evicted along with the built data
+        String baseDir = Settings.getInstance().getTempDataPath();
+        String identifier = this.identifier != null && !this.identifier.isEmpty() ? this.identifier : "default";
+        return Paths.get(baseDir, "reader", ResourceIdType.NAME.toString(), this.name.toLowerCase(),
+                this.service.toString(), identifier, SNAPSHOT_DIRECTORY);
     }
 
     private void fetchTransactions() throws DataException {
@@ -136,7 +183,9 @@ public class ArbitraryDataBuilder {
     }
 
     private void processTransactions() throws IOException, DataException, MissingDataException {
-        List<ArbitraryTransactionData> transactionDataList = new ArrayList<>(this.transactions);
+        // Layers up to and including the snapshot's layer are already applied, so don't need loading
+        List<ArbitraryTransactionData> transactionDataList = new ArrayList<>(
+                this.transactions.subList(this.snapshotLayerIndex + 1, this.transactions.size()));
 
         int count = 0;
         for (ArbitraryTransactionData transactionData : transactionDataList) {
@@ -197,34 +246,51 @@ public class ArbitraryDataBuilder {
     }
 
     private void validatePaths() throws DataException {
-        if (this.paths.isEmpty()) {
+        if (this.paths.isEmpty() && this.snapshotLayerIndex < 0) {
             throw new DataException("No paths available from which to build latest state");
         }
     }
 
     private void buildLatestState() throws IOException, DataException {
-        if (this.paths.size() == 1) {
+        Path pathBefore;
+        int firstLayerIndex;
+
+        if (this.snapshotLayerIndex >= 0) {
+            // Start from a working copy of the snapshot, so that it stays intact until replaced
+            pathBefore = this.copySnapshot();
+            firstLayerIndex = this.snapshotLayerIndex + 1;
+
+            if (pathBefore == null) {
+                throw new DataException("Unable to copy snapshot from which to build latest state");
+            }
+        }
+        else if (this.paths.size() == 1) {
             // No patching needed
             this.finalPath = this.paths.get(0);
             return;
         }
+        else {
+            pathBefore = this.paths.get(0);
+            firstLayerIndex = 1;
+        }
 
-        Path pathBefore = this.paths.get(0);
+        // Paths only exist for the layers that were loaded, i.e. those after the snapshot
+        int pathsOffset = this.snapshotLayerIndex + 1;
         boolean validateAllLayers = Settings.getInstance().shouldValidateAllDataLayers();
 
-        // Loop from the second path onwards
-        for (int i=1; i<paths.size(); i++) {
+        // Loop from the first layer not yet applied onwards
+        for (int i=firstLayerIndex; i<this.transactions.size(); i++) {
             String identifierPrefix = this.identifier != null ? String.format("[%s]", this.identifier) : "";
             LOGGER.debug(String.format("[%s][%s]%s Applying layer %d...", this.service, this.name, identifierPrefix, i));
 
             // Create an instance of ArbitraryDataCombiner
-            Path pathAfter = this.paths.get(i);
+            Path pathAfter = this.paths.get(i - pathsOffset);
             byte[] signatureBefore = this.transactions.get(i-1).getSignature();
             ArbitraryDataCombiner combiner = new ArbitraryDataCombiner(pathBefore, pathAfter, signatureBefore);
 
             // We only want to validate this layer's hash if it's the final layer, or if the settings
             // indicate that we should validate interim layers too
-            boolean isFinalLayer = (i == paths.size() - 1);
+            boolean isFinalLayer = (i == this.transactions.size() - 1);
             combiner.setShouldValidateHashes(isFinalLayer || validateAllLayers);
 
             // Now combine this layer with the last, and set the output path to the "before" path for the next cycle
@@ -235,6 +301,90 @@ public class ArbitraryDataBuilder {
         this.finalPath = pathBefore;
     }
 
+    /**
+     * Looks for a snapshot built from one of this resource's current layers, so that
+     * only the layers after it need to be loaded and applied.
+     */
+    private void findSnapshot() {
+        this.snapshotLayerIndex = -1;
+
+        synchronized (this.snapshotLock) {
+            if (!Files.exists(this.snapshotPath)) {
+                return;
+            }
+
+            byte[] snapshotSignature;
+            try {
+                ArbitraryDataMetadataCache cache = new ArbitraryDataMetadataCache(this.snapshotPath);
+                cache.read();
+                snapshotSignature = cache.getSignature();
+
+            } catch (IOException | DataException e) {
+                LOGGER.debug("Unable to read snapshot metadata for {}: {}", this.snapshotPath, e.getMessage());
+                return;
+            }
+
+            // The transaction list starts at the latest PUT, so a snapshot from before a more recent PUT won't match
+            for (int i = 0; i < this.transactions.size(); i++) {
+                if (Arrays.equals(this.transactions.get(i).getSignature(), snapshotSignature)) {
+                    this.snapshotLayerIndex = i;
+                    return;
+                }
+            }
+        }
+    }
+
+    private Path copySnapshot() throws IOException {
+        Path workingCopyPath = Paths.get(Settings.getInstance().getTempDataPath(), "merge", UUID.randomUUID().toString());
+
+        synchronized (this.snapshotLock) {
+            if (!Files.exists(this.snapshotPath)) {
+                return null;
+            }
+            FilesystemUtils.linkOrCopyDirectory(this.snapshotPath, workingCopyPath);
+        }
+
+        return workingCopyPath;
+    }
+
+    private void deleteSnapshot() {
+        synchronized (this.snapshotLock) {
+            try {
+                FilesystemUtils.safeDeleteDirectory(this.snapshotPath, false);
+            } catch (IOException e) {
+                LOGGER.debug("Unable to delete snapshot {}: {}", this.snapshotPath, e.getMessage());
+            }
+        }
+    }
+
+    private void updateSnapshot() {
+        if (this.snapshotLayerIndex == this.transactions.size() - 1) {
+            // Snapshot is already up to date
+            return;
+        }
+
+        // Build the new snapshot alongside the existing one, then swap it in
+        Path newSnapshotPath = this.snapshotPath.resolveSibling(SNAPSHOT_DIRECTORY + ".new");
+
+        synchronized (this.snapshotLock) {
+            try {
+                FilesystemUtils.linkOrCopyDirectory(this.finalPath, newSnapshotPath);
+                FilesystemUtils.safeDeleteDirectory(this.snapshotPath, false);
+                Files.move(newSnapshotPath, this.snapshotPath, StandardCopyOption.ATOMIC_MOVE);
+
+            } catch (IOException e) {
+                // Not essential, as the next build will just start from the latest PUT
+                LOGGER.debug("Unable to update snapshot {}: {}", this.snapshotPath, e.getMessage());
+                try {
+                    FilesystemUtils.safeDeleteDirectory(newSnapshotPath, false);
+                    FilesystemUtils.safeDeleteDirectory(this.snapshotPath, false);
+                } catch (IOException e2) {
+                    // This will eventually be cleaned up by a maintenance process
+                }
+            }
+        }
+    }
+
     private void cacheLatestSignature() throws IOException, DataException {
         byte[] latestTransactionSignature = this.transactions.get(this.transactions.size()-1).getSignature();
         if (latestTransactionSignature == null) {
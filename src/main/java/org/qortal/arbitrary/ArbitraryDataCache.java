@@ -3,7 +3,7 @@ package org.qortal.arbitrary;
 import org.qortal.arbitrary.ArbitraryDataFile.*;
 import org.qortal.arbitrary.metadata.ArbitraryDataMetadataCache;
 import org.qortal.arbitrary.misc.Service;
-import org.qortal.controller.arbitrary.ArbitraryDataManager;
+import org.qortal.controller.arbitrary.ArbitraryDataCacheManager;
 import org.qortal.data.transaction.ArbitraryTransactionData;
 import org.qortal.repository.DataException;
 import org.qortal.repository.Repository;
@@ -35,7 +35,17 @@ public class ArbitraryDataCache {
     }
 
     public boolean isCachedDataAvailable() {
-        return !this.shouldInvalidate();
+        boolean isAvailable = !this.shouldInvalidate();
+
+        // Feed access pattern into cache manager, which decides what to evict when over budget
+        ArbitraryDataCacheManager cacheManager = ArbitraryDataCacheManager.getInstance();
+        if (isAvailable) {
+            cacheManager.onCacheHit(this.getWorkingPath());
+        } else if (!this.overwrite) {
+            cacheManager.onCacheMiss(this.getWorkingPath());
+        }
+
+        return isAvailable;
     }
 
     public boolean shouldInvalidate() {
@@ -61,9 +71,7 @@ public class ArbitraryDataCache {
         }
 
         // No need to invalidate the cache
-        // Remember that it's up to date, so that we won't check again for a while
-        ArbitraryDataManager.getInstance().addResourceToCache(this.getArbitraryDataResource());
-
+        // (cache manager remembers that it's up to date, so that we won't check again for a while)
         return false;
     }
 
@@ -95,16 +103,16 @@ public class ArbitraryDataCache {
      *
      * When loading a website, we need to check the cache for every static asset loaded by the page.
      * This would involve asking the database for the latest transaction every time.
-     * To reduce database load and page load times, we maintain an in-memory list to "rate limit" lookups.
-     * Once a resource ID is in this in-memory list, we will avoid cache invalidations until it
-     * has been present in the list for a certain amount of time.
-     * Items are automatically removed from the list when a new arbitrary transaction arrives, so this
+     * To reduce database load and page load times, ArbitraryDataCacheManager "rate limits" lookups.
+     * Once a built resource has been confirmed up to date, we will avoid cache invalidations until
+     * a certain amount of time has passed.
+     * This is reset when a new arbitrary transaction arrives, so this
      * should not prevent updates from taking effect immediately.
      *
      * @return whether to avoid lookups for this resource due to the in-memory cache
      */
     private boolean rateLimitInEffect() {
-        return ArbitraryDataManager.getInstance().isResourceCached(this.getArbitraryDataResource());
+        return ArbitraryDataCacheManager.getInstance().isRecentlyValidated(this.getWorkingPath());
     }
 
     private boolean shouldInvalidateDueToSignatureMismatch() {
@@ -154,9 +162,9 @@ public class ArbitraryDataCache {
         }
     }
 
-    private ArbitraryDataResource getArbitraryDataResource() {
-        // TODO: pass an ArbitraryDataResource into the constructor, rather than individual components
-        return new ArbitraryDataResource(this.resourceId, this.resourceIdType, this.service, this.identifier);
+    private Path getWorkingPath() {
+        // Built data lives in a "data" subdirectory of the reader's working path
+        return this.filePath.getParent();
     }
 
 }
@@ -65,6 +65,8 @@ public class ArbitraryDataDiff {
     private final Path pathBefore;
     private final Path pathAfter;
     private final byte[] previousSignature;
+    private ArbitraryDataDigest previousDigest;
+    private ArbitraryDataDigest currentDigest;
     private byte[] previousHash;
     private byte[] currentHash;
     private Path diffPath;
@@ -94,10 +96,10 @@ public class ArbitraryDataDiff {
         try {
             this.preExecute();
             this.hashPreviousState();
+            this.hashCurrentState();
             this.findAddedOrModifiedFiles();
             this.findRemovedFiles();
             this.validate();
-            this.hashCurrentState();
             this.writeMetadata();
 
         } finally {
@@ -130,8 +132,11 @@ public class ArbitraryDataDiff {
     }
 
     private void hashPreviousState() throws IOException, DataException {
+        // Previous state is one of our built resources, so its digest can be cached
         ArbitraryDataDigest digest = new ArbitraryDataDigest(this.pathBefore);
+        digest.setShouldPersistManifest(true);
         digest.compute();
+        this.previousDigest = digest;
         this.previousHash = digest.getHash();
     }
 
@@ -173,8 +178,9 @@ public class ArbitraryDataDiff {
                         LOGGER.trace("File size was modified: {}", afterPathRelative.toString());
                         wasModified = true;
                     }
-                    else if (!Arrays.equals(ArbitraryDataDiff.digestFromPath(afterPathAbsolute), ArbitraryDataDiff.digestFromPath(beforePathAbsolute))) {
-                        // Check hashes as a last resort
+                    else if (!Arrays.equals(ArbitraryDataDiff.digestFromPath(diff.currentDigest, afterPathRelative, afterPathAbsolute),
+                            ArbitraryDataDiff.digestFromPath(diff.previousDigest, afterPathRelative, beforePathAbsolute))) {
+                        // Check hashes as a last resort, reusing those found when hashing each state
                         LOGGER.trace("File contents were modified: {}", afterPathRelative.toString());
                         wasModified = true;
                     }
@@ -292,6 +298,7 @@ public class ArbitraryDataDiff {
     private void hashCurrentState() throws IOException, DataException {
         ArbitraryDataDigest digest = new ArbitraryDataDigest(this.pathAfter);
         digest.compute();
+        this.currentDigest = digest;
         this.currentHash = digest.getHash();
     }
 
@@ -372,7 +379,12 @@ public class ArbitraryDataDiff {
 
     // Utils
 
-    private static byte[] digestFromPath(Path path) {
+    private static byte[] digestFromPath(ArbitraryDataDigest stateDigest, Path relativePath, Path path) {
+        byte[] digest = stateDigest != null ? stateDigest.getFileHash(relativePath) : null;
+        if (digest != null) {
+            return digest;
+        }
+
         try {
             return Crypto.digest(path.toFile());
         } catch (IOException e) {
@@ -1,37 +1,51 @@
 package org.qortal.arbitrary;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.qortal.arbitrary.metadata.ArbitraryDataMetadataDigest;
+import org.qortal.arbitrary.metadata.ArbitraryDataMetadataDigest.FileInfo;
 import org.qortal.repository.DataException;
 import org.qortal.utils.Base58;
+import org.qortal.utils.FilesystemUtils;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.Arrays;
-import java.util.List;
+import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class ArbitraryDataDigest {
 
+    private static final Logger LOGGER = LogManager.getLogger(ArbitraryDataDigest.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024; // bytes
+
     private final Path path;
     private byte[] hash;
+    private boolean shouldPersistManifest = false;
+
+    /** Digests of individual files, keyed by path relative to base path */
+    private final Map<String, byte[]> fileHashes = new HashMap<>();
 
     public ArbitraryDataDigest(Path path) {
         this.path = path;
     }
 
     public void compute() throws IOException, DataException {
-        List<Path> allPaths = Files.walk(path).filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        List<Path> allPaths;
+        try (Stream<Path> pathStream = Files.walk(path)) {
+            allPaths = pathStream.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
         Path basePathAbsolute = this.path.toAbsolutePath();
 
-        MessageDigest sha256;
-        try {
-            sha256 = MessageDigest.getInstance("SHA-256");
-        } catch (NoSuchAlgorithmException e) {
-            throw new DataException("SHA-256 hashing algorithm unavailable");
-        }
+        List<FileInfo> files = new ArrayList<>();
+        List<Path> filePaths = new ArrayList<>();
 
         for (Path path : allPaths) {
             // We need to work with paths relative to the base path, to ensure the same hash
@@ -44,15 +58,112 @@ public class ArbitraryDataDigest {
                 continue;
             }
 
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            files.add(new FileInfo(relativePath.toString(), attributes.size(), attributes.lastModifiedTime().toMillis(), null));
+            filePaths.add(path);
+        }
+
+        // Reuse previous digest if no files have been added, removed or modified since
+        ArbitraryDataMetadataDigest manifest = this.readManifest();
+        if (manifest != null && manifest.getHash() != null
+                && ArbitraryDataDigest.isSameFiles(files, manifest.getFiles(), manifest.getWrittenTime())) {
+            this.hash = manifest.getHash();
+            for (FileInfo fileInfo : manifest.getFiles()) {
+                this.fileHashes.put(fileInfo.getPath(), fileInfo.getHash());
+            }
+            return;
+        }
+
+        MessageDigest sha256 = ArbitraryDataDigest.newDigest();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        List<FileInfo> hashedFiles = new ArrayList<>(files.size());
+
+        for (int i = 0; i < files.size(); i++) {
+            FileInfo fileInfo = files.get(i);
+
             // Hash path
-            byte[] filePathBytes = relativePath.toString().getBytes(StandardCharsets.UTF_8);
+            byte[] filePathBytes = fileInfo.getPath().getBytes(StandardCharsets.UTF_8);
             sha256.update(filePathBytes);
 
-            // Hash contents
-            byte[] fileContent = Files.readAllBytes(path);
-            sha256.update(fileContent);
+            // Hash contents, streamed so that large files don't need to fit in memory,
+            // and hash each file individually at the same time
+            MessageDigest fileDigest = ArbitraryDataDigest.newDigest();
+            try (InputStream inputStream = Files.newInputStream(filePaths.get(i))) {
+                int bytesRead;
+                while ((bytesRead = inputStream.read(buffer)) != -1) {
+                    sha256.update(buffer, 0, bytesRead);
+                    fileDigest.update(buffer, 0, bytesRead);
+                }
+            }
+
+            byte[] fileHash = fileDigest.digest();
+            this.fileHashes.put(fileInfo.getPath(), fileHash);
+            hashedFiles.add(new FileInfo(fileInfo.getPath(), fileInfo.getSize(), fileInfo.getModified(), fileHash));
         }
         this.hash = sha256.digest();
+
+        this.writeManifest(hashedFiles);
+    }
+
+    private ArbitraryDataMetadataDigest readManifest() {
+        if (!this.shouldPersistManifest) {
+            return null;
+        }
+
+        ArbitraryDataMetadataDigest manifest = new ArbitraryDataMetadataDigest(this.path);
+        try {
+            manifest.read();
+            return manifest;
+        } catch (IOException | DataException | RuntimeException e) {
+            // Missing or unreadable, so recompute from scratch
+            return null;
+        }
+    }
+
+    private void writeManifest(List<FileInfo> files) {
+        // Only write to our own directories, as anything in a user's directory could end up being published
+        if (!this.shouldPersistManifest || !FilesystemUtils.pathInsideDataOrTempPath(this.path)) {
+            return;
+        }
+
+        ArbitraryDataMetadataDigest manifest = new ArbitraryDataMetadataDigest(this.path);
+        manifest.setHash(this.hash);
+        manifest.setFiles(files);
+        try {
+            manifest.write();
+        } catch (IOException | DataException e) {
+            // Not essential, as digest will just be recomputed next time
+            LOGGER.debug("Unable to write digest manifest for {}: {}", this.path, e.getMessage());
+        }
+    }
+
+    private static boolean isSameFiles(List<FileInfo> files, List<FileInfo> manifestFiles, Long manifestWrittenTime) {
+        if (manifestWrittenTime == null || files.size() != manifestFiles.size()) {
+            return false;
+        }
+
+        for (int i = 0; i < files.size(); i++) {
+            FileInfo file = files.get(i);
+            FileInfo manifestFile = manifestFiles.get(i);
+            if (manifestFile.getHash() == null || !file.isSameFile(manifestFile)) {
+                return false;
+            }
+
+            // File could have been modified again, within the same timestamp tick, after it was hashed
+            if (file.getModified() >= manifestWrittenTime) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static MessageDigest newDigest() throws DataException {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new DataException("SHA-256 hashing algorithm unavailable");
+        }
     }
 
     public boolean isHashValid(byte[] hash) {
@@ -70,4 +181,21 @@ public class ArbitraryDataDigest {
         return Base58.encode(this.hash);
     }
 
+    /**
+     * Returns digest of individual file, as found during the last call to compute(),
+     * or null if the file wasn't included.
+     */
+    public byte[] getFileHash(Path relativePath) {
+        return this.fileHashes.get(relativePath.toString());
+    }
+
+    /**
+     * Whether to keep a manifest of file sizes, modification times and hashes in the .qortal folder,
+     * so that later digests of the same directory can skip re-reading unchanged files.
+     * Only has an effect for directories inside the data or temp paths.
+     */
+    public void setShouldPersistManifest(boolean shouldPersistManifest) {
+        this.shouldPersistManifest = shouldPersistManifest;
+    }
+
 }
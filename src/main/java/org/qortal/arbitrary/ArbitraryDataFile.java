@@ -3,6 +3,7 @@ package org.qortal.arbitrary;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.qortal.arbitrary.metadata.ArbitraryDataTransactionMetadata;
+import org.qortal.controller.arbitrary.ArbitraryDataHostedCatalog;
 import org.qortal.crypto.Crypto;
 import org.qortal.repository.DataException;
 import org.qortal.settings.Settings;
@@ -10,11 +11,18 @@ import org.qortal.utils.Base58;
 import org.qortal.utils.FilesystemUtils;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Stream;
 
 import static java.util.Arrays.stream;
@@ -55,6 +63,8 @@ public class ArbitraryDataFile {
     public static final long MAX_FILE_SIZE = 500 * 1024 * 1024; // 500MiB
     protected static final int MAX_CHUNK_SIZE = 1 * 1024 * 1024; // 1MiB
     public static final int CHUNK_SIZE = 512 * 1024; // 0.5MiB
+    /** Maximum number of chunks being hashed and written at once, which also bounds memory used when splitting */
+    private static final int SPLIT_THREAD_COUNT = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
     public static int SHORT_DIGEST_LENGTH = 8;
 
     protected Path filePath;
@@ -91,6 +101,7 @@ public class ArbitraryDataFile {
 
         Path outputFilePath = getOutputFilePath(this.hash58, signature, true);
         File outputFile = outputFilePath.toFile();
+        long previousSize = ArbitraryDataHostedCatalog.getFileSize(outputFilePath);
         try (FileOutputStream outputStream = new FileOutputStream(outputFile)) {
             outputStream.write(fileContent);
             this.filePath = outputFilePath;
@@ -98,6 +109,7 @@ public class ArbitraryDataFile {
             this.delete();
             throw new DataException(String.format("Unable to write data with hash %s: %s", this.hash58, e.getMessage()));
         }
+        ArbitraryDataHostedCatalog.getInstance().onFileWritten(outputFilePath, previousSize);
     }
 
     public static ArbitraryDataFile fromHash58(String hash58, byte[] signature) throws DataException {
@@ -129,7 +141,14 @@ public class ArbitraryDataFile {
                 else if (!path.equals(arbitraryDataFile.getFilePath())) {
                     // Wrong path, so relocate (but don't cleanup, as the source folder may still be needed by the caller)
                     Path dest = arbitraryDataFile.getFilePath();
+                    long size = ArbitraryDataHostedCatalog.getFileSize(path);
+                    long previousSize = ArbitraryDataHostedCatalog.getFileSize(dest);
                     FilesystemUtils.moveFile(path, dest, false);
+
+                    ArbitraryDataHostedCatalog hostedCatalog = ArbitraryDataHostedCatalog.getInstance();
+                    if (!Files.exists(path))
+                        hostedCatalog.onFileDeleted(path, size);
+                    hostedCatalog.onFileWritten(dest, previousSize);
                 }
                 return arbitraryDataFile;
 
@@ -152,7 +171,10 @@ public class ArbitraryDataFile {
         sourcePath = sourcePath.toAbsolutePath();
         Path destPath = outputFilePath.toAbsolutePath();
         try {
-            return Files.copy(sourcePath, destPath, StandardCopyOption.REPLACE_EXISTING);
+            long previousSize = ArbitraryDataHostedCatalog.getFileSize(destPath);
+            Path path = Files.copy(sourcePath, destPath, StandardCopyOption.REPLACE_EXISTING);
+            ArbitraryDataHostedCatalog.getInstance().onFileWritten(destPath, previousSize);
+            return path;
         } catch (IOException e) {
             throw new DataException(String.format("Unable to copy file %s to data directory %s", sourcePath, destPath));
         }
@@ -225,7 +247,7 @@ public class ArbitraryDataFile {
         }
     }
 
-    private void addChunk(ArbitraryDataFileChunk chunk) {
+    void addChunk(ArbitraryDataFileChunk chunk) {
         this.chunks.add(chunk);
     }
 
@@ -253,84 +275,133 @@ public class ArbitraryDataFile {
     }
 
     public int split(int chunkSize) throws DataException {
-        try {
+        this.chunks = new ArrayList<>();
 
-            File file = this.getFile();
-            byte[] buffer = new byte[chunkSize];
-            this.chunks = new ArrayList<>();
-
-            if (file != null) {
-                try (FileInputStream fileInputStream = new FileInputStream(file);
-                     BufferedInputStream bis = new BufferedInputStream(fileInputStream)) {
-
-                    int numberOfBytes;
-                    while ((numberOfBytes = bis.read(buffer)) > 0) {
-                        try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
-                            out.write(buffer, 0, numberOfBytes);
-                            out.flush();
-
-                            ArbitraryDataFileChunk chunk = new ArbitraryDataFileChunk(out.toByteArray(), this.signature);
-                            ValidationResult validationResult = chunk.isValid();
-                            if (validationResult == ValidationResult.OK) {
-                                this.chunks.add(chunk);
-                            } else {
-                                throw new DataException(String.format("Chunk %s is invalid", chunk));
-                            }
-                        }
-                    }
-                }
+        if (this.getFile() == null) {
+            return 0;
+        }
+
+        // Chunks are read, hashed and written in parallel, but each worker only holds one chunk in memory at a time
+        ExecutorService executor = Executors.newFixedThreadPool(SPLIT_THREAD_COUNT);
+
+        // Chunks with identical content share the same path, so each distinct chunk is only written once
+        Map<String, Object> chunkLocks = new ConcurrentHashMap<>();
+        Set<String> writtenChunkHashes = ConcurrentHashMap.newKeySet();
+
+        try (FileChannel fileChannel = FileChannel.open(this.filePath, StandardOpenOption.READ)) {
+            long fileSize = fileChannel.size();
+
+            List<Future<ArbitraryDataFileChunk>> futures = new ArrayList<>();
+            for (long offset = 0; offset < fileSize; offset += chunkSize) {
+                final long chunkOffset = offset;
+                final int chunkLength = (int) Math.min(chunkSize, fileSize - offset);
+
+                futures.add(executor.submit(() -> this.createChunk(fileChannel, chunkOffset, chunkLength, chunkLocks, writtenChunkHashes)));
+            }
+
+            // Collect in file order
+            for (Future<ArbitraryDataFileChunk> future : futures) {
+                this.chunks.add(future.get());
             }
         } catch (Exception e) {
-            throw new DataException("Unable to split file into chunks");
+            throw new DataException("Unable to split file into chunks", e);
+        } finally {
+            executor.shutdownNow();
         }
 
         return this.chunks.size();
     }
 
+    private ArbitraryDataFileChunk createChunk(FileChannel fileChannel, long offset, int length,
+            Map<String, Object> chunkLocks, Set<String> writtenChunkHashes) throws IOException, DataException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            // Positional reads don't affect other workers sharing the same channel
+            if (fileChannel.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException("File truncated while splitting");
+            }
+        }
+
+        byte[] chunkContent = buffer.array();
+        String chunkHash58 = Base58.encode(Crypto.digest(chunkContent));
+
+        synchronized (chunkLocks.computeIfAbsent(chunkHash58, key -> new Object())) {
+            if (writtenChunkHashes.contains(chunkHash58)) {
+                // Another worker has already written (and validated) an identical chunk
+                return ArbitraryDataFileChunk.fromHash58(chunkHash58, this.signature);
+            }
+
+            ArbitraryDataFileChunk chunk = new ArbitraryDataFileChunk(chunkContent, this.signature);
+            ValidationResult validationResult = chunk.isValid();
+            if (validationResult != ValidationResult.OK) {
+                throw new DataException(String.format("Chunk %s is invalid", chunk));
+            }
+
+            writtenChunkHashes.add(chunkHash58);
+            return chunk;
+        }
+    }
+
     public boolean join() {
         // Ensure we have chunks
-        if (this.chunks != null && this.chunks.size() > 0) {
+        if (this.chunks == null || this.chunks.isEmpty()) {
+            return false;
+        }
 
-            // Create temporary path for joined file
-            // Use the user-specified temp dir, as it is deterministic, and is more likely to be located on reusable storage hardware
-            String baseDir = Settings.getInstance().getTempDataPath();
-            Path tempDir = Paths.get(baseDir, "join");
-            try {
-                Files.createDirectories(tempDir);
-            } catch (IOException e) {
-                return false;
-            }
+        Path outputPath;
+        try {
+            outputPath = getOutputFilePath(this.hash58, this.signature, true);
+        } catch (DataException e) {
+            return false;
+        }
+        if (outputPath == null) {
+            return false;
+        }
+
+        // Join into a uniquely named temporary file alongside the final one, so that a partially joined file
+        // is never visible at the final path, concurrent joins of the same file don't interfere,
+        // and moving it into place is a rename rather than another copy
+        Path tempPath = null;
+        try {
+            tempPath = Files.createTempFile(outputPath.getParent(), outputPath.getFileName() + ".", ".tmp");
+
+            try (FileChannel outputChannel = FileChannel.open(tempPath, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
 
-            // Join the chunks
-            Path outputPath = Paths.get(tempDir.toString(), this.chunks.get(0).digest58());
-            File outputFile = new File(outputPath.toString());
-            try (BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(outputFile))) {
                 for (ArbitraryDataFileChunk chunk : this.chunks) {
-                    File sourceFile = chunk.filePath.toFile();
-                    BufferedInputStream in = new BufferedInputStream(new FileInputStream(sourceFile));
-                    byte[] buffer = new byte[2048];
-                    int inSize;
-                    while ((inSize = in.read(buffer)) != -1) {
-                        out.write(buffer, 0, inSize);
+                    try (FileChannel inputChannel = FileChannel.open(chunk.filePath, StandardOpenOption.READ)) {
+                        long chunkSize = inputChannel.size();
+                        long position = 0;
+
+                        while (position < chunkSize) {
+                            long bytesTransferred = inputChannel.transferTo(position, chunkSize - position, outputChannel);
+                            if (bytesTransferred <= 0) {
+                                throw new IOException(String.format("Unable to read chunk %s", chunk));
+                            }
+                            position += bytesTransferred;
+                        }
                     }
-                    in.close();
                 }
-                out.close();
+            }
 
-                // Copy temporary file to data directory
-                this.filePath = this.copyToDataDirectory(outputPath, this.signature);
-                if (FilesystemUtils.pathInsideDataOrTempPath(outputPath)) {
-                    Files.delete(outputPath);
-                }
+            long previousSize = ArbitraryDataHostedCatalog.getFileSize(outputPath);
+            Files.move(tempPath, outputPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            this.filePath = outputPath;
+            ArbitraryDataHostedCatalog.getInstance().onFileWritten(outputPath, previousSize);
 
-                return true;
-            } catch (FileNotFoundException e) {
-                return false;
-            } catch (IOException | DataException e) {
-                return false;
+            return true;
+        } catch (IOException e) {
+            LOGGER.warn(String.format("Unable to join chunks into file %s", this.hash58), e);
+            return false;
+        } finally {
+            if (tempPath != null) {
+                try {
+                    // Only still exists if joining failed
+                    Files.deleteIfExists(tempPath);
+                } catch (IOException e) {
+                    LOGGER.warn(String.format("Unable to delete temporary file %s", tempPath), e);
+                }
             }
         }
-        return false;
     }
 
     public boolean delete() {
@@ -339,7 +410,9 @@ public class ArbitraryDataFile {
         if (FilesystemUtils.pathInsideDataOrTempPath(this.filePath)) {
             if (Files.exists(this.filePath)) {
                 try {
+                    long size = ArbitraryDataHostedCatalog.getFileSize(this.filePath);
                     Files.delete(this.filePath);
+                    ArbitraryDataHostedCatalog.getInstance().onFileDeleted(this.filePath, size);
                     this.cleanupFilesystem();
                     LOGGER.debug("Deleted file {}", this.filePath);
                     return true;
@@ -703,8 +776,9 @@ public class ArbitraryDataFile {
     }
 
     public String digest58() {
-        if (this.digest() != null) {
-            return Base58.encode(this.digest());
+        byte[] digest = this.digest();
+        if (digest != null) {
+            return Base58.encode(digest);
         }
         return null;
     }
@@ -0,0 +1,175 @@
+package org.qortal.arbitrary;
+
+import org.qortal.controller.arbitrary.ArbitraryDataHostedCatalog;
+import org.qortal.repository.DataException;
+import org.qortal.utils.Base58;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes a complete data file and its chunks in a single pass.
+ * <p>
+ * Data is written to a temporary file while being hashed, and each time a full chunk
+ * has been buffered it is written out as an ArbitraryDataFileChunk. Once closed, the
+ * complete file is moved into the data directory under its hash, and is available,
+ * along with its chunks, via getArbitraryDataFile().
+ * <p>
+ * This produces the same files as writing the complete file, then calling
+ * ArbitraryDataFile.fromPath() and split(), without reading the file back in.
+ */
+public class ArbitraryDataFileOutputStream extends OutputStream {
+
+    private final Path tempPath;
+    private final byte[] signature;
+    private final OutputStream fileOutputStream;
+    private final MessageDigest digest;
+
+    /** Holds at most one chunk */
+    private final byte[] chunkBuffer;
+    private int chunkBufferLength = 0;
+
+    private final List<ArbitraryDataFileChunk> chunks = new ArrayList<>();
+    private ArbitraryDataFile completeFile;
+    private boolean isClosed = false;
+
+    public ArbitraryDataFileOutputStream(Path tempPath, byte[] signature, int chunkSize) throws IOException {
+        this.tempPath = tempPath;
+        this.signature = signature;
+        this.chunkBuffer = new byte[chunkSize];
+
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 message digest not available");
+        }
+
+        Files.createDirectories(tempPath.getParent());
+        this.fileOutputStream = new BufferedOutputStream(Files.newOutputStream(tempPath));
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        this.write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (this.isClosed) {
+            throw new IOException("Stream is closed");
+        }
+
+        this.fileOutputStream.write(b, off, len);
+        this.digest.update(b, off, len);
+
+        while (len > 0) {
+            int length = Math.min(len, this.chunkBuffer.length - this.chunkBufferLength);
+            System.arraycopy(b, off, this.chunkBuffer, this.chunkBufferLength, length);
+            this.chunkBufferLength += length;
+            off += length;
+            len -= length;
+
+            if (this.chunkBufferLength == this.chunkBuffer.length) {
+                this.writeChunk();
+            }
+        }
+    }
+
+    private void writeChunk() throws IOException {
+        if (this.chunkBufferLength == 0) {
+            return;
+        }
+
+        try {
+            byte[] chunkData = Arrays.copyOf(this.chunkBuffer, this.chunkBufferLength);
+            ArbitraryDataFileChunk chunk = new ArbitraryDataFileChunk(chunkData, this.signature);
+            if (chunk.isValid() != ArbitraryDataFile.ValidationResult.OK) {
+                throw new IOException(String.format("Chunk %s is invalid", chunk));
+            }
+            this.chunks.add(chunk);
+
+        } catch (DataException e) {
+            throw new IOException(String.format("Unable to write chunk: %s", e.getMessage()));
+        }
+
+        this.chunkBufferLength = 0;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        this.fileOutputStream.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.isClosed) {
+            return;
+        }
+        this.isClosed = true;
+
+        try {
+            this.fileOutputStream.close();
+            this.writeChunk();
+
+            String hash58 = Base58.encode(this.digest.digest());
+            Path destPath = ArbitraryDataFile.getOutputFilePath(hash58, this.signature, true);
+
+            long previousSize = ArbitraryDataHostedCatalog.getFileSize(destPath);
+            Files.move(this.tempPath, destPath, StandardCopyOption.REPLACE_EXISTING);
+            ArbitraryDataHostedCatalog.getInstance().onFileWritten(destPath, previousSize);
+
+            this.completeFile = ArbitraryDataFile.fromHash58(hash58, this.signature);
+            for (ArbitraryDataFileChunk chunk : this.chunks) {
+                this.completeFile.addChunk(chunk);
+            }
+
+        } catch (DataException e) {
+            throw new IOException(String.format("Unable to store file: %s", e.getMessage()));
+
+        } finally {
+            Files.deleteIfExists(this.tempPath);
+        }
+    }
+
+    /**
+     * Abandons the stream after a failure, removing the temporary file. As with a failed split(),
+     * chunks already written are left in place, as identical chunks may belong to other data.
+     * Callers must use this, rather than close(), if anything went wrong while writing,
+     * as closing would store the incomplete data.
+     */
+    public void discard() {
+        if (this.isClosed) {
+            return;
+        }
+        this.isClosed = true;
+
+        try {
+            this.fileOutputStream.close();
+        } catch (IOException e) {
+            // Deleting it anyway
+        }
+
+        try {
+            Files.deleteIfExists(this.tempPath);
+        } catch (IOException e) {
+            // Will be removed along with the rest of the caller's working directory
+        }
+    }
+
+    /**
+     * Returns the complete file, with its chunks, or null if the stream hasn't been closed successfully.
+     */
+    public ArbitraryDataFile getArbitraryDataFile() {
+        return this.completeFile;
+    }
+
+}
@@ -70,7 +70,12 @@ public class ArbitraryDataMerge {
     }
 
     private void copyPreviousStateToMergePath() throws IOException {
-        ArbitraryDataMerge.copyDirPathToBaseDir(this.pathBefore, this.mergePath, Paths.get(""));
+        // Hard link the previous state where possible, so that only files touched by this layer are written.
+        // This is safe because applyDifferences() only ever replaces or deletes files in the merge path.
+        if (!Files.exists(this.pathBefore)) {
+            throw new IOException(String.format("File not found: %s", this.pathBefore.toString()));
+        }
+        FilesystemUtils.linkOrCopyDirectory(this.pathBefore, this.mergePath);
     }
 
     private void loadMetadata() throws IOException, DataException {
@@ -142,16 +147,6 @@ public class ArbitraryDataMerge {
         }
     }
 
-    private static void copyDirPathToBaseDir(Path source, Path base, Path relativePath) throws IOException {
-        if (!Files.exists(source)) {
-            throw new IOException(String.format("File not found: %s", source.toString()));
-        }
-
-        Path dest = Paths.get(base.toString(), relativePath.toString());
-        LOGGER.trace("Copying {} to {}", source, dest);
-        FilesystemUtils.copyAndReplaceDirectory(source.toString(), dest.toString());
-    }
-
     private static void deletePathInBaseDir(Path base, Path relativePath) throws IOException {
         Path dest = Paths.get(base.toString(), relativePath.toString());
         File file = new File(dest.toString());
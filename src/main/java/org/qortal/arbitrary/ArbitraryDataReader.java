@@ -7,6 +7,7 @@ import org.apache.logging.log4j.Logger;
 import org.qortal.arbitrary.exception.MissingDataException;
 import org.qortal.arbitrary.misc.Service;
 import org.qortal.controller.arbitrary.ArbitraryDataBuildManager;
+import org.qortal.controller.arbitrary.ArbitraryDataCacheManager;
 import org.qortal.controller.arbitrary.ArbitraryDataManager;
 import org.qortal.controller.arbitrary.ArbitraryDataStorageManager;
 import org.qortal.crypto.AES;
@@ -23,13 +24,13 @@ import org.qortal.utils.Base58;
 import org.qortal.utils.FilesystemUtils;
 import org.qortal.utils.ZipUtils;
 
-import javax.crypto.BadPaddingException;
-import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InvalidObjectException;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
@@ -42,6 +43,8 @@ public class ArbitraryDataReader {
 
     private static final Logger LOGGER = LogManager.getLogger(ArbitraryDataReader.class);
 
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024; // bytes
+
     private final String resourceId;
     private final ResourceIdType resourceIdType;
     private final Service service;
@@ -153,6 +156,8 @@ public class ArbitraryDataReader {
      * @throws MissingDataException
      */
     public void loadSynchronously(boolean overwrite) throws DataException, IOException, MissingDataException {
+        ArbitraryDataCacheManager cacheManager = ArbitraryDataCacheManager.getInstance();
+        boolean isBuilding = false;
         try {
             ArbitraryDataCache cache = new ArbitraryDataCache(this.uncompressedPath, overwrite,
                     this.resourceId, this.resourceIdType, this.service, this.identifier);
@@ -162,18 +167,27 @@ public class ArbitraryDataReader {
                 return;
             }
 
+            // Don't let the built data be evicted while we're building it
+            cacheManager.onBuildStarted(this.workingPath);
+            isBuilding = true;
+
             this.preExecute();
             this.deleteExistingFiles();
             this.fetch();
-            this.decrypt();
-            this.uncompress();
+            this.decryptAndUncompress();
             this.validate();
 
+            // Track built data so it can be evicted when over budget
+            cacheManager.onResourceBuilt(this.workingPath);
+
         } catch (DataException e) {
             this.deleteWorkingDirectory();
             throw new DataException(e.getMessage());
 
         } finally {
+            if (isBuilding) {
+                cacheManager.onBuildFinished(this.workingPath);
+            }
             this.postExecute();
         }
     }
@@ -402,40 +416,67 @@ public class ArbitraryDataReader {
         this.filePath = arbitraryDataFile.getFilePath();
     }
 
-    private void decrypt() throws DataException {
+    private void decryptAndUncompress() throws DataException, IOException {
+        // Decrypt if we have the secret key.
+        byte[] secret = this.secret58 != null ? Base58.decode(this.secret58) : null;
+        if (secret == null || secret.length != Transformer.AES256_LENGTH || !Files.isRegularFile(this.filePath)) {
+            // Assume it is unencrypted. This will be the case when we have built a custom path by combining
+            // multiple decrypted archives into a single state.
+            this.uncompress();
+            return;
+        }
+
         try {
             // First try with explicit parameters (CBC mode with PKCS5 padding)
-            this.decryptUsingAlgo("AES/CBC/PKCS5Padding");
+            this.decryptAndUncompressUsingAlgo("AES/CBC/PKCS5Padding", secret);
 
         } catch (DataException e) {
             // Something went wrong, so fall back to default AES params (necessary for legacy resource support)
-            this.decryptUsingAlgo("AES");
+            this.decryptAndUncompressUsingAlgo("AES", secret);
 
             // TODO: delete files and block this resource if privateDataEnabled is false and the second attempt fails too
         }
     }
 
-    private void decryptUsingAlgo(String algorithm) throws DataException {
-        // Decrypt if we have the secret key.
-        byte[] secret = this.secret58 != null ? Base58.decode(this.secret58) : null;
-        if (secret != null && secret.length == Transformer.AES256_LENGTH) {
-            try {
-                Path unencryptedPath = Paths.get(this.workingPath.toString(), "zipped.zip");
-                SecretKey aesKey = new SecretKeySpec(secret, 0, secret.length, algorithm);
-                AES.decryptFile(algorithm, aesKey, this.filePath.toString(), unencryptedPath.toString());
+    /**
+     * Decrypts and uncompresses in a single streaming pass, straight into uncompressedPath,
+     * without writing the decrypted archive to disk first.
+     * Don't delete the original ArbitraryDataFile, as this is handled in the cleanup phase.
+     */
+    private void decryptAndUncompressUsingAlgo(String algorithm, byte[] secret) throws DataException {
+        // Default to ZIP compression - this is needed for previews
+        Compression compression = transactionData != null ? transactionData.getCompression() : Compression.ZIP;
+        if (compression != Compression.ZIP && compression != Compression.NONE) {
+            throw new DataException(String.format("Unrecognized compression type: %s", transactionData.getCompression()));
+        }
 
-                // Replace filePath pointer with the encrypted file path
-                // Don't delete the original ArbitraryDataFile, as this is handled in the cleanup phase
-                this.filePath = unencryptedPath;
+        SecretKey aesKey = new SecretKeySpec(secret, 0, secret.length, algorithm);
+        try (InputStream inputStream = AES.decryptingInputStream(algorithm, aesKey,
+                new BufferedInputStream(Files.newInputStream(this.filePath), STREAM_BUFFER_SIZE))) {
 
-            } catch (NoSuchAlgorithmException | InvalidAlgorithmParameterException | NoSuchPaddingException
-                    | BadPaddingException | IllegalBlockSizeException | IOException | InvalidKeyException e) {
-                throw new DataException(String.format("Unable to decrypt file at path %s: %s", this.filePath, e.getMessage()));
+            // Handle each type of compression
+            if (compression == Compression.ZIP) {
+                ZipUtils.unzip(inputStream, this.uncompressedPath.getParent().toString());
             }
-        } else {
-            // Assume it is unencrypted. This will be the case when we have built a custom path by combining
-            // multiple decrypted archives into a single state.
+            else {
+                Files.createDirectories(this.uncompressedPath);
+                Path finalPath = Paths.get(this.uncompressedPath.toString(), "data");
+                Files.copy(inputStream, finalPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+        } catch (NoSuchAlgorithmException | InvalidAlgorithmParameterException | NoSuchPaddingException
+                | IOException | InvalidKeyException e) {
+            // Remove any partial output, so that it can't be mixed with a retry
+            this.deleteExistingFiles();
+            throw new DataException(String.format("Unable to decrypt file at path %s: %s", this.filePath, e.getMessage()));
         }
+
+        if (!this.uncompressedPath.toFile().exists()) {
+            throw new DataException(String.format("Unable to unzip file: %s", this.filePath));
+        }
+
+        // Replace filePath pointer with the uncompressed file path
+        this.filePath = this.uncompressedPath;
     }
 
     private void uncompress() throws IOException, DataException {
@@ -504,8 +545,8 @@ public class ArbitraryDataReader {
             }
             // Ensure destination directory doesn't exist
             FileUtils.deleteDirectory(dest);
-            // Move files to destination
-            FilesystemUtils.copyAndReplaceDirectory(source.toString(), dest.toString());
+            // Move files to destination, sharing them with any built snapshot rather than copying
+            FilesystemUtils.linkOrCopyDirectory(source.toPath(), dest.toPath());
 
             try {
                 // Delete existing
@@ -0,0 +1,79 @@
+package org.qortal.arbitrary;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * In-memory cache of rendered QDN file contents, such as HTML with injected header tags,
+ * and gzip-compressed variants of text files.
+ * <p>
+ * Entries are keyed by the ETag that the content is served with. ETags are derived from the
+ * signature of the build that produced the file, so entries never go stale; superseded
+ * entries simply stop being requested and fall out of the cache as it fills.
+ */
+public class ArbitraryDataRenderCache {
+
+    /** Maximum total size of cached contents */
+    private static final long MAX_CACHE_SIZE = 64 * 1024 * 1024L; // bytes
+    /** Files larger than this are never cached, so that a few large files can't evict everything else */
+    public static final int MAX_ENTRY_SIZE = 2 * 1024 * 1024; // bytes
+
+    private static ArbitraryDataRenderCache instance;
+
+    /** Contents keyed by ETag, in access order */
+    private final Map<String, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalSize = 0;
+
+    private ArbitraryDataRenderCache() {
+    }
+
+    public static synchronized ArbitraryDataRenderCache getInstance() {
+        if (instance == null)
+            instance = new ArbitraryDataRenderCache();
+
+        return instance;
+    }
+
+    public synchronized byte[] get(String etag) {
+        return this.entries.get(etag);
+    }
+
+    public synchronized void put(String etag, byte[] data) {
+        if (data == null || data.length > MAX_ENTRY_SIZE)
+            return;
+
+        byte[] previousData = this.entries.put(etag, data);
+        if (previousData != null)
+            this.totalSize -= previousData.length;
+
+        this.totalSize += data.length;
+
+        // Evict least recently used entries until we're back within budget
+        Iterator<byte[]> iterator = this.entries.values().iterator();
+        while (this.totalSize > MAX_CACHE_SIZE && iterator.hasNext()) {
+            this.totalSize -= iterator.next().length;
+            iterator.remove();
+        }
+    }
+
+    public synchronized long getTotalSize() {
+        return this.totalSize;
+    }
+
+    public synchronized int getEntryCount() {
+        return this.entries.size();
+    }
+
+    public static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(data.length / 2);
+        try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream)) {
+            gzipOutputStream.write(data);
+        }
+        return outputStream.toByteArray();
+    }
+
+}
@@ -7,30 +7,44 @@ import org.apache.logging.log4j.Logger;
 import org.qortal.api.HTMLParser;
 import org.qortal.arbitrary.ArbitraryDataFile.*;
 import org.qortal.arbitrary.exception.MissingDataException;
+import org.qortal.arbitrary.metadata.ArbitraryDataMetadataCache;
 import org.qortal.arbitrary.misc.Service;
 import org.qortal.controller.Controller;
+import org.qortal.crypto.Crypto;
+import org.qortal.repository.DataException;
 import org.qortal.settings.Settings;
+import org.qortal.utils.Base58;
 
 import javax.servlet.ServletContext;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class ArbitraryDataRenderer {
 
     private static final Logger LOGGER = LogManager.getLogger(ArbitraryDataRenderer.class);
 
+    private static final int BUFFER_SIZE = 64 * 1024; // bytes
+
+    /** Non-text types that are worth compressing */
+    private static final List<String> COMPRESSIBLE_MIME_TYPES = Arrays.asList(
+            "application/javascript", "application/json", "application/xml", "image/svg+xml");
+
     private final String resourceId;
     private final ResourceIdType resourceIdType;
     private final Service service;
@@ -113,32 +127,61 @@ public class ArbitraryDataRenderer {
 
         try {
             String filename = this.getFilename(unzippedPath, inPath);
-            String filePath = Paths.get(unzippedPath, filename).toString();
+            Path filePath = Paths.get(unzippedPath, filename);
+            String mimeType = context.getMimeType(filename);
+
+            // Validators are derived from the build, so only exist when we know which build this is
+            String buildSignature58 = this.getBuildSignature58(path);
+            boolean acceptsGzip = ArbitraryDataRenderer.acceptsGzip(request.getHeader("Accept-Encoding"));
 
             if (HTMLParser.isHtmlFile(filename)) {
                 // HTML file - needs to be parsed
-                byte[] data = Files.readAllBytes(Paths.get(filePath)); // TODO: limit file size that can be read into memory
-                HTMLParser htmlParser = new HTMLParser(resourceId, inPath, prefix, usePrefix, data);
-                htmlParser.addAdditionalHeaderTags();
                 response.addHeader("Content-Security-Policy", "default-src 'self' 'unsafe-inline' 'unsafe-eval'; media-src 'self' blob:; img-src 'self' data: blob:;");
-                response.setContentType(context.getMimeType(filename));
-                response.setContentLength(htmlParser.getData().length);
-                response.getOutputStream().write(htmlParser.getData());
+                response.setContentType(mimeType);
+
+                // Parsed output also depends on the prefix used for links
+                String etag = ArbitraryDataRenderer.buildEtag(buildSignature58, filename, prefix, String.valueOf(usePrefix), inPath);
+                if (this.isNotModified(etag, acceptsGzip))
+                    return response;
+
+                byte[] data = etag != null ? ArbitraryDataRenderCache.getInstance().get(etag) : null;
+                if (data == null) {
+                    data = Files.readAllBytes(filePath); // TODO: limit file size that can be read into memory
+                    HTMLParser htmlParser = new HTMLParser(resourceId, inPath, prefix, usePrefix, data);
+                    htmlParser.addAdditionalHeaderTags();
+                    data = htmlParser.getData();
+
+                    if (etag != null)
+                        ArbitraryDataRenderCache.getInstance().put(etag, data);
+                }
+
+                this.writeData(data, etag, acceptsGzip);
             }
             else {
                 // Regular file - can be streamed directly
-                File file = new File(filePath);
-                FileInputStream inputStream = new FileInputStream(file);
                 response.addHeader("Content-Security-Policy", "default-src 'self'");
-                response.setContentType(context.getMimeType(filename));
-                int bytesRead, length = 0;
-                byte[] buffer = new byte[10240];
-                while ((bytesRead = inputStream.read(buffer)) != -1) {
-                    response.getOutputStream().write(buffer, 0, bytesRead);
-                    length += bytesRead;
+                response.setContentType(mimeType);
+
+                String etag = ArbitraryDataRenderer.buildEtag(buildSignature58, filename);
+                long fileSize = Files.size(filePath);
+
+                // Ranges are only supported for the unencoded file, which is also what large media files are served as
+                boolean useGzip = acceptsGzip && etag != null && request.getHeader("Range") == null
+                        && fileSize <= ArbitraryDataRenderCache.MAX_ENTRY_SIZE && ArbitraryDataRenderer.isCompressible(mimeType);
+
+                if (this.isNotModified(etag, useGzip))
+                    return response;
+
+                if (useGzip) {
+                    // Avoid reading the file if we already have its compressed variant
+                    byte[] gzipData = ArbitraryDataRenderCache.getInstance().get(ArbitraryDataRenderer.gzipEtag(etag));
+                    if (gzipData != null && gzipData.length < fileSize)
+                        this.writeGzipData(gzipData);
+                    else
+                        this.writeData(Files.readAllBytes(filePath), etag, true);
                 }
-                response.setContentLength(length);
-                inputStream.close();
+                else
+                    this.writeFile(filePath, fileSize, etag);
             }
             return response;
         } catch (FileNotFoundException | NoSuchFileException e) {
@@ -158,6 +201,266 @@ public class ArbitraryDataRenderer {
         return ArbitraryDataRenderer.getResponse(response, 404, "Error 404: File Not Found");
     }
 
+    /**
+     * Returns signature of the build being served, or null if unknown.
+     * Content served for the same signature never changes, so it can be used to build validators.
+     */
+    private String getBuildSignature58(Path path) {
+        switch (this.resourceIdType) {
+            case SIGNATURE:
+            case FILE_HASH:
+                // Immutable, but an optional secret affects how a file hash is decrypted
+                return this.secret58 != null ? this.resourceId + this.secret58 : this.resourceId;
+
+            default:
+                // Built from the latest layer, as recorded when the build completed
+                try {
+                    ArbitraryDataMetadataCache cache = new ArbitraryDataMetadataCache(path);
+                    cache.read();
+                    return cache.getSignature() != null ? Base58.encode(cache.getSignature()) : null;
+
+                } catch (IOException | DataException e) {
+                    return null;
+                }
+        }
+    }
+
+    /**
+     * Sets validators, and responds with 304 Not Modified if the client already has this version.
+     *
+     * @return true if a 304 response has been sent
+     */
+    private boolean isNotModified(String etag, boolean useGzip) {
+        if (etag == null)
+            return false;
+
+        String variantEtag = useGzip ? ArbitraryDataRenderer.gzipEtag(etag) : etag;
+        response.setHeader("ETag", variantEtag);
+        response.setHeader("Cache-Control", "no-cache");
+        response.setHeader("Vary", "Accept-Encoding");
+
+        if (!ArbitraryDataRenderer.matchesEtag(request.getHeader("If-None-Match"), variantEtag))
+            return false;
+
+        response.setStatus(304);
+        return true;
+    }
+
+    private void writeData(byte[] data, String etag, boolean useGzip) throws IOException {
+        if (useGzip) {
+            String gzipEtag = etag != null ? ArbitraryDataRenderer.gzipEtag(etag) : null;
+
+            byte[] gzipData = gzipEtag != null ? ArbitraryDataRenderCache.getInstance().get(gzipEtag) : null;
+            if (gzipData == null) {
+                gzipData = ArbitraryDataRenderCache.gzip(data);
+
+                if (gzipEtag != null)
+                    ArbitraryDataRenderCache.getInstance().put(gzipEtag, gzipData);
+            }
+
+            // Only worth sending compressed if it's actually smaller
+            if (gzipData.length < data.length) {
+                this.writeGzipData(gzipData);
+                return;
+            }
+        }
+
+        response.setContentLength(data.length);
+        response.getOutputStream().write(data);
+    }
+
+    private void writeGzipData(byte[] gzipData) throws IOException {
+        response.setHeader("Content-Encoding", "gzip");
+        response.setContentLength(gzipData.length);
+        response.getOutputStream().write(gzipData);
+    }
+
+    private void writeFile(Path filePath, long fileSize, String etag) throws IOException {
+        response.setHeader("Accept-Ranges", "bytes");
+
+        // Ignore Range if the client's copy, identified by If-Range, is out of date
+        String rangeHeader = request.getHeader("Range");
+        String ifRangeHeader = request.getHeader("If-Range");
+        if (rangeHeader != null && ifRangeHeader != null && (etag == null || !ifRangeHeader.trim().equals(etag)))
+            rangeHeader = null;
+
+        long start = 0;
+        long length = fileSize;
+
+        long[] range = ArbitraryDataRenderer.parseRange(rangeHeader, fileSize);
+        if (range != null) {
+            if (range.length == 0) {
+                response.setStatus(416);
+                response.setHeader("Content-Range", String.format("bytes */%d", fileSize));
+                response.setContentLength(0);
+                return;
+            }
+
+            start = range[0];
+            length = range[1] - range[0] + 1;
+            response.setStatus(206);
+            response.setHeader("Content-Range", String.format("bytes %d-%d/%d", range[0], range[1], fileSize));
+        }
+
+        response.setContentLengthLong(length);
+
+        try (FileChannel fileChannel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            OutputStream outputStream = response.getOutputStream();
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+            long position = start;
+            long remaining = length;
+            while (remaining > 0) {
+                buffer.clear();
+                buffer.limit((int) Math.min(BUFFER_SIZE, remaining));
+
+                int bytesRead = fileChannel.read(buffer, position);
+                if (bytesRead < 0)
+                    throw new IOException(String.format("File %s was truncated while being served", filePath));
+
+                outputStream.write(buffer.array(), 0, bytesRead);
+                position += bytesRead;
+                remaining -= bytesRead;
+            }
+        }
+    }
+
+    /**
+     * Builds a strong ETag from the build signature and whatever else determines the served content.
+     *
+     * @return quoted ETag, or null if the build signature is unknown
+     */
+    public static String buildEtag(String buildSignature58, String... parts) {
+        if (buildSignature58 == null)
+            return null;
+
+        String input = buildSignature58 + "|" + String.join("|", parts);
+        byte[] digest = Crypto.digest(input.getBytes(StandardCharsets.UTF_8));
+        return String.format("\"%s\"", Base58.encode(Arrays.copyOf(digest, 16)));
+    }
+
+    private static String gzipEtag(String etag) {
+        // Different encodings are different representations, so need different strong ETags
+        return etag.substring(0, etag.length() - 1) + "-gzip\"";
+    }
+
+    /**
+     * Returns whether an If-None-Match header matches the passed ETag, using weak comparison as per RFC 7232.
+     */
+    public static boolean matchesEtag(String ifNoneMatchHeader, String etag) {
+        if (ifNoneMatchHeader == null || etag == null)
+            return false;
+
+        for (String candidate : ifNoneMatchHeader.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.equals("*"))
+                return true;
+
+            if (candidate.startsWith("W/"))
+                candidate = candidate.substring(2);
+
+            if (candidate.equals(etag))
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Parses a single byte range from a Range header.
+     *
+     * @return {first, last} byte positions, inclusive; an empty array if the range can't be satisfied;
+     * or null if the header is absent or unsupported, in which case the whole file should be served
+     */
+    public static long[] parseRange(String rangeHeader, long fileSize) {
+        if (rangeHeader == null)
+            return null;
+
+        rangeHeader = rangeHeader.trim();
+        if (!rangeHeader.startsWith("bytes="))
+            return null;
+
+        String rangeSpec = rangeHeader.substring("bytes=".length()).trim();
+        if (rangeSpec.contains(","))
+            // Multiple ranges aren't supported, but serving the whole file is allowed instead
+            return null;
+
+        int dashIndex = rangeSpec.indexOf('-');
+        if (dashIndex < 0)
+            return null;
+
+        String firstString = rangeSpec.substring(0, dashIndex).trim();
+        String lastString = rangeSpec.substring(dashIndex + 1).trim();
+
+        try {
+            long first;
+            long last;
+
+            if (firstString.isEmpty()) {
+                // Suffix range, i.e. the final N bytes
+                if (lastString.isEmpty())
+                    return null;
+
+                long suffixLength = Long.parseLong(lastString);
+                if (suffixLength <= 0 || fileSize == 0)
+                    return new long[0];
+
+                first = Math.max(0, fileSize - suffixLength);
+                last = fileSize - 1;
+            }
+            else {
+                first = Long.parseLong(firstString);
+                last = lastString.isEmpty() ? fileSize - 1 : Math.min(Long.parseLong(lastString), fileSize - 1);
+
+                if (first < 0 || (!lastString.isEmpty() && Long.parseLong(lastString) < first))
+                    return null;
+
+                if (first >= fileSize)
+                    return new long[0];
+            }
+
+            return new long[] { first, last };
+
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns whether an Accept-Encoding header allows gzip.
+     */
+    public static boolean acceptsGzip(String acceptEncodingHeader) {
+        if (acceptEncodingHeader == null)
+            return false;
+
+        for (String coding : acceptEncodingHeader.split(",")) {
+            String[] parts = coding.split(";");
+            if (!parts[0].trim().equalsIgnoreCase("gzip"))
+                continue;
+
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        return Double.parseDouble(param.substring(2)) > 0;
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        return false;
+    }
+
+    private static boolean isCompressible(String mimeType) {
+        if (mimeType == null)
+            return false;
+
+        return mimeType.startsWith("text/") || COMPRESSIBLE_MIME_TYPES.contains(mimeType);
+    }
+
     private String getFilename(String directory, String userPath) {
         if (userPath == null || userPath.endsWith("/") || userPath.equals("")) {
             // Locate index file
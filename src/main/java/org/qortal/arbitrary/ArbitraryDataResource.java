@@ -6,6 +6,7 @@ import org.qortal.arbitrary.ArbitraryDataFile.ResourceIdType;
 import org.qortal.arbitrary.metadata.ArbitraryDataTransactionMetadata;
 import org.qortal.arbitrary.misc.Service;
 import org.qortal.controller.arbitrary.ArbitraryDataBuildManager;
+import org.qortal.controller.arbitrary.ArbitraryDataCacheManager;
 import org.qortal.controller.arbitrary.ArbitraryDataManager;
 import org.qortal.controller.arbitrary.ArbitraryDataStorageManager;
 import org.qortal.data.arbitrary.ArbitraryResourceStatus;
@@ -172,17 +173,23 @@ public class ArbitraryDataResource {
             return;
         }
 
-        String baseDir = Settings.getInstance().getTempDataPath();
-        String identifier = this.identifier != null ?  this.identifier : "default";
-        Path cachePath = Paths.get(baseDir, "reader", this.resourceIdType.toString(), this.resourceId, this.service.toString(), identifier);
+        Path cachePath = this.getCachePath();
         if (cachePath.toFile().exists()) {
             boolean success = FilesystemUtils.safeDeleteDirectory(cachePath, true);
             if (success) {
                 LOGGER.info("Cleared cache for resource {}", this.toString());
+                ArbitraryDataCacheManager.getInstance().remove(cachePath);
             }
         }
     }
 
+    /** Returns path of built copy of this resource, i.e. ArbitraryDataReader's working path */
+    public Path getCachePath() {
+        String baseDir = Settings.getInstance().getTempDataPath();
+        String identifier = this.identifier != null ?  this.identifier : "default";
+        return Paths.get(baseDir, "reader", this.resourceIdType.toString(), this.resourceId, this.service.toString(), identifier);
+    }
+
     private boolean allFilesDownloaded() {
         // Use chunk counts to speed things up if we can
         if (this.localChunkCount != null && this.totalChunkCount != null &&
@@ -397,6 +404,10 @@ public class ArbitraryDataResource {
         return this.resourceId;
     }
 
+    public ResourceIdType getResourceIdType() {
+        return this.resourceIdType;
+    }
+
     public Service getService() {
         return this.service;
     }
@@ -17,12 +17,12 @@ import org.qortal.utils.Base58;
 import org.qortal.utils.FilesystemUtils;
 import org.qortal.utils.ZipUtils;
 
-import javax.crypto.BadPaddingException;
-import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -53,12 +53,13 @@ public class ArbitraryDataWriter {
 
     private int chunkSize = ArbitraryDataFile.CHUNK_SIZE;
 
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024; // bytes
+
     private SecretKey aesKey;
     private ArbitraryDataFile arbitraryDataFile;
 
     // Intermediate paths to cleanup
     private Path workingPath;
-    private Path compressedPath;
     private Path encryptedPath;
 
     public ArbitraryDataWriter(Path filePath, String name, Service service, String identifier, Method method, Compression compression,
@@ -87,9 +88,7 @@ public class ArbitraryDataWriter {
             this.preExecute();
             this.validateService();
             this.process();
-            this.compress();
-            this.encrypt();
-            this.split();
+            this.compressEncryptAndSplit();
             this.createMetadataFile();
             this.validate();
 
@@ -207,71 +206,79 @@ public class ArbitraryDataWriter {
         }
     }
 
-    private void compress() throws InterruptedException, DataException {
-        // Compress the data if requested
-        if (this.compression != Compression.NONE) {
-            this.compressedPath = Paths.get(this.workingPath.toString(), "data.zip");
-            try {
-
-                if (this.compression == Compression.ZIP) {
-                    LOGGER.info("Compressing...");
-                    String enclosingFolderName = "data";
-                    ZipUtils.zip(this.filePath.toString(), this.compressedPath.toString(), enclosingFolderName);
-                }
-                else {
-                    throw new DataException(String.format("Unknown compression type specified: %s", compression.toString()));
-                }
-                // FUTURE: other compression types
-
-                // Delete the input directory
-                if (FilesystemUtils.pathInsideDataOrTempPath(this.filePath)) {
-                    File directory = new File(this.filePath.toString());
-                    FileUtils.deleteDirectory(directory);
-                }
-                // Replace filePath pointer with the zipped file path
-                this.filePath = this.compressedPath;
-
-            } catch (IOException | DataException e) {
-                throw new DataException("Unable to zip directory", e);
-            }
+    /**
+     * Compresses, encrypts and splits the data in a single streaming pass, so that the only full-size
+     * copies written are the complete encrypted file and its chunks, both of which are kept.
+     */
+    private void compressEncryptAndSplit() throws InterruptedException, DataException {
+        if (this.compression != Compression.NONE && this.compression != Compression.ZIP) {
+            throw new DataException(String.format("Unknown compression type specified: %s", compression.toString()));
         }
-    }
+        // FUTURE: other compression types
 
-    private void encrypt() throws DataException {
+        // We don't have a signature yet, so use null to put the file in a generic folder
         this.encryptedPath = Paths.get(this.workingPath.toString(), "data.zip.encrypted");
+        ArbitraryDataFileOutputStream dataFileOutputStream;
+        try {
+            dataFileOutputStream = new ArbitraryDataFileOutputStream(this.encryptedPath, null, this.chunkSize);
+        } catch (IOException e) {
+            throw new DataException(String.format("Unable to create file %s: %s", this.encryptedPath, e.getMessage()));
+        }
+
         try {
-            // Encrypt the file with AES
-            LOGGER.info("Encrypting...");
             this.aesKey = AES.generateKey(256);
-            AES.encryptFile("AES/CBC/PKCS5Padding", this.aesKey, this.filePath.toString(), this.encryptedPath.toString());
+            OutputStream outputStream = new BufferedOutputStream(
+                    AES.encryptingOutputStream("AES/CBC/PKCS5Padding", this.aesKey, dataFileOutputStream), STREAM_BUFFER_SIZE);
 
-            // Delete the input file
-            if (FilesystemUtils.pathInsideDataOrTempPath(this.filePath)) {
-                Files.delete(this.filePath);
+            if (this.compression == Compression.ZIP) {
+                LOGGER.info("Compressing and encrypting...");
+                String enclosingFolderName = "data";
+                ZipUtils.zip(this.filePath.toString(), outputStream, enclosingFolderName);
+            }
+            else {
+                LOGGER.info("Encrypting...");
+                Files.copy(this.filePath, outputStream);
             }
-            // Replace filePath pointer with the encrypted file path
-            this.filePath = this.encryptedPath;
+
+            // Completes encryption, then stores the complete file and its chunks
+            outputStream.close();
 
         } catch (NoSuchAlgorithmException | InvalidAlgorithmParameterException | NoSuchPaddingException
-                | BadPaddingException | IllegalBlockSizeException | IOException | InvalidKeyException e) {
-            throw new DataException(String.format("Unable to encrypt file %s: %s", this.filePath, e.getMessage()));
+                | IOException | InvalidKeyException e) {
+            dataFileOutputStream.discard();
+            throw new DataException(String.format("Unable to compress and encrypt file %s: %s", this.filePath, e.getMessage()));
+
+        } catch (InterruptedException e) {
+            dataFileOutputStream.discard();
+            throw e;
         }
-    }
 
-    private void split() throws IOException, DataException {
-        // We don't have a signature yet, so use null to put the file in a generic folder
-        this.arbitraryDataFile = ArbitraryDataFile.fromPath(this.filePath, null);
+        this.arbitraryDataFile = dataFileOutputStream.getArbitraryDataFile();
         if (this.arbitraryDataFile == null) {
-            throw new IOException("No file available when trying to split");
+            throw new DataException("No file available after encrypting");
         }
 
-        int chunkCount = this.arbitraryDataFile.split(this.chunkSize);
+        int chunkCount = this.arbitraryDataFile.chunkCount();
         if (chunkCount > 0) {
             LOGGER.info(String.format("Successfully split into %d chunk%s", chunkCount, (chunkCount == 1 ? "" : "s")));
         }
         else {
             throw new DataException("Unable to split file into chunks");
         }
+
+        // Delete the input file or directory
+        if (FilesystemUtils.pathInsideDataOrTempPath(this.filePath)) {
+            try {
+                if (Files.isDirectory(this.filePath)) {
+                    FileUtils.deleteDirectory(new File(this.filePath.toString()));
+                }
+                else {
+                    Files.deleteIfExists(this.filePath);
+                }
+            } catch (IOException e) {
+                // Removed along with the working directory, if it is inside it
+            }
+        }
     }
 
     private void createMetadataFile() throws IOException, DataException {
@@ -349,12 +356,6 @@ public class ArbitraryDataWriter {
 
     private void cleanupFilesystem() throws IOException {
         // Clean up
-        if (FilesystemUtils.pathInsideDataOrTempPath(this.compressedPath)) {
-            File zippedFile = new File(this.compressedPath.toString());
-            if (zippedFile.exists()) {
-                zippedFile.delete();
-            }
-        }
         if (FilesystemUtils.pathInsideDataOrTempPath(this.encryptedPath)) {
             File encryptedFile = new File(this.encryptedPath.toString());
             if (encryptedFile.exists()) {
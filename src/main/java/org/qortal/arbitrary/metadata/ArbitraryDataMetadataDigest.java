@@ -0,0 +1,146 @@
+package org.qortal.arbitrary.metadata;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.qortal.repository.DataException;
+import org.qortal.utils.Base58;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Manifest of the files that made up a directory when its digest was last computed,
+ * so that the digest can be reused if none of them have changed since.
+ *
+ * Files are identified by relative path, size and last modified time.
+ * A file modified in the same filesystem timestamp tick as the manifest was written
+ * could have changed after it was hashed without its size or modified time changing,
+ * so only files last modified strictly before the manifest was written can be trusted.
+ */
+public class ArbitraryDataMetadataDigest extends ArbitraryDataQortalMetadata {
+
+    public static class FileInfo {
+        private final String path;
+        private final long size;
+        private final long modified;
+        private final byte[] hash;
+
+        public FileInfo(String path, long size, long modified, byte[] hash) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+        }
+
+        public String getPath() {
+            return this.path;
+        }
+
+        public long getSize() {
+            return this.size;
+        }
+
+        public long getModified() {
+            return this.modified;
+        }
+
+        public byte[] getHash() {
+            return this.hash;
+        }
+
+        /** Returns true if path, size and modified time match, ignoring hash */
+        public boolean isSameFile(FileInfo other) {
+            return this.path.equals(other.path) && this.size == other.size && this.modified == other.modified;
+        }
+    }
+
+    private byte[] hash;
+    private List<FileInfo> files;
+    private Long writtenTime;
+
+    public ArbitraryDataMetadataDigest(Path filePath) {
+        super(filePath);
+
+        this.files = new ArrayList<>();
+    }
+
+    @Override
+    public void read() throws IOException, DataException {
+        super.read();
+
+        Path path = Paths.get(this.qortalDirectoryPath.toString(), this.fileName());
+        this.writtenTime = Files.getLastModifiedTime(path).toMillis();
+    }
+
+    @Override
+    protected String fileName() {
+        return "digest";
+    }
+
+    @Override
+    protected void readJson() throws DataException {
+        if (this.jsonString == null) {
+            throw new DataException("Digest JSON string is null");
+        }
+
+        JSONObject digest = new JSONObject(this.jsonString);
+        if (digest.has("hash")) {
+            this.hash = Base58.decode(digest.getString("hash"));
+        }
+        if (digest.has("files")) {
+            JSONArray files = digest.getJSONArray("files");
+            for (int i=0; i<files.length(); i++) {
+                JSONObject file = files.getJSONObject(i);
+                this.files.add(new FileInfo(file.getString("path"), file.getLong("size"),
+                        file.getLong("modified"), Base58.decode(file.getString("hash"))));
+            }
+        }
+    }
+
+    @Override
+    protected void buildJson() {
+        JSONObject digest = new JSONObject();
+        digest.put("hash", Base58.encode(this.hash));
+
+        JSONArray files = new JSONArray();
+        for (FileInfo fileInfo : this.files) {
+            JSONObject file = new JSONObject();
+            file.put("path", fileInfo.getPath());
+            file.put("size", fileInfo.getSize());
+            file.put("modified", fileInfo.getModified());
+            file.put("hash", Base58.encode(fileInfo.getHash()));
+            files.put(file);
+        }
+        digest.put("files", files);
+
+        this.jsonString = digest.toString();
+        LOGGER.trace("Digest metadata: {} files", this.files.size());
+    }
+
+
+    public void setHash(byte[] hash) {
+        this.hash = hash;
+    }
+
+    public byte[] getHash() {
+        return this.hash;
+    }
+
+    public void setFiles(List<FileInfo> files) {
+        this.files = files;
+    }
+
+    public List<FileInfo> getFiles() {
+        return this.files;
+    }
+
+    /** Returns last modified time of manifest file, as found by read(), or null if not read. */
+    public Long getWrittenTime() {
+        return this.writtenTime;
+    }
+
+}
@@ -0,0 +1,108 @@
+package org.qortal.asset;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import org.qortal.data.asset.OrderData;
+
+/**
+ * Price-level view of open orders offering have-asset in return for want-asset.
+ * <p>
+ * Built from a snapshot of open orders and immutable thereafter,
+ * so can be shared between API threads without locking.
+ */
+public class OrderBook {
+
+	private static class PriceLevel {
+		private long unfulfilled;
+		private long latestTimestamp;
+		private int orderCount;
+	}
+
+	private final long haveAssetId;
+	private final String haveAssetName;
+	private final long wantAssetId;
+	private final String wantAssetName;
+
+	/** Price levels, keyed by price. */
+	private final NavigableMap<Long, PriceLevel> priceLevels;
+
+	public OrderBook(long haveAssetId, String haveAssetName, long wantAssetId, String wantAssetName, List<OrderData> openOrders) {
+		this.haveAssetId = haveAssetId;
+		this.haveAssetName = haveAssetName;
+		this.wantAssetId = wantAssetId;
+		this.wantAssetName = wantAssetName;
+
+		NavigableMap<Long, PriceLevel> priceLevels = new TreeMap<>();
+
+		for (OrderData orderData : openOrders) {
+			if (orderData.getIsClosed() || orderData.getIsFulfilled())
+				continue;
+
+			PriceLevel priceLevel = priceLevels.computeIfAbsent(orderData.getPrice(), price -> new PriceLevel());
+			priceLevel.unfulfilled += Order.getAmountLeft(orderData);
+			priceLevel.latestTimestamp = Math.max(priceLevel.latestTimestamp, orderData.getTimestamp());
+			++priceLevel.orderCount;
+		}
+
+		this.priceLevels = Collections.unmodifiableNavigableMap(priceLevels);
+	}
+
+	// Getters
+
+	public long getHaveAssetId() {
+		return this.haveAssetId;
+	}
+
+	public long getWantAssetId() {
+		return this.wantAssetId;
+	}
+
+	public int getPriceLevelCount() {
+		return this.priceLevels.size();
+	}
+
+	public int getOrderCount() {
+		return this.priceLevels.values().stream().mapToInt(priceLevel -> priceLevel.orderCount).sum();
+	}
+
+	// Queries
+
+	/**
+	 * Returns aggregated open orders, one per price level, sorted by price.
+	 * <p>
+	 * Each returned OrderData has no order ID or creator, with <tt>amount</tt> set to
+	 * the total unfulfilled amount at that price and <tt>timestamp</tt> set to the most recent order's timestamp.
+	 * Returned objects are newly constructed so callers are free to modify them.
+	 */
+	public List<OrderData> getAggregatedOrders(Integer limit, Integer offset, Boolean reverse) {
+		NavigableMap<Long, PriceLevel> orderedLevels = reverse != null && reverse ? this.priceLevels.descendingMap() : this.priceLevels;
+
+		int skip = offset != null && offset > 0 ? offset : 0;
+		int maxCount = limit != null && limit > 0 ? limit : Integer.MAX_VALUE;
+
+		List<OrderData> orders = new ArrayList<>(Math.min(maxCount, orderedLevels.size()));
+
+		for (Map.Entry<Long, PriceLevel> entry : orderedLevels.entrySet()) {
+			if (skip > 0) {
+				--skip;
+				continue;
+			}
+
+			if (orders.size() >= maxCount)
+				break;
+
+			PriceLevel priceLevel = entry.getValue();
+
+			orders.add(new OrderData(null, null, this.haveAssetId, this.wantAssetId, priceLevel.unfulfilled, 0L,
+					entry.getKey(), priceLevel.latestTimestamp, false, false, this.haveAssetName, this.wantAssetName));
+		}
+
+		return orders;
+	}
+
+}
@@ -40,6 +40,7 @@ import org.qortal.controller.arbitrary.*;
 import org.qortal.controller.repository.PruneManager;
 import org.qortal.controller.repository.NamesDatabaseIntegrityCheck;
 import org.qortal.controller.tradebot.TradeBot;
+import org.qortal.controller.tradebot.TradeOfferIndex;
 import org.qortal.data.account.AccountBalanceData;
 import org.qortal.data.account.AccountData;
 import org.qortal.data.block.BlockData;
@@ -58,6 +59,8 @@ import org.qortal.network.Network;
 import org.qortal.network.Peer;
 import org.qortal.network.message.*;
 import org.qortal.repository.*;
+import org.qortal.repository.hsqldb.HSQLDBCheckpointCoordinator;
+import org.qortal.repository.hsqldb.HSQLDBQueryStats;
 import org.qortal.repository.hsqldb.HSQLDBRepositoryFactory;
 import org.qortal.settings.Settings;
 import org.qortal.transaction.Transaction;
@@ -115,6 +118,7 @@ public class Controller extends Thread {
 	private long repositoryCheckpointTimestamp = startTime; // ms
 	private long ntpCheckTimestamp = startTime; // ms
 	private long deleteExpiredTimestamp = startTime + DELETE_EXPIRED_INTERVAL; // ms
+	private long repositoryQueryStatsLogTimestamp = startTime; // ms
 
 	/** Whether we can mint new blocks, as reported by BlockMinter. */
 	private volatile boolean isMintingPossible = false;
@@ -183,6 +187,35 @@ public class Controller extends Thread {
 		}
 		public GetArbitraryMetadataMessageStats getArbitraryMetadataMessageStats = new GetArbitraryMetadataMessageStats();
 
+		public static class BuiltDataCacheStats {
+			public AtomicLong hits = new AtomicLong();
+			public AtomicLong misses = new AtomicLong();
+			public AtomicLong builds = new AtomicLong();
+			public AtomicLong evictions = new AtomicLong();
+			public AtomicLong cachedBytes = new AtomicLong();
+
+			public BuiltDataCacheStats() {
+			}
+		}
+		public BuiltDataCacheStats builtDataCacheStats = new BuiltDataCacheStats();
+
+		public static class BuildQueueStats {
+			public AtomicLong requests = new AtomicLong();
+			public AtomicLong coalesced = new AtomicLong();
+			public AtomicLong completed = new AtomicLong();
+			public AtomicLong failed = new AtomicLong();
+			public AtomicLong superseded = new AtomicLong();
+			public AtomicLong queueTime = new AtomicLong();
+			public AtomicLong buildTime = new AtomicLong();
+			public AtomicLong maxBuildTime = new AtomicLong();
+
+			public BuildQueueStats() {
+			}
+		}
+		public BuildQueueStats buildQueueStats = new BuildQueueStats();
+
+		public HSQLDBCheckpointCoordinator.CheckpointStats repositoryCheckpointStats = HSQLDBCheckpointCoordinator.getInstance().getStats();
+
 		public static class GetAccountMessageStats {
 			public AtomicLong requests = new AtomicLong();
 			public AtomicLong cacheHits = new AtomicLong();
@@ -474,6 +507,10 @@ public class Controller extends Thread {
 
 		LOGGER.info("Starting trade-bot");
 		TradeBot.getInstance();
+		TradeOfferIndex.getInstance();
+
+		LOGGER.info("Starting order book manager");
+		OrderBookManager.getInstance();
 
 		// Arbitrary data controllers
 		LOGGER.info("Starting arbitrary-transaction controllers");
@@ -551,6 +588,7 @@ public class Controller extends Thread {
 
 		final long repositoryBackupInterval = Settings.getInstance().getRepositoryBackupInterval();
 		final long repositoryCheckpointInterval = Settings.getInstance().getRepositoryCheckpointInterval();
+		final long repositoryQueryStatsLogInterval = Settings.getInstance().getRepositoryQueryStatsLogInterval();
 		long repositoryMaintenanceInterval = getRandomRepositoryMaintenanceInterval();
 
 		// Start executor service for trimming or pruning
@@ -599,6 +637,13 @@ public class Controller extends Thread {
 					RepositoryManager.setRequestedCheckpoint(Boolean.TRUE);
 				}
 
+				// Log repository statements with highest total execution time (if enabled)
+				if (repositoryQueryStatsLogInterval > 0 && now >= repositoryQueryStatsLogTimestamp + repositoryQueryStatsLogInterval) {
+					repositoryQueryStatsLogTimestamp = now;
+
+					HSQLDBQueryStats.getInstance().logSummaries(Settings.getInstance().getRepositoryQueryStatsLogCount());
+				}
+
 				// Give repository a chance to backup (if enabled)
 				if (repositoryBackupInterval > 0 && now >= repositoryBackupTimestamp + repositoryBackupInterval) {
 					repositoryBackupTimestamp = now + repositoryBackupInterval;
@@ -1026,6 +1071,9 @@ public class Controller extends Thread {
 		BlockData blockDataCopy = new BlockData(latestBlockData);
 		int blockCacheSize = Settings.getInstance().getBlockCacheSize();
 
+		// Helps repository predict quiet periods between blocks
+		HSQLDBCheckpointCoordinator.getInstance().onNewBlock(System.currentTimeMillis());
+
 		synchronized (this.latestBlocks) {
 			BlockData cachedChainTip = this.latestBlocks.peekLast();
 
@@ -0,0 +1,202 @@
+package org.qortal.controller;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.qortal.asset.OrderBook;
+import org.qortal.data.asset.AssetData;
+import org.qortal.data.asset.OrderData;
+import org.qortal.data.block.BlockData;
+import org.qortal.data.transaction.CancelAssetOrderTransactionData;
+import org.qortal.data.transaction.CreateAssetOrderTransactionData;
+import org.qortal.data.transaction.TransactionData;
+import org.qortal.event.Event;
+import org.qortal.event.EventBus;
+import org.qortal.event.Listener;
+import org.qortal.repository.DataException;
+import org.qortal.repository.Repository;
+import org.qortal.repository.RepositoryManager;
+
+/**
+ * Cache of {@link OrderBook}s, by asset pair, for serving order book API requests without hitting the repository.
+ * <p>
+ * Order books are built on demand from the repository and invalidated whenever a new block
+ * contains asset order transactions affecting that pair. All order books are dropped when a block is orphaned.
+ * <p>
+ * Note that order <i>matching</i> still uses the repository, as it needs to happen within the
+ * block's repository transaction, which might be rolled back (e.g. during block validation).
+ */
+public class OrderBookManager implements Listener {
+
+	private static final Logger LOGGER = LogManager.getLogger(OrderBookManager.class);
+
+	private static final class AssetPair {
+		private final long haveAssetId;
+		private final long wantAssetId;
+
+		private AssetPair(long haveAssetId, long wantAssetId) {
+			this.haveAssetId = haveAssetId;
+			this.wantAssetId = wantAssetId;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (this == other)
+				return true;
+
+			if (!(other instanceof AssetPair))
+				return false;
+
+			AssetPair otherPair = (AssetPair) other;
+			return this.haveAssetId == otherPair.haveAssetId && this.wantAssetId == otherPair.wantAssetId;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(this.haveAssetId, this.wantAssetId);
+		}
+	}
+
+	private static OrderBookManager instance;
+
+	private final Map<AssetPair, OrderBook> orderBooks = new ConcurrentHashMap<>();
+
+	/** Incremented on every invalidation so that books built from stale snapshots aren't cached. */
+	private final AtomicLong generation = new AtomicLong();
+
+	private OrderBookManager() {
+		EventBus.INSTANCE.addListener(event -> OrderBookManager.getInstance().listen(event));
+	}
+
+	public static synchronized OrderBookManager getInstance() {
+		if (instance == null)
+			instance = new OrderBookManager();
+
+		return instance;
+	}
+
+	@Override
+	public void listen(Event event) {
+		if (event instanceof Controller.OrphanedBlockEvent) {
+			this.invalidateAll();
+			return;
+		}
+
+		if (!(event instanceof Controller.NewBlockEvent))
+			return;
+
+		// Nothing cached, so no need to check block, but we still need to prevent any in-progress build from being cached
+		if (this.orderBooks.isEmpty()) {
+			this.invalidateAll();
+			return;
+		}
+
+		BlockData blockData = ((Controller.NewBlockEvent) event).getBlockData();
+
+		// Only blocks with asset order transactions can affect order books
+		try (final Repository repository = RepositoryManager.getRepository()) {
+			List<TransactionData> transactions = repository.getBlockRepository().getTransactionsFromSignature(blockData.getSignature());
+
+			for (TransactionData transactionData : transactions)
+				switch (transactionData.getType()) {
+					case CREATE_ASSET_ORDER: {
+						CreateAssetOrderTransactionData createOrderTransactionData = (CreateAssetOrderTransactionData) transactionData;
+
+						// New order could also have matched orders from opposite side of the book
+						this.invalidate(createOrderTransactionData.getHaveAssetId(), createOrderTransactionData.getWantAssetId());
+						break;
+					}
+
+					case CANCEL_ASSET_ORDER: {
+						CancelAssetOrderTransactionData cancelOrderTransactionData = (CancelAssetOrderTransactionData) transactionData;
+
+						OrderData orderData = repository.getAssetRepository().fromOrderId(cancelOrderTransactionData.getOrderId());
+						if (orderData == null) {
+							this.invalidateAll();
+							return;
+						}
+
+						this.invalidate(orderData.getHaveAssetId(), orderData.getWantAssetId());
+						break;
+					}
+
+					default:
+						break;
+				}
+		} catch (DataException e) {
+			LOGGER.warn(String.format("Couldn't check block %d for asset order changes: %s", blockData.getHeight(), e.getMessage()));
+			this.invalidateAll();
+		}
+	}
+
+	/**
+	 * Returns aggregated open orders, offering have-asset for want-asset, sorted by price.
+	 * <p>
+	 * Served from cached order book, if possible.
+	 *
+	 * @return aggregated orders, or null if either asset doesn't exist
+	 */
+	public List<OrderData> getAggregatedOpenOrders(long haveAssetId, long wantAssetId, Integer limit, Integer offset, Boolean reverse) throws DataException {
+		OrderBook orderBook = this.getOrderBook(haveAssetId, wantAssetId);
+		if (orderBook == null)
+			return null;
+
+		return orderBook.getAggregatedOrders(limit, offset, reverse);
+	}
+
+	/** Returns order book for have-asset/want-asset pair, building it if not cached, or null if either asset doesn't exist. */
+	public OrderBook getOrderBook(long haveAssetId, long wantAssetId) throws DataException {
+		AssetPair assetPair = new AssetPair(haveAssetId, wantAssetId);
+
+		OrderBook orderBook = this.orderBooks.get(assetPair);
+		if (orderBook != null)
+			return orderBook;
+
+		final long buildGeneration = this.generation.get();
+
+		try (final Repository repository = RepositoryManager.getRepository()) {
+			AssetData haveAssetData = repository.getAssetRepository().fromAssetId(haveAssetId);
+			if (haveAssetData == null)
+				return null;
+
+			AssetData wantAssetData = repository.getAssetRepository().fromAssetId(wantAssetId);
+			if (wantAssetData == null)
+				return null;
+
+			List<OrderData> openOrders = repository.getAssetRepository().getOpenOrders(haveAssetId, wantAssetId);
+
+			orderBook = new OrderBook(haveAssetId, haveAssetData.getName(), wantAssetId, wantAssetData.getName(), openOrders);
+		}
+
+		// Only cache if there have been no invalidations while we were building
+		synchronized (this.generation) {
+			if (this.generation.get() == buildGeneration)
+				this.orderBooks.put(assetPair, orderBook);
+		}
+
+		return orderBook;
+	}
+
+	private void invalidate(long assetId, long otherAssetId) {
+		synchronized (this.generation) {
+			this.generation.incrementAndGet();
+
+			this.orderBooks.remove(new AssetPair(assetId, otherAssetId));
+			this.orderBooks.remove(new AssetPair(otherAssetId, assetId));
+		}
+	}
+
+	private void invalidateAll() {
+		synchronized (this.generation) {
+			this.generation.incrementAndGet();
+
+			this.orderBooks.clear();
+		}
+	}
+
+}
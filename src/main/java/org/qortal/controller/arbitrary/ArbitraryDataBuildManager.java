@@ -3,13 +3,18 @@ package org.qortal.controller.arbitrary;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.qortal.arbitrary.ArbitraryDataBuildQueueItem;
+import org.qortal.controller.Controller;
 import org.qortal.utils.NTP;
 
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
 
 public class ArbitraryDataBuildManager extends Thread {
 
@@ -20,10 +25,29 @@ public class ArbitraryDataBuildManager extends Thread {
     private volatile boolean isStopping = false;
     private boolean buildInProgress = false;
 
+    /** Total number of builder threads */
+    private static final int BUILD_THREAD_COUNT = 5;
+    /** Builder threads that only take high priority items, e.g. renders, so that they never wait behind prefetch builds */
+    private static final int HIGH_PRIORITY_BUILD_THREAD_COUNT = 1;
+
+    /** Highest priority first, then first come, first served */
+    private static final Comparator<ArbitraryDataBuildQueueItem> BUILD_ORDER =
+            Comparator.comparing(ArbitraryDataBuildQueueItem::getPriority).reversed()
+                    .thenComparingLong(ArbitraryDataBuildQueueItem::getQueueSequence);
+
     /**
      * Map to keep track of arbitrary transaction resources currently being built (or queued).
+     * There is at most one item per resource, so duplicate requests are coalesced.
      */
-    public Map<String, ArbitraryDataBuildQueueItem> arbitraryDataBuildQueue = Collections.synchronizedMap(new HashMap<>());
+    public Map<String, ArbitraryDataBuildQueueItem> arbitraryDataBuildQueue = new ConcurrentHashMap<>();
+
+    /** Items waiting to be built, taken by all builder threads */
+    private final BlockingQueue<ArbitraryDataBuildQueueItem> buildQueue = new PriorityBlockingQueue<>(11, BUILD_ORDER);
+    /** High priority items waiting to be built, which are also in buildQueue. Whichever thread takes an item first builds it. */
+    private final BlockingQueue<ArbitraryDataBuildQueueItem> highPriorityBuildQueue = new PriorityBlockingQueue<>(11, BUILD_ORDER);
+    private long queueSequence = 0;
+
+    private ExecutorService arbitraryDataBuildExecutor;
 
     /**
      * Map to keep track of failed arbitrary transaction builds.
@@ -40,12 +64,12 @@ public class ArbitraryDataBuildManager extends Thread {
         Thread.currentThread().setName("Arbitrary Data Build Manager");
 
         try {
-            // Use a fixed thread pool to execute the arbitrary data build actions (currently just a single thread)
-            // This can be expanded to have multiple threads processing the build queue when needed
-            int threadCount = 5;
-            ExecutorService arbitraryDataBuildExecutor = Executors.newFixedThreadPool(threadCount);
-            for (int i = 0; i < threadCount; i++) {
-                arbitraryDataBuildExecutor.execute(new ArbitraryDataBuilderThread());
+            // Builder threads block on the queues, so they only wake when there is something to build
+            this.arbitraryDataBuildExecutor = Executors.newFixedThreadPool(BUILD_THREAD_COUNT);
+            for (int i = 0; i < BUILD_THREAD_COUNT; i++) {
+                boolean isHighPriorityThread = i < HIGH_PRIORITY_BUILD_THREAD_COUNT;
+                BlockingQueue<ArbitraryDataBuildQueueItem> queue = isHighPriorityThread ? this.highPriorityBuildQueue : this.buildQueue;
+                this.arbitraryDataBuildExecutor.execute(new ArbitraryDataBuilderThread(queue, isHighPriorityThread));
             }
 
             while (!isStopping) {
@@ -68,6 +92,11 @@ public class ArbitraryDataBuildManager extends Thread {
     public void shutdown() {
         isStopping = true;
         this.interrupt();
+
+        // Wake builder threads that are waiting for work
+        if (this.arbitraryDataBuildExecutor != null) {
+            this.arbitraryDataBuildExecutor.shutdownNow();
+        }
     }
 
 
@@ -76,6 +105,9 @@ public class ArbitraryDataBuildManager extends Thread {
             return;
         }
         arbitraryDataBuildQueue.entrySet().removeIf(entry -> entry.getValue().hasReachedBuildTimeout(now));
+        // Anything no longer in the map is skipped when taken, but there's no need to keep it around
+        buildQueue.removeIf(item -> item.hasReachedBuildTimeout(now));
+        highPriorityBuildQueue.removeIf(item -> item.hasReachedBuildTimeout(now));
         arbitraryDataFailedBuilds.entrySet().removeIf(entry -> entry.getValue().hasReachedFailureTimeout(now));
     }
 
@@ -101,9 +133,25 @@ public class ArbitraryDataBuildManager extends Thread {
             return false;
         }
 
-        if (this.arbitraryDataBuildQueue.put(key, queueItem) != null) {
-            // Already in queue
-            return true;
+        Controller.getInstance().stats.buildQueueStats.requests.incrementAndGet();
+
+        synchronized (this) {
+            ArbitraryDataBuildQueueItem existingItem = this.arbitraryDataBuildQueue.putIfAbsent(key, queueItem);
+            if (existingItem != null) {
+                // Already in queue, so coalesce with the existing item, raising its priority if it's still waiting
+                Controller.getInstance().stats.buildQueueStats.coalesced.incrementAndGet();
+
+                if (existingItem.isQueued() && queueItem.getPriority() > existingItem.getPriority()) {
+                    // Priority is part of the queue ordering, so it can only be changed while the item is out of the queue
+                    this.buildQueue.remove(existingItem);
+                    this.highPriorityBuildQueue.remove(existingItem);
+                    existingItem.setPriority(queueItem.getPriority());
+                    this.enqueue(existingItem);
+                }
+                return true;
+            }
+
+            this.enqueue(queueItem);
         }
 
         log(queueItem, String.format("Added %s to build queue", queueItem));
@@ -112,6 +160,100 @@ public class ArbitraryDataBuildManager extends Thread {
         return true;
     }
 
+    private void enqueue(ArbitraryDataBuildQueueItem queueItem) {
+        queueItem.setQueueSequence(this.queueSequence++);
+
+        this.buildQueue.add(queueItem);
+        if (queueItem.isHighPriority()) {
+            this.highPriorityBuildQueue.add(queueItem);
+        }
+    }
+
+    /**
+     * Claims an item taken from a queue, so that it is built exactly once.
+     *
+     * @return true if the caller should build it; false if it is stale, already claimed, or has failed recently
+     */
+    public boolean claimForBuild(ArbitraryDataBuildQueueItem queueItem) {
+        String key = queueItem.getUniqueKey();
+        if (key == null || this.arbitraryDataBuildQueue.get(key) != queueItem) {
+            // Removed, or replaced, since it was queued
+            return false;
+        }
+
+        // Ignore builds that have failed recently
+        if (this.isInFailedBuildsList(queueItem)) {
+            this.arbitraryDataBuildQueue.remove(key, queueItem);
+            return false;
+        }
+
+        if (queueItem.claimForBuild()) {
+            return true;
+        }
+
+        if (queueItem.isQueued()) {
+            // Unable to start it, e.g. because NTP hasn't synced, and it's no longer in the queue it was taken from,
+            // so remove it rather than leave it looking queued forever. It's added again when next requested.
+            this.arbitraryDataBuildQueue.remove(key, queueItem);
+            this.buildQueue.remove(queueItem);
+            this.highPriorityBuildQueue.remove(queueItem);
+        }
+        return false;
+    }
+
+    /**
+     * Removes a finished build from the queue, and requeues the resource if a newer transaction arrived during the build.
+     */
+    public void onBuildFinished(ArbitraryDataBuildQueueItem queueItem) {
+        String key = queueItem.getUniqueKey();
+        if (key == null) {
+            return;
+        }
+
+        this.arbitraryDataBuildQueue.remove(key, queueItem);
+
+        Long start = queueItem.getBuildStartTimestamp();
+        Long end = queueItem.getBuildEndTimestamp();
+        Long created = queueItem.getCreationTimestamp();
+        Controller.StatsSnapshot.BuildQueueStats stats = Controller.getInstance().stats.buildQueueStats;
+        if (start != null && end != null) {
+            stats.buildTime.addAndGet(end - start);
+            stats.maxBuildTime.accumulateAndGet(end - start, Math::max);
+        }
+        if (start != null && created != null) {
+            stats.queueTime.addAndGet(start - created);
+        }
+
+        if (queueItem.isSuperseded()) {
+            // What we just built is already out of date, so build the latest state instead
+            stats.superseded.incrementAndGet();
+
+            ArbitraryDataBuildQueueItem newItem = new ArbitraryDataBuildQueueItem(queueItem.getResourceId(),
+                    queueItem.getResourceIdType(), queueItem.getService(), queueItem.getIdentifier());
+            newItem.setPriority(queueItem.getPriority());
+            this.addToBuildQueue(newItem);
+        }
+    }
+
+    /**
+     * Called when a newer transaction arrives for a resource. A queued build will pick up the newer
+     * transaction anyway, but one already in progress is building stale data, so rebuild it once finished.
+     */
+    public void onResourceUpdated(String key) {
+        if (key == null) {
+            return;
+        }
+
+        ArbitraryDataBuildQueueItem queueItem = this.arbitraryDataBuildQueue.get(key);
+        if (queueItem != null && queueItem.isBuilding()) {
+            queueItem.setSuperseded(true);
+        }
+    }
+
+    public int getQueuedCount() {
+        return this.buildQueue.size();
+    }
+
     public boolean isInBuildQueue(ArbitraryDataBuildQueueItem queueItem) {
         String key = queueItem.getUniqueKey();
         if (key == null) {
@@ -6,105 +6,76 @@ import org.qortal.arbitrary.ArbitraryDataBuildQueueItem;
 import org.qortal.arbitrary.exception.MissingDataException;
 import org.qortal.controller.Controller;
 import org.qortal.repository.DataException;
-import org.qortal.utils.NTP;
 
 import java.io.IOException;
-import java.util.Comparator;
-import java.util.Map;
+import java.util.concurrent.BlockingQueue;
 
 
 public class ArbitraryDataBuilderThread implements Runnable {
 
     private static final Logger LOGGER = LogManager.getLogger(ArbitraryDataBuilderThread.class);
 
-    public ArbitraryDataBuilderThread() {
+    private final BlockingQueue<ArbitraryDataBuildQueueItem> queue;
+    private final boolean isHighPriorityThread;
 
+    public ArbitraryDataBuilderThread(BlockingQueue<ArbitraryDataBuildQueueItem> queue, boolean isHighPriorityThread) {
+        this.queue = queue;
+        this.isHighPriorityThread = isHighPriorityThread;
     }
 
     @Override
     public void run() {
-        Thread.currentThread().setName("Arbitrary Data Builder Thread");
+        Thread.currentThread().setName(this.isHighPriorityThread ? "Arbitrary Data Builder Thread (high priority)" : "Arbitrary Data Builder Thread");
         ArbitraryDataBuildManager buildManager = ArbitraryDataBuildManager.getInstance();
 
         while (!Controller.isStopping()) {
             try {
-                Thread.sleep(100);
+                // Blocks until there is something to build
+                ArbitraryDataBuildQueueItem queueItem = this.queue.take();
 
-                if (buildManager.arbitraryDataBuildQueue == null) {
+                // Skip items that are stale, or were already taken from the other queue by another thread
+                if (!buildManager.claimForBuild(queueItem)) {
                     continue;
                 }
-                if (buildManager.arbitraryDataBuildQueue.isEmpty()) {
-                    continue;
-                }
-
-                Long now = NTP.getTime();
-                if (now == null) {
-                    continue;
-                }
-
-                ArbitraryDataBuildQueueItem queueItem = null;
-
-                // Find resources that are queued for building (sorted by highest priority first)
-                synchronized (buildManager.arbitraryDataBuildQueue) {
-                    Map.Entry<String, ArbitraryDataBuildQueueItem> next = buildManager.arbitraryDataBuildQueue
-                            .entrySet().stream()
-                            .filter(e -> e.getValue().isQueued())
-                            .sorted(Comparator.comparing(item -> item.getValue().getPriority()))
-                            .reduce((first, second) -> second).orElse(null);
-
-                    if (next == null) {
-                        continue;
-                    }
-
-                    queueItem = next.getValue();
-
-                    if (queueItem == null) {
-                        this.removeFromQueue(queueItem);
-                        continue;
-                    }
-
-                    // Ignore builds that have failed recently
-                    if (buildManager.isInFailedBuildsList(queueItem)) {
-                        this.removeFromQueue(queueItem);
-                        continue;
-                    }
-
-                    // Set the start timestamp, to prevent other threads from building it at the same time
-                    queueItem.prepareForBuild();
-                }
 
                 try {
                     // Perform the build
                     log(queueItem, String.format("Building %s... priority: %d", queueItem, queueItem.getPriority()));
                     queueItem.build();
-                    this.removeFromQueue(queueItem);
-                    log(queueItem, String.format("Finished building %s", queueItem));
+                    Controller.getInstance().stats.buildQueueStats.completed.incrementAndGet();
+                    log(queueItem, String.format("Finished building %s in %d ms", queueItem, this.getBuildTime(queueItem)));
 
                 } catch (MissingDataException e) {
                     log(queueItem, String.format("Missing data for %s: %s", queueItem, e.getMessage()));
                     queueItem.setFailed(true);
-                    this.removeFromQueue(queueItem);
+                    Controller.getInstance().stats.buildQueueStats.failed.incrementAndGet();
                     // Don't add to the failed builds list, as we may want to retry sooner
 
                 } catch (IOException | DataException | RuntimeException e) {
                     log(queueItem, String.format("Error building %s: %s", queueItem, e.getMessage()));
-                    // Something went wrong - so remove it from the queue, and add to failed builds list
+                    // Something went wrong - so add to failed builds list, as well as removing it from the queue
                     queueItem.setFailed(true);
+                    Controller.getInstance().stats.buildQueueStats.failed.incrementAndGet();
                     buildManager.addToFailedBuildsList(queueItem);
-                    this.removeFromQueue(queueItem);
+
+                } finally {
+                    buildManager.onBuildFinished(queueItem);
                 }
 
             } catch (InterruptedException e) {
                 // Time to exit
+                return;
             }
         }
     }
 
-    private void removeFromQueue(ArbitraryDataBuildQueueItem queueItem) {
-        if (queueItem == null || queueItem.getUniqueKey() == null) {
-            return;
+    private long getBuildTime(ArbitraryDataBuildQueueItem queueItem) {
+        Long start = queueItem.getBuildStartTimestamp();
+        Long end = queueItem.getBuildEndTimestamp();
+        if (start == null || end == null) {
+            return 0;
         }
-        ArbitraryDataBuildManager.getInstance().arbitraryDataBuildQueue.remove(queueItem.getUniqueKey());
+        return end - start;
     }
 
     private void log(ArbitraryDataBuildQueueItem queueItem, String message) {
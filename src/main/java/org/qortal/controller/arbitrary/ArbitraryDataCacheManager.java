@@ -0,0 +1,434 @@
+package org.qortal.controller.arbitrary;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.qortal.arbitrary.ArbitraryDataBuildQueueItem;
+import org.qortal.arbitrary.ArbitraryDataFile.ResourceIdType;
+import org.qortal.arbitrary.misc.Service;
+import org.qortal.controller.Controller;
+import org.qortal.settings.Settings;
+import org.qortal.utils.FilesystemUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Keeps track of built (decrypted, uncompressed and merged) resources in the temp "reader" directory,
+ * and evicts the least valuable ones when their total size exceeds the configured budget.
+ * <p>
+ * Each built resource is identified by its reader working directory, i.e.
+ * <tt>reader/{resourceIdType}/{resourceId}/{service}/{identifier}</tt>.
+ * <p>
+ * Eviction order is mostly least-recently-used, but frequently used resources get a bonus
+ * so that a burst of one-off requests doesn't flush out popular sites.
+ * Resources belonging to followed names are pinned, and are never evicted to meet the budget,
+ * and neither are resources that are being built.
+ * <p>
+ * This also replaces the old in-memory map used to rate limit checks for newer
+ * transactions, as each entry remembers when it was last confirmed to be up to date.
+ */
+public class ArbitraryDataCacheManager {
+
+    private static final Logger LOGGER = LogManager.getLogger(ArbitraryDataCacheManager.class);
+
+    /** How long a built resource is assumed to be up to date before checking for newer transactions */
+    private static final long VALIDATION_TIMEOUT = 60 * 60 * 1000L; // ms
+
+    /** Resources accessed more recently than this are never evicted, as they are probably being served right now */
+    private static final long MIN_EVICTION_AGE = 60 * 1000L; // ms
+
+    /** Eviction score bonus for each doubling of a resource's access count */
+    private static final long FREQUENCY_BONUS = 60 * 60 * 1000L; // ms
+
+    private static ArbitraryDataCacheManager instance;
+
+    private static class CachedResource {
+        private final Path path;
+        private final ResourceIdType resourceIdType;
+        private final String resourceId;
+
+        /** Total size on disk, or -1 if not yet known */
+        private long size = -1;
+        private long lastAccessed;
+        private long accessCount;
+        /** Time until which we can skip checking for newer transactions */
+        private long validatedUntil;
+
+        private CachedResource(Path path, ResourceIdType resourceIdType, String resourceId, long lastAccessed) {
+            this.path = path;
+            this.resourceIdType = resourceIdType;
+            this.resourceId = resourceId;
+            this.lastAccessed = lastAccessed;
+        }
+
+        private long getScore() {
+            int frequencyLevel = 64 - Long.numberOfLeadingZeros(this.accessCount);
+            return this.lastAccessed + frequencyLevel * FREQUENCY_BONUS;
+        }
+    }
+
+    /** Built resources, keyed by working path. Guarded by <tt>this</tt>. */
+    private final Map<String, CachedResource> cachedResources = new HashMap<>();
+    /** Working paths of resources being built, with number of builds in progress for each. Guarded by <tt>this</tt>. */
+    private final Map<String, Integer> buildingPaths = new HashMap<>();
+    /** Working paths of resources being deleted to meet the budget. Guarded by <tt>this</tt>. */
+    private final Set<String> evictingPaths = new HashSet<>();
+    private long totalSize = 0;
+    private volatile boolean hasScannedExistingResources = false;
+
+    private ArbitraryDataCacheManager() {
+    }
+
+    public static synchronized ArbitraryDataCacheManager getInstance() {
+        if (instance == null)
+            instance = new ArbitraryDataCacheManager();
+
+        return instance;
+    }
+
+    /** Returns true if resource at working path was confirmed to be up to date recently enough to skip checking again. */
+    public synchronized boolean isRecentlyValidated(Path workingPath) {
+        CachedResource cachedResource = this.cachedResources.get(key(workingPath));
+        return cachedResource != null && System.currentTimeMillis() < cachedResource.validatedUntil;
+    }
+
+    /** Records that a request was served from an existing, up-to-date, built resource. */
+    public void onCacheHit(Path workingPath) {
+        Controller.getInstance().stats.builtDataCacheStats.hits.incrementAndGet();
+
+        long now = System.currentTimeMillis();
+
+        synchronized (this) {
+            CachedResource cachedResource = this.getOrCreate(workingPath, now);
+            if (cachedResource == null)
+                return;
+
+            cachedResource.lastAccessed = now;
+            cachedResource.accessCount++;
+            cachedResource.validatedUntil = now + VALIDATION_TIMEOUT;
+        }
+    }
+
+    /** Records that a request couldn't be served from an existing built resource. */
+    public void onCacheMiss(Path workingPath) {
+        Controller.getInstance().stats.builtDataCacheStats.misses.incrementAndGet();
+
+        synchronized (this) {
+            CachedResource cachedResource = this.cachedResources.get(key(workingPath));
+            if (cachedResource != null) {
+                // Still wanted, so don't evict it while it's rebuilt
+                cachedResource.lastAccessed = System.currentTimeMillis();
+                cachedResource.validatedUntil = 0;
+            }
+        }
+    }
+
+    /**
+     * Records that resource at working path is being built, so that it isn't evicted until {@link #onBuildFinished(Path)}.
+     * <p>
+     * Waits for any eviction of the resource that is already in progress.
+     */
+    public synchronized void onBuildStarted(Path workingPath) {
+        String key = key(workingPath);
+
+        boolean wasInterrupted = false;
+        while (this.evictingPaths.contains(key)) {
+            try {
+                this.wait();
+            } catch (InterruptedException e) {
+                // Finish waiting, as building into a directory that is being deleted would fail anyway
+                wasInterrupted = true;
+            }
+        }
+        if (wasInterrupted)
+            Thread.currentThread().interrupt();
+
+        this.buildingPaths.merge(key, 1, Integer::sum);
+    }
+
+    /** Records that a build started by {@link #onBuildStarted(Path)} has finished, successfully or not. */
+    public synchronized void onBuildFinished(Path workingPath) {
+        this.buildingPaths.computeIfPresent(key(workingPath), (key, buildCount) -> buildCount > 1 ? buildCount - 1 : null);
+    }
+
+    /** Records newly built resource, then evicts others if we're now over budget. */
+    public void onResourceBuilt(Path workingPath) {
+        Controller.getInstance().stats.builtDataCacheStats.builds.incrementAndGet();
+
+        long size = calculateSize(workingPath);
+        long now = System.currentTimeMillis();
+
+        synchronized (this) {
+            CachedResource cachedResource = this.getOrCreate(workingPath, now);
+            if (cachedResource == null)
+                return;
+
+            this.setSize(cachedResource, size);
+            cachedResource.lastAccessed = now;
+            cachedResource.accessCount++;
+            cachedResource.validatedUntil = now + VALIDATION_TIMEOUT;
+        }
+
+        this.enforceBudget();
+    }
+
+    /** Ensures that the next request for resource checks for newer transactions. */
+    public synchronized void invalidate(Path workingPath) {
+        CachedResource cachedResource = this.cachedResources.get(key(workingPath));
+        if (cachedResource != null)
+            cachedResource.validatedUntil = 0;
+    }
+
+    /** Forgets about resource, e.g. because its files have been deleted. */
+    public synchronized void remove(Path workingPath) {
+        CachedResource cachedResource = this.cachedResources.remove(key(workingPath));
+        if (cachedResource != null)
+            this.setSize(cachedResource, -1);
+    }
+
+    /** Returns true if resource at working path has been accessed since <tt>timestamp</tt>. */
+    public synchronized boolean wasAccessedSince(Path workingPath, long timestamp) {
+        CachedResource cachedResource = this.cachedResources.get(key(workingPath));
+        return cachedResource != null && cachedResource.lastAccessed >= timestamp;
+    }
+
+    /**
+     * Evicts least valuable built resources until total size is within budget.
+     * <p>
+     * The first call also registers built resources left over from previous runs,
+     * and any call forgets deleted resources and fills in sizes that aren't yet known.
+     */
+    public void enforceBudget() {
+        if (!this.hasScannedExistingResources)
+            this.scanExistingResources();
+        this.removeDeletedResources();
+        this.calculateUnknownSizes();
+
+        Long maxSize = Settings.getInstance().getMaxBuiltDataCacheSize();
+        if (maxSize == null)
+            return;
+
+        long now = System.currentTimeMillis();
+        List<CachedResource> candidates;
+        synchronized (this) {
+            if (this.totalSize <= maxSize)
+                return;
+
+            candidates = this.cachedResources.values().stream()
+                    .filter(cachedResource -> now - cachedResource.lastAccessed >= MIN_EVICTION_AGE)
+                    .sorted(Comparator.comparingLong(CachedResource::getScore))
+                    .collect(Collectors.toList());
+        }
+
+        for (CachedResource candidate : candidates) {
+            synchronized (this) {
+                if (this.totalSize <= maxSize)
+                    return;
+            }
+
+            if (this.isPinned(candidate) || this.isInBuildQueue(candidate))
+                continue;
+
+            String key = key(candidate.path);
+            synchronized (this) {
+                // Also skip if it has been accessed or started building since we chose candidates
+                if (this.buildingPaths.containsKey(key) || now - candidate.lastAccessed < MIN_EVICTION_AGE)
+                    continue;
+
+                // Builds of this resource wait until we're done
+                this.evictingPaths.add(key);
+            }
+
+            LOGGER.debug("Evicting built resource {} ({} bytes) as built data cache is over budget", candidate.path, candidate.size);
+
+            try {
+                FilesystemUtils.safeDeleteDirectory(candidate.path, true);
+            } catch (IOException e) {
+                LOGGER.debug("Unable to evict built resource {}: {}", candidate.path, e.getMessage());
+                continue;
+            } finally {
+                synchronized (this) {
+                    this.evictingPaths.remove(key);
+                    this.notifyAll();
+                }
+            }
+
+            this.remove(candidate.path);
+            Controller.getInstance().stats.builtDataCacheStats.evictions.incrementAndGet();
+        }
+    }
+
+    private boolean isPinned(CachedResource cachedResource) {
+        return cachedResource.resourceIdType == ResourceIdType.NAME
+                && ArbitraryDataStorageManager.getInstance().isFollowingName(cachedResource.resourceId);
+    }
+
+    private boolean isInBuildQueue(CachedResource cachedResource) {
+        Path relativePath = getReaderPath().relativize(cachedResource.path);
+        Service service;
+        try {
+            service = Service.valueOf(relativePath.getName(2).toString());
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+
+        ArbitraryDataBuildQueueItem queueItem = new ArbitraryDataBuildQueueItem(cachedResource.resourceId,
+                cachedResource.resourceIdType, service, relativePath.getName(3).toString());
+        return ArbitraryDataBuildManager.getInstance().isInBuildQueue(queueItem);
+    }
+
+    private void scanExistingResources() {
+        synchronized (this) {
+            // Another thread could have got here first
+            if (this.hasScannedExistingResources)
+                return;
+
+            this.hasScannedExistingResources = true;
+        }
+
+        Path readerPath = getReaderPath();
+        if (!Files.isDirectory(readerPath))
+            return;
+
+        // reader/{resourceIdType}/{resourceId}/{service}/{identifier}
+        List<Path> workingPaths;
+        try (Stream<Path> paths = Files.walk(readerPath, 4)) {
+            workingPaths = paths.filter(path -> readerPath.relativize(path).getNameCount() == 4)
+                    .filter(Files::isDirectory)
+                    .collect(Collectors.toList());
+        } catch (IOException | UncheckedIOException e) {
+            LOGGER.info("Unable to scan built data cache: {}", e.getMessage());
+            return;
+        }
+
+        synchronized (this) {
+            for (Path workingPath : workingPaths) {
+                long lastModified;
+                try {
+                    lastModified = Files.readAttributes(workingPath, BasicFileAttributes.class).lastModifiedTime().toMillis();
+                } catch (IOException e) {
+                    continue;
+                }
+
+                // Existing resources haven't been accessed during this run, so use their build time instead
+                this.getOrCreate(workingPath, lastModified);
+            }
+        }
+    }
+
+    private void removeDeletedResources() {
+        List<Path> paths;
+        synchronized (this) {
+            paths = this.cachedResources.values().stream()
+                    .map(cachedResource -> cachedResource.path)
+                    .collect(Collectors.toList());
+        }
+
+        // e.g. intermediate layers deleted after being combined, or directories removed by cleanup manager
+        for (Path path : paths) {
+            if (!Files.exists(path))
+                this.remove(path);
+        }
+    }
+
+    private void calculateUnknownSizes() {
+        List<Path> unknownSizePaths;
+        synchronized (this) {
+            unknownSizePaths = this.cachedResources.values().stream()
+                    .filter(cachedResource -> cachedResource.size < 0)
+                    .map(cachedResource -> cachedResource.path)
+                    .collect(Collectors.toList());
+        }
+
+        for (Path path : unknownSizePaths) {
+            long size = calculateSize(path);
+
+            synchronized (this) {
+                CachedResource cachedResource = this.cachedResources.get(key(path));
+                if (cachedResource != null && cachedResource.size < 0)
+                    this.setSize(cachedResource, size);
+            }
+        }
+    }
+
+    /** Returns existing entry for working path, or a new one if path is a valid reader working path, otherwise null. */
+    private CachedResource getOrCreate(Path workingPath, long lastAccessed) {
+        String key = key(workingPath);
+        CachedResource cachedResource = this.cachedResources.get(key);
+        if (cachedResource != null)
+            return cachedResource;
+
+        Path relativePath = getReaderPath().relativize(workingPath.toAbsolutePath());
+        if (relativePath.getNameCount() != 4 || relativePath.startsWith(".."))
+            return null;
+
+        ResourceIdType resourceIdType;
+        try {
+            resourceIdType = ResourceIdType.valueOf(relativePath.getName(0).toString());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+
+        cachedResource = new CachedResource(workingPath.toAbsolutePath(), resourceIdType, relativePath.getName(1).toString(), lastAccessed);
+        this.cachedResources.put(key, cachedResource);
+        return cachedResource;
+    }
+
+    private void setSize(CachedResource cachedResource, long size) {
+        if (cachedResource.size > 0)
+            this.totalSize -= cachedResource.size;
+
+        cachedResource.size = size;
+
+        if (size > 0)
+            this.totalSize += size;
+
+        Controller.getInstance().stats.builtDataCacheStats.cachedBytes.set(this.totalSize);
+    }
+
+    public synchronized long getTotalSize() {
+        return this.totalSize;
+    }
+
+    public synchronized int getResourceCount() {
+        return this.cachedResources.size();
+    }
+
+    private static long calculateSize(Path path) {
+        // Built snapshots share files with the served data via hard links, so only count each file once
+        Set<Object> seenFileKeys = new HashSet<>();
+
+        try (Stream<Path> paths = Files.walk(path)) {
+            return paths.filter(Files::isRegularFile).mapToLong(file -> {
+                try {
+                    BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                    Object fileKey = attributes.fileKey();
+                    if (fileKey != null && !seenFileKeys.add(fileKey))
+                        return 0;
+
+                    return attributes.size();
+                } catch (IOException e) {
+                    return 0;
+                }
+            }).sum();
+        } catch (IOException | UncheckedIOException e) {
+            return 0;
+        }
+    }
+
+    private static Path getReaderPath() {
+        return Paths.get(Settings.getInstance().getTempDataPath(), "reader").toAbsolutePath();
+    }
+
+    private static String key(Path workingPath) {
+        return workingPath.toAbsolutePath().toString();
+    }
+
+}
@@ -104,6 +104,9 @@ public class ArbitraryDataCleanupManager extends Thread {
 					this.cleanupTempDirectory(now);
 				}
 
+				// Keep built data within its disk budget
+				ArbitraryDataCacheManager.getInstance().enforceBudget();
+
 				// Any arbitrary transactions we want to fetch data for?
 				try (final Repository repository = RepositoryManager.getRepository()) {
 					List<byte[]> signatures = repository.getTransactionRepository().getSignaturesMatchingCriteria(null, null, null, ARBITRARY_TX_TYPE, null, null, null, ConfirmationStatus.BOTH, limit, offset, true);
@@ -260,32 +263,15 @@ public class ArbitraryDataCleanupManager extends Thread {
 	public List<Path> findPathsWithNoAssociatedTransaction(Repository repository) {
 		List<Path> pathList = new ArrayList<>();
 
-		// Find all hosted paths
-		List<Path> allPaths = ArbitraryDataStorageManager.getInstance().findAllHostedPaths();
-
-		// Loop through each path and find those without matching signatures
-		for (Path path : allPaths) {
+		// Signatures are looked up against the repository by the hosted data catalog,
+		// which only looks up each signature once, rather than on every pass
+		List<String> signatures = ArbitraryDataHostedCatalog.getInstance().getSignaturesWithNoAssociatedTransaction(repository);
+		for (String signature58 : signatures) {
 			if (isStopping) {
 				break;
 			}
-			try {
-				String[] contents = path.toFile().list();
-				if (contents == null || contents.length == 0) {
-					// Ignore empty directories
-					continue;
-				}
-
-				String signature58 = path.getFileName().toString();
-				byte[] signature = Base58.decode(signature58);
-				TransactionData transactionData = repository.getTransactionRepository().fromSignature(signature);
-				if (transactionData == null) {
-					// No transaction data, and no DataException, so we can assume that this data relates to an expired transaction
-					pathList.add(path);
-				}
-
-			} catch (DataException e) {
-				continue;
-			}
+			// No transaction data, and no DataException, so we can assume that this data relates to an expired transaction
+			pathList.add(ArbitraryDataHostedCatalog.getDirectory(signature58));
 		}
 
 		return pathList;
@@ -298,7 +284,9 @@ public class ArbitraryDataCleanupManager extends Thread {
 				return;
 			}
 			LOGGER.info("Found path with no associated transaction: {}", expiredPath.toString());
-			this.safeDeleteDirectory(expiredPath.toFile(), "no matching transaction");
+			if (this.safeDeleteDirectory(expiredPath.toFile(), "no matching transaction")) {
+				ArbitraryDataHostedCatalog.getInstance().onDirectoryDeleted(expiredPath);
+			}
 		}
 	}
 
@@ -337,12 +325,19 @@ public class ArbitraryDataCleanupManager extends Thread {
 		// Delete a batch of random chunks associated with this name
 		// This reduces the chance of too many nodes deleting the same chunk
 		// when they reach their storage limit
-		Path dataPath = Paths.get(Settings.getInstance().getDataPath());
+		// Pick directories from the hosted data catalog, rather than walking from the top of the data directory
+		List<String> signatures = ArbitraryDataHostedCatalog.getInstance().getSignaturesForName(repository, name);
+		if (signatures.isEmpty()) {
+			return;
+		}
+
+		SecureRandom random = new SecureRandom();
 		for (int i=0; i<CHUNK_DELETION_BATCH_SIZE; i++) {
 			if (isStopping) {
 				return;
 			}
-			this.deleteRandomFile(repository, dataPath.toFile(), name);
+			String signature58 = signatures.get(random.nextInt(signatures.size()));
+			this.deleteRandomFile(repository, ArbitraryDataHostedCatalog.getDirectory(signature58).toFile(), name);
 		}
 	}
 
@@ -371,6 +366,10 @@ public class ArbitraryDataCleanupManager extends Thread {
 			if (FilesystemUtils.isChild(randomItem.toPath(), tempDataPath)) {
 				return false;
 			}
+			// Skip the hosted data catalog
+			if (ArbitraryDataHostedCatalog.isCatalogPath(randomItem.toPath())) {
+				return false;
+			}
 			// Make sure it exists
 			if (!randomItem.exists()) {
 				return false;
@@ -420,8 +419,10 @@ public class ArbitraryDataCleanupManager extends Thread {
 				}
 
 				LOGGER.info("Deleting random file {} because we have reached max storage capacity...", randomItem.toString());
+				long size = randomItem.length();
 				boolean success = randomItem.delete();
 				if (success) {
+					ArbitraryDataHostedCatalog.getInstance().onFileDeleted(randomItem.toPath(), size);
 					try {
 						FilesystemUtils.safeDeleteEmptyParentDirectories(randomItem.toPath().getParent());
 					} catch (IOException e) {
@@ -450,8 +451,9 @@ public class ArbitraryDataCleanupManager extends Thread {
 
 				// We're expecting the contents of each subfolder to be a directory
 				if (directory.isDirectory()) {
-					if (!ArbitraryTransactionUtils.isFileRecent(directory.toPath(), now, minAge)) {
-						// File isn't recent, so can be deleted
+					if (!ArbitraryTransactionUtils.isFileRecent(directory.toPath(), now, minAge)
+							&& !ArbitraryDataCacheManager.getInstance().wasAccessedSince(directory.toPath(), now - minAge)) {
+						// File isn't recent, and built data hasn't been served recently, so can be deleted
 						this.safeDeleteDirectory(directory, "not recent");
 					}
 				}
@@ -551,6 +553,7 @@ public class ArbitraryDataCleanupManager extends Thread {
 		LOGGER.info("Deleting directory {} due to reason: {}", directory, reason);
 		try {
 			FilesystemUtils.safeDeleteDirectory(directory.toPath(), true);
+			ArbitraryDataCacheManager.getInstance().remove(directory.toPath());
 			return true;
 		} catch (IOException e) {
 			LOGGER.debug("Unable to delete directory: {}", directory);
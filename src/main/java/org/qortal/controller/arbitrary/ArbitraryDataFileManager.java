@@ -63,8 +63,20 @@ public class ArbitraryDataFileManager extends Thread {
     private Map<String, Long> recentDataRequests = Collections.synchronizedMap(new HashMap<>());
 
 
+    /**
+     * Decides which file hash to request next, and from which peer, for the request threads
+     */
+    private final ArbitraryDataFileRequestScheduler requestScheduler = new ArbitraryDataFileRequestScheduler();
+
+
     public static int MAX_FILE_HASH_RESPONSES = 1000;
 
+    /**
+     * Number of request threads, and so the maximum number of file requests in flight across all peers.
+     * Individual peers are limited further by their window in ArbitraryDataFileRequestScheduler.
+     */
+    private static final int REQUEST_THREAD_COUNT = 16;
+
 
     private ArbitraryDataFileManager() {
     }
@@ -82,9 +94,8 @@ public class ArbitraryDataFileManager extends Thread {
 
         try {
             // Use a fixed thread pool to execute the arbitrary data file requests
-            int threadCount = 10;
-            ExecutorService arbitraryDataFileRequestExecutor = Executors.newFixedThreadPool(threadCount);
-            for (int i = 0; i < threadCount; i++) {
+            ExecutorService arbitraryDataFileRequestExecutor = Executors.newFixedThreadPool(REQUEST_THREAD_COUNT);
+            for (int i = 0; i < REQUEST_THREAD_COUNT; i++) {
                 arbitraryDataFileRequestExecutor.execute(new ArbitraryDataFileRequestThread());
             }
 
@@ -102,6 +113,10 @@ public class ArbitraryDataFileManager extends Thread {
         this.interrupt();
     }
 
+    public ArbitraryDataFileRequestScheduler getRequestScheduler() {
+        return this.requestScheduler;
+    }
+
 
     public void cleanupRequestCache(Long now) {
         if (now == null) {
@@ -154,14 +169,16 @@ public class ArbitraryDataFileManager extends Thread {
                         LOGGER.debug("Received data file {} from peer {}. Time taken: {} ms", receivedArbitraryDataFileMessage.getArbitraryDataFile().getHash58(), peer, (endTime-startTime));
                         receivedAtLeastOneFile = true;
 
-                        // Remove this hash from arbitraryDataFileHashResponses now that we have received it
-                        arbitraryDataFileHashResponses.remove(hash58);
+                        // Remove this hash from arbitraryDataFileHashResponses now that we have received it,
+                        // so that we don't request it again from other peers
+                        arbitraryDataFileHashResponses.removeIf(responseInfo -> hash58.equals(responseInfo.getHash58()));
                     }
                     else {
                         LOGGER.debug("Peer {} didn't respond with data file {} for signature {}. Time taken: {} ms", peer, Base58.encode(hash), Base58.encode(signature), (endTime-startTime));
 
-                        // Remove this hash from arbitraryDataFileHashResponses now that we have failed to receive it
-                        arbitraryDataFileHashResponses.remove(hash58);
+                        // Remove this peer's entry for this hash now that we have failed to receive it,
+                        // but leave other peers' entries so the scheduler can try them instead
+                        arbitraryDataFileHashResponses.removeIf(responseInfo -> hash58.equals(responseInfo.getHash58()) && responseInfo.getPeer() == peer);
 
                         // Stop asking for files from this peer
                         break;
@@ -173,7 +190,7 @@ public class ArbitraryDataFileManager extends Thread {
             }
             else {
                 // Remove this hash from arbitraryDataFileHashResponses because we have a local copy
-                arbitraryDataFileHashResponses.remove(hash58);
+                arbitraryDataFileHashResponses.removeIf(responseInfo -> hash58.equals(responseInfo.getHash58()));
             }
         }
 
@@ -563,8 +580,8 @@ public class ArbitraryDataFileManager extends Thread {
             if (arbitraryDataFile.exists()) {
                 LOGGER.trace("Hash {} exists", hash58);
 
-                // We can serve the file directly as we already have it
-                ArbitraryDataFileMessage arbitraryDataFileMessage = new ArbitraryDataFileMessage(signature, arbitraryDataFile);
+                // We can serve the file directly as we already have it, streaming it from disk when sent
+                ArbitraryDataFileMessage arbitraryDataFileMessage = ArbitraryDataFileMessage.fromFile(signature, arbitraryDataFile);
                 arbitraryDataFileMessage.setId(message.getId());
                 if (!peer.sendMessage(arbitraryDataFileMessage)) {
                     LOGGER.debug("Couldn't sent file");
@@ -608,7 +625,7 @@ public class ArbitraryDataFileManager extends Thread {
                 }
             }
         }
-        catch (DataException e) {
+        catch (DataException | MessageException e) {
             LOGGER.debug("Unable to handle request for arbitrary data file: {}", hash58);
         }
     }
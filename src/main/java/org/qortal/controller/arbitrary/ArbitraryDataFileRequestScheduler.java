@@ -0,0 +1,216 @@
+package org.qortal.controller.arbitrary;
+
+import org.qortal.data.arbitrary.ArbitraryFileListResponseInfo;
+import org.qortal.network.Peer;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Decides which data file (chunk) to request next, and from which peer,
+ * based on the hashes that peers have reported via file list responses.
+ * <p>
+ * - Each peer has a window of concurrent requests. The window grows by one after each
+ * successful response, as long as measured throughput holds up, and halves after a failure.<br>
+ * - Chunks offered by the fewest peers are requested first, so that rare chunks aren't
+ * left until their only sources have gone away.<br>
+ * - Requests for a chunk go to the peer with the best measured throughput that still has
+ * room in its window, falling back to the lowest number of hops.
+ * <p>
+ * Requests are performed by ArbitraryDataFileRequestThreads, so the total number
+ * in flight is also bounded by the number of those threads.
+ */
+public class ArbitraryDataFileRequestScheduler {
+
+    public static final int INITIAL_WINDOW = 2;
+    public static final int MIN_WINDOW = 1;
+    public static final int MAX_WINDOW = 8;
+
+    /** Weighting of newest throughput sample in moving average */
+    private static final double THROUGHPUT_SMOOTHING = 0.3;
+    /** Window only grows if latest throughput is at least this fraction of the average */
+    private static final double THROUGHPUT_GROWTH_THRESHOLD = 0.8;
+    /** Idle peer stats are discarded once we are tracking this many peers */
+    private static final int MAX_TRACKED_PEERS = 500;
+
+    private static class PeerStats {
+        private int inFlight = 0;
+        private int window = INITIAL_WINDOW;
+        /** Moving average, in bytes per millisecond, or 0 if unknown */
+        private double throughput = 0;
+    }
+
+    private final Map<Peer, PeerStats> peerStats = new HashMap<>();
+
+    /** Hashes handed out by nextRequest() but not yet completed, so two threads don't fetch the same chunk */
+    private final Set<String> reservedHashes = new HashSet<>();
+
+    /**
+     * Picks the next chunk request from <tt>responses</tt>, removing it from the list and reserving
+     * a slot in the chosen peer's window. Callers must call {@link #onRequestCompleted(Peer, String, boolean, long, long)}
+     * once the request has finished, whatever the outcome, or {@link #onRequestCancelled(Peer, String)} if no request was sent.
+     * <p>
+     * Expired or invalid responses are removed from the list as a side effect.
+     *
+     * @param responses list of hash responses - caller must hold its lock
+     * @param isHashInProgress returns true for hashes that are already being requested
+     * @param now current time
+     * @param expiry how long responses remain valid, in milliseconds
+     * @return response to act upon, or null if nothing can be requested right now
+     */
+    public synchronized ArbitraryFileListResponseInfo nextRequest(List<ArbitraryFileListResponseInfo> responses,
+                                                                  Predicate<String> isHashInProgress,
+                                                                  long now, long expiry) {
+        // Group candidate responses by hash, keeping the original order for ties
+        Map<String, List<ArbitraryFileListResponseInfo>> candidatesByHash = new LinkedHashMap<>();
+
+        Iterator<ArbitraryFileListResponseInfo> iterator = responses.iterator();
+        while (iterator.hasNext()) {
+            ArbitraryFileListResponseInfo responseInfo = iterator.next();
+
+            if (responseInfo == null || !responseInfo.isValid() || now - responseInfo.getTimestamp() >= expiry) {
+                // Ignore - to be deleted
+                iterator.remove();
+                continue;
+            }
+
+            // Skip if already requesting, but don't remove, as we might want to retry later
+            if (this.reservedHashes.contains(responseInfo.getHash58()) || isHashInProgress.test(responseInfo.getHash58()))
+                continue;
+
+            candidatesByHash.computeIfAbsent(responseInfo.getHash58(), k -> new ArrayList<>()).add(responseInfo);
+        }
+
+        if (candidatesByHash.isEmpty())
+            return null;
+
+        // Rarest chunks first, then those with the closest peers
+        List<List<ArbitraryFileListResponseInfo>> candidateLists = new ArrayList<>(candidatesByHash.values());
+        candidateLists.sort(Comparator.<List<ArbitraryFileListResponseInfo>>comparingInt(ArbitraryDataFileRequestScheduler::countPeers)
+                .thenComparingInt(ArbitraryDataFileRequestScheduler::lowestHops));
+
+        for (List<ArbitraryFileListResponseInfo> candidates : candidateLists) {
+            ArbitraryFileListResponseInfo bestCandidate = null;
+            PeerStats bestStats = null;
+
+            for (ArbitraryFileListResponseInfo candidate : candidates) {
+                PeerStats stats = this.peerStats.get(candidate.getPeer());
+
+                // Peers we haven't heard from yet have an initial window
+                int inFlight = stats != null ? stats.inFlight : 0;
+                int window = stats != null ? stats.window : INITIAL_WINDOW;
+                if (inFlight >= window)
+                    continue;
+
+                if (bestCandidate == null || isBetter(candidate, stats, bestCandidate, bestStats)) {
+                    bestCandidate = candidate;
+                    bestStats = stats;
+                }
+            }
+
+            if (bestCandidate == null)
+                // All peers offering this chunk are busy
+                continue;
+
+            responses.remove(bestCandidate);
+
+            this.trimPeerStats();
+            this.peerStats.computeIfAbsent(bestCandidate.getPeer(), k -> new PeerStats()).inFlight++;
+            this.reservedHashes.add(bestCandidate.getHash58());
+
+            return bestCandidate;
+        }
+
+        return null;
+    }
+
+    /**
+     * Releases window slot reserved by {@link #nextRequest(List, Predicate, long, long)} and adapts peer's window.
+     *
+     * @param bytes size of received data, if successful
+     * @param duration time taken, in milliseconds
+     */
+    public synchronized void onRequestCompleted(Peer peer, String hash58, boolean success, long bytes, long duration) {
+        this.reservedHashes.remove(hash58);
+
+        PeerStats stats = this.peerStats.computeIfAbsent(peer, k -> new PeerStats());
+
+        stats.inFlight = Math.max(0, stats.inFlight - 1);
+
+        if (!success) {
+            stats.window = Math.max(MIN_WINDOW, stats.window / 2);
+            return;
+        }
+
+        double sample = (double) bytes / Math.max(1L, duration);
+
+        if (stats.throughput == 0) {
+            stats.throughput = sample;
+            stats.window = Math.min(MAX_WINDOW, stats.window + 1);
+            return;
+        }
+
+        // Only grow window while extra concurrency isn't hurting per-request throughput
+        if (sample >= stats.throughput * THROUGHPUT_GROWTH_THRESHOLD)
+            stats.window = Math.min(MAX_WINDOW, stats.window + 1);
+
+        stats.throughput = THROUGHPUT_SMOOTHING * sample + (1 - THROUGHPUT_SMOOTHING) * stats.throughput;
+    }
+
+    /**
+     * Releases window slot reserved by {@link #nextRequest(List, Predicate, long, long)} without adapting peer's window,
+     * as no request was sent, e.g. because we already have the chunk.
+     */
+    public synchronized void onRequestCancelled(Peer peer, String hash58) {
+        this.reservedHashes.remove(hash58);
+
+        PeerStats stats = this.peerStats.get(peer);
+        if (stats != null)
+            stats.inFlight = Math.max(0, stats.inFlight - 1);
+    }
+
+    public synchronized int getWindow(Peer peer) {
+        PeerStats stats = this.peerStats.get(peer);
+        return stats != null ? stats.window : INITIAL_WINDOW;
+    }
+
+    public synchronized int getInFlight(Peer peer) {
+        PeerStats stats = this.peerStats.get(peer);
+        return stats != null ? stats.inFlight : 0;
+    }
+
+    private static boolean isBetter(ArbitraryFileListResponseInfo candidate, PeerStats stats,
+                                    ArbitraryFileListResponseInfo bestCandidate, PeerStats bestStats) {
+        double throughput = stats != null ? stats.throughput : 0;
+        double bestThroughput = bestStats != null ? bestStats.throughput : 0;
+
+        if (throughput != bestThroughput)
+            return throughput > bestThroughput;
+
+        return getHops(candidate) < getHops(bestCandidate);
+    }
+
+    private static int getHops(ArbitraryFileListResponseInfo responseInfo) {
+        return responseInfo.getRequestHops() != null ? responseInfo.getRequestHops() : Integer.MAX_VALUE;
+    }
+
+    private static int countPeers(List<ArbitraryFileListResponseInfo> candidates) {
+        Set<Peer> peers = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (ArbitraryFileListResponseInfo candidate : candidates)
+            peers.add(candidate.getPeer());
+
+        return peers.size();
+    }
+
+    private static int lowestHops(List<ArbitraryFileListResponseInfo> candidates) {
+        return candidates.stream().mapToInt(ArbitraryDataFileRequestScheduler::getHops).min().orElse(Integer.MAX_VALUE);
+    }
+
+    private void trimPeerStats() {
+        if (this.peerStats.size() < MAX_TRACKED_PEERS)
+            return;
+
+        this.peerStats.values().removeIf(stats -> stats.inFlight == 0);
+    }
+
+}
@@ -2,6 +2,7 @@ package org.qortal.controller.arbitrary;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.qortal.arbitrary.ArbitraryDataFile;
 import org.qortal.controller.Controller;
 import org.qortal.data.arbitrary.ArbitraryFileListResponseInfo;
 import org.qortal.data.transaction.ArbitraryTransactionData;
@@ -14,7 +15,6 @@ import org.qortal.utils.Base58;
 import org.qortal.utils.NTP;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 public class ArbitraryDataFileRequestThread implements Runnable {
 
@@ -43,54 +43,33 @@ public class ArbitraryDataFileRequestThread implements Runnable {
             return;
         }
 
+        if (now == null) {
+            // Can't check response expiry without NTP
+            Thread.sleep(1000L);
+            return;
+        }
+
         ArbitraryDataFileManager arbitraryDataFileManager = ArbitraryDataFileManager.getInstance();
         String signature58 = null;
         String hash58 = null;
         Peer peer = null;
         boolean shouldProcess = false;
 
+        ArbitraryDataFileRequestScheduler scheduler = arbitraryDataFileManager.getRequestScheduler();
+        ArbitraryFileListResponseInfo responseInfo;
+
         synchronized (arbitraryDataFileManager.arbitraryDataFileHashResponses) {
-            if (!arbitraryDataFileManager.arbitraryDataFileHashResponses.isEmpty()) {
-
-                // Sort by lowest number of node hops first
-                Comparator<ArbitraryFileListResponseInfo> lowestHopsFirstComparator =
-                        Comparator.comparingInt(ArbitraryFileListResponseInfo::getRequestHops);
-                arbitraryDataFileManager.arbitraryDataFileHashResponses.sort(lowestHopsFirstComparator);
-
-                Iterator iterator = arbitraryDataFileManager.arbitraryDataFileHashResponses.iterator();
-                while (iterator.hasNext()) {
-                    if (Controller.isStopping()) {
-                        return;
-                    }
-
-                    ArbitraryFileListResponseInfo responseInfo = (ArbitraryFileListResponseInfo) iterator.next();
-                    if (responseInfo == null) {
-                        iterator.remove();
-                        continue;
-                    }
-
-                    hash58 = responseInfo.getHash58();
-                    peer = responseInfo.getPeer();
-                    signature58 = responseInfo.getSignature58();
-                    Long timestamp = responseInfo.getTimestamp();
-
-                    if (now - timestamp >= ArbitraryDataManager.ARBITRARY_RELAY_TIMEOUT || signature58 == null || peer == null) {
-                        // Ignore - to be deleted
-                        iterator.remove();
-                        continue;
-                    }
-
-                    // Skip if already requesting, but don't remove, as we might want to retry later
-                    if (arbitraryDataFileManager.arbitraryDataFileRequests.containsKey(hash58)) {
-                        // Already requesting - leave this attempt for later
-                        continue;
-                    }
-
-                    // We want to process this file
-                    shouldProcess = true;
-                    iterator.remove();
-                    break;
-                }
+            // Scheduler picks rarest chunk, from a peer with spare capacity
+            responseInfo = scheduler.nextRequest(arbitraryDataFileManager.arbitraryDataFileHashResponses,
+                    arbitraryDataFileManager.arbitraryDataFileRequests::containsKey,
+                    now, ArbitraryDataManager.ARBITRARY_RELAY_TIMEOUT);
+
+            if (responseInfo != null) {
+                // We want to process this file
+                hash58 = responseInfo.getHash58();
+                peer = responseInfo.getPeer();
+                signature58 = responseInfo.getSignature58();
+                shouldProcess = true;
             }
         }
 
@@ -100,25 +79,51 @@ public class ArbitraryDataFileRequestThread implements Runnable {
             return;
         }
 
-        byte[] hash = Base58.decode(hash58);
-        byte[] signature = Base58.decode(signature58);
+        boolean requested = false;
+        boolean success = false;
+        long bytes = 0L;
+        final long startTime = System.currentTimeMillis();
 
-        // Fetch the transaction data
-        try (final Repository repository = RepositoryManager.getRepository()) {
-            ArbitraryTransactionData arbitraryTransactionData = ArbitraryTransactionUtils.fetchTransactionData(repository, signature);
-            if (arbitraryTransactionData == null) {
-                return;
-            }
+        // Everything from here on must release request slot, even if hash or signature can't be decoded
+        try {
+            byte[] hash = Base58.decode(hash58);
+            byte[] signature = Base58.decode(signature58);
+
+            // Fetch the transaction data
+            try (final Repository repository = RepositoryManager.getRepository()) {
+                ArbitraryTransactionData arbitraryTransactionData = ArbitraryTransactionUtils.fetchTransactionData(repository, signature);
+                if (arbitraryTransactionData == null) {
+                    return;
+                }
 
-            if (signature == null || hash == null || peer == null || arbitraryTransactionData == null) {
-                return;
-            }
+                if (signature == null || hash == null || peer == null || arbitraryTransactionData == null) {
+                    return;
+                }
+
+                // Nothing is sent to the peer if we already have the chunk, or are requesting it from someone else
+                ArbitraryDataFile arbitraryDataFile = ArbitraryDataFile.fromHash(arbitraryTransactionData.getData(), signature);
+                arbitraryDataFile.setMetadataHash(arbitraryTransactionData.getMetadataHash());
+                requested = !arbitraryDataFile.chunkExists(hash) && !arbitraryDataFileManager.arbitraryDataFileRequests.containsKey(hash58);
 
-            LOGGER.debug("Fetching file {} from peer {} via request thread...", hash58, peer);
-            arbitraryDataFileManager.fetchArbitraryDataFiles(repository, peer, signature, arbitraryTransactionData, Arrays.asList(hash));
+                LOGGER.debug("Fetching file {} from peer {} via request thread...", hash58, peer);
+                success = arbitraryDataFileManager.fetchArbitraryDataFiles(repository, peer, signature, arbitraryTransactionData, Arrays.asList(hash));
 
-        } catch (DataException e) {
-            LOGGER.debug("Unable to process file hashes: {}", e.getMessage());
+                if (success) {
+                    bytes = ArbitraryDataFile.fromHash(hash, signature).size();
+                }
+
+            } catch (DataException e) {
+                LOGGER.debug("Unable to process file hashes: {}", e.getMessage());
+            }
+        } catch (NumberFormatException e) {
+            LOGGER.debug("Unable to decode file hash {} or signature {}: {}", hash58, signature58, e.getMessage());
+        } finally {
+            // Release this peer's request slot, only adapting its window if we actually asked it for something
+            if (requested) {
+                scheduler.onRequestCompleted(peer, hash58, success, bytes, System.currentTimeMillis() - startTime);
+            } else {
+                scheduler.onRequestCancelled(peer, hash58);
+            }
         }
     }
 }
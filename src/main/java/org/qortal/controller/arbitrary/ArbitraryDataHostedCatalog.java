@@ -0,0 +1,675 @@
+package org.qortal.controller.arbitrary;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.qortal.data.transaction.ArbitraryTransactionData;
+import org.qortal.data.transaction.TransactionData;
+import org.qortal.repository.DataException;
+import org.qortal.repository.Repository;
+import org.qortal.settings.Settings;
+import org.qortal.transaction.Transaction;
+import org.qortal.utils.Base58;
+import org.qortal.utils.NTP;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Catalog of hosted data, keyed by transaction signature, with byte totals overall and per name.
+ * <p>
+ * Kept up to date as data files and chunks are written to or deleted from the data directory,
+ * so that storage accounting, per-name quotas, cleanup and hosted data listings don't need
+ * to walk the data directory.
+ * <p>
+ * The catalog is saved to the data directory on clean shutdown, and the saved copy is removed
+ * once loaded. If the node stops uncleanly, there is no saved copy on the next startup, so the
+ * catalog is rebuilt with a single walk of the data directory instead.
+ * <p>
+ * Transactions are looked up from the repository lazily, and only once per signature,
+ * when totals per name or hosted transaction lists are required.
+ */
+public class ArbitraryDataHostedCatalog {
+
+    private static final Logger LOGGER = LogManager.getLogger(ArbitraryDataHostedCatalog.class);
+
+    private static final String CATALOG_FILENAME = ".hosted-catalog";
+    private static final String CATALOG_HEADER = "qortal-hosted-catalog 1";
+    private static final String MISC_KEY = "_misc";
+
+    /** Minimum interval between repository lookups for a signature that had no matching transaction */
+    private static final long LOOKUP_RETRY_INTERVAL = 10 * 60 * 1000L; // ms
+
+    private static class HostedEntry {
+        private final String signature58;
+        private long size = 0;
+        private int fileCount = 0;
+
+        /** Matching transaction, or null if not yet looked up, or there isn't one */
+        private ArbitraryTransactionData transactionData;
+        /** When the last unsuccessful lookup happened, or 0 if never */
+        private long lastLookupFailure = 0;
+        /** Whether the only file present is the metadata file, or null if unknown */
+        private Boolean isMetadataOnly;
+
+        private HostedEntry(String signature58) {
+            this.signature58 = signature58;
+        }
+
+        private String getName() {
+            return this.transactionData != null ? this.transactionData.getName() : null;
+        }
+    }
+
+    private static ArbitraryDataHostedCatalog instance;
+
+    private final Map<String, HostedEntry> entries = new HashMap<>();
+    private long totalSize = 0;
+    private long miscSize = 0;
+    private int miscFileCount = 0;
+    private boolean isReady = false;
+
+    /** Incremented whenever hosted transaction listings may have changed */
+    private long version = 0;
+    private List<ArbitraryTransactionData> hostedTransactions;
+    private long hostedTransactionsVersion = -1;
+
+    private ArbitraryDataHostedCatalog() {
+    }
+
+    public static synchronized ArbitraryDataHostedCatalog getInstance() {
+        if (instance == null)
+            instance = new ArbitraryDataHostedCatalog();
+
+        return instance;
+    }
+
+
+    // File events
+
+    /**
+     * Returns size of file, or -1 if it doesn't exist.
+     * Callers use this to capture the size of a file before it is replaced or deleted.
+     */
+    public static long getFileSize(Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Records that a file has been written to the data directory.
+     *
+     * @param previousSize size of any file that was replaced, or -1 if there wasn't one
+     */
+    public void onFileWritten(Path path, long previousSize) {
+        String key = this.getKey(path);
+        if (key == null)
+            return;
+
+        long size = getFileSize(path);
+        if (size < 0)
+            return;
+
+        if (previousSize < 0)
+            this.adjust(key, size, 1);
+        else
+            this.adjust(key, size - previousSize, 0);
+    }
+
+    /**
+     * Records that a file has been deleted from the data directory.
+     *
+     * @param size size of the file before it was deleted
+     */
+    public void onFileDeleted(Path path, long size) {
+        if (size < 0)
+            return;
+
+        String key = this.getKey(path);
+        if (key == null)
+            return;
+
+        this.adjust(key, -size, -1);
+    }
+
+    /**
+     * Records that the directory holding a transaction's data has been deleted, along with everything in it.
+     */
+    public synchronized void onDirectoryDeleted(Path directory) {
+        if (directory == null || directory.getFileName() == null)
+            return;
+
+        HostedEntry entry = this.entries.remove(directory.getFileName().toString());
+        if (entry == null)
+            return;
+
+        this.totalSize = Math.max(0, this.totalSize - entry.size);
+        this.version++;
+    }
+
+    /** Returns whether path is the catalog's own file, which mustn't be treated as hosted data */
+    public static boolean isCatalogPath(Path path) {
+        return path.toAbsolutePath().normalize().equals(getCatalogPath().toAbsolutePath().normalize());
+    }
+
+    private synchronized void adjust(String key, long sizeDelta, int fileCountDelta) {
+        // Total is only adjusted by what was actually applied to an entry or the misc bucket,
+        // so that it stays equal to their sum
+        if (key.equals(MISC_KEY)) {
+            long newMiscSize = Math.max(0, this.miscSize + sizeDelta);
+            this.adjustTotalSize(newMiscSize - this.miscSize);
+            this.miscSize = newMiscSize;
+            this.miscFileCount = Math.max(0, this.miscFileCount + fileCountDelta);
+            return;
+        }
+
+        HostedEntry entry = this.entries.get(key);
+        if (entry == null) {
+            if (fileCountDelta <= 0)
+                // Nothing known about this signature, so nothing to adjust
+                return;
+
+            entry = new HostedEntry(key);
+            this.entries.put(key, entry);
+            this.version++;
+        }
+
+        long newSize = Math.max(0, entry.size + sizeDelta);
+        this.adjustTotalSize(newSize - entry.size);
+        entry.size = newSize;
+
+        if (fileCountDelta != 0) {
+            entry.fileCount = Math.max(0, entry.fileCount + fileCountDelta);
+            entry.isMetadataOnly = null;
+            this.version++;
+        }
+
+        if (entry.fileCount == 0) {
+            this.adjustTotalSize(-entry.size);
+            this.entries.remove(key);
+        }
+    }
+
+    private void adjustTotalSize(long sizeDelta) {
+        this.totalSize = Math.max(0, this.totalSize + sizeDelta);
+    }
+
+    /**
+     * Returns catalog key for a file in the data directory: either the signature of the
+     * transaction it belongs to, or MISC_KEY for files not yet associated with a signature.
+     * Returns null for anything else, e.g. files in the temp directory.
+     */
+    private String getKey(Path path) {
+        if (path == null)
+            return null;
+
+        Path absolutePath = path.toAbsolutePath().normalize();
+        Path dataPath = Paths.get(Settings.getInstance().getDataPath()).toAbsolutePath().normalize();
+        Path tempPath = Paths.get(Settings.getInstance().getTempDataPath()).toAbsolutePath().normalize();
+
+        if (!absolutePath.startsWith(dataPath) || absolutePath.startsWith(tempPath))
+            return null;
+
+        // Files are stored as <data>/<xx>/<yy>/<signature58>/<hash58> or <data>/_misc/<xx>/<yy>/<hash58>
+        Path relativePath = dataPath.relativize(absolutePath);
+        if (relativePath.getNameCount() != 4)
+            return null;
+
+        if (relativePath.getName(0).toString().equals(MISC_KEY))
+            return MISC_KEY;
+
+        String signature58 = relativePath.getName(2).toString();
+        if (relativePath.getName(0).toString().length() != 2 || signature58.length() <= 32)
+            return null;
+
+        return signature58;
+    }
+
+
+    // Loading and saving
+
+    public synchronized boolean isReady() {
+        return this.isReady;
+    }
+
+    /**
+     * Loads the catalog saved at the last clean shutdown, or rebuilds it from the data directory if there isn't one.
+     */
+    public void loadOrRebuild() {
+        if (this.isReady())
+            return;
+
+        if (!this.load())
+            this.rebuild();
+    }
+
+    private boolean load() {
+        Path catalogPath = getCatalogPath();
+        if (!Files.exists(catalogPath))
+            return false;
+
+        Map<String, long[]> loadedEntries = new HashMap<>();
+        long[] loadedMisc = new long[2];
+
+        try (BufferedReader reader = Files.newBufferedReader(catalogPath, StandardCharsets.UTF_8)) {
+            if (!CATALOG_HEADER.equals(reader.readLine()))
+                throw new IOException("Unrecognized catalog format");
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t");
+                if (parts.length != 3)
+                    throw new IOException("Malformed catalog entry");
+
+                long[] values = new long[] { Long.parseLong(parts[1]), Long.parseLong(parts[2]) };
+                if (parts[0].equals(MISC_KEY))
+                    loadedMisc = values;
+                else
+                    loadedEntries.put(parts[0], values);
+            }
+
+        } catch (IOException | NumberFormatException e) {
+            LOGGER.info("Unable to load hosted data catalog, so it will be rebuilt: {}", e.getMessage());
+            return false;
+
+        } finally {
+            // Only valid until data is next written, so remove it in case we don't shut down cleanly
+            try {
+                Files.deleteIfExists(catalogPath);
+            } catch (IOException e) {
+                LOGGER.info("Unable to remove hosted data catalog: {}", e.getMessage());
+            }
+        }
+
+        synchronized (this) {
+            // Merge, rather than replace, in case files have been written or deleted since startup
+            for (Map.Entry<String, long[]> loadedEntry : loadedEntries.entrySet()) {
+                HostedEntry entry = this.entries.computeIfAbsent(loadedEntry.getKey(), HostedEntry::new);
+                entry.size += loadedEntry.getValue()[0];
+                entry.fileCount += (int) loadedEntry.getValue()[1];
+                this.totalSize += loadedEntry.getValue()[0];
+            }
+            this.miscSize += loadedMisc[0];
+            this.miscFileCount += (int) loadedMisc[1];
+            this.totalSize += loadedMisc[0];
+
+            this.isReady = true;
+            this.version++;
+        }
+
+        LOGGER.info("Loaded hosted data catalog: {} transactions, {} bytes", loadedEntries.size(), this.getTotalSize());
+        return true;
+    }
+
+    /**
+     * Rebuilds the catalog by walking the data directory.
+     * This can take a long time with a large amount of hosted data, so is only done when there is no saved catalog.
+     */
+    public void rebuild() {
+        LOGGER.info("Building hosted data catalog...");
+
+        Path dataPath = Paths.get(Settings.getInstance().getDataPath());
+        Path tempPath = Paths.get(Settings.getInstance().getTempDataPath()).toAbsolutePath().normalize();
+
+        Set<String> foundKeys = new HashSet<>();
+        long[] miscTotals = new long[2];
+
+        try (DirectoryStream<Path> firstLevel = Files.newDirectoryStream(dataPath, Files::isDirectory)) {
+            for (Path firstLevelPath : firstLevel) {
+                if (firstLevelPath.toAbsolutePath().normalize().startsWith(tempPath))
+                    continue;
+
+                boolean isMisc = firstLevelPath.getFileName().toString().equals(MISC_KEY);
+                if (!isMisc && firstLevelPath.getFileName().toString().length() != 2)
+                    continue;
+
+                for (Path secondLevelPath : listDirectories(firstLevelPath)) {
+                    for (Path thirdLevelPath : listDirectories(secondLevelPath)) {
+                        if (isMisc) {
+                            // <data>/_misc/<xx>/<yy>/<hash58>
+                            long[] totals = countFiles(thirdLevelPath);
+                            miscTotals[0] += totals[0];
+                            miscTotals[1] += totals[1];
+                            continue;
+                        }
+
+                        String signature58 = thirdLevelPath.getFileName().toString();
+                        if (signature58.length() <= 32)
+                            continue;
+
+                        this.recount(signature58, countFiles(thirdLevelPath));
+                        foundKeys.add(signature58);
+                    }
+                }
+            }
+        } catch (IOException | DirectoryIteratorException e) {
+            LOGGER.info("Unable to walk through hosted data: {}", e.getMessage());
+        }
+
+        synchronized (this) {
+            // Forget anything that no longer exists
+            Iterator<HostedEntry> iterator = this.entries.values().iterator();
+            while (iterator.hasNext()) {
+                HostedEntry entry = iterator.next();
+                if (!foundKeys.contains(entry.signature58)) {
+                    this.totalSize -= entry.size;
+                    iterator.remove();
+                }
+            }
+
+            this.totalSize += miscTotals[0] - this.miscSize;
+            this.miscSize = miscTotals[0];
+            this.miscFileCount = (int) miscTotals[1];
+
+            this.isReady = true;
+            this.version++;
+        }
+
+        LOGGER.info("Built hosted data catalog: {} transactions, {} bytes", foundKeys.size(), this.getTotalSize());
+    }
+
+    private synchronized void recount(String signature58, long[] totals) {
+        HostedEntry entry = this.entries.computeIfAbsent(signature58, HostedEntry::new);
+
+        long sizeDelta = totals[0] - entry.size;
+        this.totalSize += sizeDelta;
+
+        entry.size = totals[0];
+        entry.fileCount = (int) totals[1];
+        entry.isMetadataOnly = null;
+        this.version++;
+    }
+
+    private static List<Path> listDirectories(Path path) throws IOException {
+        List<Path> directories = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(path, Files::isDirectory)) {
+            stream.forEach(directories::add);
+        }
+        return directories;
+    }
+
+    /** Returns {total bytes, file count} for the files directly inside a directory */
+    private static long[] countFiles(Path directory) throws IOException {
+        long[] totals = new long[2];
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                // Ignore anything that isn't hosted data, such as the .original indicator file
+                if (path.getFileName().toString().startsWith("."))
+                    continue;
+
+                long size = getFileSize(path);
+                if (size < 0 || Files.isDirectory(path))
+                    continue;
+
+                totals[0] += size;
+                totals[1]++;
+            }
+        }
+        return totals;
+    }
+
+    /**
+     * Saves the catalog so that the next startup doesn't need to rebuild it.
+     * Must only be called once no further data will be written, i.e. at shutdown.
+     */
+    public void save() {
+        List<String> lines = new ArrayList<>();
+
+        synchronized (this) {
+            if (!this.isReady)
+                return;
+
+            lines.add(CATALOG_HEADER);
+            for (HostedEntry entry : this.entries.values())
+                lines.add(String.format("%s\t%d\t%d", entry.signature58, entry.size, entry.fileCount));
+
+            lines.add(String.format("%s\t%d\t%d", MISC_KEY, this.miscSize, this.miscFileCount));
+        }
+
+        Path catalogPath = getCatalogPath();
+        Path tempCatalogPath = catalogPath.resolveSibling(CATALOG_FILENAME + ".tmp");
+        try {
+            Files.createDirectories(catalogPath.getParent());
+            try (BufferedWriter writer = Files.newBufferedWriter(tempCatalogPath, StandardCharsets.UTF_8)) {
+                for (String line : lines) {
+                    writer.write(line);
+                    writer.newLine();
+                }
+            }
+            Files.move(tempCatalogPath, catalogPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        } catch (IOException e) {
+            LOGGER.info("Unable to save hosted data catalog: {}", e.getMessage());
+        }
+    }
+
+    public void shutdown() {
+        this.save();
+
+        synchronized (ArbitraryDataHostedCatalog.class) {
+            instance = null;
+        }
+    }
+
+    private static Path getCatalogPath() {
+        return Paths.get(Settings.getInstance().getDataPath(), CATALOG_FILENAME);
+    }
+
+
+    // Queries
+
+    public synchronized long getTotalSize() {
+        return this.totalSize;
+    }
+
+    public synchronized int getTransactionCount() {
+        return this.entries.size();
+    }
+
+    /** Returns directories holding data for each hosted transaction */
+    public List<Path> getHostedPaths() {
+        List<String> signatures;
+        synchronized (this) {
+            signatures = new ArrayList<>(this.entries.keySet());
+        }
+
+        List<Path> paths = new ArrayList<>(signatures.size());
+        for (String signature58 : signatures)
+            paths.add(getDirectory(signature58));
+
+        return paths;
+    }
+
+    /**
+     * Returns total size of hosted transactions belonging to name, as declared by the transactions
+     * themselves, excluding those where we only hold the metadata file.
+     */
+    public long getNameSize(Repository repository, String name) {
+        long totalSize = 0;
+        for (ArbitraryTransactionData transactionData : this.getHostedTransactions(repository))
+            if (Objects.equals(name, transactionData.getName()))
+                totalSize += transactionData.getSize();
+
+        return totalSize;
+    }
+
+    /** Returns signatures of hosted transactions belonging to name */
+    public List<String> getSignaturesForName(Repository repository, String name) {
+        this.resolve(repository);
+
+        List<String> signatures = new ArrayList<>();
+        synchronized (this) {
+            for (HostedEntry entry : this.entries.values())
+                if (Objects.equals(entry.getName(), name))
+                    signatures.add(entry.signature58);
+        }
+        return signatures;
+    }
+
+    /**
+     * Returns signatures of hosted data for which the repository has no transaction.
+     * Transactions found previously are checked again, in case they have since expired.
+     */
+    public List<String> getSignaturesWithNoAssociatedTransaction(Repository repository) {
+        List<String> resolvedSignatures = new ArrayList<>();
+        synchronized (this) {
+            for (HostedEntry entry : this.entries.values())
+                if (entry.transactionData != null)
+                    resolvedSignatures.add(entry.signature58);
+        }
+
+        for (String signature58 : resolvedSignatures) {
+            try {
+                if (repository.getTransactionRepository().exists(Base58.decode(signature58)))
+                    continue;
+            } catch (DataException e) {
+                continue;
+            }
+
+            synchronized (this) {
+                HostedEntry entry = this.entries.get(signature58);
+                if (entry == null || entry.transactionData == null)
+                    continue;
+
+                // Look it up again next time
+                entry.transactionData = null;
+                entry.lastLookupFailure = 0;
+                this.version++;
+            }
+        }
+
+        this.resolve(repository);
+
+        List<String> signatures = new ArrayList<>();
+        synchronized (this) {
+            for (HostedEntry entry : this.entries.values())
+                if (entry.transactionData == null && entry.lastLookupFailure > 0)
+                    signatures.add(entry.signature58);
+        }
+        return signatures;
+    }
+
+    /**
+     * Returns hosted transactions, newest first, excluding those where we only hold the metadata file.
+     * The same unmodifiable list is returned until the catalog changes.
+     */
+    public List<ArbitraryTransactionData> getHostedTransactions(Repository repository) {
+        this.resolve(repository);
+
+        List<HostedEntry> candidates = new ArrayList<>();
+        synchronized (this) {
+            if (this.hostedTransactions != null && this.hostedTransactionsVersion == this.version)
+                return this.hostedTransactions;
+
+            for (HostedEntry entry : this.entries.values())
+                if (entry.transactionData != null && entry.fileCount > 0)
+                    candidates.add(entry);
+        }
+
+        long version = this.getVersion();
+        List<ArbitraryTransactionData> transactions = new ArrayList<>(candidates.size());
+        for (HostedEntry entry : candidates)
+            if (!this.isMetadataOnly(entry))
+                transactions.add(entry.transactionData);
+
+        // Sort by newest first
+        transactions.sort(Comparator.comparingLong(ArbitraryTransactionData::getTimestamp).reversed());
+
+        List<ArbitraryTransactionData> hostedTransactions = Collections.unmodifiableList(transactions);
+        synchronized (this) {
+            this.hostedTransactions = hostedTransactions;
+            this.hostedTransactionsVersion = version;
+        }
+        return hostedTransactions;
+    }
+
+    public synchronized long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Forces hosted transaction lists to be regenerated, and signatures that had
+     * no matching transaction to be looked up again, e.g. after new data is stored.
+     */
+    public synchronized void invalidate() {
+        for (HostedEntry entry : this.entries.values())
+            entry.lastLookupFailure = 0;
+
+        this.version++;
+    }
+
+    public static Path getDirectory(String signature58) {
+        String sig58First2Chars = signature58.substring(0, 2).toLowerCase();
+        String sig58Next2Chars = signature58.substring(2, 4).toLowerCase();
+        return Paths.get(Settings.getInstance().getDataPath(), sig58First2Chars, sig58Next2Chars, signature58);
+    }
+
+    private boolean isMetadataOnly(HostedEntry entry) {
+        byte[] metadataHash = entry.transactionData.getMetadataHash();
+
+        synchronized (this) {
+            if (metadataHash == null || entry.fileCount != 1)
+                return false;
+
+            if (entry.isMetadataOnly != null)
+                return entry.isMetadataOnly;
+        }
+
+        // Only known after checking which single file we have, and remembered until the file count changes
+        boolean isMetadataOnly = Files.exists(getDirectory(entry.signature58).resolve(Base58.encode(metadataHash)));
+
+        synchronized (this) {
+            if (entry.fileCount == 1)
+                entry.isMetadataOnly = isMetadataOnly;
+        }
+        return isMetadataOnly;
+    }
+
+    /** Looks up transactions for any signatures that haven't been looked up yet */
+    private void resolve(Repository repository) {
+        Long now = NTP.getTime();
+        long retryThreshold = now != null ? now - LOOKUP_RETRY_INTERVAL : Long.MIN_VALUE;
+
+        List<String> unresolvedSignatures = new ArrayList<>();
+        synchronized (this) {
+            for (HostedEntry entry : this.entries.values())
+                if (entry.transactionData == null && entry.lastLookupFailure <= retryThreshold)
+                    unresolvedSignatures.add(entry.signature58);
+        }
+
+        for (String signature58 : unresolvedSignatures) {
+            ArbitraryTransactionData arbitraryTransactionData = null;
+            try {
+                TransactionData transactionData = repository.getTransactionRepository().fromSignature(Base58.decode(signature58));
+                if (transactionData != null && transactionData.getType() == Transaction.TransactionType.ARBITRARY)
+                    arbitraryTransactionData = (ArbitraryTransactionData) transactionData;
+
+            } catch (DataException e) {
+                // Try again next time
+                continue;
+            }
+
+            synchronized (this) {
+                HostedEntry entry = this.entries.get(signature58);
+                if (entry == null || entry.transactionData != null)
+                    continue;
+
+                if (arbitraryTransactionData == null) {
+                    entry.lastLookupFailure = now != null ? now : Long.MAX_VALUE;
+                    continue;
+                }
+
+                entry.transactionData = arbitraryTransactionData;
+                entry.lastLookupFailure = 0;
+                this.version++;
+            }
+        }
+    }
+
+}
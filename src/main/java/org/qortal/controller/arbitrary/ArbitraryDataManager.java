@@ -64,17 +64,6 @@ public class ArbitraryDataManager extends Thread {
 
 	private volatile boolean isStopping = false;
 
-	/**
-	 * Map to keep track of cached arbitrary transaction resources.
-	 * When an item is present in this list with a timestamp in the future, we won't invalidate
-	 * its cache when serving that data. This reduces the amount of database lookups that are needed.
-	 */
-	private Map<String, Long> arbitraryDataCachedResources = Collections.synchronizedMap(new HashMap<>());
-
-	/**
-	 * The amount of time to cache a data resource before it is invalidated
-	 */
-	private static long ARBITRARY_DATA_CACHE_TIMEOUT = 60 * 60 * 1000L; // 60 minutes
 
 
 
@@ -436,56 +425,6 @@ public class ArbitraryDataManager extends Thread {
 		ArbitraryMetadataManager.getInstance().cleanupRequestCache(now);
 	}
 
-	public boolean isResourceCached(ArbitraryDataResource resource) {
-		if (resource == null) {
-			return false;
-		}
-		String key = resource.getUniqueKey();
-
-		// We don't have an entry for this resource ID, it is not cached
-		if (this.arbitraryDataCachedResources == null) {
-			return false;
-		}
-		if (!this.arbitraryDataCachedResources.containsKey(key)) {
-			return false;
-		}
-		Long timestamp = this.arbitraryDataCachedResources.get(key);
-		if (timestamp == null) {
-			return false;
-		}
-
-		// If the timestamp has reached the timeout, we should remove it from the cache
-		long now = NTP.getTime();
-		if (now > timestamp) {
-			this.arbitraryDataCachedResources.remove(key);
-			return false;
-		}
-
-		// Current time hasn't reached the timeout, so treat it as cached
-		return true;
-	}
-
-	public void addResourceToCache(ArbitraryDataResource resource) {
-		if (resource == null) {
-			return;
-		}
-		String key = resource.getUniqueKey();
-
-		// Just in case
-		if (this.arbitraryDataCachedResources == null) {
-			this.arbitraryDataCachedResources = new HashMap<>();
-		}
-
-		Long now = NTP.getTime();
-		if (now == null) {
-			return;
-		}
-
-		// Set the timestamp to now + the timeout
-		Long timestamp = NTP.getTime() + ARBITRARY_DATA_CACHE_TIMEOUT;
-		this.arbitraryDataCachedResources.put(key, timestamp);
-	}
-
 	public void invalidateCache(ArbitraryTransactionData arbitraryTransactionData) {
 		String signature58 = Base58.encode(arbitraryTransactionData.getSignature());
 
@@ -499,9 +438,8 @@ public class ArbitraryDataManager extends Thread {
 			String key = resource.getUniqueKey();
 			LOGGER.trace("Clearing cache for {}...", resource);
 
-			if (this.arbitraryDataCachedResources.containsKey(key)) {
-				this.arbitraryDataCachedResources.remove(key);
-			}
+			// Make sure we check for this newer transaction next time the resource is requested
+			ArbitraryDataCacheManager.getInstance().invalidate(resource.getCachePath());
 
 			// Also remove from the failed builds queue in case it previously failed due to missing chunks
 			ArbitraryDataBuildManager buildManager = ArbitraryDataBuildManager.getInstance();
@@ -509,6 +447,9 @@ public class ArbitraryDataManager extends Thread {
 				buildManager.arbitraryDataFailedBuilds.remove(key);
 			}
 
+			// Any build already in progress is now out of date, so make sure it's rebuilt
+			buildManager.onResourceUpdated(key);
+
 			// Remove from the signature requests list now that we have all files for this signature
 			ArbitraryDataFileListManager.getInstance().removeFromSignatureRequests(signature58);
 
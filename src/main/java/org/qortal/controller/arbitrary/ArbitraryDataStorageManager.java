@@ -1,30 +1,20 @@
 package org.qortal.controller.arbitrary;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.qortal.data.transaction.ArbitraryTransactionData;
-import org.qortal.data.transaction.TransactionData;
 import org.qortal.list.ResourceListManager;
-import org.qortal.repository.DataException;
 import org.qortal.repository.Repository;
 import org.qortal.settings.Settings;
-import org.qortal.transaction.Transaction;
 import org.qortal.utils.ArbitraryTransactionUtils;
-import org.qortal.utils.Base58;
-import org.qortal.utils.FilesystemUtils;
 import org.qortal.utils.NTP;
 
 import java.io.IOException;
-import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
-import java.util.Objects;
-import java.util.stream.Collectors;
 
 public class ArbitraryDataStorageManager extends Thread {
 
@@ -46,6 +36,7 @@ public class ArbitraryDataStorageManager extends Thread {
     private long lastDirectorySizeCheck = 0;
 
     private List<ArbitraryTransactionData> hostedTransactions;
+    private List<String[]> hostedTransactionSearchKeys;
 
     private String searchQuery;
     private List<ArbitraryTransactionData> searchResultsTransactions;
@@ -105,6 +96,7 @@ public class ArbitraryDataStorageManager extends Thread {
     public void shutdown() {
         isStopping = true;
         this.interrupt();
+        ArbitraryDataHostedCatalog.getInstance().shutdown();
         instance = null;
     }
 
@@ -258,7 +250,7 @@ public class ArbitraryDataStorageManager extends Thread {
         return ResourceListManager.getInstance().listContains("blockedNames", name, false);
     }
 
-    private boolean isFollowingName(String name) {
+    public boolean isFollowingName(String name) {
         return ResourceListManager.getInstance().listContains("followedNames", name, false);
     }
 
@@ -272,65 +264,37 @@ public class ArbitraryDataStorageManager extends Thread {
 
 
     public List<ArbitraryTransactionData> loadAllHostedTransactions(Repository repository) {
-        
-        List<ArbitraryTransactionData> arbitraryTransactionDataList = new ArrayList<>();
-
-        // Find all hosted paths
-        List<Path> allPaths = this.findAllHostedPaths();
-
-        // Loop through each path and attempt to match it to a signature
-        for (Path path : allPaths) {
-            try {
-                String[] contents = path.toFile().list();
-                if (contents == null || contents.length == 0) {
-                    // Ignore empty directories
-                    continue;
-                }
-
-                String signature58 = path.getFileName().toString();
-                byte[] signature = Base58.decode(signature58);
-                TransactionData transactionData = repository.getTransactionRepository().fromSignature(signature);
-                if (transactionData == null || transactionData.getType() != Transaction.TransactionType.ARBITRARY) {
-                    continue;
-                }
-                ArbitraryTransactionData arbitraryTransactionData = (ArbitraryTransactionData) transactionData;
-
-                // Make sure to exclude metadata-only resources
-                if (arbitraryTransactionData.getMetadataHash() != null) {
-                    if (contents.length == 1) {
-                        String metadataHash58 = Base58.encode(arbitraryTransactionData.getMetadataHash());
-                        if (Objects.equals(metadataHash58, contents[0])) {
-                            // We only have the metadata file for this resource, not the actual data, so exclude it
-                            continue;
-                        }
-                    }
-                }
+        return ArbitraryDataHostedCatalog.getInstance().getHostedTransactions(repository);
+    }
 
-                // Found some data matching a transaction, so add it to the list
-                arbitraryTransactionDataList.add(arbitraryTransactionData);
+    /**
+     * Returns hosted transactions from the catalog, along with lowercase search keys
+     * for each, which are only regenerated when the hosted data changes.
+     */
+    private synchronized List<ArbitraryTransactionData> getHostedTransactions(Repository repository) {
+        List<ArbitraryTransactionData> transactions = this.loadAllHostedTransactions(repository);
+        if (transactions == this.hostedTransactions) {
+            return transactions;
+        }
 
-            } catch (DataException e) {
-                continue;
-            }
+        List<String[]> searchKeys = new ArrayList<>(transactions.size());
+        for (ArbitraryTransactionData transactionData : transactions) {
+            String name = transactionData.getName() != null ? transactionData.getName().toLowerCase() : null;
+            String identifier = transactionData.getIdentifier() != null ? transactionData.getIdentifier().toLowerCase() : null;
+            searchKeys.add(new String[] { name, identifier });
         }
 
-        // Sort by newest first
-        arbitraryTransactionDataList.sort(Comparator.comparingLong(ArbitraryTransactionData::getTimestamp).reversed());
+        this.hostedTransactions = transactions;
+        this.hostedTransactionSearchKeys = searchKeys;
+        this.searchResultsTransactions = null;
 
-        return arbitraryTransactionDataList;
+        return transactions;
     }
+
     // Hosted data
 
     public List<ArbitraryTransactionData> listAllHostedTransactions(Repository repository, Integer limit, Integer offset) {
-        // Load from cache if we can, to avoid disk reads
-
-        if (this.hostedTransactions != null) {
-            return ArbitraryTransactionUtils.limitOffsetTransactions(this.hostedTransactions, limit, offset);
-        }
-
-        this.hostedTransactions = this.loadAllHostedTransactions(repository);
-
-        return ArbitraryTransactionUtils.limitOffsetTransactions(this.hostedTransactions, limit, offset);
+        return ArbitraryTransactionUtils.limitOffsetTransactions(this.getHostedTransactions(repository), limit, offset);
     }
     
     /**
@@ -343,39 +307,27 @@ public class ArbitraryDataStorageManager extends Thread {
      * @return
      */
 
-    public List<ArbitraryTransactionData> searchHostedTransactions(Repository repository, String query, Integer limit, Integer offset) {
-        // Load from results cache if we can (results that exists for the same query), to avoid disk reads
+    public synchronized List<ArbitraryTransactionData> searchHostedTransactions(Repository repository, String query, Integer limit, Integer offset) {
+        // Refresh hosted transactions first, which also discards search results if hosted data has changed
+        List<ArbitraryTransactionData> transactions = this.getHostedTransactions(repository);
+
+        // Load from results cache if we can (results that exists for the same query)
         if (this.searchResultsTransactions != null && this.searchQuery.equals(query.toLowerCase())) {
             return ArbitraryTransactionUtils.limitOffsetTransactions(this.searchResultsTransactions, limit, offset);
         }
 
-        // Using cache if we can, to avoid disk reads
-        if (this.hostedTransactions == null) {
-            this.hostedTransactions = this.loadAllHostedTransactions(repository);
-        }
-
         this.searchQuery = query.toLowerCase(); //set the searchQuery so that it can be checked on the next call
 
+        // Hosted transactions are already sorted by newest first, so results will be too
         List<ArbitraryTransactionData> searchResultsList = new ArrayList<>();
-
-        // Loop through cached hostedTransactions
-        for (ArbitraryTransactionData atd : this.hostedTransactions) {
-            try {
-               if (atd.getName() != null && atd.getName().toLowerCase().contains(this.searchQuery)) {
-                   searchResultsList.add(atd);
-               }
-               else if (atd.getIdentifier() != null && atd.getIdentifier().toLowerCase().contains(this.searchQuery)) {
-                   searchResultsList.add(atd);
-               }
-
-            } catch (Exception e) {
-                continue;
+        for (int i = 0; i < transactions.size(); i++) {
+            String[] searchKeys = this.hostedTransactionSearchKeys.get(i);
+            if ((searchKeys[0] != null && searchKeys[0].contains(this.searchQuery))
+                    || (searchKeys[1] != null && searchKeys[1].contains(this.searchQuery))) {
+                searchResultsList.add(transactions.get(i));
             }
         }
 
-        // Sort by newest first
-        searchResultsList.sort(Comparator.comparingLong(ArbitraryTransactionData::getTimestamp).reversed());
-
         // Update cache
         this.searchResultsTransactions = searchResultsList;
 
@@ -383,35 +335,14 @@ public class ArbitraryDataStorageManager extends Thread {
     }
 
     /**
-     * Warning: this method will walk through the entire data directory
-     * Do not call it too frequently as it could create high disk load
-     * in environments with a large amount of hosted data.
-     * @return a list of paths that are being hosted
+     * @return a list of paths that are being hosted, from the hosted data catalog
      */
     public List<Path> findAllHostedPaths() {
-        Path dataPath = Paths.get(Settings.getInstance().getDataPath());
-        Path tempPath = Paths.get(Settings.getInstance().getTempDataPath());
-
-        // Walk through 3 levels of the file tree and find directories that are greater than 32 characters in length
-        // Also exclude the _temp and _misc paths if present
-        List<Path> allPaths = new ArrayList<>();
-        try {
-            allPaths = Files.walk(dataPath, 3)
-                    .filter(Files::isDirectory)
-                    .filter(path -> !path.toAbsolutePath().toString().contains(tempPath.toAbsolutePath().toString())
-                            && !path.toString().contains("_misc")
-                            && path.getFileName().toString().length() > 32)
-                    .collect(Collectors.toList());
-        }
-        catch (IOException | UncheckedIOException e) {
-            LOGGER.info("Unable to walk through hosted data: {}", e.getMessage());
-        }
-
-        return allPaths;
+        return ArbitraryDataHostedCatalog.getInstance().getHostedPaths();
     }
 
     public void invalidateHostedTransactionsCache() {
-        this.hostedTransactions = null;
+        ArbitraryDataHostedCatalog.getInstance().invalidate();
     }
 
 
@@ -453,21 +384,15 @@ public class ArbitraryDataStorageManager extends Thread {
             return;
         }
 
-        // Calculate total size of data directory
-        LOGGER.trace("Calculating data directory size...");
-        Path dataDirectoryPath = Paths.get(Settings.getInstance().getDataPath());
-        if (dataDirectoryPath.toFile().exists()) {
-            totalSize += FileUtils.sizeOfDirectory(dataDirectoryPath.toFile());
+        // Total size of hosted data comes from the catalog, which only walks the data directory if it has to be rebuilt
+        ArbitraryDataHostedCatalog hostedCatalog = ArbitraryDataHostedCatalog.getInstance();
+        if (!hostedCatalog.isReady()) {
+            hostedCatalog.loadOrRebuild();
         }
+        totalSize += hostedCatalog.getTotalSize();
 
-        // Add total size of temp directory, if it's not already inside the data directory
-        Path tempDirectoryPath = Paths.get(Settings.getInstance().getTempDataPath());
-        if (tempDirectoryPath.toFile().exists()) {
-            if (!FilesystemUtils.isChild(tempDirectoryPath, dataDirectoryPath)) {
-                LOGGER.trace("Calculating temp directory size...");
-                totalSize += FileUtils.sizeOfDirectory(dataDirectoryPath.toFile());
-            }
-        }
+        // Add total size of built resources, which live in the temp directory
+        totalSize += ArbitraryDataCacheManager.getInstance().getTotalSize();
 
         this.totalDirectorySize = totalSize;
         this.lastDirectorySizeCheck = now;
@@ -528,20 +453,8 @@ public class ArbitraryDataStorageManager extends Thread {
             return true;
         }
 
-        long totalSizeForName = 0;
         long maxStoragePerName = this.storageCapacityPerName(threshold);
-
-        // Fetch all hosted transactions
-        List<ArbitraryTransactionData> hostedTransactions = this.listAllHostedTransactions(repository, null, null);
-        for (ArbitraryTransactionData transactionData : hostedTransactions) {
-            String transactionName = transactionData.getName();
-            if (!Objects.equals(name, transactionName)) {
-                // Transaction relates to a different name
-                continue;
-            }
-
-            totalSizeForName += transactionData.getSize();
-        }
+        long totalSizeForName = ArbitraryDataHostedCatalog.getInstance().getNameSize(repository, name);
 
         // Have we reached the limit for this name?
         if (totalSizeForName > maxStoragePerName) {
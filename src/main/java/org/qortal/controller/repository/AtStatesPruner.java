@@ -3,113 +3,120 @@ package org.qortal.controller.repository;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.qortal.controller.Controller;
-import org.qortal.controller.Synchronizer;
 import org.qortal.data.block.BlockData;
 import org.qortal.repository.DataException;
 import org.qortal.repository.Repository;
-import org.qortal.repository.RepositoryManager;
 import org.qortal.settings.Settings;
-import org.qortal.utils.NTP;
 
-public class AtStatesPruner implements Runnable {
+public class AtStatesPruner implements MaintenanceJob {
 
 	private static final Logger LOGGER = LogManager.getLogger(AtStatesPruner.class);
 
+	/** How long to back off, once fully pruned, to save CPU for syncing. (ms) */
+	private static final long CAUGHT_UP_DELAY = 5 * 60 * 1000L;
+
+	private boolean archiveMode = false;
+	private int pruneStartHeight;
+
 	@Override
-	public void run() {
-		Thread.currentThread().setName("AT States pruner");
+	public String getName() {
+		return "AT states pruner";
+	}
 
+	@Override
+	public boolean init(Repository repository) throws DataException {
 		if (Settings.getInstance().isLite()) {
 			// Nothing to prune in lite mode
-			return;
+			return false;
 		}
 
-		boolean archiveMode = false;
 		if (!Settings.getInstance().isTopOnly()) {
 			// Top-only mode isn't enabled, but we might want to prune for the purposes of archiving
 			if (!Settings.getInstance().isArchiveEnabled()) {
 				// No pruning or archiving, so we must not prune anything
-				return;
+				return false;
 			}
 			else {
 				// We're allowed to prune blocks that have already been archived
-				archiveMode = true;
+				this.archiveMode = true;
 			}
 		}
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
-			int pruneStartHeight = repository.getATRepository().getAtPruneHeight();
+		this.pruneStartHeight = repository.getATRepository().getAtPruneHeight();
+
+		repository.discardChanges();
+		repository.getATRepository().rebuildLatestAtStates();
+
+		return true;
+	}
+
+	@Override
+	public long getInterval() {
+		return Settings.getInstance().getAtStatesPruneInterval();
+	}
+
+	@Override
+	public Integer getHeight() {
+		return this.pruneStartHeight;
+	}
+
+	@Override
+	public Result runBatch(Repository repository, double batchScale) throws DataException {
+		BlockData chainTip = Controller.getInstance().getChainTip();
+		if (chainTip == null)
+			return Result.caughtUp(0);
 
-			repository.discardChanges();
+		// Prune AT states for all blocks up until our latest minus pruneBlockLimit
+		final int ourLatestHeight = chainTip.getHeight();
+		int upperPrunableHeight = ourLatestHeight - Settings.getInstance().getPruneBlockLimit();
+
+		// In archive mode we are only allowed to trim blocks that have already been archived
+		if (this.archiveMode) {
+			upperPrunableHeight = repository.getBlockArchiveRepository().getBlockArchiveHeight() - 1;
+
+			// TODO: validate that the actual archived data exists before pruning it?
+		}
+
+		int upperBatchHeight = this.pruneStartHeight + MaintenanceJob.scaleBatchSize(Settings.getInstance().getAtStatesPruneBatchSize(), batchScale);
+		int upperPruneHeight = Math.min(upperBatchHeight, upperPrunableHeight);
+
+		if (this.pruneStartHeight >= upperPruneHeight)
+			return Result.caughtUp(0);
+
+		LOGGER.debug(String.format("Pruning AT states between blocks %d and %d...", this.pruneStartHeight, upperPruneHeight));
+
+		int numAtStatesPruned = repository.getATRepository().pruneAtStates(this.pruneStartHeight, upperPruneHeight);
+		repository.saveChanges();
+		int trimLimit = MaintenanceJob.scaleBatchSize(Settings.getInstance().getAtStatesTrimLimit(), batchScale);
+		int numAtStateDataRowsTrimmed = repository.getATRepository().trimAtStates(
+				this.pruneStartHeight, upperPruneHeight, trimLimit);
+		repository.saveChanges();
+
+		if (numAtStatesPruned > 0 || numAtStateDataRowsTrimmed > 0) {
+			final int finalPruneStartHeight = this.pruneStartHeight;
+			LOGGER.debug(() -> String.format("Pruned %d AT state%s between blocks %d and %d",
+					numAtStatesPruned, (numAtStatesPruned != 1 ? "s" : ""),
+					finalPruneStartHeight, upperPruneHeight));
+
+			return Result.moreWork(numAtStatesPruned + numAtStateDataRowsTrimmed);
+		}
+
+		// Can we move onto next batch?
+		if (upperPrunableHeight > upperBatchHeight) {
+			this.pruneStartHeight = upperBatchHeight;
+			repository.getATRepository().setAtPruneHeight(this.pruneStartHeight);
 			repository.getATRepository().rebuildLatestAtStates();
+			repository.saveChanges();
 
-			while (!Controller.isStopping()) {
-				repository.discardChanges();
-
-				Thread.sleep(Settings.getInstance().getAtStatesPruneInterval());
-
-				BlockData chainTip = Controller.getInstance().getChainTip();
-				if (chainTip == null || NTP.getTime() == null)
-					continue;
-
-				// Don't even attempt if we're mid-sync as our repository requests will be delayed for ages
-				if (Synchronizer.getInstance().isSynchronizing())
-					continue;
-
-				// Prune AT states for all blocks up until our latest minus pruneBlockLimit
-				final int ourLatestHeight = chainTip.getHeight();
-				int upperPrunableHeight = ourLatestHeight - Settings.getInstance().getPruneBlockLimit();
-
-				// In archive mode we are only allowed to trim blocks that have already been archived
-				if (archiveMode) {
-					upperPrunableHeight = repository.getBlockArchiveRepository().getBlockArchiveHeight() - 1;
-
-					// TODO: validate that the actual archived data exists before pruning it?
-				}
-
-				int upperBatchHeight = pruneStartHeight + Settings.getInstance().getAtStatesPruneBatchSize();
-				int upperPruneHeight = Math.min(upperBatchHeight, upperPrunableHeight);
-
-				if (pruneStartHeight >= upperPruneHeight)
-					continue;
-
-				LOGGER.debug(String.format("Pruning AT states between blocks %d and %d...", pruneStartHeight, upperPruneHeight));
-
-				int numAtStatesPruned = repository.getATRepository().pruneAtStates(pruneStartHeight, upperPruneHeight);
-				repository.saveChanges();
-				int numAtStateDataRowsTrimmed = repository.getATRepository().trimAtStates(
-						pruneStartHeight, upperPruneHeight, Settings.getInstance().getAtStatesTrimLimit());
-				repository.saveChanges();
-
-				if (numAtStatesPruned > 0 || numAtStateDataRowsTrimmed > 0) {
-					final int finalPruneStartHeight = pruneStartHeight;
-					LOGGER.debug(() -> String.format("Pruned %d AT state%s between blocks %d and %d",
-							numAtStatesPruned, (numAtStatesPruned != 1 ? "s" : ""),
-							finalPruneStartHeight, upperPruneHeight));
-				} else {
-					// Can we move onto next batch?
-					if (upperPrunableHeight > upperBatchHeight) {
-						pruneStartHeight = upperBatchHeight;
-						repository.getATRepository().setAtPruneHeight(pruneStartHeight);
-						repository.getATRepository().rebuildLatestAtStates();
-						repository.saveChanges();
-
-						final int finalPruneStartHeight = pruneStartHeight;
-						LOGGER.debug(() -> String.format("Bumping AT state base prune height to %d", finalPruneStartHeight));
-					}
-					else {
-						// We've pruned up to the upper prunable height
-						// Back off for a while to save CPU for syncing
-						repository.discardChanges();
-						Thread.sleep(5*60*1000L);
-					}
-				}
-			}
-		} catch (DataException e) {
-			LOGGER.warn(String.format("Repository issue trying to prune AT states: %s", e.getMessage()));
-		} catch (InterruptedException e) {
-			// Time to exit
+			final int finalPruneStartHeight = this.pruneStartHeight;
+			LOGGER.debug(() -> String.format("Bumping AT state base prune height to %d", finalPruneStartHeight));
+
+			return Result.moreWork(0);
 		}
+
+		// We've pruned up to the upper prunable height
+		// Back off for a while to save CPU for syncing
+		return Result.retryAfter(CAUGHT_UP_DELAY);
 	}
 
 }
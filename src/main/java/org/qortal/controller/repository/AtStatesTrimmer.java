@@ -3,85 +3,95 @@ package org.qortal.controller.repository;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.qortal.controller.Controller;
-import org.qortal.controller.Synchronizer;
 import org.qortal.data.block.BlockData;
 import org.qortal.repository.DataException;
 import org.qortal.repository.Repository;
-import org.qortal.repository.RepositoryManager;
 import org.qortal.settings.Settings;
 import org.qortal.utils.NTP;
 
-public class AtStatesTrimmer implements Runnable {
+public class AtStatesTrimmer implements MaintenanceJob {
 
 	private static final Logger LOGGER = LogManager.getLogger(AtStatesTrimmer.class);
 
+	private int trimStartHeight;
+
 	@Override
-	public void run() {
-		Thread.currentThread().setName("AT States trimmer");
+	public String getName() {
+		return "AT states trimmer";
+	}
 
+	@Override
+	public boolean init(Repository repository) throws DataException {
 		if (Settings.getInstance().isLite()) {
 			// Nothing to trim in lite mode
-			return;
+			return false;
 		}
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
-			int trimStartHeight = repository.getATRepository().getAtTrimHeight();
+		this.trimStartHeight = repository.getATRepository().getAtTrimHeight();
+
+		repository.discardChanges();
+		repository.getATRepository().rebuildLatestAtStates();
+
+		return true;
+	}
+
+	@Override
+	public long getInterval() {
+		return Settings.getInstance().getAtStatesTrimInterval();
+	}
+
+	@Override
+	public Integer getHeight() {
+		return this.trimStartHeight;
+	}
+
+	@Override
+	public Result runBatch(Repository repository, double batchScale) throws DataException {
+		BlockData chainTip = Controller.getInstance().getChainTip();
+		Long now = NTP.getTime();
+		if (chainTip == null || now == null)
+			return Result.caughtUp(0);
+
+		long currentTrimmableTimestamp = now - Settings.getInstance().getAtStatesMaxLifetime();
+		// We want to keep AT states near the tip of our copy of blockchain so we can process/orphan nearby blocks
+		long chainTrimmableTimestamp = chainTip.getTimestamp() - Settings.getInstance().getAtStatesMaxLifetime();
+
+		long upperTrimmableTimestamp = Math.min(currentTrimmableTimestamp, chainTrimmableTimestamp);
+		int upperTrimmableHeight = repository.getBlockRepository().getHeightFromTimestamp(upperTrimmableTimestamp);
+
+		int upperBatchHeight = this.trimStartHeight + MaintenanceJob.scaleBatchSize(Settings.getInstance().getAtStatesTrimBatchSize(), batchScale);
+		int upperTrimHeight = Math.min(upperBatchHeight, upperTrimmableHeight);
+
+		if (this.trimStartHeight >= upperTrimHeight)
+			return Result.caughtUp(0);
 
-			repository.discardChanges();
+		int trimLimit = MaintenanceJob.scaleBatchSize(Settings.getInstance().getAtStatesTrimLimit(), batchScale);
+		int numAtStatesTrimmed = repository.getATRepository().trimAtStates(this.trimStartHeight, upperTrimHeight, trimLimit);
+		repository.saveChanges();
+
+		if (numAtStatesTrimmed > 0) {
+			final int finalTrimStartHeight = this.trimStartHeight;
+			LOGGER.debug(() -> String.format("Trimmed %d AT state%s between blocks %d and %d",
+					numAtStatesTrimmed, (numAtStatesTrimmed != 1 ? "s" : ""),
+					finalTrimStartHeight, upperTrimHeight));
+
+			return Result.moreWork(numAtStatesTrimmed);
+		}
+
+		// Can we move onto next batch?
+		if (upperTrimmableHeight > upperBatchHeight) {
+			this.trimStartHeight = upperBatchHeight;
+			repository.getATRepository().setAtTrimHeight(this.trimStartHeight);
 			repository.getATRepository().rebuildLatestAtStates();
+			repository.saveChanges();
+
+			final int finalTrimStartHeight = this.trimStartHeight;
+			LOGGER.debug(() -> String.format("Bumping AT state base trim height to %d", finalTrimStartHeight));
 
-			while (!Controller.isStopping()) {
-				repository.discardChanges();
-
-				Thread.sleep(Settings.getInstance().getAtStatesTrimInterval());
-
-				BlockData chainTip = Controller.getInstance().getChainTip();
-				if (chainTip == null || NTP.getTime() == null)
-					continue;
-
-				// Don't even attempt if we're mid-sync as our repository requests will be delayed for ages
-				if (Synchronizer.getInstance().isSynchronizing())
-					continue;
-
-				long currentTrimmableTimestamp = NTP.getTime() - Settings.getInstance().getAtStatesMaxLifetime();
-				// We want to keep AT states near the tip of our copy of blockchain so we can process/orphan nearby blocks
-				long chainTrimmableTimestamp = chainTip.getTimestamp() - Settings.getInstance().getAtStatesMaxLifetime();
-
-				long upperTrimmableTimestamp = Math.min(currentTrimmableTimestamp, chainTrimmableTimestamp);
-				int upperTrimmableHeight = repository.getBlockRepository().getHeightFromTimestamp(upperTrimmableTimestamp);
-
-				int upperBatchHeight = trimStartHeight + Settings.getInstance().getAtStatesTrimBatchSize();
-				int upperTrimHeight = Math.min(upperBatchHeight, upperTrimmableHeight);
-
-				if (trimStartHeight >= upperTrimHeight)
-					continue;
-
-				int numAtStatesTrimmed = repository.getATRepository().trimAtStates(trimStartHeight, upperTrimHeight, Settings.getInstance().getAtStatesTrimLimit());
-				repository.saveChanges();
-
-				if (numAtStatesTrimmed > 0) {
-					final int finalTrimStartHeight = trimStartHeight;
-					LOGGER.debug(() -> String.format("Trimmed %d AT state%s between blocks %d and %d",
-							numAtStatesTrimmed, (numAtStatesTrimmed != 1 ? "s" : ""),
-							finalTrimStartHeight, upperTrimHeight));
-				} else {
-					// Can we move onto next batch?
-					if (upperTrimmableHeight > upperBatchHeight) {
-						trimStartHeight = upperBatchHeight;
-						repository.getATRepository().setAtTrimHeight(trimStartHeight);
-						repository.getATRepository().rebuildLatestAtStates();
-						repository.saveChanges();
-
-						final int finalTrimStartHeight = trimStartHeight;
-						LOGGER.debug(() -> String.format("Bumping AT state base trim height to %d", finalTrimStartHeight));
-					}
-				}
-			}
-		} catch (DataException e) {
-			LOGGER.warn(String.format("Repository issue trying to trim AT states: %s", e.getMessage()));
-		} catch (InterruptedException e) {
-			// Time to exit
+			return Result.moreWork(0);
 		}
+
+		return Result.caughtUp(0);
 	}
 
 }
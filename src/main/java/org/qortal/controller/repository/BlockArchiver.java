@@ -3,112 +3,111 @@ package org.qortal.controller.repository;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.qortal.controller.Controller;
-import org.qortal.controller.Synchronizer;
 import org.qortal.data.block.BlockData;
 import org.qortal.repository.*;
 import org.qortal.settings.Settings;
 import org.qortal.transform.TransformationException;
-import org.qortal.utils.NTP;
 
 import java.io.IOException;
 
-public class BlockArchiver implements Runnable {
+public class BlockArchiver implements MaintenanceJob {
 
 	private static final Logger LOGGER = LogManager.getLogger(BlockArchiver.class);
 
 	private static final long INITIAL_SLEEP_PERIOD = 0L; // TODO: 5 * 60 * 1000L + 1234L; // ms
 
-	public void run() {
-		Thread.currentThread().setName("Block archiver");
+	private int startHeight;
 
+	@Override
+	public String getName() {
+		return "Block archiver";
+	}
+
+	@Override
+	public boolean init(Repository repository) throws DataException {
 		if (!Settings.getInstance().isArchiveEnabled() || Settings.getInstance().isLite()) {
-			return;
+			return false;
 		}
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
-			// Don't even start building until initial rush has ended
-			Thread.sleep(INITIAL_SLEEP_PERIOD);
+		this.startHeight = repository.getBlockArchiveRepository().getBlockArchiveHeight();
 
-			int startHeight = repository.getBlockArchiveRepository().getBlockArchiveHeight();
+		// Don't attempt to archive if we have no ATStatesHeightIndex, as it will be too slow
+		boolean hasAtStatesHeightIndex = repository.getATRepository().hasAtStatesHeightIndex();
+		if (!hasAtStatesHeightIndex) {
+			LOGGER.info("Unable to start block archiver due to missing ATStatesHeightIndex. Bootstrapping is recommended.");
+			return false;
+		}
 
-			// Don't attempt to archive if we have no ATStatesHeightIndex, as it will be too slow
-			boolean hasAtStatesHeightIndex = repository.getATRepository().hasAtStatesHeightIndex();
-			if (!hasAtStatesHeightIndex) {
-				LOGGER.info("Unable to start block archiver due to missing ATStatesHeightIndex. Bootstrapping is recommended.");
-				repository.discardChanges();
-				return;
-			}
+		LOGGER.info("Starting block archiver from height {}...", this.startHeight);
+		return true;
+	}
+
+	@Override
+	public long getInitialDelay() {
+		// Don't even start building until initial rush has ended
+		return INITIAL_SLEEP_PERIOD;
+	}
 
-			LOGGER.info("Starting block archiver from height {}...", startHeight);
-
-			while (!Controller.isStopping()) {
-				repository.discardChanges();
-
-				Thread.sleep(Settings.getInstance().getArchiveInterval());
-
-				BlockData chainTip = Controller.getInstance().getChainTip();
-				if (chainTip == null || NTP.getTime() == null) {
-					continue;
-				}
-
-				// Don't even attempt if we're mid-sync as our repository requests will be delayed for ages
-				if (Synchronizer.getInstance().isSynchronizing()) {
-					continue;
-				}
-
-				// Don't attempt to archive if we're not synced yet
-				final Long minLatestBlockTimestamp = Controller.getMinimumLatestBlockTimestamp();
-				if (minLatestBlockTimestamp == null || chainTip.getTimestamp() < minLatestBlockTimestamp) {
-					continue;
-				}
-
-
-				// Build cache of blocks
-				try {
-					final int maximumArchiveHeight = BlockArchiveWriter.getMaxArchiveHeight(repository);
-					BlockArchiveWriter writer = new BlockArchiveWriter(startHeight, maximumArchiveHeight, repository);
-					BlockArchiveWriter.BlockArchiveWriteResult result = writer.write();
-					switch (result) {
-						case OK:
-							// Increment block archive height
-							startHeight += writer.getWrittenCount();
-							repository.getBlockArchiveRepository().setBlockArchiveHeight(startHeight);
-							repository.saveChanges();
-							break;
-
-						case STOPPING:
-							return;
-
-							// We've reached the limit of the blocks we can archive
-							// Sleep for a while to allow more to become available
-						case NOT_ENOUGH_BLOCKS:
-							// We didn't reach our file size target, so that must mean that we don't have enough blocks
-							// yet or something went wrong. Sleep for a while and then try again.
-							repository.discardChanges();
-							Thread.sleep(60 * 60 * 1000L); // 1 hour
-							break;
-
-						case BLOCK_NOT_FOUND:
-							// We tried to archive a block that didn't exist. This is a major failure and likely means
-							// that a bootstrap or re-sync is needed. Try again every minute until then.
-							LOGGER.info("Error: block not found when building archive. If this error persists, " +
-									"a bootstrap or re-sync may be needed.");
-							repository.discardChanges();
-							Thread.sleep( 60 * 1000L); // 1 minute
-							break;
-					}
-
-				} catch (IOException | TransformationException e) {
-					LOGGER.info("Caught exception when creating block cache", e);
-				}
+	@Override
+	public long getInterval() {
+		return Settings.getInstance().getArchiveInterval();
+	}
 
+	@Override
+	public Integer getHeight() {
+		return this.startHeight;
+	}
+
+	/** Archive files are built to a target size, so <tt>batchScale</tt> isn't used. */
+	@Override
+	public Result runBatch(Repository repository, double batchScale) throws DataException, InterruptedException {
+		BlockData chainTip = Controller.getInstance().getChainTip();
+		if (chainTip == null) {
+			return Result.caughtUp(0);
+		}
+
+		// Don't attempt to archive if we're not synced yet
+		final Long minLatestBlockTimestamp = Controller.getMinimumLatestBlockTimestamp();
+		if (minLatestBlockTimestamp == null || chainTip.getTimestamp() < minLatestBlockTimestamp) {
+			return Result.caughtUp(0);
+		}
+
+		// Build cache of blocks
+		try {
+			final int maximumArchiveHeight = BlockArchiveWriter.getMaxArchiveHeight(repository);
+			BlockArchiveWriter writer = new BlockArchiveWriter(this.startHeight, maximumArchiveHeight, repository);
+			BlockArchiveWriter.BlockArchiveWriteResult result = writer.write();
+			switch (result) {
+				case OK:
+					// Increment block archive height
+					this.startHeight += writer.getWrittenCount();
+					repository.getBlockArchiveRepository().setBlockArchiveHeight(this.startHeight);
+					repository.saveChanges();
+					return Result.moreWork(writer.getWrittenCount());
+
+				case STOPPING:
+					return Result.caughtUp(0);
+
+					// We've reached the limit of the blocks we can archive
+					// Sleep for a while to allow more to become available
+				case NOT_ENOUGH_BLOCKS:
+					// We didn't reach our file size target, so that must mean that we don't have enough blocks
+					// yet or something went wrong. Sleep for a while and then try again.
+					return Result.retryAfter(60 * 60 * 1000L); // 1 hour
+
+				case BLOCK_NOT_FOUND:
+					// We tried to archive a block that didn't exist. This is a major failure and likely means
+					// that a bootstrap or re-sync is needed. Try again every minute until then.
+					LOGGER.info("Error: block not found when building archive. If this error persists, " +
+							"a bootstrap or re-sync may be needed.");
+					return Result.retryAfter(60 * 1000L); // 1 minute
 			}
-		} catch (DataException e) {
+
+		} catch (IOException | TransformationException e) {
 			LOGGER.info("Caught exception when creating block cache", e);
-		} catch (InterruptedException e) {
-			// Do nothing
 		}
 
+		return Result.caughtUp(0);
 	}
 
 }
@@ -0,0 +1,76 @@
+package org.qortal.controller.repository;
+
+import org.qortal.repository.DataException;
+import org.qortal.repository.Repository;
+
+/**
+ * Background repository maintenance, e.g. trimming, pruning or archiving,
+ * performed in batches by {@link MaintenanceScheduler}.
+ */
+public interface MaintenanceJob {
+
+	/** Outcome of one batch. */
+	public static class Result {
+		/** Number of items, e.g. AT states or blocks, processed by batch. */
+		public final int itemCount;
+		/** Whether job should be run again as soon as budget allows. */
+		public final boolean hasMoreWork;
+		/** How long to wait before next batch, or null for job's usual interval. (ms) */
+		public final Long delay;
+
+		private Result(int itemCount, boolean hasMoreWork, Long delay) {
+			this.itemCount = itemCount;
+			this.hasMoreWork = hasMoreWork;
+			this.delay = delay;
+		}
+
+		public static Result moreWork(int itemCount) {
+			return new Result(itemCount, true, null);
+		}
+
+		public static Result caughtUp(int itemCount) {
+			return new Result(itemCount, false, null);
+		}
+
+		public static Result retryAfter(long delay) {
+			return new Result(0, false, delay);
+		}
+	}
+
+	public String getName();
+
+	/**
+	 * Prepares job before first batch, e.g. fetching height to start from.
+	 * <p>
+	 * @return false if job isn't needed, or can't run, in which case it is dropped
+	 */
+	public default boolean init(Repository repository) throws DataException {
+		return true;
+	}
+
+	/** How long to wait before first batch. (ms) */
+	public default long getInitialDelay() {
+		return 0L;
+	}
+
+	/** How long to wait, once caught up, before checking for more work. (ms) */
+	public long getInterval();
+
+	/**
+	 * Performs, and saves, one batch of work.
+	 * <p>
+	 * @param batchScale multiplier for job's configured batch size(s), adjusted by scheduler to suit node load
+	 */
+	public Result runBatch(Repository repository, double batchScale) throws DataException, InterruptedException;
+
+	/** Returns height that job has progressed to, or null if not applicable. */
+	public default Integer getHeight() {
+		return null;
+	}
+
+	/** Returns <tt>batchSize</tt> multiplied by <tt>batchScale</tt>, but at least 1. */
+	public static int scaleBatchSize(int batchSize, double batchScale) {
+		return (int) Math.max(1L, Math.round(batchSize * batchScale));
+	}
+
+}
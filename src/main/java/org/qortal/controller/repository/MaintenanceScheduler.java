@@ -0,0 +1,293 @@
+package org.qortal.controller.repository;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.qortal.controller.Controller;
+import org.qortal.controller.Synchronizer;
+import org.qortal.data.block.BlockData;
+import org.qortal.repository.DataException;
+import org.qortal.repository.Repository;
+import org.qortal.repository.RepositoryManager;
+import org.qortal.repository.hsqldb.HSQLDBCheckpointCoordinator;
+import org.qortal.repository.hsqldb.HSQLDBRepository;
+import org.qortal.settings.Settings;
+import org.qortal.utils.NTP;
+
+/**
+ * Runs repository maintenance jobs, such as trimming, pruning and archiving, in batches on a single thread.
+ * <p>
+ * Previously each job had its own thread, processing fixed-size batches at fixed intervals,
+ * regardless of what else the node was doing.
+ * <p>
+ * Jobs are paused while synchronizing, while a CHECKPOINT is blocking the repository,
+ * and around the time blocks are expected to be minted or processed.
+ * Otherwise, after each batch, the scheduler rests long enough to keep maintenance within
+ * a share of the node's time: {@link Settings#getMaintenanceBudget()}, or {@link Settings#getMaintenanceIdleBudget()}
+ * when there's no API load.
+ * <p>
+ * Each job's batch size is scaled so batches take roughly {@link #TARGET_BATCH_TIME},
+ * only growing beyond its configured size when the node is otherwise idle, so that a job can catch up
+ * without causing latency spikes.
+ */
+public class MaintenanceScheduler implements Runnable {
+
+	private static final Logger LOGGER = LogManager.getLogger(MaintenanceScheduler.class);
+
+	/** How long we'd like each batch to take, so that other repository users aren't held up for long. (ms) */
+	private static final long TARGET_BATCH_TIME = 1000L;
+	/** How often to check whether there's anything to do, e.g. when node is busy. (ms) */
+	private static final long POLL_INTERVAL = 1000L;
+	/** How long to wait before reopening repository session after a repository issue. (ms) */
+	private static final long SESSION_RETRY_DELAY = 10 * 1000L;
+	/** Minimum rest between batches, even if they were very quick. (ms) */
+	private static final long MIN_REST_TIME = 50L;
+	/** Smallest multiplier for job's configured batch size(s). */
+	private static final double MIN_BATCH_SCALE = 1.0 / 16;
+	/** Largest multiplier for job's configured batch size(s). */
+	private static final double MAX_BATCH_SCALE = 16.0;
+
+	@XmlAccessorType(XmlAccessType.FIELD)
+	public static class JobSummary {
+		public String name;
+		/** Whether job is still running, i.e. hasn't been dropped. */
+		public boolean enabled;
+		/** Whether job has caught up with all available work. */
+		public boolean caughtUp;
+		/** Height job has progressed to, if applicable. */
+		public Integer height;
+		/** Current multiplier for job's configured batch size(s). */
+		public double batchScale;
+		public long batches;
+		public long items;
+		/** Total time spent running batches. (ms) */
+		public long totalTime;
+		public long lastBatchTime;
+		public Long lastBatchTimestamp;
+		/** Items processed per second of batch time. */
+		public double itemsPerSecond;
+
+		protected JobSummary() {
+		}
+	}
+
+	/** Job's progress. Fields read by {@link #getJobSummaries()} are only changed while synchronized on the JobState. */
+	private static class JobState {
+		private final MaintenanceJob job;
+		private boolean isInitialized = false;
+		private boolean isEnabled = true;
+		private boolean isCaughtUp = false;
+		private long nextBatchTimestamp;
+		private double batchScale = 1.0;
+
+		private long batchCount = 0;
+		private long itemCount = 0;
+		private long totalTime = 0;
+		private long lastBatchTime = 0;
+		private Long lastBatchTimestamp = null;
+
+		private JobState(MaintenanceJob job, long nextBatchTimestamp) {
+			this.job = job;
+			this.nextBatchTimestamp = nextBatchTimestamp;
+		}
+	}
+
+	private final List<JobState> jobStates = new CopyOnWriteArrayList<>();
+
+	public MaintenanceScheduler() {
+	}
+
+	public void addJob(MaintenanceJob job) {
+		this.jobStates.add(new JobState(job, System.currentTimeMillis() + job.getInitialDelay()));
+	}
+
+	@Override
+	public void run() {
+		Thread.currentThread().setName("Repository maintenance");
+
+		try {
+			while (!Controller.isStopping()) {
+				try (final Repository repository = RepositoryManager.getRepository()) {
+					this.initJobs(repository);
+					this.runBatches(repository);
+				} catch (DataException e) {
+					// Don't let a repository issue stop all jobs, so carry on with a new session
+					LOGGER.warn(String.format("Repository issue during maintenance, so reopening session: %s", e.getMessage()));
+					Thread.sleep(SESSION_RETRY_DELAY);
+				}
+			}
+		} catch (InterruptedException e) {
+			// Time to exit
+		}
+	}
+
+	private void initJobs(Repository repository) throws DataException {
+		for (JobState jobState : this.jobStates) {
+			if (jobState.isInitialized)
+				continue;
+
+			repository.discardChanges();
+			boolean isEnabled = this.initJob(repository, jobState.job);
+
+			synchronized (jobState) {
+				jobState.isEnabled = isEnabled;
+			}
+			jobState.isInitialized = true;
+		}
+	}
+
+	private void runBatches(Repository repository) throws DataException, InterruptedException {
+		while (!Controller.isStopping()) {
+			repository.discardChanges();
+
+			if (isNodeBusy()) {
+				Thread.sleep(POLL_INTERVAL);
+				continue;
+			}
+
+			Long restTime = this.runNextBatch(repository, System.currentTimeMillis(), isNodeIdle());
+
+			Thread.sleep(restTime != null ? restTime : POLL_INTERVAL);
+		}
+	}
+
+	private boolean initJob(Repository repository, MaintenanceJob job) {
+		try {
+			return job.init(repository);
+		} catch (DataException e) {
+			LOGGER.warn(String.format("Repository issue trying to start %s: %s", job.getName(), e.getMessage()));
+			return false;
+		}
+	}
+
+	/**
+	 * Runs one batch of whichever job has waited longest, if any are due.
+	 * <p>
+	 * @param now current time (ms)
+	 * @param isIdle whether node is otherwise idle, allowing bigger batches and more of our time
+	 * @return how long to rest before next batch, to stay within budget (ms), or null if no jobs were due
+	 */
+	public Long runNextBatch(Repository repository, long now, boolean isIdle) throws InterruptedException {
+		JobState jobState = null;
+		for (JobState candidate : this.jobStates)
+			if (candidate.isEnabled && candidate.nextBatchTimestamp <= now
+					&& (jobState == null || candidate.nextBatchTimestamp < jobState.nextBatchTimestamp))
+				jobState = candidate;
+
+		if (jobState == null)
+			return null;
+
+		MaintenanceJob job = jobState.job;
+		long startTime = System.currentTimeMillis();
+
+		MaintenanceJob.Result result;
+		try {
+			result = job.runBatch(repository, jobState.batchScale);
+		} catch (DataException e) {
+			// Previously this would have ended job's thread, so we stop running it too
+			LOGGER.warn(String.format("Repository issue during %s, so stopping it: %s", job.getName(), e.getMessage()));
+			synchronized (jobState) {
+				jobState.isEnabled = false;
+			}
+			return MIN_REST_TIME;
+		}
+
+		long endTime = System.currentTimeMillis();
+		long batchTime = endTime - startTime;
+
+		if (result.hasMoreWork)
+			jobState.nextBatchTimestamp = endTime;
+		else
+			jobState.nextBatchTimestamp = endTime + (result.delay != null ? result.delay : job.getInterval());
+
+		final double batchScale;
+		synchronized (jobState) {
+			jobState.batchCount++;
+			jobState.itemCount += result.itemCount;
+			jobState.totalTime += batchTime;
+			jobState.lastBatchTime = batchTime;
+			jobState.lastBatchTimestamp = endTime;
+			jobState.isCaughtUp = !result.hasMoreWork;
+
+			// Aim for batches that take about TARGET_BATCH_TIME
+			if (batchTime > TARGET_BATCH_TIME) {
+				jobState.batchScale = Math.max(MIN_BATCH_SCALE, jobState.batchScale / 2);
+			} else if (result.hasMoreWork && batchTime < TARGET_BATCH_TIME / 2) {
+				// Recover configured batch size whenever batches are quick, but only exceed it when idle
+				double maxBatchScale = isIdle ? MAX_BATCH_SCALE : 1.0;
+				if (jobState.batchScale < maxBatchScale)
+					jobState.batchScale = Math.min(maxBatchScale, jobState.batchScale * 2);
+			}
+
+			batchScale = jobState.batchScale;
+		}
+
+		LOGGER.trace(() -> String.format("%s processed %d item%s in %dms (batch scale %.3f)",
+				job.getName(), result.itemCount, (result.itemCount != 1 ? "s" : ""), batchTime, batchScale));
+
+		// Rest in proportion to how long batch took, so that we use no more than our share of time
+		double budget = isIdle ? Settings.getInstance().getMaintenanceIdleBudget() : Settings.getInstance().getMaintenanceBudget();
+		long restTime = (long) (batchTime * (1.0 - budget) / budget);
+
+		return Math.max(MIN_REST_TIME, restTime);
+	}
+
+	public List<JobSummary> getJobSummaries() {
+		return this.jobStates.stream().map(jobState -> {
+			synchronized (jobState) {
+				return this.getJobSummary(jobState);
+			}
+		}).collect(Collectors.toList());
+	}
+
+	private JobSummary getJobSummary(JobState jobState) {
+		JobSummary summary = new JobSummary();
+		summary.name = jobState.job.getName();
+		summary.enabled = jobState.isEnabled;
+		summary.caughtUp = jobState.isCaughtUp;
+		summary.height = jobState.job.getHeight();
+		summary.batchScale = jobState.batchScale;
+		summary.batches = jobState.batchCount;
+		summary.items = jobState.itemCount;
+		summary.totalTime = jobState.totalTime;
+		summary.lastBatchTime = jobState.lastBatchTime;
+		summary.lastBatchTimestamp = jobState.lastBatchTimestamp;
+		summary.itemsPerSecond = jobState.totalTime > 0 ? jobState.itemCount * 1000.0 / jobState.totalTime : 0.0;
+		return summary;
+	}
+
+	/** Returns whether maintenance should wait, e.g. while synchronizing or a block is due. */
+	private static boolean isNodeBusy() {
+		BlockData chainTip = Controller.getInstance().getChainTip();
+		if (chainTip == null || NTP.getTime() == null)
+			return true;
+
+		// Our repository requests would be delayed for ages, and would slow down sync
+		if (Synchronizer.getInstance().isSynchronizing())
+			return true;
+
+		HSQLDBCheckpointCoordinator checkpointCoordinator = HSQLDBCheckpointCoordinator.getInstance();
+		if (checkpointCoordinator.isBlockingExecutions())
+			return true;
+
+		// Keep out of the way of block minting and processing
+		return !checkpointCoordinator.isIdle(System.currentTimeMillis());
+	}
+
+	/** Returns whether node has nothing else to do, i.e. is up to date and not serving API requests. */
+	private static boolean isNodeIdle() {
+		if (HSQLDBRepository.getReadOnlySessionCount() > 0)
+			return false;
+
+		BlockData chainTip = Controller.getInstance().getChainTip();
+		Long minLatestBlockTimestamp = Controller.getMinimumLatestBlockTimestamp();
+		return chainTip != null && minLatestBlockTimestamp != null && chainTip.getTimestamp() >= minLatestBlockTimestamp;
+	}
+
+}
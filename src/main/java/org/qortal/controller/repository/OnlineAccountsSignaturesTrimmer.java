@@ -3,84 +3,93 @@ package org.qortal.controller.repository;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.qortal.block.BlockChain;
-import org.qortal.controller.Controller;
-import org.qortal.controller.Synchronizer;
-import org.qortal.data.block.BlockData;
 import org.qortal.repository.DataException;
 import org.qortal.repository.Repository;
-import org.qortal.repository.RepositoryManager;
 import org.qortal.settings.Settings;
 import org.qortal.utils.NTP;
 
-public class OnlineAccountsSignaturesTrimmer implements Runnable {
+public class OnlineAccountsSignaturesTrimmer implements MaintenanceJob {
 
 	private static final Logger LOGGER = LogManager.getLogger(OnlineAccountsSignaturesTrimmer.class);
 
 	private static final long INITIAL_SLEEP_PERIOD = 5 * 60 * 1000L + 1234L; // ms
 
-	public void run() {
-		Thread.currentThread().setName("Online Accounts trimmer");
+	private int trimStartHeight;
 
+	@Override
+	public String getName() {
+		return "Online accounts signatures trimmer";
+	}
+
+	@Override
+	public boolean init(Repository repository) throws DataException {
 		if (Settings.getInstance().isLite()) {
 			// Nothing to trim in lite mode
-			return;
+			return false;
 		}
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
-			// Don't even start trimming until initial rush has ended
-			Thread.sleep(INITIAL_SLEEP_PERIOD);
+		this.trimStartHeight = repository.getBlockRepository().getOnlineAccountsSignaturesTrimHeight();
+		return true;
+	}
+
+	@Override
+	public long getInitialDelay() {
+		// Don't even start trimming until initial rush has ended
+		return INITIAL_SLEEP_PERIOD;
+	}
+
+	@Override
+	public long getInterval() {
+		return Settings.getInstance().getOnlineSignaturesTrimInterval();
+	}
 
-			int trimStartHeight = repository.getBlockRepository().getOnlineAccountsSignaturesTrimHeight();
+	@Override
+	public Integer getHeight() {
+		return this.trimStartHeight;
+	}
 
-			while (!Controller.isStopping()) {
-				repository.discardChanges();
+	@Override
+	public Result runBatch(Repository repository, double batchScale) throws DataException {
+		Long now = NTP.getTime();
+		if (now == null)
+			return Result.caughtUp(0);
 
-				Thread.sleep(Settings.getInstance().getOnlineSignaturesTrimInterval());
+		// Trim blockchain by removing 'old' online accounts signatures
+		long upperTrimmableTimestamp = now - BlockChain.getInstance().getOnlineAccountSignaturesMaxLifetime();
+		int upperTrimmableHeight = repository.getBlockRepository().getHeightFromTimestamp(upperTrimmableTimestamp);
 
-				BlockData chainTip = Controller.getInstance().getChainTip();
-				if (chainTip == null || NTP.getTime() == null)
-					continue;
+		int upperBatchHeight = this.trimStartHeight + MaintenanceJob.scaleBatchSize(Settings.getInstance().getOnlineSignaturesTrimBatchSize(), batchScale);
+		int upperTrimHeight = Math.min(upperBatchHeight, upperTrimmableHeight);
 
-				// Don't even attempt if we're mid-sync as our repository requests will be delayed for ages
-				if (Synchronizer.getInstance().isSynchronizing())
-					continue;
+		if (this.trimStartHeight >= upperTrimHeight)
+			return Result.caughtUp(0);
 
-				// Trim blockchain by removing 'old' online accounts signatures
-				long upperTrimmableTimestamp = NTP.getTime() - BlockChain.getInstance().getOnlineAccountSignaturesMaxLifetime();
-				int upperTrimmableHeight = repository.getBlockRepository().getHeightFromTimestamp(upperTrimmableTimestamp);
+		int numSigsTrimmed = repository.getBlockRepository().trimOldOnlineAccountsSignatures(this.trimStartHeight, upperTrimHeight);
+		repository.saveChanges();
 
-				int upperBatchHeight = trimStartHeight + Settings.getInstance().getOnlineSignaturesTrimBatchSize();
-				int upperTrimHeight = Math.min(upperBatchHeight, upperTrimmableHeight);
+		if (numSigsTrimmed > 0) {
+			final int finalTrimStartHeight = this.trimStartHeight;
+			LOGGER.debug(() -> String.format("Trimmed %d online accounts signature%s between blocks %d and %d",
+					numSigsTrimmed, (numSigsTrimmed != 1 ? "s" : ""),
+					finalTrimStartHeight, upperTrimHeight));
 
-				if (trimStartHeight >= upperTrimHeight)
-					continue;
+			return Result.moreWork(numSigsTrimmed);
+		}
 
-				int numSigsTrimmed = repository.getBlockRepository().trimOldOnlineAccountsSignatures(trimStartHeight, upperTrimHeight);
-				repository.saveChanges();
+		// Can we move onto next batch?
+		if (upperTrimmableHeight > upperBatchHeight) {
+			this.trimStartHeight = upperBatchHeight;
 
-				if (numSigsTrimmed > 0) {
-					final int finalTrimStartHeight = trimStartHeight;
-					LOGGER.debug(() -> String.format("Trimmed %d online accounts signature%s between blocks %d and %d",
-							numSigsTrimmed, (numSigsTrimmed != 1 ? "s" : ""),
-							finalTrimStartHeight, upperTrimHeight));
-				} else {
-					// Can we move onto next batch?
-					if (upperTrimmableHeight > upperBatchHeight) {
-						trimStartHeight = upperBatchHeight;
+			repository.getBlockRepository().setOnlineAccountsSignaturesTrimHeight(this.trimStartHeight);
+			repository.saveChanges();
 
-						repository.getBlockRepository().setOnlineAccountsSignaturesTrimHeight(trimStartHeight);
-						repository.saveChanges();
+			final int finalTrimStartHeight = this.trimStartHeight;
+			LOGGER.debug(() -> String.format("Bumping online accounts signatures base trim height to %d", finalTrimStartHeight));
 
-						final int finalTrimStartHeight = trimStartHeight;
-						LOGGER.debug(() -> String.format("Bumping online accounts signatures base trim height to %d", finalTrimStartHeight));
-					}
-				}
-			}
-		} catch (DataException e) {
-			LOGGER.warn(String.format("Repository issue trying to trim online accounts signatures: %s", e.getMessage()));
-		} catch (InterruptedException e) {
-			// Time to exit
+			return Result.moreWork(0);
 		}
+
+		return Result.caughtUp(0);
 	}
 
 }
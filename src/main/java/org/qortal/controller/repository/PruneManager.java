@@ -28,6 +28,7 @@ public class PruneManager {
     private int pruneBlockLimit = Settings.getInstance().getPruneBlockLimit();
 
     private ExecutorService executorService;
+    private final MaintenanceScheduler maintenanceScheduler = new MaintenanceScheduler();
 
     private PruneManager() {
 
@@ -55,6 +56,8 @@ public class PruneManager {
             // Full node with full SQL support
             this.startFullSQLNode();
         }
+
+        this.executorService.execute(this.maintenanceScheduler);
     }
 
     /**
@@ -96,17 +99,17 @@ public class PruneManager {
 
 
     private void startPruning() {
-        this.executorService.execute(new AtStatesPruner());
-        this.executorService.execute(new BlockPruner());
+        this.maintenanceScheduler.addJob(new AtStatesPruner());
+        this.maintenanceScheduler.addJob(new BlockPruner());
     }
 
     private void startTrimming() {
-        this.executorService.execute(new AtStatesTrimmer());
-        this.executorService.execute(new OnlineAccountsSignaturesTrimmer());
+        this.maintenanceScheduler.addJob(new AtStatesTrimmer());
+        this.maintenanceScheduler.addJob(new OnlineAccountsSignaturesTrimmer());
     }
 
     private void startArchiving() {
-        this.executorService.execute(new BlockArchiver());
+        this.maintenanceScheduler.addJob(new BlockArchiver());
     }
 
     private void deleteArchive() {
@@ -136,6 +139,10 @@ public class PruneManager {
         }
     }
 
+    public MaintenanceScheduler getMaintenanceScheduler() {
+        return this.maintenanceScheduler;
+    }
+
     public boolean isBlockPruned(int height) throws DataException {
         if (!this.isTopOnly) {
             return false;
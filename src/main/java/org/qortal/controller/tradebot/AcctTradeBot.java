@@ -27,4 +27,14 @@ public interface AcctTradeBot {
 
 	public void progress(Repository repository, TradeBotData tradeBotData) throws DataException, ForeignBlockchainException;
 
+	/**
+	 * Returns whether trade-bot entry can't progress until its AT's state changes.
+	 * <p>
+	 * If so, {@link #progress(Repository, TradeBotData)} may be skipped while the AT's state hash
+	 * is unchanged, although it is still called now and again to allow for time-based steps.
+	 */
+	public default boolean isWaitingForAtStateChange(TradeBotData tradeBotData, ATData atData) {
+		return false;
+	}
+
 }
@@ -424,6 +424,27 @@ public class DogecoinACCTv2TradeBot implements AcctTradeBot {
 		}
 	}
 
+	@Override
+	public boolean isWaitingForAtStateChange(TradeBotData tradeBotData, ATData atData) {
+		State tradeBotState = State.valueOf(tradeBotData.getStateValue());
+		if (tradeBotState == null)
+			return false;
+
+		switch (tradeBotState) {
+			case ALICE_WAITING_FOR_AT_LOCK:
+				// Nothing to do until AT is locked to us, unless we've reached lockTime-A and need to refund
+				Long now = NTP.getTime();
+				return now != null && now < tradeBotData.getLockTimeA() * 1000L;
+
+			case BOB_WAITING_FOR_AT_REDEEM:
+				// Nothing to do until AT has finished
+				return !atData.getIsFinished();
+
+			default:
+				return false;
+		}
+	}
+
 	/**
 	 * Trade-bot is waiting for Bob's AT to deploy.
 	 * <p>
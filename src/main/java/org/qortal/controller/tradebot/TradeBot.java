@@ -3,7 +3,16 @@ package org.qortal.controller.tradebot;
 import java.awt.TrayIcon.MessageType;
 import java.security.SecureRandom;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -16,6 +25,7 @@ import org.qortal.controller.tradebot.AcctTradeBot.ResponseResult;
 import org.qortal.crosschain.*;
 import org.qortal.crypto.Crypto;
 import org.qortal.data.at.ATData;
+import org.qortal.data.at.ATStateData;
 import org.qortal.data.crosschain.CrossChainTradeData;
 import org.qortal.data.crosschain.TradeBotData;
 import org.qortal.data.network.TradePresenceData;
@@ -34,6 +44,7 @@ import org.qortal.repository.RepositoryManager;
 import org.qortal.repository.hsqldb.HSQLDBImportExport;
 import org.qortal.settings.Settings;
 import org.qortal.utils.ByteArray;
+import org.qortal.utils.DaemonThreadFactory;
 import org.qortal.utils.NTP;
 
 import com.google.common.primitives.Longs;
@@ -61,6 +72,16 @@ public class TradeBot implements Listener {
 	private static final long EXPIRY_ROUNDING = 15 * 60 * 1000L;
 	/** How often we want to broadcast our list of all known trade presences to peers. 5 mins in ms. */
 	private static final long PRESENCE_BROADCAST_INTERVAL = 5 * 60 * 1000L;
+	/** Maximum number of trade presences we keep track of. Those closest to expiry are evicted first. */
+	private static final int MAX_TRADE_PRESENCES = 10000;
+	/** Number of trade-bot entries that can progress at the same time. */
+	private static final int PROGRESS_THREAD_COUNT = 4;
+	/** How long each new chain tip waits for trade-bot entries to progress before broadcasting presences. Slower entries carry on in the background. 10 seconds in ms. */
+	private static final long PROGRESS_WAIT_TIMEOUT = 10 * 1000L;
+	/** Maximum time we skip an entry that's waiting for its AT to change, so time-based steps like presence renewal still happen. 2 mins in ms. */
+	private static final long MAX_UNCHANGED_AT_SKIP_PERIOD = 2 * 60 * 1000L;
+	/** How often we log per-state progress timings. 10 mins in ms. */
+	private static final long STATE_TIMINGS_LOG_INTERVAL = 10 * 60 * 1000L;
 
 	public interface StateNameAndValueSupplier {
 		public String getState();
@@ -105,13 +126,81 @@ public class TradeBot implements Listener {
 		acctTradeBotSuppliers.put(RavencoinACCTv3.class, RavencoinACCTv3TradeBot::getInstance);
 	}
 
+	/** Per-state timings of trade-bot entry progress. */
+	public static class StateTimings {
+		private final AtomicLong progressCount = new AtomicLong();
+		private final AtomicLong skipCount = new AtomicLong();
+		private final AtomicLong totalTime = new AtomicLong();
+		private final AtomicLong maxTime = new AtomicLong();
+
+		private void addProgressTime(long time) {
+			this.progressCount.incrementAndGet();
+			this.totalTime.addAndGet(time);
+			this.maxTime.accumulateAndGet(time, Math::max);
+		}
+
+		public long getProgressCount() {
+			return this.progressCount.get();
+		}
+
+		/** Returns number of times progress was skipped because the entry's AT hadn't changed. */
+		public long getSkipCount() {
+			return this.skipCount.get();
+		}
+
+		public long getTotalTime() {
+			return this.totalTime.get();
+		}
+
+		public long getMaxTime() {
+			return this.maxTime.get();
+		}
+
+		@Override
+		public String toString() {
+			long count = this.getProgressCount();
+			return String.format("progressed %d, skipped %d, avg %dms, max %dms",
+					count, this.getSkipCount(), count > 0 ? this.getTotalTime() / count : 0L, this.getMaxTime());
+		}
+	}
+
+	/** What an entry looked like the last time it progressed while waiting for its AT to change. */
+	private static class UnchangedAtCheck {
+		private final byte[] atStateHash;
+		private final int tradeBotStateValue;
+		private final long tradeBotTimestamp;
+		private final long timestamp;
+
+		private UnchangedAtCheck(byte[] atStateHash, TradeBotData tradeBotData, long timestamp) {
+			this.atStateHash = atStateHash;
+			this.tradeBotStateValue = tradeBotData.getStateValue();
+			this.tradeBotTimestamp = tradeBotData.getTimestamp();
+			this.timestamp = timestamp;
+		}
+
+		private boolean isUnchanged(byte[] atStateHash, TradeBotData tradeBotData, long now) {
+			return Arrays.equals(this.atStateHash, atStateHash)
+					&& this.tradeBotStateValue == tradeBotData.getStateValue()
+					&& this.tradeBotTimestamp == tradeBotData.getTimestamp()
+					&& now - this.timestamp < MAX_UNCHANGED_AT_SKIP_PERIOD;
+		}
+	}
+
 	private static TradeBot instance;
 
+	private final ExecutorService progressExecutor = Executors.newFixedThreadPool(PROGRESS_THREAD_COUNT, new DaemonThreadFactory("Trade-bot"));
+	/** Trade-bot entries, by trade private key, currently progressing. Entries are only ever progressed by one thread at a time. */
+	private final Set<ByteArray> progressingEntries = ConcurrentHashMap.newKeySet();
+	/** Trade-bot entries, by trade private key, that are waiting for their AT to change. */
+	private final Map<ByteArray, UnchangedAtCheck> unchangedAtChecks = new ConcurrentHashMap<>();
+	/** Progress timings, by trade-bot state name. */
+	private final Map<String, StateTimings> stateTimings = new ConcurrentHashMap<>();
+	private long nextStateTimingsLogTimestamp = 0L;
+
 	private final Map<ByteArray, Long> ourTradePresenceTimestampsByPubkey = Collections.synchronizedMap(new HashMap<>());
 	private final List<TradePresenceData> pendingTradePresences = Collections.synchronizedList(new ArrayList<>());
 
-	private final Map<ByteArray, TradePresenceData> allTradePresencesByPubkey = Collections.synchronizedMap(new HashMap<>());
-	private Map<ByteArray, TradePresenceData> safeAllTradePresencesByPubkey = Collections.emptyMap();
+	private final TradePresenceIndex tradePresenceIndex = new TradePresenceIndex(MAX_TRADE_PRESENCES);
 	private long nextTradePresenceBroadcastTimestamp = 0L;
 
 	private TradeBot() {
@@ -259,32 +348,134 @@ public class TradeBot implements Listener {
 				return;
 			}
 
-			for (TradeBotData tradeBotData : allTradeBotData)
-				try (final Repository repository = RepositoryManager.getRepository()) {
-					// Find ACCT-specific trade-bot for this entry
-					ACCT acct = SupportedBlockchain.getAcctByName(tradeBotData.getAcctName());
-					if (acct == null) {
-						LOGGER.debug(() -> String.format("Couldn't find ACCT matching name %s", tradeBotData.getAcctName()));
-						continue;
-					}
-
-					AcctTradeBot acctTradeBot = findTradeBotForAcct(acct);
-					if (acctTradeBot == null) {
-						LOGGER.debug(() -> String.format("Couldn't find ACCT trade-bot matching name %s", tradeBotData.getAcctName()));
-						continue;
-					}
-
-					acctTradeBot.progress(repository, tradeBotData);
-				} catch (DataException e) {
-					LOGGER.error("Couldn't run trade bot due to repository issue", e);
-				} catch (ForeignBlockchainException e) {
-					LOGGER.warn(() -> String.format("Foreign blockchain issue processing trade-bot entry for AT %s: %s", tradeBotData.getAtAddress(), e.getMessage()));
+			// Forget about entries that have been deleted
+			Set<ByteArray> tradePrivateKeys = allTradeBotData.stream()
+					.map(tradeBotData -> ByteArray.wrap(tradeBotData.getTradePrivateKey()))
+					.collect(Collectors.toSet());
+			this.unchangedAtChecks.keySet().retainAll(tradePrivateKeys);
+
+			List<CompletableFuture<Void>> progressFutures = new ArrayList<>();
+
+			for (TradeBotData tradeBotData : allTradeBotData) {
+				ByteArray tradePrivateKey = ByteArray.wrap(tradeBotData.getTradePrivateKey());
+
+				// Don't progress an entry again if it's still progressing from a previous chain tip
+				if (!this.progressingEntries.add(tradePrivateKey))
+					continue;
+
+				try {
+					progressFutures.add(CompletableFuture.runAsync(() -> {
+						try {
+							progressEntry(tradeBotData);
+						} finally {
+							this.progressingEntries.remove(tradePrivateKey);
+						}
+					}, this.progressExecutor));
+				} catch (RuntimeException e) {
+					this.progressingEntries.remove(tradePrivateKey);
+					throw e;
 				}
+			}
+
+			// Give entries a chance to progress, so any new presences are broadcast without waiting for next chain tip
+			try {
+				CompletableFuture.allOf(progressFutures.toArray(new CompletableFuture<?>[0])).get(PROGRESS_WAIT_TIMEOUT, TimeUnit.MILLISECONDS);
+			} catch (TimeoutException e) {
+				LOGGER.debug("Some trade-bot entries are still progressing");
+			} catch (ExecutionException e) {
+				// progressEntry() handles its own exceptions
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
 
 			broadcastPresenceTimestamps();
+
+			logStateTimings();
 		}
 	}
 
+	/** Progresses a single trade-bot entry, using its own repository session. */
+	private void progressEntry(TradeBotData tradeBotData) {
+		try (final Repository repository = RepositoryManager.getRepository()) {
+			// Find ACCT-specific trade-bot for this entry
+			ACCT acct = SupportedBlockchain.getAcctByName(tradeBotData.getAcctName());
+			if (acct == null) {
+				LOGGER.debug(() -> String.format("Couldn't find ACCT matching name %s", tradeBotData.getAcctName()));
+				return;
+			}
+
+			AcctTradeBot acctTradeBot = findTradeBotForAcct(acct);
+			if (acctTradeBot == null) {
+				LOGGER.debug(() -> String.format("Couldn't find ACCT trade-bot matching name %s", tradeBotData.getAcctName()));
+				return;
+			}
+
+			// Ended entries have nothing to do
+			if (acctTradeBot.getEndStates().contains(tradeBotData.getState()))
+				return;
+
+			StateTimings timings = this.stateTimings.computeIfAbsent(tradeBotData.getState(), state -> new StateTimings());
+			ByteArray tradePrivateKey = ByteArray.wrap(tradeBotData.getTradePrivateKey());
+
+			// If entry is only waiting for its AT to change, skip it until it does
+			byte[] atStateHash = null;
+			ATData atData = repository.getATRepository().fromATAddress(tradeBotData.getAtAddress());
+			if (atData != null && acctTradeBot.isWaitingForAtStateChange(tradeBotData, atData)) {
+				ATStateData atStateData = repository.getATRepository().getLatestATState(tradeBotData.getAtAddress());
+				if (atStateData != null)
+					atStateHash = atStateData.getStateHash();
+			}
+
+			Long now = NTP.getTime();
+			if (atStateHash == null || now == null) {
+				this.unchangedAtChecks.remove(tradePrivateKey);
+			} else {
+				UnchangedAtCheck unchangedAtCheck = this.unchangedAtChecks.get(tradePrivateKey);
+				if (unchangedAtCheck != null && unchangedAtCheck.isUnchanged(atStateHash, tradeBotData, now)) {
+					timings.skipCount.incrementAndGet();
+					return;
+				}
+			}
+
+			long startTime = System.currentTimeMillis();
+			try {
+				acctTradeBot.progress(repository, tradeBotData);
+			} finally {
+				timings.addProgressTime(System.currentTimeMillis() - startTime);
+			}
+
+			// Only record AT state once progress has succeeded, otherwise we want to retry next time
+			if (atStateHash != null && now != null)
+				this.unchangedAtChecks.put(tradePrivateKey, new UnchangedAtCheck(atStateHash, tradeBotData, now));
+		} catch (DataException e) {
+			LOGGER.error("Couldn't run trade bot due to repository issue", e);
+		} catch (ForeignBlockchainException e) {
+			LOGGER.warn(() -> String.format("Foreign blockchain issue processing trade-bot entry for AT %s: %s", tradeBotData.getAtAddress(), e.getMessage()));
+		} catch (RuntimeException e) {
+			LOGGER.error(String.format("Unexpected issue processing trade-bot entry for AT %s", tradeBotData.getAtAddress()), e);
+		}
+	}
+
+	/** Returns snapshot of progress timings, by trade-bot state name. */
+	public Map<String, StateTimings> getStateTimings() {
+		return new TreeMap<>(this.stateTimings);
+	}
+
+	private void logStateTimings() {
+		if (!LOGGER.isDebugEnabled() || this.stateTimings.isEmpty())
+			return;
+
+		long now = System.currentTimeMillis();
+		if (now < this.nextStateTimingsLogTimestamp)
+			return;
+
+		this.nextStateTimingsLogTimestamp = now + STATE_TIMINGS_LOG_INTERVAL;
+
+		for (Map.Entry<String, StateTimings> entry : this.getStateTimings().entrySet())
+			LOGGER.debug("Trade-bot state {}: {}", entry.getKey(), entry.getValue());
+	}
+
 	public static byte[] generateTradePrivateKey() {
 		// The private key is used for both Curve25519 and secp256k1 so needs to be valid for both.
 		// Curve25519 accepts any seed, so generate a valid secp256k1 key and use that.
@@ -361,25 +552,20 @@ public class TradeBot implements Listener {
 	// PRESENCE-related
 
 	public Collection<TradePresenceData> getAllTradePresences() {
-		return this.safeAllTradePresencesByPubkey.values();
+		return this.tradePresenceIndex.getAll();
 	}
 
 	/** Trade presence timestamps expire in the 'future' so any that reach 'now' have expired and are removed. */
 	private void expireOldPresenceTimestamps() {
 		long now = NTP.getTime();
 
-		int allRemovedCount = 0;
-		synchronized (this.allTradePresencesByPubkey) {
-			int preRemoveCount = this.allTradePresencesByPubkey.size();
-			this.allTradePresencesByPubkey.values().removeIf(tradePresenceData -> tradePresenceData.getTimestamp() <= now);
-			allRemovedCount = this.allTradePresencesByPubkey.size() - preRemoveCount;
-		}
+		int allRemovedCount = this.tradePresenceIndex.expire(now).size();
 
 		int ourRemovedCount = 0;
 		synchronized (this.ourTradePresenceTimestampsByPubkey) {
 			int preRemoveCount = this.ourTradePresenceTimestampsByPubkey.size();
 			this.ourTradePresenceTimestampsByPubkey.values().removeIf(timestamp -> timestamp < now);
-			ourRemovedCount = this.ourTradePresenceTimestampsByPubkey.size() - preRemoveCount;
+			ourRemovedCount = preRemoveCount - this.ourTradePresenceTimestampsByPubkey.size();
 		}
 
 		if (allRemovedCount > 0)
@@ -427,21 +613,13 @@ public class TradeBot implements Listener {
 		TradePresenceData tradePresenceData = new TradePresenceData(newExpiry, tradeNativeAccount.getPublicKey(), signature, atAddress);
 		this.pendingTradePresences.add(tradePresenceData);
 
-		this.allTradePresencesByPubkey.put(pubkeyByteArray, tradePresenceData);
-		rebuildSafeAllTradePresences();
+		this.tradePresenceIndex.putIfNewer(tradePresenceData);
 
 		LOGGER.trace("New trade presence timestamp {} for our trade {}", newExpiry, atAddress);
 
 		EventBus.INSTANCE.notify(new TradePresenceEvent(tradePresenceData));
 	}
 
-	private void rebuildSafeAllTradePresences() {
-		synchronized (this.allTradePresencesByPubkey) {
-			// Collect into a *new* unmodifiable map.
-			this.safeAllTradePresencesByPubkey = Map.copyOf(this.allTradePresencesByPubkey);
-		}
-	}
-
 	private void broadcastPresenceTimestamps() {
 		// If we have new trade presences that are pending broadcast, send those as a priority
 		if (!this.pendingTradePresences.isEmpty()) {
@@ -467,7 +645,7 @@ public class TradeBot implements Listener {
 
 		nextTradePresenceBroadcastTimestamp = now + PRESENCE_BROADCAST_INTERVAL;
 
-		List<TradePresenceData> safeTradePresences = List.copyOf(this.safeAllTradePresencesByPubkey.values());
+		List<TradePresenceData> safeTradePresences = List.copyOf(this.tradePresenceIndex.getAll());
 
 		if (safeTradePresences.isEmpty())
 			return;
@@ -487,8 +665,8 @@ public class TradeBot implements Listener {
 
 		List<TradePresenceData> peersTradePresences = getTradePresencesMessage.getTradePresences();
 
-		// Create mutable copy from safe snapshot
-		Map<ByteArray, TradePresenceData> entriesUnknownToPeer = new HashMap<>(this.safeAllTradePresencesByPubkey);
+		// Create mutable copy of all known entries
+		Map<ByteArray, TradePresenceData> entriesUnknownToPeer = new HashMap<>(this.tradePresenceIndex.getAllByPubkey());
 		int knownCount = entriesUnknownToPeer.size();
 
 		for (TradePresenceData peersTradePresence : peersTradePresences) {
@@ -527,108 +705,99 @@ public class TradeBot implements Listener {
 		// Timestamps after this are too far into the future
 		long futureThreshold = now + PRESENCE_LIFETIME;
 
-		Map<ByteArray, Supplier<ACCT>> acctSuppliersByCodeHash = SupportedBlockchain.getAcctMap();
+		// Collect entries that are new to us, keeping only the latest for each public key
+		Map<ByteArray, TradePresenceData> newTradePresencesByPubkey = new LinkedHashMap<>();
 
-		int newCount = 0;
+		for (TradePresenceData peersTradePresence : peersTradePresences) {
+			long timestamp = peersTradePresence.getTimestamp();
+
+			// Ignore if timestamp is out of bounds
+			if (timestamp < pastThreshold || timestamp > futureThreshold) {
+				if (timestamp < pastThreshold)
+					LOGGER.trace("Ignoring trade presence {} from peer {} as timestamp {} is too old vs {}",
+							peersTradePresence.getAtAddress(), peer, timestamp, pastThreshold
+							);
+				else
+					LOGGER.trace("Ignoring trade presence {} from peer {} as timestamp {} is too new vs {}",
+							peersTradePresence.getAtAddress(), peer, timestamp, pastThreshold
+					);
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
-			for (TradePresenceData peersTradePresence : peersTradePresences) {
-				long timestamp = peersTradePresence.getTimestamp();
-
-				// Ignore if timestamp is out of bounds
-				if (timestamp < pastThreshold || timestamp > futureThreshold) {
-					if (timestamp < pastThreshold)
-						LOGGER.trace("Ignoring trade presence {} from peer {} as timestamp {} is too old vs {}",
-								peersTradePresence.getAtAddress(), peer, timestamp, pastThreshold
-								);
-					else
-						LOGGER.trace("Ignoring trade presence {} from peer {} as timestamp {} is too new vs {}",
-								peersTradePresence.getAtAddress(), peer, timestamp, pastThreshold
-						);
+				continue;
+			}
 
-					continue;
-				}
+			ByteArray pubkeyByteArray = ByteArray.wrap(peersTradePresence.getPublicKey());
 
-				ByteArray pubkeyByteArray = ByteArray.wrap(peersTradePresence.getPublicKey());
+			// Ignore if we've previously verified this timestamp+publickey combo or sent timestamp is older
+			TradePresenceData existingTradeData = this.tradePresenceIndex.get(pubkeyByteArray);
+			if (existingTradeData != null && timestamp <= existingTradeData.getTimestamp()) {
+				if (timestamp == existingTradeData.getTimestamp())
+					LOGGER.trace("Ignoring trade presence {} from peer {} as we have verified timestamp {} before",
+							peersTradePresence.getAtAddress(), peer, timestamp
+					);
+				else
+					LOGGER.trace("Ignoring trade presence {} from peer {} as timestamp {} is older than latest {}",
+							peersTradePresence.getAtAddress(), peer, timestamp, existingTradeData.getTimestamp()
+					);
 
-				// Ignore if we've previously verified this timestamp+publickey combo or sent timestamp is older
-				TradePresenceData existingTradeData = this.safeAllTradePresencesByPubkey.get(pubkeyByteArray);
-				if (existingTradeData != null && timestamp <= existingTradeData.getTimestamp()) {
-					if (timestamp == existingTradeData.getTimestamp())
-						LOGGER.trace("Ignoring trade presence {} from peer {} as we have verified timestamp {} before",
-								peersTradePresence.getAtAddress(), peer, timestamp
-						);
-					else
-						LOGGER.trace("Ignoring trade presence {} from peer {} as timestamp {} is older than latest {}",
-								peersTradePresence.getAtAddress(), peer, timestamp, existingTradeData.getTimestamp()
-						);
+				continue;
+			}
 
-					continue;
-				}
+			newTradePresencesByPubkey.merge(pubkeyByteArray, peersTradePresence,
+					(a, b) -> b.getTimestamp() > a.getTimestamp() ? b : a);
+		}
 
-				// Check timestamp signature
-				byte[] timestampSignature = peersTradePresence.getSignature();
-				byte[] timestampBytes = Longs.toByteArray(timestamp);
-				byte[] publicKey = peersTradePresence.getPublicKey();
-				if (!Crypto.verify(publicKey, timestampSignature, timestampBytes)) {
-					LOGGER.trace("Ignoring trade presence {} from peer {} as signature failed to verify",
-							peersTradePresence.getAtAddress(), peer
-					);
+		if (newTradePresencesByPubkey.isEmpty())
+			return;
 
-					continue;
-				}
+		// Check timestamp signatures all at once
+		List<TradePresenceData> verifiedTradePresences = TradePresenceIndex.verifySignatures(new ArrayList<>(newTradePresencesByPubkey.values()));
 
-				ATData atData = repository.getATRepository().fromATAddress(peersTradePresence.getAtAddress());
-				if (atData == null || atData.getIsFrozen() || atData.getIsFinished()) {
-					if (atData == null)
-						LOGGER.trace("Ignoring trade presence {} from peer {} as AT doesn't exist",
-								peersTradePresence.getAtAddress(), peer
-						);
-					else
-						LOGGER.trace("Ignoring trade presence {} from peer {} as AT is frozen or finished",
-								peersTradePresence.getAtAddress(), peer
-						);
+		int failedCount = newTradePresencesByPubkey.size() - verifiedTradePresences.size();
+		if (failedCount > 0)
+			LOGGER.trace("Ignoring {} trade presences from peer {} as signatures failed to verify", failedCount, peer);
 
-					continue;
-				}
+		Map<ByteArray, Supplier<ACCT>> acctSuppliersByCodeHash = SupportedBlockchain.getAcctMap();
 
-				ByteArray atCodeHash = ByteArray.wrap(atData.getCodeHash());
-				Supplier<ACCT> acctSupplier = acctSuppliersByCodeHash.get(atCodeHash);
-				if (acctSupplier == null) {
-					LOGGER.trace("Ignoring trade presence {} from peer {} as AT isn't a known ACCT?",
-							peersTradePresence.getAtAddress(), peer
-					);
+		// Bob's and Alice's presences are often sent together, so only resolve each AT's trade data once
+		Map<String, Optional<CrossChainTradeData>> tradeDataByAtAddress = new HashMap<>();
 
-					continue;
-				}
+		int newCount = 0;
 
-				CrossChainTradeData tradeData = acctSupplier.get().populateTradeData(repository, atData);
-				if (tradeData == null) {
-					LOGGER.trace("Ignoring trade presence {} from peer {} as trade data not found?",
-							peersTradePresence.getAtAddress(), peer
-					);
+		try (final Repository repository = RepositoryManager.getRepository()) {
+			for (TradePresenceData peersTradePresence : verifiedTradePresences) {
+				String atAddress = peersTradePresence.getAtAddress();
 
-					continue;
+				Optional<CrossChainTradeData> cachedTradeData = tradeDataByAtAddress.get(atAddress);
+				if (cachedTradeData == null) {
+					cachedTradeData = Optional.ofNullable(fetchPresenceTradeData(repository, acctSuppliersByCodeHash, peersTradePresence, peer));
+					tradeDataByAtAddress.put(atAddress, cachedTradeData);
 				}
 
+				if (cachedTradeData.isEmpty())
+					continue;
+
+				CrossChainTradeData tradeData = cachedTradeData.get();
+
 				// Convert signer's public key to address form
 				String signerAddress = peersTradePresence.getTradeAddress();
 
 				// Signer's public key (in address form) must match Bob's / Alice's trade public key (in address form)
 				if (!signerAddress.equals(tradeData.qortalCreatorTradeAddress) && !signerAddress.equals(tradeData.qortalPartnerAddress)) {
 					LOGGER.trace("Ignoring trade presence {} from peer {} as signer isn't Alice or Bob?",
-							peersTradePresence.getAtAddress(), peer
+							atAddress, peer
 					);
 
 					continue;
 				}
 
-				// This is new to us
-				this.allTradePresencesByPubkey.put(pubkeyByteArray, peersTradePresence);
+				// This is new to us, unless another peer beat us to it
+				if (!this.tradePresenceIndex.putIfNewer(peersTradePresence))
+					continue;
+
 				++newCount;
 
 				LOGGER.trace("Added trade presence {} from peer {} with timestamp {}",
-						peersTradePresence.getAtAddress(), peer, timestamp
+						atAddress, peer, peersTradePresence.getTimestamp()
 				);
 
 				EventBus.INSTANCE.notify(new TradePresenceEvent(peersTradePresence));
@@ -637,10 +806,47 @@ public class TradeBot implements Listener {
 			LOGGER.error("Couldn't process TRADE_PRESENCES message due to repository issue", e);
 		}
 
-		if (newCount > 0) {
+		if (newCount > 0)
 			LOGGER.debug("New trade presences: {}", newCount);
-			rebuildSafeAllTradePresences();
+	}
+
+	/** Returns trade data for presence's AT, or null if AT isn't an active, known ACCT. */
+	private CrossChainTradeData fetchPresenceTradeData(Repository repository, Map<ByteArray, Supplier<ACCT>> acctSuppliersByCodeHash,
+			TradePresenceData peersTradePresence, Peer peer) throws DataException {
+		ATData atData = repository.getATRepository().fromATAddress(peersTradePresence.getAtAddress());
+		if (atData == null || atData.getIsFrozen() || atData.getIsFinished()) {
+			if (atData == null)
+				LOGGER.trace("Ignoring trade presence {} from peer {} as AT doesn't exist",
+						peersTradePresence.getAtAddress(), peer
+				);
+			else
+				LOGGER.trace("Ignoring trade presence {} from peer {} as AT is frozen or finished",
+						peersTradePresence.getAtAddress(), peer
+				);
+
+			return null;
+		}
+
+		ByteArray atCodeHash = ByteArray.wrap(atData.getCodeHash());
+		Supplier<ACCT> acctSupplier = acctSuppliersByCodeHash.get(atCodeHash);
+		if (acctSupplier == null) {
+			LOGGER.trace("Ignoring trade presence {} from peer {} as AT isn't a known ACCT?",
+					peersTradePresence.getAtAddress(), peer
+			);
+
+			return null;
+		}
+
+		CrossChainTradeData tradeData = acctSupplier.get().populateTradeData(repository, atData);
+		if (tradeData == null) {
+			LOGGER.trace("Ignoring trade presence {} from peer {} as trade data not found?",
+					peersTradePresence.getAtAddress(), peer
+			);
+
+			return null;
 		}
+
+		return tradeData;
 	}
 
 	public void bridgePresence(long timestamp, byte[] publicKey, byte[] signature, String atAddress) {
@@ -650,13 +856,8 @@ public class TradeBot implements Listener {
 		TradePresenceData fakeTradePresenceData = new TradePresenceData(expiry, publicKey, signature, atAddress);
 
 		// Only bridge if trade presence expiry timestamp is newer
-		TradePresenceData computedTradePresenceData = this.allTradePresencesByPubkey.compute(pubkeyByteArray, (k, v) ->
-				v == null || v.getTimestamp() < expiry ? fakeTradePresenceData : v
-		);
-
-		if (computedTradePresenceData == fakeTradePresenceData) {
+		if (this.tradePresenceIndex.putIfNewer(fakeTradePresenceData)) {
 			LOGGER.trace("Bridged PRESENCE transaction for trade {} with timestamp {}", atAddress, expiry);
-			rebuildSafeAllTradePresences();
 
 			EventBus.INSTANCE.notify(new TradePresenceEvent(fakeTradePresenceData));
 		}
@@ -665,17 +866,15 @@ public class TradeBot implements Listener {
 	/** Decorates a CrossChainTradeData object with Alice / Bob trade-bot presence timestamp, if available. */
 	public void decorateTradeDataWithPresence(CrossChainTradeData crossChainTradeData) {
 		// Match by AT address, then check for Bob vs Alice
-		this.safeAllTradePresencesByPubkey.values().stream()
-				.filter(tradePresenceData -> tradePresenceData.getAtAddress().equals(crossChainTradeData.qortalAtAddress))
-				.forEach(tradePresenceData -> {
-					String signerAddress = tradePresenceData.getTradeAddress();
-
-					// Signer's public key (in address form) must match Bob's / Alice's trade public key (in address form)
-					if (signerAddress.equals(crossChainTradeData.qortalCreatorTradeAddress))
-						crossChainTradeData.creatorPresenceExpiry = tradePresenceData.getTimestamp();
-					else if (signerAddress.equals(crossChainTradeData.qortalPartnerAddress))
-						crossChainTradeData.partnerPresenceExpiry = tradePresenceData.getTimestamp();
-				});
+		for (TradePresenceData tradePresenceData : this.tradePresenceIndex.getByAtAddress(crossChainTradeData.qortalAtAddress)) {
+			String signerAddress = tradePresenceData.getTradeAddress();
+
+			// Signer's public key (in address form) must match Bob's / Alice's trade public key (in address form)
+			if (signerAddress.equals(crossChainTradeData.qortalCreatorTradeAddress))
+				crossChainTradeData.creatorPresenceExpiry = tradePresenceData.getTimestamp();
+			else if (signerAddress.equals(crossChainTradeData.qortalPartnerAddress))
+				crossChainTradeData.partnerPresenceExpiry = tradePresenceData.getTimestamp();
+		}
 	}
 
 	private long generateExpiry(long timestamp) {
@@ -0,0 +1,244 @@
+package org.qortal.controller.tradebot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.qortal.controller.Synchronizer;
+import org.qortal.crosschain.ACCT;
+import org.qortal.crosschain.AcctMode;
+import org.qortal.crosschain.SupportedBlockchain;
+import org.qortal.data.at.ATStateData;
+import org.qortal.data.block.BlockData;
+import org.qortal.data.crosschain.CrossChainTradeData;
+import org.qortal.event.Event;
+import org.qortal.event.EventBus;
+import org.qortal.event.Listener;
+import org.qortal.repository.DataException;
+import org.qortal.repository.Repository;
+import org.qortal.repository.RepositoryManager;
+import org.qortal.utils.ByteArray;
+
+/**
+ * Incrementally maintained index of unfinished cross-chain trade ATs (OFFERING / TRADING).
+ * <p>
+ * Index is fully populated on first use, then updated on each new chain tip
+ * by only deserializing ATs whose state changed since the last processed block.
+ * If the last processed block is no longer in our chain (i.e. re-org) then the index is rebuilt.
+ * <p>
+ * Readers are served from an immutable, sorted snapshot so no locking is needed for API calls.
+ */
+public class TradeOfferIndex implements Listener {
+
+	private static final Logger LOGGER = LogManager.getLogger(TradeOfferIndex.class);
+
+	private static final Comparator<CrossChainTradeData> CREATION_ORDER = Comparator
+			.<CrossChainTradeData>comparingLong(tradeData -> tradeData.creationTimestamp)
+			.thenComparing(tradeData -> tradeData.qortalAtAddress);
+
+	/** Notified after index has processed new chain tip, with trade data of all trade ATs that changed state. */
+	public static class TradesChangedEvent implements Event {
+		private final BlockData blockData;
+		private final List<CrossChainTradeData> changedTrades;
+
+		public TradesChangedEvent(BlockData blockData, List<CrossChainTradeData> changedTrades) {
+			this.blockData = blockData;
+			this.changedTrades = changedTrades;
+		}
+
+		public BlockData getBlockData() {
+			return this.blockData;
+		}
+
+		/** Trade data in any mode, including finished trades. Do not modify. */
+		public List<CrossChainTradeData> getChangedTrades() {
+			return this.changedTrades;
+		}
+	}
+
+	private static TradeOfferIndex instance;
+
+	/** Unfinished trades by AT address. Guarded by <tt>this</tt>. */
+	private final Map<String, CrossChainTradeData> tradesByAtAddress = new HashMap<>();
+	/** Signature and height of last block processed into index. Guarded by <tt>this</tt>. */
+	private byte[] lastBlockSignature = null;
+	private int lastBlockHeight = 0;
+
+	/** Immutable snapshot of unfinished trades, sorted by creation timestamp. Null until populated. */
+	private volatile List<CrossChainTradeData> sortedTrades = null;
+
+	private TradeOfferIndex() {
+		EventBus.INSTANCE.addListener(event -> TradeOfferIndex.getInstance().listen(event));
+	}
+
+	public static synchronized TradeOfferIndex getInstance() {
+		if (instance == null)
+			instance = new TradeOfferIndex();
+
+		return instance;
+	}
+
+	@Override
+	public void listen(Event event) {
+		if (!(event instanceof Synchronizer.NewChainTipEvent))
+			return;
+
+		BlockData blockData = ((Synchronizer.NewChainTipEvent) event).getNewChainTip();
+
+		List<CrossChainTradeData> changedTrades;
+
+		try (final Repository repository = RepositoryManager.getRepository()) {
+			changedTrades = this.update(repository, blockData);
+		} catch (DataException e) {
+			LOGGER.error(String.format("Couldn't update trade offer index at height %d", blockData.getHeight()), e);
+			return;
+		}
+
+		EventBus.INSTANCE.notify(new TradesChangedEvent(blockData, changedTrades));
+	}
+
+	/**
+	 * Returns copies of indexed trades, sorted by creation timestamp.
+	 *
+	 * @param foreignBlockchain only trades for this blockchain, or null for all
+	 * @param mode only trades in this mode, or null for both OFFERING and TRADING
+	 */
+	public List<CrossChainTradeData> getTrades(SupportedBlockchain foreignBlockchain, AcctMode mode,
+			Integer limit, Integer offset, Boolean reverse) throws DataException {
+		List<CrossChainTradeData> trades = this.sortedTrades;
+
+		if (trades == null)
+			try (final Repository repository = RepositoryManager.getRepository()) {
+				trades = this.populate(repository);
+			}
+
+		Stream<CrossChainTradeData> stream = trades.stream();
+
+		if (reverse != null && reverse) {
+			List<CrossChainTradeData> reversedTrades = new ArrayList<>(trades);
+			Collections.reverse(reversedTrades);
+			stream = reversedTrades.stream();
+		}
+
+		if (foreignBlockchain != null)
+			stream = stream.filter(tradeData -> foreignBlockchain.name().equals(tradeData.foreignBlockchain));
+
+		if (mode != null)
+			stream = stream.filter(tradeData -> tradeData.mode == mode);
+
+		if (offset != null && offset > 0)
+			stream = stream.skip(offset);
+
+		if (limit != null && limit > 0)
+			stream = stream.limit(limit);
+
+		return stream.map(CrossChainTradeData::new).collect(Collectors.toList());
+	}
+
+	/** Fully (re)builds index from repository, if not already populated. Returns sorted snapshot. */
+	private synchronized List<CrossChainTradeData> populate(Repository repository) throws DataException {
+		if (this.sortedTrades != null)
+			return this.sortedTrades;
+
+		this.rebuild(repository, repository.getBlockRepository().getLastBlock());
+
+		return this.sortedTrades;
+	}
+
+	private void rebuild(Repository repository, BlockData blockData) throws DataException {
+		final long before = System.currentTimeMillis();
+
+		this.tradesByAtAddress.clear();
+
+		// We want ALL unfinished trades, in any mode
+		final Boolean isFinished = Boolean.FALSE;
+
+		for (CrossChainTradeData tradeData : fetchTrades(repository, isFinished, null))
+			this.indexTrade(tradeData);
+
+		this.lastBlockSignature = blockData.getSignature();
+		this.lastBlockHeight = blockData.getHeight();
+		this.rebuildSortedTrades();
+
+		final long after = System.currentTimeMillis();
+		LOGGER.debug(() -> String.format("Rebuilt trade offer index with %d trades at height %d in %dms",
+				this.tradesByAtAddress.size(), blockData.getHeight(), after - before));
+	}
+
+	/** Updates index to new chain tip, returning trade data for any ATs that changed state. */
+	private synchronized List<CrossChainTradeData> update(Repository repository, BlockData blockData) throws DataException {
+		// Process ATs that changed state since our last processed block, or since new tip if we can't go incremental
+		int minimumFinalHeight = blockData.getHeight();
+
+		if (this.sortedTrades == null || this.lastBlockSignature == null) {
+			this.rebuild(repository, blockData);
+		} else if (repository.getBlockRepository().getHeightFromSignature(this.lastBlockSignature) == this.lastBlockHeight) {
+			// Our last processed block is still in the chain, so we only need changes since then
+			minimumFinalHeight = Math.min(this.lastBlockHeight + 1, blockData.getHeight());
+		} else {
+			// Re-org: AT states from orphaned blocks have been removed so rebuild from scratch
+			this.rebuild(repository, blockData);
+		}
+
+		List<CrossChainTradeData> changedTrades = fetchTrades(repository, null, minimumFinalHeight);
+
+		for (CrossChainTradeData tradeData : changedTrades)
+			this.indexTrade(tradeData);
+
+		this.lastBlockSignature = blockData.getSignature();
+		this.lastBlockHeight = blockData.getHeight();
+
+		if (!changedTrades.isEmpty())
+			this.rebuildSortedTrades();
+
+		return changedTrades;
+	}
+
+	private void indexTrade(CrossChainTradeData tradeData) {
+		if (tradeData.mode == AcctMode.OFFERING || tradeData.mode == AcctMode.TRADING)
+			this.tradesByAtAddress.put(tradeData.qortalAtAddress, tradeData);
+		else
+			this.tradesByAtAddress.remove(tradeData.qortalAtAddress);
+	}
+
+	private void rebuildSortedTrades() {
+		List<CrossChainTradeData> trades = new ArrayList<>(this.tradesByAtAddress.values());
+		trades.sort(CREATION_ORDER);
+
+		this.sortedTrades = Collections.unmodifiableList(trades);
+	}
+
+	private static List<CrossChainTradeData> fetchTrades(Repository repository, Boolean isFinished, Integer minimumFinalHeight) throws DataException {
+		List<CrossChainTradeData> trades = new ArrayList<>();
+
+		for (SupportedBlockchain blockchain : SupportedBlockchain.values()) {
+			Map<ByteArray, Supplier<ACCT>> acctsByCodeHash = SupportedBlockchain.getFilteredAcctMap(blockchain);
+
+			for (Map.Entry<ByteArray, Supplier<ACCT>> acctInfo : acctsByCodeHash.entrySet()) {
+				byte[] codeHash = acctInfo.getKey().value;
+				ACCT acct = acctInfo.getValue().get();
+
+				List<ATStateData> atStates = repository.getATRepository().getMatchingFinalATStates(codeHash,
+						isFinished, null, null, minimumFinalHeight,
+						null, null, null);
+
+				if (atStates == null)
+					throw new DataException("Couldn't fetch trade AT states from repository");
+
+				for (ATStateData atState : atStates)
+					trades.add(acct.populateTradeData(repository, atState));
+			}
+		}
+
+		return trades;
+	}
+
+}
@@ -0,0 +1,154 @@
+package org.qortal.controller.tradebot;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import org.qortal.crypto.Crypto;
+import org.qortal.data.network.TradePresenceData;
+import org.qortal.utils.ByteArray;
+
+import com.google.common.primitives.Longs;
+
+/**
+ * Trade presences, indexed by trade public key and by AT address.
+ * <p>
+ * Readers use concurrent maps of immutable entries, so no locking is needed for API calls
+ * or network message processing. Writers are serialized and also maintain an expiry-ordered set,
+ * so expiring presences doesn't need to scan all entries, and if the index is full
+ * then the presences closest to expiry are evicted first.
+ */
+public class TradePresenceIndex {
+
+	/** Presence counts above this are verified using multiple threads. */
+	private static final int PARALLEL_VERIFY_THRESHOLD = 16;
+
+	private static final Comparator<TradePresenceData> EXPIRY_ORDER = Comparator
+			.comparingLong(TradePresenceData::getTimestamp)
+			.thenComparing(tradePresenceData -> ByteArray.wrap(tradePresenceData.getPublicKey()));
+
+	private final int maxSize;
+
+	private final Map<ByteArray, TradePresenceData> presencesByPubkey = new ConcurrentHashMap<>();
+	/** Presences by AT address. Lists are immutable and replaced on change. */
+	private final Map<String, List<TradePresenceData>> presencesByAtAddress = new ConcurrentHashMap<>();
+	/** All presences, soonest expiry first. Only accessed while synchronized on this. */
+	private final TreeSet<TradePresenceData> presencesByExpiry = new TreeSet<>(EXPIRY_ORDER);
+
+	public TradePresenceIndex(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	public TradePresenceData get(ByteArray pubkey) {
+		return this.presencesByPubkey.get(pubkey);
+	}
+
+	/** Returns presences for AT, usually at most one each for Bob and Alice. */
+	public List<TradePresenceData> getByAtAddress(String atAddress) {
+		return this.presencesByAtAddress.getOrDefault(atAddress, Collections.emptyList());
+	}
+
+	/** Returns unmodifiable, weakly-consistent view of all presences. */
+	public Collection<TradePresenceData> getAll() {
+		return Collections.unmodifiableCollection(this.presencesByPubkey.values());
+	}
+
+	/** Returns unmodifiable, weakly-consistent view of all presences, by trade public key. */
+	public Map<ByteArray, TradePresenceData> getAllByPubkey() {
+		return Collections.unmodifiableMap(this.presencesByPubkey);
+	}
+
+	public int size() {
+		return this.presencesByPubkey.size();
+	}
+
+	/**
+	 * Adds presence, replacing any existing presence for the same public key, but only if passed presence has newer timestamp.
+	 * <p>
+	 * @return true if presence was added
+	 */
+	public synchronized boolean putIfNewer(TradePresenceData tradePresenceData) {
+		ByteArray pubkey = ByteArray.wrap(tradePresenceData.getPublicKey());
+
+		TradePresenceData existingPresence = this.presencesByPubkey.get(pubkey);
+		if (existingPresence != null) {
+			if (existingPresence.getTimestamp() >= tradePresenceData.getTimestamp())
+				return false;
+
+			this.remove(existingPresence);
+		}
+
+		this.presencesByPubkey.put(pubkey, tradePresenceData);
+		this.presencesByExpiry.add(tradePresenceData);
+		this.presencesByAtAddress.compute(tradePresenceData.getAtAddress(), (atAddress, presences) -> {
+			List<TradePresenceData> newPresences = presences == null ? new ArrayList<>(2) : new ArrayList<>(presences);
+			newPresences.add(tradePresenceData);
+			return List.copyOf(newPresences);
+		});
+
+		// Make room by evicting whatever expires soonest, which might be what we just added
+		while (this.presencesByExpiry.size() > this.maxSize)
+			this.remove(this.presencesByExpiry.first());
+
+		return this.presencesByPubkey.get(pubkey) == tradePresenceData;
+	}
+
+	/**
+	 * Removes presences with timestamps at or before <tt>now</tt>.
+	 * <p>
+	 * @return removed presences
+	 */
+	public synchronized List<TradePresenceData> expire(long now) {
+		List<TradePresenceData> expiredPresences = new ArrayList<>();
+
+		while (!this.presencesByExpiry.isEmpty() && this.presencesByExpiry.first().getTimestamp() <= now) {
+			TradePresenceData tradePresenceData = this.presencesByExpiry.first();
+			this.remove(tradePresenceData);
+			expiredPresences.add(tradePresenceData);
+		}
+
+		return expiredPresences;
+	}
+
+	private void remove(TradePresenceData tradePresenceData) {
+		this.presencesByExpiry.remove(tradePresenceData);
+		this.presencesByPubkey.remove(ByteArray.wrap(tradePresenceData.getPublicKey()), tradePresenceData);
+		this.presencesByAtAddress.computeIfPresent(tradePresenceData.getAtAddress(), (atAddress, presences) -> {
+			List<TradePresenceData> newPresences = presences.stream()
+					.filter(presence -> presence != tradePresenceData)
+					.collect(Collectors.toList());
+			return newPresences.isEmpty() ? null : List.copyOf(newPresences);
+		});
+	}
+
+	/**
+	 * Returns presences whose timestamp signatures are valid, in the same order as passed.
+	 * <p>
+	 * Larger batches, e.g. from a peer's TRADE_PRESENCES message, are verified using multiple threads.
+	 */
+	public static List<TradePresenceData> verifySignatures(List<TradePresenceData> tradePresences) {
+		if (tradePresences.size() > PARALLEL_VERIFY_THRESHOLD)
+			return tradePresences.parallelStream()
+					.filter(TradePresenceIndex::isSignatureValid)
+					.collect(Collectors.toList());
+
+		return tradePresences.stream()
+				.filter(TradePresenceIndex::isSignatureValid)
+				.collect(Collectors.toList());
+	}
+
+	private static boolean isSignatureValid(TradePresenceData tradePresenceData) {
+		byte[] signature = tradePresenceData.getSignature();
+		if (signature == null)
+			return false;
+
+		return Crypto.verify(tradePresenceData.getPublicKey(), signature, Longs.toByteArray(tradePresenceData.getTimestamp()));
+	}
+
+}
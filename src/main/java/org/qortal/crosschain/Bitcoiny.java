@@ -1,6 +1,10 @@
 package org.qortal.crosschain;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 import org.apache.logging.log4j.LogManager;
@@ -33,6 +37,7 @@ import org.qortal.utils.Amounts;
 import org.qortal.utils.BitTwiddling;
 
 import com.google.common.hash.HashCode;
+import org.qortal.utils.DaemonThreadFactory;
 import org.qortal.utils.NTP;
 
 /** Bitcoin-like (Bitcoin, Litecoin, etc.) support */
@@ -48,12 +53,36 @@ public abstract class Bitcoiny implements ForeignBlockchain {
 
 	protected final NetworkParameters params;
 
-	/** Cache recent transactions to speed up subsequent lookups */
-	protected List<SimpleTransaction> transactionsCache;
-	protected Long transactionsCacheTimestamp;
-	protected String transactionsCacheXpub;
+	/** How long to serve a wallet's transactions from its index before rescanning */
 	protected static long TRANSACTIONS_CACHE_TIMEOUT = 2 * 60 * 1000L; // 2 minutes
 
+	/** Maximum number of wallets to keep scan state for */
+	private static final int MAX_WALLET_INDEXES = 20;
+	/** Scan state for recently used wallets, keyed by xpub, least recently used first */
+	@SuppressWarnings("serial")
+	private final Map<String, WalletIndex> walletIndexes = new LinkedHashMap<>(MAX_WALLET_INDEXES + 1, 0.75F, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, WalletIndex> eldest) {
+			return size() > MAX_WALLET_INDEXES;
+		}
+	};
+
+	/** Maximum number of confirmed transactions to cache */
+	private static final int CONFIRMED_TRANSACTION_CACHE_SIZE = 10000;
+	/** Confirmed transactions never change, so they can be cached for as long as there's room */
+	@SuppressWarnings("serial")
+	private final Map<String, BitcoinyTransaction> confirmedTransactionCache = Collections.synchronizedMap(new LinkedHashMap<>(CONFIRMED_TRANSACTION_CACHE_SIZE + 1, 0.75F, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, BitcoinyTransaction> eldest) {
+			return size() > CONFIRMED_TRANSACTION_CACHE_SIZE;
+		}
+	});
+
+	/** Shared by all coins to query blockchain providers concurrently while scanning wallets */
+	private static final ExecutorService WALLET_SCAN_EXECUTOR = Executors.newFixedThreadPool(4, new DaemonThreadFactory("Wallet-Scan"));
+	/** How many wallet scripts, or transactions, to ask for in each concurrent request */
+	private static final int WALLET_SCAN_CHUNK_SIZE = 20;
+
 	/** Keys that have been previously marked as fully spent,<br>
 	 * i.e. keys with transactions but with no unspent outputs. */
 	protected final Set<ECKey> spentKeys = Collections.synchronizedSet(new HashSet<>());
@@ -61,6 +90,9 @@ public abstract class Bitcoiny implements ForeignBlockchain {
 	/** How many wallet keys to generate in each batch. */
 	private static final int WALLET_KEY_LOOKAHEAD_INCREMENT = 3;
 
+	/** How many consecutive batches of unused wallet keys to find before assuming no later keys have been used. */
+	private static final int WALLET_KEY_UNUSED_BATCH_LIMIT = 8;
+
 	/** How many wallet keys to generate when using bitcoinj as the data provider.
 	 * We must use a higher value here since we are unable to request multiple batches of keys.
 	 * Without this, the bitcoinj state can be missing transactions, causing errors such as "insufficient balance". */
@@ -254,6 +286,25 @@ public abstract class Bitcoiny implements ForeignBlockchain {
 		throw(e2);
 	}
 
+	/**
+	 * Returns transactions for each of passed scripts, in the same order
+	 * <p>
+	 * @throws ForeignBlockchainException if error occurs
+	 */
+	public List<List<TransactionHash>> getAddressTransactions(List<byte[]> scriptPubKeys, boolean includeUnconfirmed) throws ForeignBlockchainException {
+		int retries = 0;
+		ForeignBlockchainException e2 = null;
+		while (retries <= 3) {
+			try {
+				return this.blockchain.getAddressTransactions(scriptPubKeys, includeUnconfirmed);
+			} catch (ForeignBlockchainException e) {
+				e2 = e;
+				retries++;
+			}
+		}
+		throw(e2);
+	}
+
 	/**
 	 * Returns list of transaction hashes pertaining to passed address.
 	 * <p>
@@ -288,11 +339,17 @@ public abstract class Bitcoiny implements ForeignBlockchain {
 	 * @throws ForeignBlockchainException if error occurs
 	 */
 	public BitcoinyTransaction getTransaction(String txHash) throws ForeignBlockchainException {
+		BitcoinyTransaction transaction = this.confirmedTransactionCache.get(txHash);
+		if (transaction != null)
+			return transaction;
+
 		int retries = 0;
 		ForeignBlockchainException e2 = null;
 		while (retries <= 3) {
 			try {
-				return this.blockchain.getTransaction(txHash);
+				transaction = this.blockchain.getTransaction(txHash);
+				this.cacheTransaction(transaction);
+				return transaction;
 			} catch (ForeignBlockchainException e) {
 				e2 = e;
 				retries++;
@@ -301,6 +358,58 @@ public abstract class Bitcoiny implements ForeignBlockchain {
 		throw(e2);
 	}
 
+	/**
+	 * Returns transaction info for each of passed transaction hashes, in the same order.
+	 * <p>
+	 * @throws ForeignBlockchainException.NotFoundException if any transaction unknown
+	 * @throws ForeignBlockchainException if error occurs
+	 */
+	public List<BitcoinyTransaction> getTransactions(List<String> txHashes) throws ForeignBlockchainException {
+		Map<String, BitcoinyTransaction> transactions = new HashMap<>();
+		List<String> uncachedTxHashes = new ArrayList<>();
+
+		for (String txHash : txHashes) {
+			BitcoinyTransaction transaction = this.confirmedTransactionCache.get(txHash);
+			if (transaction != null)
+				transactions.put(txHash, transaction);
+			else
+				uncachedTxHashes.add(txHash);
+		}
+
+		if (!uncachedTxHashes.isEmpty()) {
+			int retries = 0;
+			ForeignBlockchainException e2 = null;
+			List<BitcoinyTransaction> fetchedTransactions = null;
+			while (fetchedTransactions == null) {
+				try {
+					fetchedTransactions = this.blockchain.getTransactions(uncachedTxHashes);
+				} catch (ForeignBlockchainException e) {
+					e2 = e;
+					retries++;
+					if (retries > 3)
+						throw(e2);
+				}
+			}
+
+			for (BitcoinyTransaction transaction : fetchedTransactions) {
+				this.cacheTransaction(transaction);
+				transactions.put(transaction.txHash, transaction);
+			}
+		}
+
+		List<BitcoinyTransaction> orderedTransactions = new ArrayList<>(txHashes.size());
+		for (String txHash : txHashes)
+			orderedTransactions.add(transactions.get(txHash));
+
+		return orderedTransactions;
+	}
+
+	private void cacheTransaction(BitcoinyTransaction transaction) {
+		// Unconfirmed transactions have no timestamp, and could still be replaced or dropped
+		if (transaction.timestamp != null)
+			this.confirmedTransactionCache.put(transaction.txHash, transaction);
+	}
+
 	/**
 	 * Broadcasts raw transaction to network.
 	 * <p>
@@ -375,7 +484,9 @@ public abstract class Bitcoiny implements ForeignBlockchain {
 
 	public Long getWalletBalanceFromTransactions(String key58) throws ForeignBlockchainException {
 		long balance = 0;
-		Comparator<SimpleTransaction> oldestTimestampFirstComparator = Comparator.comparingInt(SimpleTransaction::getTimestamp);
+		// Unconfirmed transactions have no timestamp yet, so are newest
+		Comparator<SimpleTransaction> oldestTimestampFirstComparator = Comparator.comparing(SimpleTransaction::getTimestamp,
+				Comparator.nullsLast(Comparator.naturalOrder()));
 		List<SimpleTransaction> transactions = getWalletTransactions(key58).stream().sorted(oldestTimestampFirstComparator).collect(Collectors.toList());
 		for (SimpleTransaction transaction : transactions) {
 			balance += transaction.getTotalAmount();
@@ -384,87 +495,85 @@ public abstract class Bitcoiny implements ForeignBlockchain {
 	}
 
 	public List<SimpleTransaction> getWalletTransactions(String key58) throws ForeignBlockchainException {
-		synchronized (this) {
-			// Serve from the cache if it's recent, and matches this xpub
-			if (Objects.equals(transactionsCacheXpub, key58)) {
-				if (transactionsCache != null && transactionsCacheTimestamp != null) {
-					Long now = NTP.getTime();
-					boolean isCacheStale = (now != null && now - transactionsCacheTimestamp >= TRANSACTIONS_CACHE_TIMEOUT);
-					if (!isCacheStale) {
-						return transactionsCache;
-					}
+		WalletIndex walletIndex = this.getWalletIndex(key58);
+
+		// Only one scan of each wallet at a time, but different wallets can be scanned concurrently
+		synchronized (walletIndex) {
+			// Serve from the index if it's recent
+			if (walletIndex.simpleTransactions != null && walletIndex.timestamp != null) {
+				Long now = NTP.getTime();
+				boolean isCacheStale = (now != null && now - walletIndex.timestamp >= TRANSACTIONS_CACHE_TIMEOUT);
+				if (!isCacheStale) {
+					return walletIndex.simpleTransactions;
 				}
 			}
 
 			Context.propagate(bitcoinjContext);
 
-			Wallet wallet = walletFromDeterministicKey58(key58);
-			DeterministicKeyChain keyChain = wallet.getActiveKeyChain();
+			Set<String> txHashes = new LinkedHashSet<>();
 
-			keyChain.setLookaheadSize(Bitcoiny.WALLET_KEY_LOOKAHEAD_INCREMENT);
-			keyChain.maybeLookAhead();
-
-			List<DeterministicKey> keys = new ArrayList<>(keyChain.getLeafKeys());
-
-			Set<BitcoinyTransaction> walletTransactions = new HashSet<>();
-			Set<String> keySet = new HashSet<>();
-
-			// Set the number of consecutive empty batches required before giving up
-			final int numberOfAdditionalBatchesToSearch = 7;
-
-			int unusedCounter = 0;
-			int ki = 0;
-			do {
-				boolean areAllKeysUnused = true;
+			// Recheck all keys scanned previously, as any of them could have received new transactions
+			walletIndex.usedKeys.clear();
+			this.scanWalletScripts(walletIndex, 0, walletIndex.scripts, txHashes);
 
-				for (; ki < keys.size(); ++ki) {
-					DeterministicKey dKey = keys.get(ki);
-
-					// Check for transactions
-					Address address = Address.fromKey(this.params, dKey, ScriptType.P2PKH);
-					keySet.add(address.toString());
-					byte[] script = ScriptBuilder.createOutputScript(address).getProgram();
+			// Keep generating keys until there are enough consecutive unused batches at the end
+			int trailingUnusedBatchCount;
+			while ((trailingUnusedBatchCount = walletIndex.getTrailingUnusedBatchCount()) < WALLET_KEY_UNUSED_BATCH_LIMIT) {
+				int offset = walletIndex.scripts.size();
 
-					// Ask for transaction history - if it's empty then key has never been used
-					List<TransactionHash> historicTransactionHashes = this.getAddressTransactions(script, false);
+				// Generate as many batches as we'd need if they all turn out to be unused, and scan them all at once
+				List<byte[]> newScripts = new ArrayList<>();
+				for (int i = trailingUnusedBatchCount; i < WALLET_KEY_UNUSED_BATCH_LIMIT; ++i)
+					newScripts.addAll(this.addKeysToWalletIndex(walletIndex, generateMoreKeys(walletIndex.keyChain)));
 
-					if (!historicTransactionHashes.isEmpty()) {
-						areAllKeysUnused = false;
-
-						for (TransactionHash transactionHash : historicTransactionHashes)
-							walletTransactions.add(this.getTransaction(transactionHash.txHash));
-					}
-				}
+				this.scanWalletScripts(walletIndex, offset, newScripts, txHashes);
+			}
 
-				if (areAllKeysUnused) {
-					// No transactions
-					if (unusedCounter >= numberOfAdditionalBatchesToSearch) {
-						// ... and we've hit our search limit
-						break;
-					}
-					// We haven't hit our search limit yet so increment the counter and keep looking
-					unusedCounter++;
-				} else {
-					// Some keys in this batch were used, so reset the counter
-					unusedCounter = 0;
+			// Forget about any transactions that are no longer in histories, e.g. due to reorgs
+			boolean isChanged = walletIndex.transactions.keySet().retainAll(txHashes);
+
+			// Unconfirmed transactions need fetching again, as they could have been confirmed since
+			isChanged |= walletIndex.transactions.values().removeIf(transaction -> transaction.timestamp == null);
+
+			// Only fetch transactions we haven't seen before, or that weren't confirmed when we last did
+			List<String> newTxHashes = txHashes.stream()
+					.filter(txHash -> !walletIndex.transactions.containsKey(txHash))
+					.collect(Collectors.toList());
+
+			if (!newTxHashes.isEmpty()) {
+				List<BitcoinyTransaction> newTransactions = this.fetchConcurrently(newTxHashes, this::getTransactions);
+				for (BitcoinyTransaction transaction : newTransactions)
+					walletIndex.transactions.put(transaction.txHash, transaction);
+
+				// Converting transactions needs the transactions they spend, so fetch those together too
+				List<String> inputTxHashes = newTransactions.stream()
+						.flatMap(transaction -> transaction.inputs.stream())
+						.map(input -> input.outputTxHash)
+						.distinct()
+						.collect(Collectors.toList());
+				try {
+					this.fetchConcurrently(inputTxHashes, this::getTransactions);
+				} catch (ForeignBlockchainException e) {
+					// Conversion will try again for each input, and cope with any that are still unavailable
 				}
 
-				// Generate some more keys
-				keys.addAll(generateMoreKeys(keyChain));
+				isChanged = true;
+			}
 
-				// Process new keys
-			} while (true);
+			if (walletIndex.simpleTransactions == null || isChanged || walletIndex.simpleTransactionsAddressCount != walletIndex.addresses.size()) {
+				// Unconfirmed transactions have no timestamp yet, so are newest
+				Comparator<SimpleTransaction> newestTimestampFirstComparator = Comparator.comparing(SimpleTransaction::getTimestamp,
+						Comparator.nullsFirst(Comparator.reverseOrder()));
 
-			Comparator<SimpleTransaction> newestTimestampFirstComparator = Comparator.comparingInt(SimpleTransaction::getTimestamp).reversed();
+				walletIndex.simpleTransactions = walletIndex.transactions.values().stream()
+						.map(t -> convertToSimpleTransaction(t, walletIndex.addresses))
+						.sorted(newestTimestampFirstComparator).collect(Collectors.toList());
+				walletIndex.simpleTransactionsAddressCount = walletIndex.addresses.size();
+			}
 
-			// Update cache and return
-			transactionsCacheTimestamp = NTP.getTime();
-			transactionsCacheXpub = key58;
-			transactionsCache = walletTransactions.stream()
-					.map(t -> convertToSimpleTransaction(t, keySet))
-					.sorted(newestTimestampFirstComparator).collect(Collectors.toList());
+			walletIndex.timestamp = NTP.getTime();
 
-			return transactionsCache;
+			return walletIndex.simpleTransactions;
 		}
 	}
 
@@ -846,12 +955,152 @@ public abstract class Bitcoiny implements ForeignBlockchain {
 		return allLeafKeys.subList(existingLeafKeyCount, allLeafKeys.size());
 	}
 
+	/** Incremental scan state for one HD wallet, so that refreshes don't need to rediscover its keys, or refetch its transactions. */
+	private static class WalletIndex {
+		final DeterministicKeyChain keyChain;
+
+		/** Output scripts of all keys scanned so far, in key order */
+		final List<byte[]> scripts = new ArrayList<>();
+		/** Index into <tt>scripts</tt> of the first key of each batch */
+		final List<Integer> batchStarts = new ArrayList<>();
+		/** Indexes into <tt>scripts</tt> of keys with transactions */
+		final BitSet usedKeys = new BitSet();
+		final Set<String> addresses = new HashSet<>();
+
+		/** Wallet transactions seen so far, keyed by hash */
+		final Map<String, BitcoinyTransaction> transactions = new HashMap<>();
+
+		List<SimpleTransaction> simpleTransactions;
+		/** Number of addresses when <tt>simpleTransactions</tt> were built, as they depend on which addresses are in the wallet */
+		int simpleTransactionsAddressCount;
+		Long timestamp;
+
+		WalletIndex(DeterministicKeyChain keyChain) {
+			this.keyChain = keyChain;
+		}
+
+		/** Returns number of batches at the end of the scanned keys that have no used keys. */
+		int getTrailingUnusedBatchCount() {
+			int count = 0;
+
+			for (int batch = this.batchStarts.size() - 1; batch >= 0; --batch) {
+				int start = this.batchStarts.get(batch);
+				int end = batch + 1 < this.batchStarts.size() ? this.batchStarts.get(batch + 1) : this.scripts.size();
+
+				int nextUsedKey = this.usedKeys.nextSetBit(start);
+				if (nextUsedKey >= 0 && nextUsedKey < end)
+					break;
+
+				++count;
+			}
+
+			return count;
+		}
+	}
+
 	protected byte[] addressToScriptPubKey(String base58Address) {
 		Context.propagate(this.bitcoinjContext);
 		Address address = Address.fromString(this.params, base58Address);
 		return ScriptBuilder.createOutputScript(address).getProgram();
 	}
 
+	/** Returns scan state for passed wallet key, creating it if need be. */
+	private WalletIndex getWalletIndex(String key58) {
+		Context.propagate(bitcoinjContext);
+
+		// Index by xpub, so that an xprv and its xpub share scan state, and we don't keep private keys around
+		String xpub58 = DeterministicKey.deserializeB58(null, key58, this.params).serializePubB58(this.params);
+
+		synchronized (this.walletIndexes) {
+			WalletIndex walletIndex = this.walletIndexes.get(xpub58);
+			if (walletIndex != null)
+				return walletIndex;
+
+			Wallet wallet = Wallet.fromWatchingKeyB58(this.params, xpub58, DeterministicHierarchy.BIP32_STANDARDISATION_TIME_SECS);
+			DeterministicKeyChain keyChain = wallet.getActiveKeyChain();
+
+			keyChain.setLookaheadSize(Bitcoiny.WALLET_KEY_LOOKAHEAD_INCREMENT);
+			keyChain.maybeLookAhead();
+
+			walletIndex = new WalletIndex(keyChain);
+			this.addKeysToWalletIndex(walletIndex, keyChain.getLeafKeys());
+
+			this.walletIndexes.put(xpub58, walletIndex);
+			return walletIndex;
+		}
+	}
+
+	/** Adds passed keys to <tt>walletIndex</tt> as a new batch, returning their output scripts. */
+	private List<byte[]> addKeysToWalletIndex(WalletIndex walletIndex, List<DeterministicKey> keys) {
+		walletIndex.batchStarts.add(walletIndex.scripts.size());
+
+		List<byte[]> scripts = new ArrayList<>(keys.size());
+		for (DeterministicKey dKey : keys) {
+			Address address = Address.fromKey(this.params, dKey, ScriptType.P2PKH);
+			walletIndex.addresses.add(address.toString());
+			scripts.add(ScriptBuilder.createOutputScript(address).getProgram());
+		}
+
+		walletIndex.scripts.addAll(scripts);
+		return scripts;
+	}
+
+	/**
+	 * Fetches transaction histories for passed scripts, which are at <tt>offset</tt> onwards in <tt>walletIndex</tt>,
+	 * marking keys with any history as used, and adding the transaction hashes to <tt>txHashes</tt>.
+	 */
+	private void scanWalletScripts(WalletIndex walletIndex, int offset, List<byte[]> scripts, Set<String> txHashes) throws ForeignBlockchainException {
+		List<List<TransactionHash>> histories = this.fetchConcurrently(scripts, chunk -> this.getAddressTransactions(chunk, false));
+
+		for (int i = 0; i < histories.size(); ++i) {
+			List<TransactionHash> historicTransactionHashes = histories.get(i);
+			if (historicTransactionHashes.isEmpty())
+				continue;
+
+			walletIndex.usedKeys.set(offset + i);
+
+			for (TransactionHash transactionHash : historicTransactionHashes)
+				txHashes.add(transactionHash.txHash);
+		}
+	}
+
+	@FunctionalInterface
+	private interface ChunkFetcher<T, R> {
+		List<R> fetch(List<T> chunk) throws ForeignBlockchainException;
+	}
+
+	/** Splits <tt>items</tt> into chunks, fetching them concurrently, and returns the results in the same order as <tt>items</tt>. */
+	private <T, R> List<R> fetchConcurrently(List<T> items, ChunkFetcher<T, R> fetcher) throws ForeignBlockchainException {
+		if (items.size() <= WALLET_SCAN_CHUNK_SIZE)
+			return fetcher.fetch(items);
+
+		List<Future<List<R>>> futures = new ArrayList<>();
+		for (int i = 0; i < items.size(); i += WALLET_SCAN_CHUNK_SIZE) {
+			List<T> chunk = items.subList(i, Math.min(i + WALLET_SCAN_CHUNK_SIZE, items.size()));
+			futures.add(WALLET_SCAN_EXECUTOR.submit(() -> fetcher.fetch(chunk)));
+		}
+
+		List<R> results = new ArrayList<>(items.size());
+		try {
+			for (Future<List<R>> future : futures)
+				results.addAll(future.get());
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof ForeignBlockchainException)
+				throw (ForeignBlockchainException) e.getCause();
+
+			throw new ForeignBlockchainException(String.format("Unable to fetch wallet info: %s", e.getCause()));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ForeignBlockchainException("Interrupted while fetching wallet info");
+		} finally {
+			// Don't leave unwanted requests queued if something went wrong
+			for (Future<List<R>> future : futures)
+				future.cancel(true);
+		}
+
+		return results;
+	}
+
 	protected Wallet walletFromDeterministicKey58(String key58) {
 		DeterministicKey dKey = DeterministicKey.deserializeB58(null, key58, this.params);
 
@@ -1,5 +1,6 @@
 package org.qortal.crosschain;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public abstract class BitcoinyBlockchainProvider {
@@ -28,9 +29,27 @@ public abstract class BitcoinyBlockchainProvider {
 	/** Returns unpacked transaction given <tt>txHash</tt>. */
 	public abstract BitcoinyTransaction getTransaction(String txHash) throws ForeignBlockchainException;
 
+	/** Returns unpacked transactions given <tt>txHashes</tt>, in the same order. Providers may override this to fetch them more efficiently. */
+	public List<BitcoinyTransaction> getTransactions(List<String> txHashes) throws ForeignBlockchainException {
+		List<BitcoinyTransaction> transactions = new ArrayList<>(txHashes.size());
+		for (String txHash : txHashes)
+			transactions.add(this.getTransaction(txHash));
+
+		return transactions;
+	}
+
 	/** Returns list of transaction hashes (and heights) for address represented by <tt>scriptPubKey</tt>, optionally including unconfirmed transactions. */
 	public abstract List<TransactionHash> getAddressTransactions(byte[] scriptPubKey, boolean includeUnconfirmed) throws ForeignBlockchainException;
 
+	/** Returns lists of transaction hashes (and heights) for each address represented by <tt>scriptPubKeys</tt>, in the same order. Providers may override this to fetch them more efficiently. */
+	public List<List<TransactionHash>> getAddressTransactions(List<byte[]> scriptPubKeys, boolean includeUnconfirmed) throws ForeignBlockchainException {
+		List<List<TransactionHash>> addressTransactions = new ArrayList<>(scriptPubKeys.size());
+		for (byte[] scriptPubKey : scriptPubKeys)
+			addressTransactions.add(this.getAddressTransactions(scriptPubKey, includeUnconfirmed));
+
+		return addressTransactions;
+	}
+
 	/** Returns list of unspent transaction outputs for address represented by <tt>scriptPubKey</tt>, optionally including unconfirmed transactions. */
 	public abstract List<UnspentOutput> getUnspentOutputs(byte[] scriptPubKey, boolean includeUnconfirmed) throws ForeignBlockchainException;
 
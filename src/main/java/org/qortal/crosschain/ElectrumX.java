@@ -2,22 +2,19 @@ package org.qortal.crosschain;
 
 import java.io.IOException;
 import java.math.BigDecimal;
-import java.net.InetSocketAddress;
-import java.net.Socket;
-import java.net.SocketAddress;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import javax.net.ssl.SSLSocketFactory;
-
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import org.json.simple.JSONValue;
 import org.qortal.crypto.Crypto;
-import org.qortal.crypto.TrustlessSSLSocketFactory;
 
 import com.google.common.hash.HashCode;
 import com.google.common.primitives.Bytes;
@@ -41,6 +38,13 @@ public class ElectrumX extends BitcoinyBlockchainProvider {
 	private static final int RESPONSE_TIME_READINGS = 5;
 	private static final long MAX_AVG_RESPONSE_TIME = 500L; // ms
 
+	/** Maximum number of connections to servers, each of which can have many requests in flight */
+	private static final int MAX_CONNECTIONS = 3;
+	/** How long to wait for a response before giving up on a server */
+	private static final long RESPONSE_TIMEOUT = 20 * 1000L; // ms
+	/** Maximum number of calls in one JSON-RPC batch, to stay well within servers' request size limits */
+	private static final int MAX_BATCH_SIZE = 50;
+
 	public static class Server {
 		String hostname;
 
@@ -56,14 +60,14 @@ public class ElectrumX extends BitcoinyBlockchainProvider {
 			this.port = port;
 		}
 
-		public void addResponseTime(long responseTime) {
+		public synchronized void addResponseTime(long responseTime) {
 			while (this.responseTimes.size() > RESPONSE_TIME_READINGS) {
 				this.responseTimes.remove(0);
 			}
 			this.responseTimes.add(responseTime);
 		}
 
-		public long averageResponseTime() {
+		public synchronized long averageResponseTime() {
 			if (this.responseTimes.size() < RESPONSE_TIME_READINGS) {
 				// Not enough readings yet
 				return 0L;
@@ -100,19 +104,31 @@ public class ElectrumX extends BitcoinyBlockchainProvider {
 			return String.format("%s:%s:%d", this.connectionType.name(), this.hostname, this.port);
 		}
 	}
-	private Set<Server> servers = new HashSet<>();
-	private List<Server> remainingServers = new ArrayList<>();
-	private Set<Server> uselessServers = Collections.synchronizedSet(new HashSet<>());
+	private final Set<Server> servers = new HashSet<>();
+	private final List<Server> remainingServers = new ArrayList<>();
+	private final Set<Server> uselessServers = Collections.synchronizedSet(new HashSet<>());
 
 	private final String netId;
 	private final String expectedGenesisHash;
 	private final Map<Server.ConnectionType, Integer> defaultPorts = new EnumMap<>(Server.ConnectionType.class);
 
+	/** Guards servers, remainingServers, connections, drainingConnections and connectingCount. Not held while waiting for responses. */
 	private final Object serverLock = new Object();
-	private Server currentServer;
-	private Socket socket;
-	private Scanner scanner;
-	private int nextId = 1;
+	private final List<ElectrumXConnection> connections = new ArrayList<>();
+	/** Connections to slow servers, no longer used for new requests, but left open until requests in flight have completed */
+	private final List<ElectrumXConnection> drainingConnections = new ArrayList<>();
+	private int connectingCount = 0;
+
+	/** Result of an RPC, along with the server that supplied it */
+	private static class RpcResult {
+		final Object result;
+		final Server server;
+
+		RpcResult(Object result, Server server) {
+			this.result = result;
+			this.server = server;
+		}
+	}
 
 	private static final int TX_CACHE_SIZE = 1000;
 	@SuppressWarnings("serial")
@@ -334,11 +350,11 @@ public class ElectrumX extends BitcoinyBlockchainProvider {
 		if (transaction != null)
 			return transaction;
 
-		Object transactionObj = null;
+		RpcResult rpcResult = null;
 
 		do {
 			try {
-				transactionObj = this.rpc("blockchain.transaction.get", txHash, true);
+				rpcResult = this.rpcResult("blockchain.transaction.get", txHash, true);
 			} catch (ForeignBlockchainException.NetworkException e) {
 				// DaemonError({'code': -5, 'message': 'No such mempool or blockchain transaction. Use gettransaction for wallet transactions.'})
 				if (Integer.valueOf(-5).equals(e.getDaemonErrorCode()))
@@ -357,7 +373,62 @@ public class ElectrumX extends BitcoinyBlockchainProvider {
 
 				throw e;
 			}
-		} while (transactionObj == null);
+		} while (rpcResult == null);
+
+		return this.parseTransaction(txHash, rpcResult);
+	}
+
+	/**
+	 * Returns transaction info for each of passed transaction hashes, in the same order,
+	 * fetching those not already cached using JSON-RPC batches.
+	 * <p>
+	 * @throws ForeignBlockchainException.NotFoundException if any transaction not found
+	 * @throws ForeignBlockchainException if error occurs
+	 */
+	@Override
+	public List<BitcoinyTransaction> getTransactions(List<String> txHashes) throws ForeignBlockchainException {
+		Map<String, BitcoinyTransaction> transactions = new HashMap<>();
+		List<String> uncachedTxHashes = new ArrayList<>();
+
+		for (String txHash : txHashes) {
+			BitcoinyTransaction transaction = transactionCache.get(txHash);
+			if (transaction != null)
+				transactions.put(txHash, transaction);
+			else if (!uncachedTxHashes.contains(txHash))
+				uncachedTxHashes.add(txHash);
+		}
+
+		for (int i = 0; i < uncachedTxHashes.size(); i += MAX_BATCH_SIZE) {
+			List<String> batchTxHashes = uncachedTxHashes.subList(i, Math.min(i + MAX_BATCH_SIZE, uncachedTxHashes.size()));
+
+			List<Object[]> paramsList = new ArrayList<>(batchTxHashes.size());
+			for (String txHash : batchTxHashes)
+				paramsList.add(new Object[] { txHash, true });
+
+			List<RpcResult> rpcResults = this.rpcBatch("blockchain.transaction.get", paramsList);
+
+			for (int j = 0; j < batchTxHashes.size(); ++j) {
+				String txHash = batchTxHashes.get(j);
+				RpcResult rpcResult = rpcResults.get(j);
+
+				// Errors are retried individually, so they're handled the same way as unbatched requests
+				BitcoinyTransaction transaction = rpcResult != null
+						? this.parseTransaction(txHash, rpcResult)
+						: this.getTransaction(txHash);
+
+				transactions.put(txHash, transaction);
+			}
+		}
+
+		List<BitcoinyTransaction> orderedTransactions = new ArrayList<>(txHashes.size());
+		for (String txHash : txHashes)
+			orderedTransactions.add(transactions.get(txHash));
+
+		return orderedTransactions;
+	}
+
+	private BitcoinyTransaction parseTransaction(String txHash, RpcResult rpcResult) throws ForeignBlockchainException {
+		Object transactionObj = rpcResult.result;
 
 		if (!(transactionObj instanceof JSONObject))
 			throw new ForeignBlockchainException.NetworkException("Expected JSONObject as response from ElectrumX blockchain.transaction.get RPC");
@@ -425,9 +496,9 @@ public class ElectrumX extends BitcoinyBlockchainProvider {
 				// Update: it turns out that they were just using a different key - "address" instead of "addresses"
 				// The code below can remain in place, just in case a peer returns a missing address in the future
 				if (addresses == null || addresses.isEmpty()) {
-					if (this.currentServer != null) {
-						this.uselessServers.add(this.currentServer);
-						this.closeServer(this.currentServer);
+					if (rpcResult.server != null) {
+						this.uselessServers.add(rpcResult.server);
+						this.closeServer(rpcResult.server);
 					}
 					LOGGER.info("No output addresses returned for transaction {}", txHash);
 					throw new ForeignBlockchainException(String.format("No output addresses returned for transaction %s", txHash));
@@ -436,10 +507,11 @@ public class ElectrumX extends BitcoinyBlockchainProvider {
 				outputs.add(new BitcoinyTransaction.Output(scriptPubKey, value, addresses));
 			}
 
-			transaction = new BitcoinyTransaction(txHash, size, locktime, timestamp, inputs, outputs);
+			BitcoinyTransaction transaction = new BitcoinyTransaction(txHash, size, locktime, timestamp, inputs, outputs);
 
-			// Save into cache
-			transactionCache.put(txHash, transaction);
+			// Save into cache, unless it's unconfirmed, as its timestamp, at least, will change
+			if (timestamp != null)
+				transactionCache.put(txHash, transaction);
 
 			return transaction;
 		} catch (NullPointerException | ClassCastException e) {
@@ -461,6 +533,48 @@ public class ElectrumX extends BitcoinyBlockchainProvider {
 		Bytes.reverse(scriptHash);
 
 		Object transactionsJson = this.rpc("blockchain.scripthash.get_history", HashCode.fromBytes(scriptHash).toString());
+
+		return this.parseAddressTransactions(transactionsJson, includeUnconfirmed);
+	}
+
+	/**
+	 * Returns lists of transactions relating to each of passed payment scripts, in the same order,
+	 * using JSON-RPC batches.
+	 * <p>
+	 * @return lists of related transactions, with empty lists for unknown scripts
+	 * @throws ForeignBlockchainException if error occurs
+	 */
+	@Override
+	public List<List<TransactionHash>> getAddressTransactions(List<byte[]> scripts, boolean includeUnconfirmed) throws ForeignBlockchainException {
+		List<List<TransactionHash>> addressTransactions = new ArrayList<>(scripts.size());
+
+		for (int i = 0; i < scripts.size(); i += MAX_BATCH_SIZE) {
+			List<byte[]> batchScripts = scripts.subList(i, Math.min(i + MAX_BATCH_SIZE, scripts.size()));
+
+			List<Object[]> paramsList = new ArrayList<>(batchScripts.size());
+			for (byte[] script : batchScripts) {
+				byte[] scriptHash = Crypto.digest(script);
+				Bytes.reverse(scriptHash);
+				paramsList.add(new Object[] { HashCode.fromBytes(scriptHash).toString() });
+			}
+
+			List<RpcResult> rpcResults = this.rpcBatch("blockchain.scripthash.get_history", paramsList);
+
+			for (int j = 0; j < batchScripts.size(); ++j) {
+				RpcResult rpcResult = rpcResults.get(j);
+
+				// Errors are retried individually, so they're handled the same way as unbatched requests
+				if (rpcResult != null)
+					addressTransactions.add(this.parseAddressTransactions(rpcResult.result, includeUnconfirmed));
+				else
+					addressTransactions.add(this.getAddressTransactions(batchScripts.get(j), includeUnconfirmed));
+			}
+		}
+
+		return addressTransactions;
+	}
+
+	private List<TransactionHash> parseAddressTransactions(Object transactionsJson, boolean includeUnconfirmed) throws ForeignBlockchainException {
 		if (!(transactionsJson instanceof JSONArray))
 			throw new ForeignBlockchainException.NetworkException("Expected array output from ElectrumX blockchain.scripthash.get_history RPC");
 
@@ -504,10 +618,10 @@ public class ElectrumX extends BitcoinyBlockchainProvider {
 	 * @throws ForeignBlockchainException
 	 * @throws ClassCastException to be handled by caller
 	 */
-	private Set<Server> serverPeersSubscribe() throws ForeignBlockchainException {
+	private Set<Server> serverPeersSubscribe(ElectrumXConnection connection) throws ForeignBlockchainException {
 		Set<Server> newServers = new HashSet<>();
 
-		Object peers = this.connectedRpc("server.peers.subscribe");
+		Object peers = this.connectedRpc(connection, "server.peers.subscribe");
 
 		for (Object rawPeer : (JSONArray) peers) {
 			JSONArray peer = (JSONArray) rawPeer;
@@ -567,155 +681,300 @@ public class ElectrumX extends BitcoinyBlockchainProvider {
 	 * @throws ForeignBlockchainException if server returns error or something goes wrong
 	 */
 	private Object rpc(String method, Object...params) throws ForeignBlockchainException {
+		return this.rpcResult(method, params).result;
+	}
+
+	/**
+	 * Performs RPC call, with automatic reconnection to different server if needed.
+	 * <p>
+	 * @return "result" object from within JSON output, along with the server that supplied it
+	 * @throws ForeignBlockchainException if server returns error or something goes wrong
+	 */
+	private RpcResult rpcResult(String method, Object...params) throws ForeignBlockchainException {
+		return this.rpc(method, Collections.singletonList(params), true).get(0);
+	}
+
+	/**
+	 * Calls <tt>method</tt> once for each entry in <tt>paramsList</tt> using a single JSON-RPC batch,
+	 * with automatic reconnection to different server if needed.
+	 * <p>
+	 * @return results in the same order as <tt>paramsList</tt>, with null for any call that returned an error
+	 * @throws ForeignBlockchainException if something goes wrong with the batch as a whole
+	 */
+	private List<RpcResult> rpcBatch(String method, List<Object[]> paramsList) throws ForeignBlockchainException {
+		return this.rpc(method, paramsList, false);
+	}
+
+	private List<RpcResult> rpc(String method, List<Object[]> paramsList, boolean throwErrors) throws ForeignBlockchainException {
 		synchronized (this.serverLock) {
 			if (this.remainingServers.isEmpty())
 				this.remainingServers.addAll(this.servers);
+		}
 
-			while (haveConnection()) {
-				Object response = connectedRpc(method, params);
+		ElectrumXConnection connection;
+		while ((connection = this.getConnection()) != null) {
+			List<Object> results = this.connectedRpc(connection, method, paramsList, throwErrors);
 
-				// If we have more servers and this one replied slowly, try another
-				if (!this.remainingServers.isEmpty()) {
-					long averageResponseTime = this.currentServer.averageResponseTime();
-					if (averageResponseTime > MAX_AVG_RESPONSE_TIME) {
-						LOGGER.info("Slow average response time {}ms from {} - trying another server...", averageResponseTime, this.currentServer.hostname);
-						this.closeServer();
-						break;
-					}
+			// If we have more servers and this one replied slowly, try another next time
+			if (this.haveRemainingServers()) {
+				long averageResponseTime = connection.getServer().averageResponseTime();
+				if (averageResponseTime > MAX_AVG_RESPONSE_TIME) {
+					LOGGER.info("Slow average response time {}ms from {} - trying another server...", averageResponseTime, connection.getServer().hostname);
+					this.drainConnection(connection);
 				}
+			}
 
-				if (response != null)
-					return response;
+			if (results != null) {
+				List<RpcResult> rpcResults = new ArrayList<>(results.size());
+				for (Object result : results)
+					rpcResults.add(result != null ? new RpcResult(result, connection.getServer()) : null);
 
-				// Didn't work, try another server...
-				this.closeServer();
+				return rpcResults;
 			}
 
-			// Failed to perform RPC - maybe lack of servers?
-			LOGGER.info("Error: No connected Electrum servers when trying to make RPC call");
-			throw new ForeignBlockchainException.NetworkException(String.format("Failed to perform ElectrumX RPC %s", method));
+			// Didn't work, try another server...
 		}
+
+		// Failed to perform RPC - maybe lack of servers?
+		LOGGER.info("Error: No connected Electrum servers when trying to make RPC call");
+		throw new ForeignBlockchainException.NetworkException(String.format("Failed to perform ElectrumX RPC %s", method));
 	}
 
-	/** Returns true if we have, or create, a connection to an ElectrumX server. */
-	private boolean haveConnection() throws ForeignBlockchainException {
-		if (this.currentServer != null)
-			return true;
+	private boolean haveRemainingServers() {
+		synchronized (this.serverLock) {
+			return !this.remainingServers.isEmpty();
+		}
+	}
 
-		while (!this.remainingServers.isEmpty()) {
-			Server server = this.remainingServers.remove(RANDOM.nextInt(this.remainingServers.size()));
-			LOGGER.trace(() -> String.format("Connecting to %s", server));
+	/**
+	 * Returns a connection to use for the next request, or null if we can't connect to any server.
+	 * <p>
+	 * Connections are chosen by average response time, weighted by the number of requests already
+	 * in flight. If all connections are busy, another is opened, up to <tt>MAX_CONNECTIONS</tt>.
+	 */
+	private ElectrumXConnection getConnection() throws ForeignBlockchainException {
+		while (true) {
+			ElectrumXConnection bestConnection;
+
+			synchronized (this.serverLock) {
+				this.connections.removeIf(ElectrumXConnection::isClosed);
+				this.closeDrainedConnections();
+				bestConnection = this.connections.stream()
+						.min(Comparator.comparingLong(ElectrumX::getConnectionCost))
+						.orElse(null);
+
+				boolean isIdle = bestConnection != null && bestConnection.getPendingCount() == 0;
+				boolean canConnect = this.connections.size() + this.connectingCount < MAX_CONNECTIONS
+						&& !this.remainingServers.isEmpty();
+
+				if (isIdle || (bestConnection != null && !canConnect))
+					return bestConnection;
+
+				if (!canConnect) {
+					if (this.connectingCount == 0)
+						// Nothing connected, and no more servers to try
+						return null;
+
+					// Wait for other threads' connection attempts to finish
+					try {
+						this.serverLock.wait();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new ForeignBlockchainException.NetworkException("Interrupted while waiting for ElectrumX connection");
+					}
+					continue;
+				}
+
+				this.connectingCount++;
+			}
 
+			// Connect without holding the lock, so other threads can keep using existing connections
+			ElectrumXConnection newConnection = null;
 			try {
-				SocketAddress endpoint = new InetSocketAddress(server.hostname, server.port);
-				int timeout = 5000; // ms
+				newConnection = this.connect();
+			} finally {
+				synchronized (this.serverLock) {
+					this.connectingCount--;
+					if (newConnection != null)
+						this.connections.add(newConnection);
+
+					this.serverLock.notifyAll();
+				}
+			}
 
-				this.socket = new Socket();
-				this.socket.connect(endpoint, timeout);
-				this.socket.setTcpNoDelay(true);
+			if (newConnection != null)
+				return newConnection;
 
-				if (server.connectionType == Server.ConnectionType.SSL) {
-					SSLSocketFactory factory = TrustlessSSLSocketFactory.getSocketFactory();
-					this.socket = factory.createSocket(this.socket, server.hostname, server.port, true);
-				}
+			if (bestConnection != null && !bestConnection.isClosed())
+				return bestConnection;
 
-				this.scanner = new Scanner(this.socket.getInputStream());
-				this.scanner.useDelimiter("\n");
+			// Check whether another thread managed to connect
+		}
+	}
+
+	private static long getConnectionCost(ElectrumXConnection connection) {
+		return (connection.getServer().averageResponseTime() + 1) * (connection.getPendingCount() + 1);
+	}
+
+	/** Returns a new connection to one of the remaining servers, or null if none are suitable. */
+	private ElectrumXConnection connect() {
+		while (true) {
+			Server server;
+
+			synchronized (this.serverLock) {
+				if (this.remainingServers.isEmpty())
+					return null;
+
+				server = this.remainingServers.remove(RANDOM.nextInt(this.remainingServers.size()));
+
+				if (this.uselessServers.contains(server)
+						|| this.connections.stream().anyMatch(connection -> connection.getServer().equals(server))
+						|| this.drainingConnections.stream().anyMatch(connection -> connection.getServer().equals(server)))
+					continue;
+			}
+
+			LOGGER.trace(() -> String.format("Connecting to %s", server));
+
+			ElectrumXConnection connection = null;
+			try {
+				connection = ElectrumXConnection.connect(server);
 
 				// Check connection is suitable by asking for server features, including genesis block hash
-				JSONObject featuresJson = (JSONObject) this.connectedRpc("server.features");
+				JSONObject featuresJson = (JSONObject) this.connectedRpc(connection, "server.features");
 
-				if (featuresJson == null || Double.valueOf((String) featuresJson.get("protocol_min")) < MIN_PROTOCOL_VERSION)
+				if (featuresJson == null || Double.valueOf((String) featuresJson.get("protocol_min")) < MIN_PROTOCOL_VERSION) {
+					connection.close();
 					continue;
+				}
 
-				if (this.expectedGenesisHash != null && !((String) featuresJson.get("genesis_hash")).equals(this.expectedGenesisHash))
+				if (this.expectedGenesisHash != null && !((String) featuresJson.get("genesis_hash")).equals(this.expectedGenesisHash)) {
+					connection.close();
 					continue;
+				}
 
 				// Ask for more servers
-				Set<Server> moreServers = serverPeersSubscribe();
-				// Discard duplicate servers we already know
-				moreServers.removeAll(this.servers);
-				// Add to both lists
-				this.remainingServers.addAll(moreServers);
-				this.servers.addAll(moreServers);
+				Set<Server> moreServers = serverPeersSubscribe(connection);
+
+				synchronized (this.serverLock) {
+					// Discard duplicate servers we already know
+					moreServers.removeAll(this.servers);
+					// Add to both lists
+					this.remainingServers.addAll(moreServers);
+					this.servers.addAll(moreServers);
+				}
 
 				LOGGER.debug(() -> String.format("Connected to %s", server));
-				this.currentServer = server;
-				return true;
+				return connection;
 			} catch (IOException | ForeignBlockchainException | ClassCastException | NullPointerException e) {
 				// Didn't work, try another server...
-				closeServer();
+				if (connection != null)
+					connection.close();
 			}
 		}
-
-		return false;
 	}
 
 	/**
-	 * Perform RPC using currently connected server.
+	 * Perform RPC using passed connection.
 	 * <p>
 	 * @param method
 	 * @param params
 	 * @return response Object, or null if server fails to respond
 	 * @throws ForeignBlockchainException if server returns error
 	 */
-	@SuppressWarnings("unchecked")
-	private Object connectedRpc(String method, Object...params) throws ForeignBlockchainException {
-		JSONObject requestJson = new JSONObject();
-		requestJson.put("id", this.nextId++);
-		requestJson.put("method", method);
-		requestJson.put("jsonrpc", "2.0");
-
-		JSONArray requestParams = new JSONArray();
-		requestParams.addAll(Arrays.asList(params));
-		requestJson.put("params", requestParams);
+	private Object connectedRpc(ElectrumXConnection connection, String method, Object...params) throws ForeignBlockchainException {
+		List<Object> results = this.connectedRpc(connection, method, Collections.singletonList(params), true);
+		return results != null ? results.get(0) : null;
+	}
 
-		String request = requestJson.toJSONString() + "\n";
-		LOGGER.trace(() -> String.format("Request: %s", request));
+	/**
+	 * Perform RPCs, as a single JSON-RPC batch, using passed connection.
+	 * <p>
+	 * If server fails to respond, the connection is closed if it was lost, otherwise it is drained
+	 * so that other requests in flight on it can still complete.
+	 * <p>
+	 * @return response Objects, in the same order as <tt>paramsList</tt>, or null if server fails to respond
+	 * @throws ForeignBlockchainException if <tt>throwErrors</tt> and server returns error for any call
+	 */
+	private List<Object> connectedRpc(ElectrumXConnection connection, String method, List<Object[]> paramsList, boolean throwErrors) throws ForeignBlockchainException {
+		Server server = connection.getServer();
 
 		long startTime = System.currentTimeMillis();
-		final String response;
+		List<CompletableFuture<JSONObject>> futures = connection.batchRequest(method, paramsList);
 
+		List<JSONObject> responses = new ArrayList<>(futures.size());
 		try {
-			this.socket.getOutputStream().write(request.getBytes());
-			response = scanner.next();
-		} catch (IOException | NoSuchElementException e) {
-			// Unable to send, or receive -- try another server?
+			for (CompletableFuture<JSONObject> future : futures) {
+				long timeRemaining = startTime + RESPONSE_TIMEOUT - System.currentTimeMillis();
+				responses.add(future.get(Math.max(timeRemaining, 1L), TimeUnit.MILLISECONDS));
+			}
+		} catch (ExecutionException e) {
+			// Connection lost -- try another server?
+			this.closeConnection(connection);
+			return null;
+		} catch (TimeoutException e) {
+			LOGGER.debug(String.format("Timed out waiting for ElectrumX server %s for RPC method %s", server, method));
+
+			// Other requests on this connection could still succeed, so only stop sending it more
+			connection.abandonRequests(futures);
+			server.addResponseTime(System.currentTimeMillis() - startTime);
+			this.drainConnection(connection);
+
+			// Try another server
 			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ForeignBlockchainException.NetworkException(String.format("Interrupted while waiting for ElectrumX RPC %s", method));
 		}
 
 		long endTime = System.currentTimeMillis();
-		long responseTime = endTime-startTime;
-
-		LOGGER.trace(() -> String.format("Response: %s", response));
 		LOGGER.trace(() -> String.format("Time taken: %dms", endTime-startTime));
 
-		if (response.isEmpty())
-			// Empty response - try another server?
-			return null;
+		// Keep track of response times, per call, so that batches don't make server look slow
+		server.addResponseTime((endTime - startTime) / Math.max(1, responses.size()));
 
-		Object responseObj = JSONValue.parse(response);
-		if (!(responseObj instanceof JSONObject))
-			// Unexpected response - try another server?
-			return null;
+		List<Object> results = new ArrayList<>(responses.size());
+		for (JSONObject responseJson : responses) {
+			Object result;
+			try {
+				result = this.processResponse(server, method, responseJson);
+			} catch (ForeignBlockchainException e) {
+				if (throwErrors)
+					throw e;
+
+				// Caller retries this call individually
+				results.add(null);
+				continue;
+			}
+
+			if (result == null) {
+				// Unexpected response - try another server?
+				this.drainConnection(connection);
+				return null;
+			}
 
-		// Keep track of response times
-		if (this.currentServer != null) {
-			this.currentServer.addResponseTime(responseTime);
+			results.add(result);
 		}
 
-		JSONObject responseJson = (JSONObject) responseObj;
+		return results;
+	}
 
+	/**
+	 * Extracts result from a response.
+	 * <p>
+	 * @return result Object, or null if response is unusable
+	 * @throws ForeignBlockchainException if server returns error
+	 */
+	private Object processResponse(Server server, String method, JSONObject responseJson) throws ForeignBlockchainException {
 		Object errorObj = responseJson.get("error");
 		if (errorObj != null) {
 			if (errorObj instanceof String) {
-				LOGGER.debug(String.format("Unexpected error message from ElectrumX server %s for RPC method %s: %s", this.currentServer, method, (String) errorObj));
+				LOGGER.debug(String.format("Unexpected error message from ElectrumX server %s for RPC method %s: %s", server, method, (String) errorObj));
 				// Try another server
 				return null;
 			}
 
 			if (!(errorObj instanceof JSONObject)) {
-				LOGGER.debug(String.format("Unexpected error response from ElectrumX server %s for RPC method %s", this.currentServer, method));
+				LOGGER.debug(String.format("Unexpected error response from ElectrumX server %s for RPC method %s", server, method));
 				// Try another server
 				return null;
 			}
@@ -725,7 +984,7 @@ public class ElectrumX extends BitcoinyBlockchainProvider {
 			Object messageObj = errorJson.get("message");
 
 			if (!(messageObj instanceof String)) {
-				LOGGER.debug(String.format("Missing/invalid message in error response from ElectrumX server %s for RPC method %s", this.currentServer, method));
+				LOGGER.debug(String.format("Missing/invalid message in error response from ElectrumX server %s for RPC method %s", server, method));
 				// Try another server
 				return null;
 			}
@@ -739,43 +998,67 @@ public class ElectrumX extends BitcoinyBlockchainProvider {
 			if (messageMatcher.find())
 				try {
 					int daemonErrorCode = Integer.parseInt(messageMatcher.group(1));
-					throw new ForeignBlockchainException.NetworkException(daemonErrorCode, message, this.currentServer);
+					throw new ForeignBlockchainException.NetworkException(daemonErrorCode, message, server);
 				} catch (NumberFormatException e) {
 					// We couldn't parse the error code integer? Fall-through to generic exception...
 				}
 
-			throw new ForeignBlockchainException.NetworkException(message, this.currentServer);
+			throw new ForeignBlockchainException.NetworkException(message, server);
 		}
 
 		return responseJson.get("result");
 	}
 
+	/** Closes passed connection, failing any other requests in flight on it, which will be retried elsewhere. */
+	private void closeConnection(ElectrumXConnection connection) {
+		connection.close();
+
+		synchronized (this.serverLock) {
+			this.connections.remove(connection);
+		}
+	}
+
 	/**
-	 * Closes connection to <tt>server</tt> if it is currently connected server.
-	 * @param server
+	 * Stops using passed connection for new requests, closing it once any other requests in flight on it have completed.
 	 */
-	private void closeServer(Server server) {
+	private void drainConnection(ElectrumXConnection connection) {
 		synchronized (this.serverLock) {
-			if (this.currentServer == null || !this.currentServer.equals(server))
+			if (!this.connections.remove(connection))
+				// Already closed or draining
 				return;
 
-			if (this.socket != null && !this.socket.isClosed())
-				try {
-					this.socket.close();
-				} catch (IOException e) {
-					// We did try...
-				}
-
-			this.socket = null;
-			this.scanner = null;
-			this.currentServer = null;
+			this.drainingConnections.add(connection);
+			this.closeDrainedConnections();
 		}
 	}
 
-	/** Closes connection to currently connected server (if any). */
-	private void closeServer() {
+	/** Closes draining connections that have no more requests in flight. Caller must hold <tt>serverLock</tt>. */
+	private void closeDrainedConnections() {
+		this.drainingConnections.removeIf(connection -> {
+			if (connection.getPendingCount() > 0 && !connection.isClosed())
+				return false;
+
+			connection.close();
+			return true;
+		});
+	}
+
+	/**
+	 * Closes all connections to <tt>server</tt>.
+	 * @param server
+	 */
+	private void closeServer(Server server) {
 		synchronized (this.serverLock) {
-			this.closeServer(this.currentServer);
+			for (ElectrumXConnection connection : this.connections)
+				if (connection.getServer().equals(server))
+					connection.close();
+
+			for (ElectrumXConnection connection : this.drainingConnections)
+				if (connection.getServer().equals(server))
+					connection.close();
+
+			this.connections.removeIf(ElectrumXConnection::isClosed);
+			this.drainingConnections.removeIf(ElectrumXConnection::isClosed);
 		}
 	}
 
@@ -0,0 +1,230 @@
+package org.qortal.crosschain;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.net.ssl.SSLSocketFactory;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+import org.qortal.crypto.TrustlessSSLSocketFactory;
+
+/**
+ * Single connection to an ElectrumX server, allowing multiple requests to be in flight at once.
+ * <p>
+ * Requests are written as soon as they are made, and a reader thread matches each response
+ * to its request using the JSON-RPC id, so responses can arrive in any order. Messages that
+ * don't match a pending request, such as subscription notifications, are ignored.
+ */
+class ElectrumXConnection {
+
+	private static final Logger LOGGER = LogManager.getLogger(ElectrumXConnection.class);
+
+	private static final int CONNECT_TIMEOUT = 5000; // ms
+
+	private final ElectrumX.Server server;
+	private final Socket socket;
+	private final OutputStream outputStream;
+	private final BufferedReader reader;
+
+	private final Map<Long, CompletableFuture<JSONObject>> pendingRequests = new ConcurrentHashMap<>();
+	private long nextId = 1;
+	private volatile boolean isClosed = false;
+
+	private ElectrumXConnection(ElectrumX.Server server, Socket socket) throws IOException {
+		this.server = server;
+		this.socket = socket;
+		this.outputStream = socket.getOutputStream();
+		this.reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+	}
+
+	/** Connects to <tt>server</tt>, starting a daemon thread to read its responses. */
+	public static ElectrumXConnection connect(ElectrumX.Server server) throws IOException {
+		SocketAddress endpoint = new InetSocketAddress(server.hostname, server.port);
+
+		Socket socket = new Socket();
+		try {
+			socket.connect(endpoint, CONNECT_TIMEOUT);
+			socket.setTcpNoDelay(true);
+
+			if (server.connectionType == ElectrumX.Server.ConnectionType.SSL) {
+				SSLSocketFactory factory = TrustlessSSLSocketFactory.getSocketFactory();
+				socket = factory.createSocket(socket, server.hostname, server.port, true);
+			}
+		} catch (IOException e) {
+			socket.close();
+			throw e;
+		}
+
+		ElectrumXConnection connection = new ElectrumXConnection(server, socket);
+
+		Thread readerThread = new Thread(connection::readResponses, String.format("ElectrumX reader %s", server));
+		readerThread.setDaemon(true);
+		readerThread.start();
+
+		return connection;
+	}
+
+	public ElectrumX.Server getServer() {
+		return this.server;
+	}
+
+	public boolean isClosed() {
+		return this.isClosed;
+	}
+
+	/** Returns number of requests awaiting a response. */
+	public int getPendingCount() {
+		return this.pendingRequests.size();
+	}
+
+	/**
+	 * Sends request, returning a future that completes with the whole response object,
+	 * or exceptionally if the connection is lost before a response arrives.
+	 */
+	public CompletableFuture<JSONObject> request(String method, Object... params) {
+		return this.batchRequest(method, Collections.singletonList(params)).get(0);
+	}
+
+	/**
+	 * Sends a JSON-RPC batch calling <tt>method</tt> once for each entry in <tt>paramsList</tt>,
+	 * returning futures in the same order as <tt>paramsList</tt>.
+	 * <p>
+	 * A batch with one entry is sent as a plain request.
+	 */
+	@SuppressWarnings("unchecked")
+	public List<CompletableFuture<JSONObject>> batchRequest(String method, List<Object[]> paramsList) {
+		List<CompletableFuture<JSONObject>> futures = new ArrayList<>(paramsList.size());
+		JSONArray batchJson = new JSONArray();
+
+		final String request;
+		synchronized (this.outputStream) {
+			for (Object[] params : paramsList) {
+				long id = this.nextId++;
+
+				JSONObject requestJson = new JSONObject();
+				requestJson.put("id", id);
+				requestJson.put("method", method);
+				requestJson.put("jsonrpc", "2.0");
+
+				JSONArray requestParams = new JSONArray();
+				requestParams.addAll(Arrays.asList(params));
+				requestJson.put("params", requestParams);
+
+				CompletableFuture<JSONObject> future = new CompletableFuture<>();
+				this.pendingRequests.put(id, future);
+				futures.add(future);
+				batchJson.add(requestJson);
+			}
+
+			request = (batchJson.size() == 1 ? ((JSONObject) batchJson.get(0)).toJSONString() : batchJson.toJSONString()) + "\n";
+			LOGGER.trace(() -> String.format("Request to %s: %s", this.server, request));
+
+			try {
+				this.outputStream.write(request.getBytes(StandardCharsets.UTF_8));
+				this.outputStream.flush();
+			} catch (IOException e) {
+				// Unable to send, so fail everything on this connection
+				this.close();
+			}
+		}
+
+		// Close could have happened before we added our requests
+		if (this.isClosed)
+			this.failPendingRequests();
+
+		return futures;
+	}
+
+	/**
+	 * Stops waiting for responses to passed requests, e.g. after timing out,
+	 * so they no longer count as in flight. Late responses are then ignored.
+	 */
+	public void abandonRequests(List<CompletableFuture<JSONObject>> futures) {
+		this.pendingRequests.values().removeAll(futures);
+	}
+
+	private void readResponses() {
+		try {
+			String response;
+			while ((response = this.reader.readLine()) != null) {
+				final String responseForLog = response;
+				LOGGER.trace(() -> String.format("Response from %s: %s", this.server, responseForLog));
+
+				Object responseObj = JSONValue.parse(response);
+
+				if (responseObj instanceof JSONArray) {
+					// Batch response
+					for (Object entry : (JSONArray) responseObj)
+						this.completeRequest(entry);
+				} else {
+					this.completeRequest(responseObj);
+				}
+			}
+		} catch (IOException e) {
+			// Connection lost, or closed by us
+		} finally {
+			this.close();
+		}
+	}
+
+	private void completeRequest(Object responseObj) {
+		if (!(responseObj instanceof JSONObject))
+			return;
+
+		JSONObject responseJson = (JSONObject) responseObj;
+		Object idObj = responseJson.get("id");
+		if (!(idObj instanceof Long))
+			// Notification, or error that can't be matched to a request
+			return;
+
+		CompletableFuture<JSONObject> future = this.pendingRequests.remove(idObj);
+		if (future != null)
+			future.complete(responseJson);
+	}
+
+	private void failPendingRequests() {
+		IOException e = new IOException(String.format("Connection to %s closed", this.server));
+
+		for (Long id : new ArrayList<>(this.pendingRequests.keySet())) {
+			CompletableFuture<JSONObject> future = this.pendingRequests.remove(id);
+			if (future != null)
+				future.completeExceptionally(e);
+		}
+	}
+
+	/** Closes connection, failing any requests still awaiting a response. */
+	public void close() {
+		this.isClosed = true;
+
+		try {
+			this.socket.close();
+		} catch (IOException e) {
+			// We did try...
+		}
+
+		this.failPendingRequests();
+	}
+
+	@Override
+	public String toString() {
+		return this.server.toString();
+	}
+
+}
@@ -27,6 +27,8 @@
 package org.qortal.crypto;
 
 import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+import javax.crypto.CipherOutputStream;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
@@ -41,6 +43,8 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
@@ -127,6 +131,44 @@ public class AES {
         outputStream.close();
     }
 
+    /**
+     * Returns a stream that encrypts everything written to it, in the same format as encryptFile(),
+     * i.e. prefixed with a random 16 byte initialization vector. Closing it closes outputStream.
+     */
+    public static OutputStream encryptingOutputStream(String algorithm, SecretKey key, OutputStream outputStream)
+            throws IOException, NoSuchPaddingException, NoSuchAlgorithmException, InvalidAlgorithmParameterException,
+            InvalidKeyException {
+
+        IvParameterSpec iv = AES.generateIv();
+        Cipher cipher = Cipher.getInstance(algorithm);
+        cipher.init(Cipher.ENCRYPT_MODE, key, iv);
+
+        // Prepend the output stream with the 16 byte initialization vector
+        outputStream.write(iv.getIV());
+
+        return new CipherOutputStream(outputStream, cipher);
+    }
+
+    /**
+     * Returns a stream that decrypts data in the format written by encryptFile(). Decryption failures,
+     * such as bad padding, are thrown as IOExceptions once the end of the stream is reached.
+     * Closing it closes inputStream.
+     */
+    public static InputStream decryptingInputStream(String algorithm, SecretKey key, InputStream inputStream)
+            throws IOException, NoSuchPaddingException, NoSuchAlgorithmException, InvalidAlgorithmParameterException,
+            InvalidKeyException {
+
+        // Read the initialization vector from the first 16 bytes of the stream
+        byte[] iv = inputStream.readNBytes(16);
+        if (iv.length != 16) {
+            throw new IOException("Encrypted data is too short");
+        }
+        Cipher cipher = Cipher.getInstance(algorithm);
+        cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(iv));
+
+        return new CipherInputStream(inputStream, cipher);
+    }
+
     public static void decryptFile(String algorithm, SecretKey key, String encryptedFilePath,
                                    String decryptedFilePath) throws IOException, NoSuchPaddingException,
             NoSuchAlgorithmException, InvalidAlgorithmParameterException, InvalidKeyException,
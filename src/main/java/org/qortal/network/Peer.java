@@ -10,6 +10,7 @@ import org.qortal.data.block.CommonBlockData;
 import org.qortal.data.network.PeerChainTipData;
 import org.qortal.data.network.PeerData;
 import org.qortal.network.message.ChallengeMessage;
+import org.qortal.network.message.FileBackedMessage;
 import org.qortal.network.message.Message;
 import org.qortal.network.message.MessageException;
 import org.qortal.network.message.MessageType;
@@ -22,6 +23,7 @@ import org.qortal.utils.NTP;
 import java.io.IOException;
 import java.net.*;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.security.SecureRandom;
@@ -78,6 +80,10 @@ public class Peer {
 
     private TransferQueue<Message> sendQueue;
     private ByteBuffer outputBuffer;
+    /** Payload file still to be sent after outputBuffer, for FileBackedMessages */
+    private FileChannel outputFileChannel;
+    private long outputFilePosition;
+    private long outputFileRemaining;
     private String outputMessageType;
     private int outputMessageId;
 
@@ -585,7 +591,7 @@ public class Peer {
 
         while (true) {
             // If output byte buffer is null, fetch next message from queue (if any)
-            while (this.outputBuffer == null) {
+            while (this.outputBuffer == null && this.outputFileChannel == null) {
                 Message message;
 
                 try {
@@ -603,7 +609,17 @@ public class Peer {
                     return false;
 
                 try {
-                    this.outputBuffer = ByteBuffer.wrap(message.toBytes());
+                    if (message instanceof FileBackedMessage && ((FileBackedMessage) message).hasPayloadFile()) {
+                        FileBackedMessage fileBackedMessage = (FileBackedMessage) message;
+
+                        this.outputBuffer = ByteBuffer.wrap(fileBackedMessage.toHeaderBytes());
+                        this.outputFileChannel = openPayloadFile(fileBackedMessage);
+                        this.outputFilePosition = 0;
+                        this.outputFileRemaining = fileBackedMessage.getPayloadFileLength();
+                    } else {
+                        this.outputBuffer = ByteBuffer.wrap(message.toBytes());
+                    }
+
                     this.outputMessageType = message.getType().name();
                     this.outputMessageId = message.getId();
 
@@ -613,29 +629,86 @@ public class Peer {
                     // Something went wrong converting message to bytes, so discard but allow another round
                     LOGGER.warn("[{}] Failed to send {} message with ID {} to peer {}: {}", this.peerConnectionId,
                             message.getType().name(), message.getId(), this, e.getMessage());
+                    this.outputBuffer = null;
                 }
             }
 
             // If output byte buffer is not null, send from that
-            int bytesWritten = this.socketChannel.write(outputBuffer);
+            if (this.outputBuffer != null) {
+                int bytesWritten = this.socketChannel.write(outputBuffer);
+
+                LOGGER.trace("[{}] Sent {} bytes of {} message with ID {} to peer {} ({} total)", this.peerConnectionId,
+                        bytesWritten, this.outputMessageType, this.outputMessageId, this, outputBuffer.limit());
+
+                // If we've sent 0 bytes then socket buffer is full so we need to wait until it's empty again
+                if (bytesWritten == 0) {
+                    return true;
+                }
+
+                // If we then exhaust the byte buffer, set it to null (otherwise loop and try to send more)
+                if (!this.outputBuffer.hasRemaining()) {
+                    this.outputBuffer = null;
 
-            LOGGER.trace("[{}] Sent {} bytes of {} message with ID {} to peer {} ({} total)", this.peerConnectionId,
-                    bytesWritten, this.outputMessageType, this.outputMessageId, this, outputBuffer.limit());
+                    if (this.outputFileChannel == null)
+                        this.onMessageSent();
+                }
+
+                continue;
+            }
+
+            // Otherwise stream the rest of the message directly from its payload file
+            long bytesTransferred = this.outputFileChannel.transferTo(this.outputFilePosition, this.outputFileRemaining, this.socketChannel);
+
+            LOGGER.trace("[{}] Sent {} file bytes of {} message with ID {} to peer {} ({} remaining)", this.peerConnectionId,
+                    bytesTransferred, this.outputMessageType, this.outputMessageId, this, this.outputFileRemaining - bytesTransferred);
 
-            // If we've sent 0 bytes then socket buffer is full so we need to wait until it's empty again
-            if (bytesWritten == 0) {
+            if (bytesTransferred == 0) {
+                // Peer would already have a partial message, so we can't skip to the next one
+                if (this.outputFilePosition >= this.outputFileChannel.size())
+                    throw new IOException(String.format("Payload file for %s message truncated while sending", this.outputMessageType));
+
+                // Socket buffer is full
                 return true;
             }
 
-            // If we then exhaust the byte buffer, set it to null (otherwise loop and try to send more)
-            if (!this.outputBuffer.hasRemaining()) {
-                this.outputMessageType = null;
-                this.outputMessageId = 0;
-                this.outputBuffer = null;
+            this.outputFilePosition += bytesTransferred;
+            this.outputFileRemaining -= bytesTransferred;
+
+            if (this.outputFileRemaining == 0) {
+                this.closeOutputFile();
+                this.onMessageSent();
             }
         }
     }
 
+    private FileChannel openPayloadFile(FileBackedMessage message) throws MessageException {
+        try {
+            return message.openPayloadFile();
+        } catch (IOException e) {
+            // e.g. file deleted since message was built, so we haven't started sending this message yet
+            throw new MessageException("Unable to open message payload file", e);
+        }
+    }
+
+    private void onMessageSent() {
+        this.outputMessageType = null;
+        this.outputMessageId = 0;
+    }
+
+    private void closeOutputFile() {
+        FileChannel fileChannel = this.outputFileChannel;
+        this.outputFileChannel = null;
+
+        if (fileChannel == null)
+            return;
+
+        try {
+            fileChannel.close();
+        } catch (IOException e) {
+            // Not much we can do
+        }
+    }
+
     protected Task getMessageTask() {
         /*
          * If we are still handshaking and there is a message yet to be processed then
@@ -812,6 +885,16 @@ public class Peer {
                 LOGGER.debug("[{}] IOException while trying to close peer {}", this.peerConnectionId, this);
             }
         }
+
+        // Any in-progress write will now fail, as socket is closed, but payload file needs closing too
+        FileChannel fileChannel = this.outputFileChannel;
+        if (fileChannel != null) {
+            try {
+                fileChannel.close();
+            } catch (IOException e) {
+                // Not much we can do
+            }
+        }
     }
 
 
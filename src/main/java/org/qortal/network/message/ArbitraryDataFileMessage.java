@@ -1,21 +1,40 @@
 package org.qortal.network.message;
 
+import com.google.common.primitives.Bytes;
 import com.google.common.primitives.Ints;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.qortal.arbitrary.ArbitraryDataFile;
 import org.qortal.repository.DataException;
 import org.qortal.transform.Transformer;
+import org.qortal.utils.Base58;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
-public class ArbitraryDataFileMessage extends Message {
+public class ArbitraryDataFileMessage extends FileBackedMessage {
 
 	private static final Logger LOGGER = LogManager.getLogger(ArbitraryDataFileMessage.class);
 
+	/** Number of checksums of streamed files to remember, as popular chunks are often requested by many peers */
+	private static final int MAX_CACHED_CHECKSUMS = 2000;
+
+	/** Checksums of streamed message payloads, keyed by signature and file hash, in access order */
+	private static final Map<String, byte[]> CHECKSUM_CACHE = Collections.synchronizedMap(
+			new LinkedHashMap<String, byte[]>(MAX_CACHED_CHECKSUMS, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+					return this.size() > MAX_CACHED_CHECKSUMS;
+				}
+			});
+
 	private byte[] signature;
 	private ArbitraryDataFile arbitraryDataFile;
 
@@ -40,6 +59,14 @@ public class ArbitraryDataFileMessage extends Message {
 		this.checksumBytes = Message.generateChecksum(this.dataBytes);
 	}
 
+	private ArbitraryDataFileMessage(byte[] dataPrefix, Path filePath, long fileLength, byte[] checksumBytes) {
+		super(MessageType.ARBITRARY_DATA_FILE);
+
+		this.dataBytes = dataPrefix;
+		this.checksumBytes = checksumBytes;
+		this.setPayloadFile(filePath, fileLength);
+	}
+
 	private ArbitraryDataFileMessage(int id, byte[] signature, ArbitraryDataFile arbitraryDataFile) {
 		super(id, MessageType.ARBITRARY_DATA_FILE);
 
@@ -55,6 +82,38 @@ public class ArbitraryDataFileMessage extends Message {
 		return this.arbitraryDataFile;
 	}
 
+	/**
+	 * Builds outgoing message whose file data is streamed from disk when sent,
+	 * instead of being read into memory up front.
+	 * <p>
+	 * Only suitable for files that won't be deleted or modified before the message is sent,
+	 * e.g. chunks we are hosting, as opposed to files we are merely relaying.
+	 */
+	public static ArbitraryDataFileMessage fromFile(byte[] signature, ArbitraryDataFile arbitraryDataFile) throws MessageException {
+		Path filePath = arbitraryDataFile.getFilePath();
+
+		try {
+			long fileLength = Files.size(filePath);
+			if (fileLength > MAX_DATA_SIZE)
+				throw new MessageException(String.format("File %s too large to send", arbitraryDataFile));
+
+			// Chunk contents are identified by their hash, so a cached checksum remains valid
+			String cacheKey = Base58.encode(signature) + "/" + arbitraryDataFile.getHash58();
+			byte[] checksumBytes = CHECKSUM_CACHE.get(cacheKey);
+
+			byte[] dataPrefix = Bytes.concat(signature, Ints.toByteArray((int) fileLength));
+
+			if (checksumBytes == null) {
+				checksumBytes = FileBackedMessage.generateChecksum(dataPrefix, filePath);
+				CHECKSUM_CACHE.put(cacheKey, checksumBytes);
+			}
+
+			return new ArbitraryDataFileMessage(dataPrefix, filePath, fileLength, checksumBytes);
+		} catch (IOException e) {
+			throw new MessageException(String.format("Unable to read file %s: %s", arbitraryDataFile, e.getMessage()), e);
+		}
+	}
+
 	public static Message fromByteBuffer(int id, ByteBuffer byteBuffer) throws MessageException {
 		byte[] signature = new byte[Transformer.SIGNATURE_LENGTH];
 		byteBuffer.get(signature);
@@ -0,0 +1,131 @@
+package org.qortal.network.message;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Outgoing message whose data payload ends with the contents of a file.
+ * <p>
+ * {@code dataBytes} only holds the start of the payload. The file's contents follow on,
+ * and are streamed straight from disk to the peer's socket by {@link org.qortal.network.Peer#writeChannel()},
+ * so large payloads don't need copying into (and then out of) the Java heap.
+ * <p>
+ * The checksum still covers the whole payload, so peers receive exactly the same bytes
+ * as they would for a fully in-memory message.
+ * <p>
+ * Subclasses' constructors for received messages can leave the payload file unset,
+ * in which case the message behaves like any other.
+ */
+public abstract class FileBackedMessage extends Message {
+
+	private static final int CHECKSUM_BUFFER_SIZE = 64 * 1024; // bytes
+
+	/** File whose contents follow {@code dataBytes}, or null */
+	private Path payloadFilePath;
+	private long payloadFileLength;
+
+	protected FileBackedMessage(int id, MessageType type) {
+		super(id, type);
+	}
+
+	protected FileBackedMessage(MessageType type) {
+		super(type);
+	}
+
+	protected void setPayloadFile(Path payloadFilePath, long payloadFileLength) {
+		this.payloadFilePath = payloadFilePath;
+		this.payloadFileLength = payloadFileLength;
+	}
+
+	public boolean hasPayloadFile() {
+		return this.payloadFilePath != null;
+	}
+
+	public long getPayloadFileLength() {
+		return this.payloadFileLength;
+	}
+
+	/** Opens payload file for reading. Caller is responsible for closing returned channel. */
+	public FileChannel openPayloadFile() throws IOException {
+		return FileChannel.open(this.payloadFilePath, StandardOpenOption.READ);
+	}
+
+	/**
+	 * Returns serialized message header and {@code dataBytes}, which should be followed by
+	 * {@link #getPayloadFileLength()} bytes from {@link #openPayloadFile()}.
+	 */
+	public byte[] toHeaderBytes() throws MessageException {
+		checkValidOutgoing();
+
+		long fullDataLength = this.dataBytes.length + this.payloadFileLength;
+		if (fullDataLength > MAX_DATA_SIZE)
+			throw new MessageException(String.format("About to send message with data length %d larger than allowed %d", fullDataLength, MAX_DATA_SIZE));
+
+		int dataLength = (int) fullDataLength;
+
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(getHeaderLength(dataLength) + this.dataBytes.length);
+
+			writeHeader(bytes, dataLength);
+			bytes.write(this.dataBytes);
+
+			return bytes.toByteArray();
+		} catch (IOException e) {
+			throw new MessageException("Failed to serialize message", e);
+		}
+	}
+
+	/** Fully in-memory serialization, for callers that can't stream the payload file. */
+	@Override
+	public byte[] toBytes() throws MessageException {
+		if (!this.hasPayloadFile())
+			return super.toBytes();
+
+		byte[] headerBytes = this.toHeaderBytes();
+
+		try {
+			byte[] fileBytes = Files.readAllBytes(this.payloadFilePath);
+			if (fileBytes.length != this.payloadFileLength)
+				throw new MessageException("Message payload file changed size");
+
+			byte[] bytes = Arrays.copyOf(headerBytes, headerBytes.length + fileBytes.length);
+			System.arraycopy(fileBytes, 0, bytes, headerBytes.length, fileBytes.length);
+			return bytes;
+		} catch (IOException e) {
+			throw new MessageException("Failed to read message payload file", e);
+		}
+	}
+
+	/**
+	 * Returns checksum of <tt>dataPrefix</tt> followed by the contents of file at <tt>path</tt>,
+	 * reading the file in small blocks rather than all at once.
+	 */
+	protected static byte[] generateChecksum(byte[] dataPrefix, Path path) throws IOException {
+		MessageDigest sha256;
+		try {
+			sha256 = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException("SHA-256 message digest not available");
+		}
+
+		sha256.update(dataPrefix);
+
+		byte[] buffer = new byte[CHECKSUM_BUFFER_SIZE];
+		try (InputStream inputStream = Files.newInputStream(path)) {
+			int bytesRead;
+			while ((bytesRead = inputStream.read(buffer)) != -1)
+				sha256.update(buffer, 0, bytesRead);
+		}
+
+		return Arrays.copyOfRange(sha256.digest(), 0, CHECKSUM_LENGTH);
+	}
+
+}
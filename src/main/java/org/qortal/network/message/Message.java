@@ -41,9 +41,9 @@ public abstract class Message {
 	private static final int HAS_ID_LENGTH = 1;
 	private static final int ID_LENGTH = 4;
 	private static final int DATA_SIZE_LENGTH = 4;
-	private static final int CHECKSUM_LENGTH = 4;
+	protected static final int CHECKSUM_LENGTH = 4;
 
-	private static final int MAX_DATA_SIZE = 10 * 1024 * 1024; // 10MB
+	protected static final int MAX_DATA_SIZE = 10 * 1024 * 1024; // 10MB
 
 	protected static final byte[] EMPTY_DATA_BYTES = new byte[0];
 
@@ -183,25 +183,10 @@ public abstract class Message {
 		try {
 			ByteArrayOutputStream bytes = new ByteArrayOutputStream(messageLength);
 
-			// Magic
-			bytes.write(Network.getInstance().getMessageMagic());
+			writeHeader(bytes, this.dataBytes.length);
 
-			bytes.write(Ints.toByteArray(this.type.value));
-
-			if (this.hasId()) {
-				bytes.write(1);
-
-				bytes.write(Ints.toByteArray(this.id));
-			} else {
-				bytes.write(0);
-			}
-
-			bytes.write(Ints.toByteArray(this.dataBytes.length));
-
-			if (this.dataBytes.length > 0) {
-				bytes.write(this.checksumBytes);
+			if (this.dataBytes.length > 0)
 				bytes.write(this.dataBytes);
-			}
 
 			return bytes.toByteArray();
 		} catch (IOException e) {
@@ -209,6 +194,38 @@ public abstract class Message {
 		}
 	}
 
+	/**
+	 * Writes MAGIC + TYPE + HAS-ID + ID? + DATA-SIZE + CHECKSUM? to <tt>bytes</tt>.
+	 *
+	 * @param dataLength full length of data payload that will follow header
+	 */
+	protected void writeHeader(ByteArrayOutputStream bytes, int dataLength) throws IOException {
+		// Magic
+		bytes.write(Network.getInstance().getMessageMagic());
+
+		bytes.write(Ints.toByteArray(this.type.value));
+
+		if (this.hasId()) {
+			bytes.write(1);
+
+			bytes.write(Ints.toByteArray(this.id));
+		} else {
+			bytes.write(0);
+		}
+
+		bytes.write(Ints.toByteArray(dataLength));
+
+		if (dataLength > 0)
+			bytes.write(this.checksumBytes);
+	}
+
+	/** Returns length of serialized message header, for a message with data payload of <tt>dataLength</tt>. */
+	protected int getHeaderLength(int dataLength) {
+		return MAGIC_LENGTH + TYPE_LENGTH + HAS_ID_LENGTH
+				+ (this.hasId() ? ID_LENGTH : 0)
+				+ DATA_SIZE_LENGTH + (dataLength > 0 ? CHECKSUM_LENGTH : 0);
+	}
+
 	public static <M extends Message> M cloneWithNewId(M message, int newId) {
 		M clone;
 
@@ -5,19 +5,19 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.qortal.block.BlockChain;
 import org.qortal.controller.Controller;
-import org.qortal.crypto.Crypto;
 import org.qortal.data.account.MintingAccountData;
 import org.qortal.data.block.BlockData;
 import org.qortal.data.crosschain.TradeBotData;
 import org.qortal.gui.SplashFrame;
 import org.qortal.network.Network;
-import org.qortal.repository.hsqldb.HSQLDBImportExport;
 import org.qortal.repository.hsqldb.HSQLDBRepositoryFactory;
 import org.qortal.settings.Settings;
 import org.qortal.utils.NTP;
 import org.qortal.utils.SevenZ;
 
 import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.HttpURLConnection;
@@ -25,8 +25,7 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.file.*;
 import java.security.SecureRandom;
-import java.util.List;
-import java.util.UUID;
+import java.util.*;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -47,6 +46,11 @@ public class Bootstrap {
     /** The maximum number of unpruned blocks allowed to be included in a bootstrap, beyond the prune threshold */
     private static final int MAXIMUM_UNPRUNED_BLOCKS = 100;
 
+    /** Bootstraps are tar files, compressed as multiple xz streams. See {@link BootstrapArchiveWriter} */
+    private static final String BOOTSTRAP_EXTENSION = ".tar.xz";
+
+    private static final String LEGACY_BOOTSTRAP_EXTENSION = ".7z";
+
 
     public Bootstrap() {
     }
@@ -212,104 +216,142 @@ public class Bootstrap {
         LOGGER.info("Deleting temp directory if it exists...");
         this.deleteAllTempDirectories();
 
-        LOGGER.info("Acquiring blockchain lock...");
-        ReentrantLock blockchainLock = Controller.getInstance().getBlockchainLock();
-        blockchainLock.lockInterruptibly();
+        try {
+            // The snapshot is consistent without holding the blockchain lock,
+            // so the node can carry on synchronizing while we build the bootstrap
+            LOGGER.info("Creating repository snapshot...");
+            // Timeout if the database isn't ready for a checkpoint after 60 seconds
+            long timeout = 60 * 1000L;
+            Path repositorySnapshotPath = repository.snapshot("bootstrap", timeout);
 
-        Path inputPath = null;
-        Path outputPath = null;
+            LOGGER.info("Moving snapshot to temp directory...");
+            Path snapshotPath = Paths.get(this.createTempDirectory().toString(), "bootstrap");
+            Files.move(repositorySnapshotPath, snapshotPath, REPLACE_EXISTING);
 
-        try {
+            // Remove local data from the snapshot, rather than the live repository
+            int blockArchiveHeight = this.removeLocalData(snapshotPath);
+
+            Path compressedOutputPath = this.getBootstrapOutputPath();
+
+            LOGGER.info("Compressing...");
+            String checksum;
+            try (BootstrapArchiveWriter archiveWriter = new BootstrapArchiveWriter(compressedOutputPath, this.getCachePath())) {
+                archiveWriter.addDirectory(snapshotPath, "bootstrap", false);
+
+                // If in archive mode, include the archive files that the snapshot knows about
+                if (!Settings.getInstance().isTopOnly() && Settings.getInstance().isArchiveEnabled()) {
+                    for (Path archiveFile : this.getArchiveFiles(blockArchiveHeight)) {
+                        // Archive files don't change once written, so can be reused from previous bootstrap
+                        archiveWriter.addFile(archiveFile, "bootstrap/archive/" + archiveFile.getFileName(), true);
+                    }
+                }
+
+                checksum = archiveWriter.finish();
+                LOGGER.info("Reused {} unchanged files from previous bootstrap", archiveWriter.getReusedFileCount());
+            }
+
+            LOGGER.info("Generating checksum file...");
+            Path checksumPath = Paths.get(String.format("%s.sha256", compressedOutputPath.toString()));
+            Files.writeString(checksumPath, checksum, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+
+            // Return the path to the compressed bootstrap file
+            LOGGER.info("Bootstrap creation complete. Output file: {}", compressedOutputPath.toAbsolutePath().toString());
+            return compressedOutputPath.toAbsolutePath().toString();
+
+        }
+        catch (TimeoutException e) {
+            throw new DataException(String.format("Unable to create bootstrap due to timeout: %s", e.getMessage()));
+        }
+        finally {
+            // Cleanup
+            LOGGER.info("Cleaning up...");
+            this.deleteAllTempDirectories();
+        }
+    }
 
-            LOGGER.info("Exporting local data...");
-            repository.exportNodeLocalData();
+    /**
+     * Removes node-local data, such as trade-bot states and minting accounts, from repository snapshot.
+     * @return block archive height recorded in snapshot
+     */
+    private int removeLocalData(Path snapshotPath) throws DataException {
+        String snapshotUrl = String.format("jdbc:hsqldb:file:%s%sblockchain;create=false;hsqldb.full_log_replay=true", snapshotPath.toString(), File.separator);
+        // Not primary, so closing snapshot sessions doesn't consume checkpoint requests meant for the live repository
+        HSQLDBRepositoryFactory snapshotRepositoryFactory = new HSQLDBRepositoryFactory(snapshotUrl, false);
 
+        try (final Repository snapshotRepository = snapshotRepositoryFactory.getRepository()) {
             LOGGER.info("Deleting trade bot states...");
-            List<TradeBotData> allTradeBotData = repository.getCrossChainRepository().getAllTradeBotData();
+            List<TradeBotData> allTradeBotData = snapshotRepository.getCrossChainRepository().getAllTradeBotData();
             for (TradeBotData tradeBotData : allTradeBotData) {
-                repository.getCrossChainRepository().delete(tradeBotData.getTradePrivateKey());
+                snapshotRepository.getCrossChainRepository().delete(tradeBotData.getTradePrivateKey());
             }
 
             LOGGER.info("Deleting minting accounts...");
-            List<MintingAccountData> mintingAccounts = repository.getAccountRepository().getMintingAccounts();
+            List<MintingAccountData> mintingAccounts = snapshotRepository.getAccountRepository().getMintingAccounts();
             for (MintingAccountData mintingAccount : mintingAccounts) {
-                repository.getAccountRepository().delete(mintingAccount.getPrivateKey());
+                snapshotRepository.getAccountRepository().delete(mintingAccount.getPrivateKey());
             }
 
-            repository.saveChanges();
+            snapshotRepository.saveChanges();
 
             LOGGER.info("Deleting peers list...");
-            repository.getNetworkRepository().deleteAllPeers();
-            repository.saveChanges();
+            snapshotRepository.getNetworkRepository().deleteAllPeers();
+            snapshotRepository.saveChanges();
 
             LOGGER.info("Adding initial peers...");
-            Network.installInitialPeers(repository);
+            Network.installInitialPeers(snapshotRepository);
 
-            LOGGER.info("Creating bootstrap...");
-            // Timeout if the database isn't ready for backing up after 10 seconds
-            long timeout = 10 * 1000L;
-            repository.backup(false, "bootstrap", timeout);
-
-            LOGGER.info("Moving files to output directory...");
-            inputPath = Paths.get(Settings.getInstance().getRepositoryPath(), "bootstrap");
-            outputPath = Paths.get(this.createTempDirectory().toString(), "bootstrap");
+            return snapshotRepository.getBlockArchiveRepository().getBlockArchiveHeight();
+        }
+        finally {
+            // Compacting the snapshot replaces the defrag that used to be performed on the live repository
+            LOGGER.info("Compacting snapshot...");
+            snapshotRepositoryFactory.closeAndCompact();
+        }
+    }
 
+    /**
+     * Returns block archive files containing only blocks below <tt>blockArchiveHeight</tt>, in height order.
+     * <p>
+     * Any newer files were written after the snapshot was taken, so aren't included.
+     */
+    private List<Path> getArchiveFiles(int blockArchiveHeight) throws IOException {
+        Path archivePath = Paths.get(Settings.getInstance().getRepositoryPath(), "archive").toAbsolutePath();
+        if (!Files.isDirectory(archivePath)) {
+            return Collections.emptyList();
+        }
 
-            // Move the db backup to a "bootstrap" folder in the root directory
-            Files.move(inputPath, outputPath, REPLACE_EXISTING);
+        List<Path> archiveFiles = new ArrayList<>();
+        Map<Path, Integer> startHeights = new HashMap<>();
 
-            // If in archive mode, copy the archive folder to inside the bootstrap folder
-            if (!Settings.getInstance().isTopOnly() && Settings.getInstance().isArchiveEnabled()) {
-                FileUtils.copyDirectory(
-                        Paths.get(Settings.getInstance().getRepositoryPath(), "archive").toFile(),
-                        Paths.get(outputPath.toString(), "archive").toFile()
-                );
-            }
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(archivePath, "*.dat")) {
+            for (Path path : paths) {
+                String filename = path.getFileName().toString();
+                String[] parts = filename.substring(0, filename.lastIndexOf('.')).split("-");
+                if (parts.length != 2) {
+                    continue;
+                }
 
-            LOGGER.info("Preparing output path...");
-            Path compressedOutputPath = this.getBootstrapOutputPath();
-            try {
-                Files.delete(compressedOutputPath);
-            } catch (NoSuchFileException e) {
-                // Doesn't exist, so no need to delete
+                try {
+                    int startHeight = Integer.parseInt(parts[0]);
+                    int endHeight = Integer.parseInt(parts[1]);
+
+                    if (endHeight < blockArchiveHeight) {
+                        archiveFiles.add(path);
+                        startHeights.put(path, startHeight);
+                    }
+                } catch (NumberFormatException e) {
+                    // Not an archive file
+                }
             }
-
-            LOGGER.info("Compressing...");
-            SevenZ.compress(compressedOutputPath.toString(), outputPath.toFile());
-
-            LOGGER.info("Generating checksum file...");
-            String checksum = Crypto.digestHexString(compressedOutputPath.toFile(), 1024*1024);
-            Path checksumPath = Paths.get(String.format("%s.sha256", compressedOutputPath.toString()));
-            Files.writeString(checksumPath, checksum, StandardOpenOption.CREATE);
-
-            // Return the path to the compressed bootstrap file
-            LOGGER.info("Bootstrap creation complete. Output file: {}", compressedOutputPath.toAbsolutePath().toString());
-            return compressedOutputPath.toAbsolutePath().toString();
-
-        }
-        catch (TimeoutException e) {
-            throw new DataException(String.format("Unable to create bootstrap due to timeout: %s", e.getMessage()));
         }
-        finally {
-            try {
-                LOGGER.info("Re-importing local data...");
-                Path exportPath = HSQLDBImportExport.getExportDirectory(false);
-                repository.importDataFromFile(Paths.get(exportPath.toString(), "TradeBotStates.json").toString());
-                repository.importDataFromFile(Paths.get(exportPath.toString(), "MintingAccounts.json").toString());
-                repository.saveChanges();
-
-            } catch (IOException e) {
-                LOGGER.info("Unable to re-import local data, but created bootstrap is still valid. {}", e);
-            }
 
-            LOGGER.info("Unlocking blockchain...");
-            blockchainLock.unlock();
+        archiveFiles.sort(Comparator.comparing(startHeights::get));
+        return archiveFiles;
+    }
 
-            // Cleanup
-            LOGGER.info("Cleaning up...");
-            Thread.sleep(5000L);
-            this.deleteAllTempDirectories();
-        }
+    private Path getCachePath() {
+        Path initialPath = Paths.get(Settings.getInstance().getRepositoryPath()).toAbsolutePath().getParent();
+        return Paths.get(initialPath.toString(), "bootstrap-cache");
     }
 
     public void startImport() throws InterruptedException {
@@ -332,13 +374,31 @@ public class Bootstrap {
     }
 
     private void doImport() throws DataException {
+        String bootstrapUrl = String.format("%s/%s", this.getRandomHost(), this.getFilename());
+        String type = Settings.getInstance().isTopOnly() ? "top-only" : "full node";
+        LOGGER.info(String.format("Importing %s bootstrap from %s ...", type, bootstrapUrl));
+
+        try {
+            this.importFromSource(BootstrapArchiveReader.urlSource(bootstrapUrl));
+
+        } catch (FileNotFoundException e) {
+            // Bootstrap host might only have older format
+            LOGGER.info("Bootstrap not found at {}, trying older format", bootstrapUrl);
+            this.doLegacyImport();
+
+        } catch (InterruptedException | IOException e) {
+            throw new DataException("Unable to import bootstrap", e);
+        }
+    }
+
+    private void doLegacyImport() throws DataException {
         Path path = null;
         try {
             Path tempDir = this.createTempDirectory();
-            String filename = String.format("%s%s", Settings.getInstance().getBootstrapFilenamePrefix(), this.getFilename());
+            String filename = String.format("%s%s", Settings.getInstance().getBootstrapFilenamePrefix(), this.getLegacyFilename());
             path = Paths.get(tempDir.toString(), filename);
 
-            this.downloadToPath(path);
+            this.downloadToPath(path, this.getLegacyFilename());
             this.importFromPath(path);
 
         } catch (InterruptedException | DataException | IOException e) {
@@ -358,25 +418,33 @@ public class Bootstrap {
     }
 
     private String getFilename() {
+        return this.getBaseFilename().concat(BOOTSTRAP_EXTENSION);
+    }
+
+    /** Filename of bootstraps created by earlier versions, as a single 7z archive */
+    private String getLegacyFilename() {
+        return this.getBaseFilename().concat(LEGACY_BOOTSTRAP_EXTENSION);
+    }
+
+    private String getBaseFilename() {
         boolean isTopOnly = Settings.getInstance().isTopOnly();
         boolean archiveEnabled = Settings.getInstance().isArchiveEnabled();
         boolean isTestnet = Settings.getInstance().isTestNet();
         String prefix = isTestnet ? "testnet-" : "";
 
         if (isTopOnly) {
-            return prefix.concat("bootstrap-toponly.7z");
+            return prefix.concat("bootstrap-toponly");
         }
         else if (archiveEnabled) {
-            return prefix.concat("bootstrap-archive.7z");
+            return prefix.concat("bootstrap-archive");
         }
         else {
-            return prefix.concat("bootstrap-full.7z");
+            return prefix.concat("bootstrap-full");
         }
     }
 
-    private void downloadToPath(Path path) throws DataException {
+    private void downloadToPath(Path path, String bootstrapFilename) throws DataException {
         String bootstrapHost = this.getRandomHost();
-        String bootstrapFilename = this.getFilename();
         String bootstrapUrl = String.format("%s/%s", bootstrapHost, bootstrapFilename);
         String type = Settings.getInstance().isTopOnly() ? "top-only" : "full node";
 
@@ -438,6 +506,48 @@ public class Bootstrap {
     }
 
     public void importFromPath(Path path) throws InterruptedException, DataException, IOException {
+        if (path.toString().endsWith(LEGACY_BOOTSTRAP_EXTENSION)) {
+            this.importFromLegacyPath(path);
+            return;
+        }
+
+        this.importFromSource(BootstrapArchiveReader.fileSource(path));
+    }
+
+    /**
+     * Imports bootstrap from <tt>source</tt>, which is verified and extracted in a single pass
+     * while the existing repository remains in use.
+     * <p>
+     * If interrupted, calling again with the same bootstrap resumes from where it left off.
+     */
+    public void importFromSource(BootstrapArchiveReader.Source source) throws InterruptedException, DataException, IOException {
+        Path importPath = this.getImportPath();
+        BootstrapArchiveReader archiveReader = new BootstrapArchiveReader(source, importPath, "bootstrap/");
+
+        this.updateStatus("Importing bootstrap...");
+        archiveReader.extract();
+
+        this.replaceRepository(importPath);
+        archiveReader.clearProgress();
+    }
+
+    private void importFromLegacyPath(Path path) throws InterruptedException, DataException, IOException {
+        Path input = path.toAbsolutePath();
+        Path output = input.getParent();
+        Path inputPath = Paths.get(output.toString(), "bootstrap");
+
+        this.updateStatus("Extracting bootstrap...");
+        SevenZ.decompress(input.toString(), output.toFile());
+
+        if (!inputPath.toFile().exists()) {
+            throw new DataException("Extracted bootstrap doesn't exist");
+        }
+
+        this.replaceRepository(inputPath);
+    }
+
+    /** Swaps extracted bootstrap at <tt>inputPath</tt> in place of the existing repository */
+    private void replaceRepository(Path inputPath) throws InterruptedException, DataException, IOException {
 
         ReentrantLock blockchainLock = Controller.getInstance().getBlockchainLock();
         blockchainLock.lockInterruptibly();
@@ -452,19 +562,9 @@ public class Bootstrap {
             RepositoryManager.closeRepositoryFactory();
 
             this.updateStatus("Deleting existing repository...");
-            Path input = path.toAbsolutePath();
-            Path output = path.toAbsolutePath().getParent().toAbsolutePath();
-            Path inputPath = Paths.get(output.toString(), "bootstrap");
             Path outputPath = Paths.get(Settings.getInstance().getRepositoryPath());
             FileUtils.deleteDirectory(outputPath.toFile());
 
-            this.updateStatus("Extracting bootstrap...");
-            SevenZ.decompress(input.toString(), output.toFile());
-
-            if (!inputPath.toFile().exists()) {
-                throw new DataException("Extracted bootstrap doesn't exist");
-            }
-
             // Move the "bootstrap" folder in place of the "db" folder
             this.updateStatus("Moving files to output directory...");
             Files.move(inputPath, outputPath);
@@ -479,6 +579,12 @@ public class Bootstrap {
         }
     }
 
+    /** Bootstraps are extracted here, alongside the repository so they can be moved into place, and kept between attempts */
+    private Path getImportPath() {
+        Path initialPath = Paths.get(Settings.getInstance().getRepositoryPath()).toAbsolutePath().getParent();
+        return Paths.get(initialPath.toString(), "bootstrap-import");
+    }
+
     private Path createTempDirectory() throws IOException {
         Path initialPath = Paths.get(Settings.getInstance().getRepositoryPath()).toAbsolutePath().getParent();
         String baseDir = Paths.get(initialPath.toString(), "tmp").toFile().getCanonicalPath();
@@ -0,0 +1,632 @@
+package org.qortal.repository;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarConstants;
+import org.apache.commons.compress.archivers.tar.TarUtils;
+import org.apache.commons.compress.archivers.zip.ZipEncoding;
+import org.apache.commons.compress.archivers.zip.ZipEncodingHelper;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.util.encoders.Hex;
+import org.qortal.gui.SplashFrame;
+import org.qortal.utils.DaemonThreadFactory;
+import org.tukaani.xz.BasicArrayCache;
+import org.tukaani.xz.SingleXZInputStream;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Properties;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Extracts bootstrap archives written by {@link BootstrapArchiveWriter}, in a single streaming pass.
+ * <p>
+ * As the archive is read, it is split into its separate xz streams, which are decompressed
+ * on multiple threads, then extracted in order. The archive is hashed in the same pass and
+ * checked against the expected SHA-256 digest once all data has been read.
+ * <p>
+ * Progress is saved periodically, along with the partial digest state, so an interrupted
+ * import can carry on from where it left off, without downloading or extracting earlier data again.
+ */
+public class BootstrapArchiveReader {
+
+    private static final Logger LOGGER = LogManager.getLogger(BootstrapArchiveReader.class);
+
+    /** Compressed streams bigger than this mean archive wasn't written by {@link BootstrapArchiveWriter} */
+    private static final int MAX_SEGMENT_SIZE = 64 * 1024 * 1024; // 64MiB
+    /** Maximum decompression threads */
+    private static final int MAX_THREAD_COUNT = 4;
+    /** Minimum amount of archive read between saving progress */
+    private static final long DEFAULT_PROGRESS_INTERVAL = 64 * 1024 * 1024L; // 64MiB
+    private static final int READ_BUFFER_SIZE = 1024 * 1024;
+    private static final int CONNECT_TIMEOUT = 30 * 1000; // ms
+    private static final int READ_TIMEOUT = 60 * 1000; // ms
+
+    private static final int TAR_BLOCK_SIZE = TarConstants.DEFAULT_RCDSIZE;
+    private static final ZipEncoding TAR_ENCODING = ZipEncodingHelper.getZipEncoding(StandardCharsets.UTF_8.name());
+
+    private static final byte[] XZ_HEADER_MAGIC = { (byte) 0xFD, '7', 'z', 'X', 'Z', 0x00 };
+    private static final int XZ_HEADER_SIZE = 12;
+    private static final int XZ_FOOTER_SIZE = 12;
+
+    /** Where bootstrap archive comes from */
+    public interface Source {
+        /** Returns size of archive (bytes) */
+        long getSize() throws IOException;
+
+        /** Returns expected SHA-256 digest of archive as hex, or null if not available */
+        String getChecksum() throws IOException;
+
+        /** Opens archive for reading, starting from <tt>offset</tt> */
+        InputStream open(long offset) throws IOException;
+    }
+
+    /** Returns source for local archive file, with optional checksum in accompanying .sha256 file */
+    public static Source fileSource(Path path) {
+        return new Source() {
+            @Override
+            public long getSize() throws IOException {
+                return Files.size(path);
+            }
+
+            @Override
+            public String getChecksum() throws IOException {
+                Path checksumPath = Paths.get(String.format("%s.sha256", path.toString()));
+                if (!Files.exists(checksumPath))
+                    return null;
+
+                return parseChecksum(Files.readString(checksumPath));
+            }
+
+            @Override
+            public InputStream open(long offset) throws IOException {
+                FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.READ);
+                fileChannel.position(offset);
+                return Channels.newInputStream(fileChannel);
+            }
+        };
+    }
+
+    /**
+     * Returns source for archive at HTTP <tt>url</tt>, with optional checksum at <tt>url</tt> + ".sha256".
+     * <p>
+     * If archive doesn't exist, {@link Source#getSize()} throws {@link FileNotFoundException}.
+     */
+    public static Source urlSource(String url) {
+        return new Source() {
+            private Long size = null;
+
+            @Override
+            public long getSize() throws IOException {
+                if (this.size != null)
+                    return this.size;
+
+                HttpURLConnection connection = openConnection(url);
+                try {
+                    connection.setRequestMethod("HEAD");
+
+                    int responseCode = connection.getResponseCode();
+                    if (responseCode == HttpURLConnection.HTTP_NOT_FOUND)
+                        throw new FileNotFoundException(url);
+
+                    if (responseCode != HttpURLConnection.HTTP_OK)
+                        throw new IOException(String.format("Unexpected response %d from %s", responseCode, url));
+
+                    long contentLength = connection.getContentLengthLong();
+                    if (contentLength < 0)
+                        throw new IOException(String.format("Unknown size of %s", url));
+
+                    this.size = contentLength;
+                    return this.size;
+                } finally {
+                    connection.disconnect();
+                }
+            }
+
+            @Override
+            public String getChecksum() throws IOException {
+                String checksumUrl = String.format("%s.sha256", url);
+                HttpURLConnection connection = openConnection(checksumUrl);
+                try {
+                    int responseCode = connection.getResponseCode();
+                    if (responseCode == HttpURLConnection.HTTP_NOT_FOUND)
+                        return null;
+
+                    if (responseCode != HttpURLConnection.HTTP_OK)
+                        throw new IOException(String.format("Unexpected response %d from %s", responseCode, checksumUrl));
+
+                    try (InputStream in = connection.getInputStream()) {
+                        return parseChecksum(IOUtils.toString(in, StandardCharsets.UTF_8));
+                    }
+                } finally {
+                    connection.disconnect();
+                }
+            }
+
+            @Override
+            public InputStream open(long offset) throws IOException {
+                HttpURLConnection connection = openConnection(url);
+                if (offset > 0)
+                    connection.setRequestProperty("Range", String.format("bytes=%d-", offset));
+
+                int responseCode = connection.getResponseCode();
+                if (responseCode == HttpURLConnection.HTTP_PARTIAL)
+                    return connection.getInputStream();
+
+                if (responseCode != HttpURLConnection.HTTP_OK)
+                    throw new IOException(String.format("Unexpected response %d from %s", responseCode, url));
+
+                // Server doesn't support ranges, so skip what we already have
+                InputStream in = connection.getInputStream();
+                IOUtils.skipFully(in, offset);
+                return in;
+            }
+        };
+    }
+
+    private static HttpURLConnection openConnection(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT);
+        connection.setReadTimeout(READ_TIMEOUT);
+        return connection;
+    }
+
+    /** Extracts digest from contents of .sha256 file, which might also contain filename */
+    private static String parseChecksum(String checksumFileContents) {
+        String[] parts = checksumFileContents.trim().split("\\s+");
+        return parts[0].toLowerCase();
+    }
+
+    /** One compressed xz stream, with archive digest state at its end */
+    private static class Segment {
+        final long endOffset;
+        final byte[] digestState;
+        final Future<byte[]> decompressed;
+
+        Segment(long endOffset, byte[] digestState, Future<byte[]> decompressed) {
+            this.endOffset = endOffset;
+            this.digestState = digestState;
+            this.decompressed = decompressed;
+        }
+    }
+
+    private final Source source;
+    private final Path destination;
+    private final String entryPrefix;
+    private final Path progressPath;
+    private long progressInterval = DEFAULT_PROGRESS_INTERVAL;
+
+    private long size;
+    private String checksum;
+    private long lastProgressOffset;
+
+    // Tar extraction state
+    private final byte[] header = new byte[TAR_BLOCK_SIZE];
+    private int headerLength = 0;
+    private FileChannel currentFile = null;
+    private long remainingData = 0;
+    private int remainingPadding = 0;
+    private int emptyBlockCount = 0;
+    private boolean isFinished = false;
+
+    /**
+     * @param source where to read archive from
+     * @param destination directory to extract into, which is also used to save progress alongside
+     * @param entryPrefix prefix of entry names to strip, e.g. "bootstrap/". Other entries aren't allowed.
+     */
+    public BootstrapArchiveReader(Source source, Path destination, String entryPrefix) {
+        this.source = source;
+        this.destination = destination.toAbsolutePath().normalize();
+        this.entryPrefix = entryPrefix;
+        this.progressPath = Paths.get(String.format("%s.progress", this.destination.toString()));
+    }
+
+    /**
+     * Extracts and verifies archive, resuming previous attempt if possible.
+     * <p>
+     * Once extracted, destination can be moved into place, after which {@link #clearProgress()} should be called.
+     *
+     * @throws IOException if archive couldn't be read, or was corrupt, in which case any progress is discarded
+     */
+    public void extract() throws IOException {
+        this.size = this.source.getSize();
+        this.checksum = this.source.getChecksum();
+
+        if (this.checksum == null)
+            LOGGER.info("No checksum available for bootstrap, so it can't be verified");
+
+        SHA256Digest digest;
+        long offset;
+
+        Properties progress = this.loadProgress();
+        if (progress != null) {
+            if (Boolean.parseBoolean(progress.getProperty("complete"))) {
+                LOGGER.info("Bootstrap already extracted");
+                return;
+            }
+
+            offset = Long.parseLong(progress.getProperty("offset"));
+            digest = new SHA256Digest(Hex.decode(progress.getProperty("digestState")));
+            LOGGER.info(String.format("Resuming bootstrap extraction from %.1f%%", offset * 100.0 / this.size));
+        } else {
+            // Start again from scratch
+            FileUtils.deleteDirectory(this.destination.toFile());
+            offset = 0;
+            digest = new SHA256Digest();
+        }
+
+        Files.createDirectories(this.destination);
+        this.lastProgressOffset = offset;
+
+        int threadCount = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), MAX_THREAD_COUNT));
+        ExecutorService decompressionExecutor = Executors.newFixedThreadPool(threadCount, new DaemonThreadFactory("Bootstrap decompression"));
+        Deque<Segment> pendingSegments = new ArrayDeque<>();
+
+        try (InputStream in = offset < this.size ? this.source.open(offset) : InputStream.nullInputStream()) {
+            byte[] readBuffer = new byte[READ_BUFFER_SIZE];
+            // Compressed data not yet split into segments
+            byte[] buffer = new byte[2 * READ_BUFFER_SIZE];
+            int bufferLength = 0;
+            int scanPosition = 0;
+
+            int bytesRead;
+            while ((bytesRead = in.read(readBuffer)) != -1) {
+                if (bufferLength + bytesRead > buffer.length)
+                    buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, bufferLength + bytesRead));
+
+                System.arraycopy(readBuffer, 0, buffer, bufferLength, bytesRead);
+                bufferLength += bytesRead;
+
+                // Split off any complete xz streams
+                int segmentEnd;
+                while ((segmentEnd = findStreamEnd(buffer, scanPosition, bufferLength)) != -1) {
+                    byte[] segment = Arrays.copyOf(buffer, segmentEnd);
+                    System.arraycopy(buffer, segmentEnd, buffer, 0, bufferLength - segmentEnd);
+                    bufferLength -= segmentEnd;
+                    scanPosition = 0;
+
+                    offset += segment.length;
+                    this.submitSegment(segment, offset, digest, decompressionExecutor, pendingSegments);
+
+                    // Don't let too many decompressed segments build up in memory
+                    while (pendingSegments.size() >= 2 * threadCount)
+                        this.extractSegment(pendingSegments.removeFirst());
+                }
+
+                // Carry on scanning where we left off, allowing for partial footer/header
+                scanPosition = Math.max(0, bufferLength - XZ_HEADER_MAGIC.length);
+
+                if (bufferLength > MAX_SEGMENT_SIZE)
+                    throw new CorruptArchiveException("Bootstrap archive has unexpectedly large compressed stream");
+            }
+
+            // Connection might have closed early, in which case we can try again later
+            if (offset + bufferLength != this.size)
+                throw new IOException(String.format("Bootstrap archive size mismatch: expected %d, read %d", this.size, offset + bufferLength));
+
+            // Whatever is left is the final xz stream
+            if (bufferLength > 0) {
+                offset += bufferLength;
+                this.submitSegment(Arrays.copyOf(buffer, bufferLength), offset, digest, decompressionExecutor, pendingSegments);
+            }
+
+            while (!pendingSegments.isEmpty())
+                this.extractSegment(pendingSegments.removeFirst());
+
+            if (!this.isFinished)
+                throw new CorruptArchiveException("Bootstrap archive is incomplete");
+
+            byte[] digestBytes = new byte[digest.getDigestSize()];
+            digest.doFinal(digestBytes, 0);
+            String actualChecksum = Hex.toHexString(digestBytes);
+
+            if (this.checksum != null && !this.checksum.equals(actualChecksum))
+                throw new CorruptArchiveException(String.format("Bootstrap checksum mismatch: expected %s, actual %s", this.checksum, actualChecksum));
+
+            this.saveProgress(offset, null, true);
+        } catch (IOException e) {
+            // Corrupt data can't be resumed, but we can carry on after network issues, etc.
+            if (!isResumable(e))
+                this.discardProgress();
+
+            throw e;
+        } finally {
+            pendingSegments.forEach(segment -> segment.decompressed.cancel(true));
+            decompressionExecutor.shutdownNow();
+            this.closeCurrentFile(false);
+        }
+    }
+
+    public void setProgressInterval(long progressInterval) {
+        this.progressInterval = progressInterval;
+    }
+
+    /** Removes saved progress, e.g. once extracted archive has been moved into place */
+    public void clearProgress() throws IOException {
+        Files.deleteIfExists(this.progressPath);
+    }
+
+    private static boolean isResumable(IOException e) {
+        return !(e instanceof CorruptArchiveException);
+    }
+
+    /** Thrown when archive contents are invalid, so resuming would be pointless */
+    private static class CorruptArchiveException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        CorruptArchiveException(String message) {
+            super(message);
+        }
+
+        CorruptArchiveException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    private void submitSegment(byte[] segment, long endOffset, SHA256Digest digest, ExecutorService decompressionExecutor, Deque<Segment> pendingSegments) {
+        digest.update(segment, 0, segment.length);
+
+        Future<byte[]> decompressed = decompressionExecutor.submit(() -> decompress(segment));
+        pendingSegments.addLast(new Segment(endOffset, digest.getEncodedState(), decompressed));
+    }
+
+    private void extractSegment(Segment segment) throws IOException {
+        byte[] data;
+        try {
+            data = segment.decompressed.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while extracting bootstrap");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw new CorruptArchiveException("Unable to decompress bootstrap", cause);
+
+            throw new IOException("Unable to decompress bootstrap", cause);
+        }
+
+        this.extractBytes(data);
+
+        int progress = (int) (segment.endOffset * 100 / this.size);
+        SplashFrame.getInstance().updateStatus(String.format("Importing bootstrap... (%d%%)", progress));
+
+        // Progress can only be resumed from start of a file
+        boolean isAtEntryBoundary = this.currentFile == null && this.remainingPadding == 0 && this.headerLength == 0;
+        if (isAtEntryBoundary && segment.endOffset - this.lastProgressOffset >= this.progressInterval)
+            this.saveProgress(segment.endOffset, segment.digestState, false);
+    }
+
+    /** Decompresses one complete xz stream */
+    private static byte[] decompress(byte[] segment) throws IOException {
+        ByteArrayInputStream compressed = new ByteArrayInputStream(segment);
+
+        byte[] decompressed;
+        try (InputStream xzInputStream = new SingleXZInputStream(compressed, -1, true, BasicArrayCache.getInstance())) {
+            decompressed = xzInputStream.readAllBytes();
+        }
+
+        if (compressed.available() > 0)
+            throw new IOException("Unexpected data after end of xz stream");
+
+        return decompressed;
+    }
+
+    /**
+     * Returns position after first complete xz stream in <tt>buffer</tt>, i.e. where next stream header starts,
+     * or -1 if no complete stream found yet.
+     * <p>
+     * Stream ends are found by looking for a stream footer with valid CRC32, immediately followed by the next stream's header magic.
+     */
+    private static int findStreamEnd(byte[] buffer, int fromPosition, int length) {
+        for (int position = Math.max(fromPosition, XZ_HEADER_SIZE + XZ_FOOTER_SIZE); position + XZ_HEADER_MAGIC.length <= length; ++position) {
+            if (buffer[position] != XZ_HEADER_MAGIC[0])
+                continue;
+
+            if (isStreamHeaderMagic(buffer, position) && isStreamFooter(buffer, position - XZ_FOOTER_SIZE))
+                return position;
+        }
+
+        return -1;
+    }
+
+    private static boolean isStreamHeaderMagic(byte[] buffer, int position) {
+        for (int i = 0; i < XZ_HEADER_MAGIC.length; ++i)
+            if (buffer[position + i] != XZ_HEADER_MAGIC[i])
+                return false;
+
+        return true;
+    }
+
+    private static boolean isStreamFooter(byte[] buffer, int position) {
+        // Footer: CRC32 (4 bytes), backward size (4 bytes), stream flags (2 bytes), magic "YZ"
+        if (buffer[position + 10] != 'Y' || buffer[position + 11] != 'Z')
+            return false;
+
+        // Stream flags: first byte is reserved, second is check type
+        if (buffer[position + 8] != 0 || (buffer[position + 9] & 0xF0) != 0)
+            return false;
+
+        CRC32 crc32 = new CRC32();
+        crc32.update(buffer, position + 4, 6);
+
+        long expectedCrc = (buffer[position] & 0xFFL)
+                | (buffer[position + 1] & 0xFFL) << 8
+                | (buffer[position + 2] & 0xFFL) << 16
+                | (buffer[position + 3] & 0xFFL) << 24;
+
+        return crc32.getValue() == expectedCrc;
+    }
+
+    // Tar extraction
+
+    private void extractBytes(byte[] data) throws IOException {
+        int position = 0;
+
+        while (position < data.length && !this.isFinished) {
+            if (this.remainingData > 0) {
+                int length = (int) Math.min(this.remainingData, data.length - position);
+                ByteBuffer byteBuffer = ByteBuffer.wrap(data, position, length);
+                while (byteBuffer.hasRemaining())
+                    this.currentFile.write(byteBuffer);
+
+                this.remainingData -= length;
+                position += length;
+
+                if (this.remainingData == 0)
+                    this.closeCurrentFile(true);
+
+                continue;
+            }
+
+            if (this.remainingPadding > 0) {
+                int length = Math.min(this.remainingPadding, data.length - position);
+                this.remainingPadding -= length;
+                position += length;
+                continue;
+            }
+
+            int length = Math.min(TAR_BLOCK_SIZE - this.headerLength, data.length - position);
+            System.arraycopy(data, position, this.header, this.headerLength, length);
+            this.headerLength += length;
+            position += length;
+
+            if (this.headerLength == TAR_BLOCK_SIZE) {
+                this.headerLength = 0;
+                this.processHeader();
+            }
+        }
+    }
+
+    private void processHeader() throws IOException {
+        boolean isEmptyBlock = true;
+        for (byte b : this.header)
+            if (b != 0) {
+                isEmptyBlock = false;
+                break;
+            }
+
+        // End of archive is marked by two empty blocks
+        if (isEmptyBlock) {
+            if (++this.emptyBlockCount == 2)
+                this.isFinished = true;
+
+            return;
+        }
+        this.emptyBlockCount = 0;
+
+        if (!TarUtils.verifyCheckSum(this.header))
+            throw new CorruptArchiveException("Bootstrap archive has corrupt header");
+
+        TarArchiveEntry entry = new TarArchiveEntry(this.header, TAR_ENCODING);
+
+        String name = entry.getName();
+        if (!name.startsWith(this.entryPrefix))
+            throw new CorruptArchiveException(String.format("Unexpected bootstrap entry: %s", name));
+
+        String relativeName = name.substring(this.entryPrefix.length());
+        Path entryPath = this.destination.resolve(relativeName).normalize();
+
+        // Don't allow entries to escape destination directory
+        if (!entryPath.startsWith(this.destination))
+            throw new CorruptArchiveException(String.format("Bootstrap entry outside destination: %s", name));
+
+        if (entry.isDirectory()) {
+            Files.createDirectories(entryPath);
+            return;
+        }
+
+        if (!entry.isFile())
+            throw new CorruptArchiveException(String.format("Unsupported bootstrap entry type: %s", name));
+
+        Files.createDirectories(entryPath.getParent());
+        this.currentFile = FileChannel.open(entryPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+        long entrySize = entry.getSize();
+        this.remainingData = entrySize;
+        this.remainingPadding = (int) ((TAR_BLOCK_SIZE - (entrySize % TAR_BLOCK_SIZE)) % TAR_BLOCK_SIZE);
+
+        if (entrySize == 0)
+            this.closeCurrentFile(true);
+    }
+
+    private void closeCurrentFile(boolean isComplete) throws IOException {
+        if (this.currentFile == null)
+            return;
+
+        try {
+            // Make sure file is on disk before saved progress claims it is
+            if (isComplete)
+                this.currentFile.force(false);
+        } finally {
+            this.currentFile.close();
+            this.currentFile = null;
+        }
+    }
+
+    // Progress
+
+    private Properties loadProgress() {
+        if (!Files.exists(this.progressPath) || !Files.isDirectory(this.destination))
+            return null;
+
+        Properties progress = new Properties();
+        try (Reader reader = Files.newBufferedReader(this.progressPath)) {
+            progress.load(reader);
+        } catch (IOException e) {
+            return null;
+        }
+
+        // Only resume if it's the same archive
+        if (!String.valueOf(this.size).equals(progress.getProperty("size")))
+            return null;
+
+        if (!String.valueOf(this.checksum).equals(progress.getProperty("checksum")))
+            return null;
+
+        return progress;
+    }
+
+    private void saveProgress(long offset, byte[] digestState, boolean isComplete) throws IOException {
+        Properties progress = new Properties();
+        progress.setProperty("size", String.valueOf(this.size));
+        progress.setProperty("checksum", String.valueOf(this.checksum));
+        progress.setProperty("offset", String.valueOf(offset));
+        progress.setProperty("complete", String.valueOf(isComplete));
+        if (digestState != null)
+            progress.setProperty("digestState", Hex.toHexString(digestState));
+
+        Path partialProgressPath = Paths.get(String.format("%s.partial", this.progressPath.toString()));
+        try (Writer writer = Files.newBufferedWriter(partialProgressPath)) {
+            progress.store(writer, "Bootstrap import progress");
+        }
+        Files.move(partialProgressPath, this.progressPath, REPLACE_EXISTING, ATOMIC_MOVE);
+
+        this.lastProgressOffset = offset;
+    }
+
+    private void discardProgress() {
+        try {
+            Files.deleteIfExists(this.progressPath);
+            FileUtils.deleteDirectory(this.destination.toFile());
+        } catch (IOException e) {
+            LOGGER.info("Unable to discard bootstrap import progress: {}", e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,303 @@
+package org.qortal.repository;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarConstants;
+import org.apache.commons.compress.archivers.zip.ZipEncoding;
+import org.apache.commons.compress.archivers.zip.ZipEncodingHelper;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.qortal.utils.DaemonThreadFactory;
+import org.tukaani.xz.BasicArrayCache;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZOutputStream;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Writes bootstrap archives as tar files, compressed as a sequence of independent xz streams.
+ * <p>
+ * Concatenated xz streams are still a valid .tar.xz file, but each stream can be compressed,
+ * and later decompressed, on a separate thread. The output is hashed as it is written,
+ * so there's no need to read it back again to generate a checksum.
+ * <p>
+ * Each file starts a new stream, so the compressed form of files that don't change,
+ * such as completed block archive files, can be cached and copied into the next bootstrap as-is.
+ */
+public class BootstrapArchiveWriter implements AutoCloseable {
+
+    private static final Logger LOGGER = LogManager.getLogger(BootstrapArchiveWriter.class);
+
+    /** Uncompressed bytes per xz stream. Larger files are split across multiple streams. */
+    private static final int DEFAULT_CHUNK_SIZE = 16 * 1024 * 1024; // 16MiB
+    /** LZMA2 preset, as used by 7-Zip's default LZMA2 settings */
+    private static final int XZ_PRESET = 6;
+    /** Maximum compression threads, as each one needs ~100MiB of memory at our preset */
+    private static final int MAX_THREAD_COUNT = 4;
+    private static final int TAR_BLOCK_SIZE = TarConstants.DEFAULT_RCDSIZE;
+    /** Changing how members are compressed must change this, so that old cache entries aren't reused */
+    private static final String CACHE_VERSION = "v1";
+
+    private static final ZipEncoding TAR_ENCODING = ZipEncodingHelper.getZipEncoding(StandardCharsets.UTF_8.name());
+
+    private final Path outputPath;
+    private final Path partialOutputPath;
+    private final Path cachePath;
+    private final int threadCount;
+    private final ExecutorService compressionExecutor;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    private final MessageDigest digest;
+    private final OutputStream outputStream;
+
+    /** Cache files used by this archive, so that other, stale, cache files can be removed */
+    private final Set<Path> usedCacheFiles = new HashSet<>();
+    private int reusedFileCount = 0;
+    private boolean isFinished = false;
+
+    /**
+     * @param outputPath where to write archive
+     * @param cachePath directory for caching compressed files between bootstraps, or null to disable caching
+     */
+    public BootstrapArchiveWriter(Path outputPath, Path cachePath) throws IOException {
+        this.outputPath = outputPath;
+        this.partialOutputPath = Paths.get(outputPath.toString() + ".partial");
+        this.cachePath = cachePath;
+
+        if (this.cachePath != null)
+            Files.createDirectories(this.cachePath);
+
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 not available", e);
+        }
+
+        this.outputStream = new DigestOutputStream(new BufferedOutputStream(Files.newOutputStream(this.partialOutputPath), 1024 * 1024), this.digest);
+
+        this.threadCount = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() - 1, MAX_THREAD_COUNT));
+        this.compressionExecutor = Executors.newFixedThreadPool(this.threadCount, new DaemonThreadFactory("Bootstrap compression"));
+    }
+
+    /**
+     * Adds all files in <tt>directory</tt>, recursively, with entry names prefixed by <tt>entryPrefix</tt>.
+     */
+    public void addDirectory(Path directory, String entryPrefix, boolean isCacheable) throws IOException {
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(directory)) {
+            files = paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+
+        for (Path file : files) {
+            String relativeName = directory.relativize(file).toString().replace(File.separatorChar, '/');
+            this.addFile(file, entryPrefix + "/" + relativeName, isCacheable);
+        }
+    }
+
+    /**
+     * Adds <tt>file</tt> as <tt>entryName</tt>.
+     * <p>
+     * If <tt>isCacheable</tt> is true, the file must not change once written,
+     * as its cached compressed form is reused based on name, size and modification time only.
+     */
+    public void addFile(Path file, String entryName, boolean isCacheable) throws IOException {
+        long size = Files.size(file);
+        long modificationTime = Files.getLastModifiedTime(file).toMillis();
+
+        if (!isCacheable || this.cachePath == null) {
+            this.writeMember(file, entryName, size, modificationTime, null);
+            return;
+        }
+
+        String cacheFilename = String.format("%s-%s-%d-%d.xz", CACHE_VERSION, entryName.replace('/', '_'), size, modificationTime);
+        Path cacheFile = this.cachePath.resolve(cacheFilename);
+        this.usedCacheFiles.add(cacheFile);
+
+        if (Files.exists(cacheFile)) {
+            Files.copy(cacheFile, this.outputStream);
+            this.reusedFileCount++;
+            return;
+        }
+
+        Path partialCacheFile = this.cachePath.resolve(cacheFilename + ".partial");
+        try (OutputStream cacheOutputStream = new BufferedOutputStream(Files.newOutputStream(partialCacheFile), 1024 * 1024)) {
+            this.writeMember(file, entryName, size, modificationTime, cacheOutputStream);
+        } catch (IOException e) {
+            Files.deleteIfExists(partialCacheFile);
+            throw e;
+        }
+
+        Files.move(partialCacheFile, cacheFile, REPLACE_EXISTING, ATOMIC_MOVE);
+    }
+
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    /** Returns number of files copied from cache, rather than compressed */
+    public int getReusedFileCount() {
+        return this.reusedFileCount;
+    }
+
+    /**
+     * Finishes archive, moves it into place, and removes stale cache files.
+     * <p>
+     * @return SHA-256 digest of archive, as lowercase hex
+     */
+    public String finish() throws IOException {
+        // End of tar archive is marked by two empty blocks
+        this.outputStream.write(compress(new byte[2 * TAR_BLOCK_SIZE]));
+        this.outputStream.close();
+
+        Files.move(this.partialOutputPath, this.outputPath, REPLACE_EXISTING);
+        this.isFinished = true;
+
+        if (this.cachePath != null)
+            this.removeStaleCacheFiles();
+
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : this.digest.digest())
+            hex.append(String.format("%02x", b));
+
+        return hex.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.compressionExecutor.shutdownNow();
+
+        if (!this.isFinished) {
+            this.outputStream.close();
+            Files.deleteIfExists(this.partialOutputPath);
+        }
+    }
+
+    private void writeMember(Path file, String entryName, long size, long modificationTime, OutputStream cacheOutputStream) throws IOException {
+        byte[] header = buildHeader(entryName, size, modificationTime);
+
+        // Padding up to end of tar block
+        int paddingLength = (int) ((TAR_BLOCK_SIZE - (size % TAR_BLOCK_SIZE)) % TAR_BLOCK_SIZE);
+
+        // Compress chunks in parallel, but write them out in order
+        Deque<Future<byte[]>> pendingChunks = new ArrayDeque<>();
+
+        try (FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long offset = 0;
+            do {
+                final long chunkOffset = offset;
+                final int chunkLength = (int) Math.min(this.chunkSize, size - offset);
+                final boolean isFirstChunk = offset == 0;
+                final boolean isLastChunk = offset + chunkLength >= size;
+
+                // Don't let too many compressed chunks build up in memory
+                if (pendingChunks.size() >= 2 * this.threadCount)
+                    this.writeChunk(pendingChunks.removeFirst(), cacheOutputStream);
+
+                pendingChunks.addLast(this.compressionExecutor.submit(() -> {
+                    ByteArrayOutputStream uncompressed = new ByteArrayOutputStream(chunkLength + 2 * TAR_BLOCK_SIZE);
+
+                    if (isFirstChunk)
+                        uncompressed.write(header);
+
+                    uncompressed.write(readFully(fileChannel, chunkOffset, chunkLength));
+
+                    if (isLastChunk)
+                        uncompressed.write(new byte[paddingLength]);
+
+                    return compress(uncompressed.toByteArray());
+                }));
+
+                offset += chunkLength;
+            } while (offset < size);
+
+            while (!pendingChunks.isEmpty())
+                this.writeChunk(pendingChunks.removeFirst(), cacheOutputStream);
+        } finally {
+            pendingChunks.forEach(future -> future.cancel(true));
+        }
+    }
+
+    private void writeChunk(Future<byte[]> pendingChunk, OutputStream cacheOutputStream) throws IOException {
+        byte[] compressed;
+        try {
+            compressed = pendingChunk.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing bootstrap");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+
+            throw new IOException("Unable to compress bootstrap", cause);
+        }
+
+        this.outputStream.write(compressed);
+
+        if (cacheOutputStream != null)
+            cacheOutputStream.write(compressed);
+    }
+
+    private void removeStaleCacheFiles() {
+        try (Stream<Path> paths = Files.list(this.cachePath)) {
+            List<Path> staleCacheFiles = paths.filter(path -> !this.usedCacheFiles.contains(path)).collect(Collectors.toList());
+
+            for (Path staleCacheFile : staleCacheFiles)
+                Files.deleteIfExists(staleCacheFile);
+        } catch (IOException e) {
+            LOGGER.info("Unable to remove stale bootstrap cache files: {}", e.getMessage());
+        }
+    }
+
+    private static byte[] buildHeader(String entryName, long size, long modificationTime) throws IOException {
+        // We don't write GNU/POSIX long name entries, so names must fit in standard header
+        if (entryName.getBytes(StandardCharsets.UTF_8).length >= TarConstants.NAMELEN)
+            throw new IOException(String.format("Bootstrap entry name too long: %s", entryName));
+
+        TarArchiveEntry entry = new TarArchiveEntry(entryName);
+        entry.setSize(size);
+        entry.setModTime(modificationTime);
+
+        byte[] header = new byte[TAR_BLOCK_SIZE];
+        // "star" mode allows files bigger than 8GiB, such as a large blockchain.data
+        entry.writeEntryHeader(header, TAR_ENCODING, true);
+        return header;
+    }
+
+    private static byte[] readFully(FileChannel fileChannel, long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+
+        while (buffer.hasRemaining()) {
+            int bytesRead = fileChannel.read(buffer, offset + buffer.position());
+            if (bytesRead < 0)
+                throw new EOFException("File shrank while adding to bootstrap");
+        }
+
+        return buffer.array();
+    }
+
+    /** Compresses <tt>data</tt> into a complete, standalone xz stream */
+    private static byte[] compress(byte[] data) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 2 + 1024);
+
+        try (XZOutputStream xzOutputStream = new XZOutputStream(compressed, new LZMA2Options(XZ_PRESET), BasicArrayCache.getInstance())) {
+            xzOutputStream.write(data);
+        }
+
+        return compressed.toByteArray();
+    }
+
+}
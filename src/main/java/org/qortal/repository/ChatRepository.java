@@ -17,6 +17,19 @@ public interface ChatRepository {
 			Integer txGroupId, List<String> involving,
 			Integer limit, Integer offset, Boolean reverse) throws DataException;
 
+	/**
+	 * Returns CHAT messages matching criteria, oldest first, that were created after the message with <tt>afterSignature</tt>.
+	 * <p>
+	 * Expects EITHER non-null txGroupID OR non-null sender and recipient addresses.
+	 * <p>
+	 * Intended for incremental loading: pass the signature of the last message already received, or null to start from the beginning.
+	 * Cost is proportional to <tt>limit</tt>, not the total number of messages in the chat.
+	 *
+	 * @return matching messages, or null if <tt>afterSignature</tt> is not a known CHAT message
+	 */
+	public List<ChatMessage> getMessagesAfter(Integer txGroupId, List<String> involving,
+			byte[] afterSignature, Integer limit) throws DataException;
+
 	public ChatMessage toChatMessage(ChatTransactionData chatTransactionData) throws DataException;
 
 	public ActiveChats getActiveChats(String address) throws DataException;
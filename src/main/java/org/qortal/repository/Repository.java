@@ -1,6 +1,7 @@
 package org.qortal.repository;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.concurrent.TimeoutException;
 
 public interface Repository extends AutoCloseable {
@@ -33,6 +34,9 @@ public interface Repository extends AutoCloseable {
 
 	public VotingRepository getVotingRepository();
 
+	/** Returns whether this session rejects writes, e.g. for API use. */
+	public boolean isReadOnly();
+
 	public void saveChanges() throws DataException;
 
 	public void discardChanges() throws DataException;
@@ -52,6 +56,13 @@ public interface Repository extends AutoCloseable {
 
 	public void backup(boolean quick, String name, Long timeout) throws DataException, TimeoutException;
 
+	/**
+	 * Creates consistent copy of repository files, named <tt>name</tt>, without blocking other sessions while files are copied.
+	 * <p>
+	 * @return path to directory containing copy
+	 */
+	public Path snapshot(String name, Long timeout) throws DataException, TimeoutException;
+
 	public void performPeriodicMaintenance(Long timeout) throws DataException, TimeoutException;
 
 	public void exportNodeLocalData() throws DataException;
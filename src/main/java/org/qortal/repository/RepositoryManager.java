@@ -48,6 +48,20 @@ public abstract class RepositoryManager {
 		return repositoryFactory.tryRepository();
 	}
 
+	/**
+	 * Returns repository session for read-only use, e.g. serving API requests.
+	 * <p>
+	 * Sessions come from a separate, smaller connection pool, so heavy API use can't starve
+	 * block processing of connections. Queries are subject to a timeout and maximum row count,
+	 * and any attempt to write throws an exception.
+	 */
+	public static Repository getReadOnlyRepository() throws DataException {
+		if (repositoryFactory == null)
+			throw new DataException("No repository available");
+
+		return repositoryFactory.getReadOnlyRepository();
+	}
+
 	public static void closeRepositoryFactory() throws DataException {
 		repositoryFactory.close();
 		repositoryFactory = null;
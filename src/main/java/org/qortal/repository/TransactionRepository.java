@@ -74,6 +74,21 @@ public interface TransactionRepository {
 													  List<TransactionType> txTypes, Service service, String name, String address,
 													  ConfirmationStatus confirmationStatus, Integer limit, Integer offset, Boolean reverse) throws DataException;
 
+	/**
+	 * Returns signatures for transactions that match search criteria, using keyset pagination.
+	 * <p>
+	 * Results are ordered by transaction timestamp, then signature.
+	 * Passing the timestamp and signature of the last result from a previous call
+	 * returns the next page without the repository having to skip past earlier results, as with <tt>offset</tt>.
+	 * 
+	 * @param afterTimestamp timestamp of last transaction from previous page, or null for first page
+	 * @param afterSignature signature of last transaction from previous page, or null for first page
+	 * @see #getSignaturesMatchingCriteria(Integer, Integer, Integer, List, Service, String, String, ConfirmationStatus, Integer, Integer, Boolean)
+	 */
+	public List<byte[]> getSignaturesMatchingCriteriaAfter(Integer startBlock, Integer blockLimit, Integer txGroupId,
+			List<TransactionType> txTypes, Service service, String name, String address,
+			ConfirmationStatus confirmationStatus, Long afterTimestamp, byte[] afterSignature, Integer limit, Boolean reverse) throws DataException;
+
 	/**
 	 * Returns signatures for transactions that match search criteria.
 	 * <p>
@@ -330,11 +330,17 @@ public class HSQLDBArbitraryRepository implements ArbitraryRepository {
 			bindParams.add(name);
 		}
 
-		sql.append(" GROUP BY name, service, identifier ORDER BY name COLLATE SQL_TEXT_UCC_NO_PAD");
+		// Resources without names are filtered out here, rather than after fetching, so that they don't count towards limit/offset
+		sql.append(" AND name IS NOT NULL");
 
-		if (reverse != null && reverse) {
-			sql.append(" DESC");
-		}
+		// Service and identifier break ties between a name's resources, so that results are in a fixed order for paging
+		String direction = reverse != null && reverse ? " DESC" : "";
+		sql.append(" GROUP BY name, service, identifier ORDER BY name COLLATE SQL_TEXT_UCC_NO_PAD");
+		sql.append(direction);
+		sql.append(", service");
+		sql.append(direction);
+		sql.append(", identifier");
+		sql.append(direction);
 
 		HSQLDBRepository.limitOffsetSql(sql, limit, offset);
 
@@ -350,11 +356,6 @@ public class HSQLDBArbitraryRepository implements ArbitraryRepository {
 				String identifierResult = resultSet.getString(3);
 				Integer sizeResult = resultSet.getInt(4);
 
-				// We should filter out resources without names
-				if (nameResult == null) {
-					continue;
-				}
-
 				ArbitraryResourceInfo arbitraryResourceInfo = new ArbitraryResourceInfo();
 				arbitraryResourceInfo.name = nameResult;
 				arbitraryResourceInfo.service = serviceResult;
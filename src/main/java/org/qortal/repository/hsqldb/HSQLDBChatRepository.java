@@ -4,6 +4,9 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.qortal.data.chat.ActiveChats;
 import org.qortal.data.chat.ActiveChats.DirectChat;
@@ -12,34 +15,79 @@ import org.qortal.data.chat.ChatMessage;
 import org.qortal.data.transaction.ChatTransactionData;
 import org.qortal.repository.ChatRepository;
 import org.qortal.repository.DataException;
-import org.qortal.transaction.Transaction.TransactionType;
 
 public class HSQLDBChatRepository implements ChatRepository {
 
+	/** How long a cached address-to-name lookup can be used before it is refreshed. */
+	private static final long NAME_CACHE_EXPIRY = 60 * 1000L; // ms
+	private static final int NAME_CACHE_MAX_SIZE = 10000;
+
+	private static class CachedName {
+		private final String name;
+		private final long cachedWhen;
+		private final long version;
+
+		private CachedName(String name, long cachedWhen, long version) {
+			this.name = name;
+			this.cachedWhen = cachedWhen;
+			this.version = version;
+		}
+	}
+
+	/** Name (or null) owned by address, so chat messages don't need to join Names twice per row. */
+	private static final Map<String, CachedName> NAMES_BY_OWNER = new ConcurrentHashMap<>();
+	/**
+	 * Incremented whenever name changes are committed. Cached names looked up under an older version are ignored,
+	 * as a lookup in a transaction that started before the changes were committed could have cached the old name.
+	 */
+	private static final AtomicLong NAME_CACHE_VERSION = new AtomicLong();
+
+	private static final String CHAT_MESSAGE_COLUMNS = "ChatTransactions.created_when, ChatTransactions.tx_group_id, Transactions.reference, creator, "
+			+ "sender, recipient, data, is_text, is_encrypted, signature ";
+
 	protected HSQLDBRepository repository;
 
 	public HSQLDBChatRepository(HSQLDBRepository repository) {
 		this.repository = repository;
 	}
 
+	/**
+	 * Returns sender and recipient as ordered pair, for chat index.
+	 * <p>
+	 * Both entries are null for group messages, i.e. when recipient is null.
+	 */
+	public static String[] getParticipants(String sender, String recipient) {
+		if (recipient == null)
+			return new String[] { null, null };
+
+		if (sender.compareTo(recipient) <= 0)
+			return new String[] { sender, recipient };
+		else
+			return new String[] { recipient, sender };
+	}
+
+	/* package */ static long getNameCacheVersion() {
+		return NAME_CACHE_VERSION.get();
+	}
+
+	/** Called when name changes are committed so chat messages don't carry stale names. */
+	public static void invalidateNameCache() {
+		NAME_CACHE_VERSION.incrementAndGet();
+		NAMES_BY_OWNER.clear();
+	}
+
 	@Override
 	public List<ChatMessage> getMessagesMatchingCriteria(Long before, Long after, Integer txGroupId,
 			List<String> involving, Integer limit, Integer offset, Boolean reverse)
 			throws DataException {
-		// Check args meet expectations
-		if ((txGroupId != null && involving != null && !involving.isEmpty())
-				|| (txGroupId == null && (involving == null || involving.size() != 2)))
-			throw new DataException("Invalid criteria for fetching chat messages from repository");
+		checkCriteria(txGroupId, involving);
 
 		StringBuilder sql = new StringBuilder(1024);
 
-		sql.append("SELECT created_when, tx_group_id, Transactions.reference, creator, "
-				+ "sender, SenderNames.name, recipient, RecipientNames.name, "
-				+ "data, is_text, is_encrypted, signature "
-				+ "FROM ChatTransactions "
-				+ "JOIN Transactions USING (signature) "
-				+ "LEFT OUTER JOIN Names AS SenderNames ON SenderNames.owner = sender "
-				+ "LEFT OUTER JOIN Names AS RecipientNames ON RecipientNames.owner = recipient ");
+		sql.append("SELECT ");
+		sql.append(CHAT_MESSAGE_COLUMNS);
+		sql.append("FROM ChatTransactions "
+				+ "JOIN Transactions USING (signature) ");
 
 		// WHERE clauses
 
@@ -48,87 +96,78 @@ public class HSQLDBChatRepository implements ChatRepository {
 
 		// Timestamp range
 		if (before != null) {
-			whereClauses.add("created_when < ?");
+			whereClauses.add("ChatTransactions.created_when < ?");
 			bindParams.add(before);
 		}
 
 		if (after != null) {
-			whereClauses.add("created_when > ?");
+			whereClauses.add("ChatTransactions.created_when > ?");
 			bindParams.add(after);
 		}
 
-		if (txGroupId != null) {
-			whereClauses.add("tx_group_id = " + txGroupId); // int safe to use literally
-			whereClauses.add("recipient IS NULL");
-		} else {
-			whereClauses.add("((sender = ? AND recipient = ?) OR (recipient = ? AND sender = ?))");
-			bindParams.addAll(involving);
-			bindParams.addAll(involving);
-		}
+		addChatWhereClauses(txGroupId, involving, whereClauses, bindParams);
 
-		if (!whereClauses.isEmpty()) {
-			sql.append(" WHERE ");
+		appendWhereClauses(sql, whereClauses);
 
-			final int whereClausesSize = whereClauses.size();
-			for (int wci = 0; wci < whereClausesSize; ++wci) {
-				if (wci != 0)
-					sql.append(" AND ");
+		sql.append(" ORDER BY ChatTransactions.created_when");
+		sql.append((reverse == null || !reverse) ? " ASC" : " DESC");
 
-				sql.append(whereClauses.get(wci));
-			}
+		HSQLDBRepository.limitOffsetSql(sql, limit, offset);
+
+		try {
+			return this.fetchChatMessages(sql.toString(), bindParams.toArray());
+		} catch (SQLException e) {
+			throw new DataException("Unable to fetch matching chat transactions from repository", e);
 		}
+	}
 
-		sql.append(" ORDER BY Transactions.created_when");
-		sql.append((reverse == null || !reverse) ? " ASC" : " DESC");
+	@Override
+	public List<ChatMessage> getMessagesAfter(Integer txGroupId, List<String> involving,
+			byte[] afterSignature, Integer limit) throws DataException {
+		checkCriteria(txGroupId, involving);
 
-		HSQLDBRepository.limitOffsetSql(sql, limit, offset);
+		StringBuilder sql = new StringBuilder(1024);
 
-		List<ChatMessage> chatMessages = new ArrayList<>();
+		sql.append("SELECT ");
+		sql.append(CHAT_MESSAGE_COLUMNS);
+		sql.append("FROM ChatTransactions "
+				+ "JOIN Transactions USING (signature) ");
 
-		try (ResultSet resultSet = this.repository.checkedExecute(sql.toString(), bindParams.toArray())) {
-			if (resultSet == null)
-				return chatMessages;
+		List<String> whereClauses = new ArrayList<>();
+		List<Object> bindParams = new ArrayList<>();
 
-			do {
-				long timestamp = resultSet.getLong(1);
-				int groupId = resultSet.getInt(2);
-				byte[] reference = resultSet.getBytes(3);
-				byte[] senderPublicKey = resultSet.getBytes(4);
-				String sender = resultSet.getString(5);
-				String senderName = resultSet.getString(6);
-				String recipient = resultSet.getString(7);
-				String recipientName = resultSet.getString(8);
-				byte[] data = resultSet.getBytes(9);
-				boolean isText = resultSet.getBoolean(10);
-				boolean isEncrypted = resultSet.getBoolean(11);
-				byte[] signature = resultSet.getBytes(12);
+		addChatWhereClauses(txGroupId, involving, whereClauses, bindParams);
 
-				ChatMessage chatMessage = new ChatMessage(timestamp, groupId, reference, senderPublicKey, sender,
-						senderName, recipient, recipientName, data, isText, isEncrypted, signature);
+		if (afterSignature != null) {
+			Long afterTimestamp = this.getCreatedWhen(afterSignature);
+			if (afterTimestamp == null)
+				return null;
 
-				chatMessages.add(chatMessage);
-			} while (resultSet.next());
+			// Messages can share a timestamp, so signature is used as tie-break
+			whereClauses.add("(ChatTransactions.created_when > ? OR (ChatTransactions.created_when = ? AND signature > ?))");
+			bindParams.add(afterTimestamp);
+			bindParams.add(afterTimestamp);
+			bindParams.add(afterSignature);
+		}
+
+		appendWhereClauses(sql, whereClauses);
+
+		sql.append(" ORDER BY ChatTransactions.created_when ASC, signature ASC");
+
+		HSQLDBRepository.limitOffsetSql(sql, limit, null);
 
-			return chatMessages;
+		try {
+			return this.fetchChatMessages(sql.toString(), bindParams.toArray());
 		} catch (SQLException e) {
-			throw new DataException("Unable to fetch matching chat transactions from repository", e);
+			throw new DataException("Unable to fetch chat transactions from repository", e);
 		}
 	}
 
 	@Override
 	public ChatMessage toChatMessage(ChatTransactionData chatTransactionData) throws DataException {
-		String sql = "SELECT SenderNames.name, RecipientNames.name "
-				+ "FROM ChatTransactions "
-				+ "LEFT OUTER JOIN Names AS SenderNames ON SenderNames.owner = sender "
-				+ "LEFT OUTER JOIN Names AS RecipientNames ON RecipientNames.owner = recipient "
-				+ "WHERE signature = ?";
-
-		try (ResultSet resultSet = this.repository.checkedExecute(sql, chatTransactionData.getSignature())) {
-			if (resultSet == null)
-				return null;
-
-			String senderName = resultSet.getString(1);
-			String recipientName = resultSet.getString(2);
+		try {
+			String senderName = this.getName(chatTransactionData.getSender());
+			String recipientName = this.getName(chatTransactionData.getRecipient());
 
 			long timestamp = chatTransactionData.getTimestamp();
 			int groupId = chatTransactionData.getTxGroupId();
@@ -158,16 +197,14 @@ public class HSQLDBChatRepository implements ChatRepository {
 
 	private List<GroupChat> getActiveGroupChats(String address) throws DataException {
 		// Find groups where address is a member and potential latest message details
-		String groupsSql = "SELECT group_id, group_name, latest_timestamp, sender, sender_name "
+		String groupsSql = "SELECT group_id, group_name, latest_timestamp, sender "
 				+ "FROM GroupMembers "
 				+ "JOIN Groups USING (group_id) "
 				+ "LEFT OUTER JOIN LATERAL("
-					+ "SELECT created_when AS latest_timestamp, sender, name AS sender_name "
+					+ "SELECT created_when AS latest_timestamp, sender "
 					+ "FROM ChatTransactions "
-					+ "JOIN Transactions USING (signature) "
-					+ "LEFT OUTER JOIN Names AS SenderNames ON SenderNames.owner = sender "
 					// NOTE: We need to qualify "Groups.group_id" here to avoid "General error" bug in HSQLDB v2.5.0
-					+ "WHERE tx_group_id = Groups.group_id AND type = " + TransactionType.CHAT.value + " "
+					+ "WHERE tx_group_id = Groups.group_id AND participant_a IS NULL "
 					+ "ORDER BY created_when DESC "
 					+ "LIMIT 1"
 				+ ") AS LatestMessages ON TRUE "
@@ -185,7 +222,7 @@ public class HSQLDBChatRepository implements ChatRepository {
 						timestamp = null;
 
 					String sender = resultSet.getString(4);
-					String senderName = resultSet.getString(5);
+					String senderName = this.getName(sender);
 
 					GroupChat groupChat = new GroupChat(groupId, groupName, timestamp, sender, senderName);
 					groupChats.add(groupChat);
@@ -196,12 +233,10 @@ public class HSQLDBChatRepository implements ChatRepository {
 		}
 
 		// We need different SQL to handle group-less chat
-		String grouplessSql = "SELECT created_when, sender, SenderNames.name "
+		String grouplessSql = "SELECT created_when, sender "
 				+ "FROM ChatTransactions "
-				+ "JOIN Transactions USING (signature) "
-				+ "LEFT OUTER JOIN Names AS SenderNames ON SenderNames.owner = sender "
 				+ "WHERE tx_group_id = 0 "
-				+ "AND recipient IS NULL "
+				+ "AND participant_a IS NULL "
 				+ "ORDER BY created_when DESC "
 				+ "LIMIT 1";
 
@@ -214,7 +249,7 @@ public class HSQLDBChatRepository implements ChatRepository {
 				// We found a recipient-less, group-less CHAT message, so report its details
 				timestamp = resultSet.getLong(1);
 				sender = resultSet.getString(2);
-				senderName = resultSet.getString(3);
+				senderName = this.getName(sender);
 			}
 
 			GroupChat groupChat = new GroupChat(0, null, timestamp, sender, senderName);
@@ -228,7 +263,7 @@ public class HSQLDBChatRepository implements ChatRepository {
 
 	private List<DirectChat> getActiveDirectChats(String address) throws DataException {
 		// Find chat messages involving address
-		String directSql = "SELECT other_address, name, latest_timestamp, sender, sender_name "
+		String directSql = "SELECT other_address, latest_timestamp, sender "
 				+ "FROM ("
 					+ "SELECT recipient FROM ChatTransactions "
 					+ "WHERE sender = ? AND recipient IS NOT NULL "
@@ -237,16 +272,13 @@ public class HSQLDBChatRepository implements ChatRepository {
 					+ "WHERE recipient = ?"
 				+ ") AS OtherParties (other_address) "
 				+ "CROSS JOIN LATERAL("
-					+ "SELECT created_when AS latest_timestamp, sender, name AS sender_name "
+					+ "SELECT created_when AS latest_timestamp, sender "
 					+ "FROM ChatTransactions "
-					+ "NATURAL JOIN Transactions "
-					+ "LEFT OUTER JOIN Names AS SenderNames ON SenderNames.owner = sender "
-					+ "WHERE (sender = other_address AND recipient = ?) "
-					+ "OR (sender = ? AND recipient = other_address) "
+					+ "WHERE participant_a = LEAST(other_address, ?) "
+					+ "AND participant_b = GREATEST(other_address, ?) "
 					+ "ORDER BY created_when DESC "
 					+ "LIMIT 1"
-				+ ") AS LatestMessages "
-				+ "LEFT OUTER JOIN Names ON owner = other_address";
+				+ ") AS LatestMessages";
 
 		Object[] bindParams = new Object[] { address, address, address, address };
 
@@ -257,10 +289,11 @@ public class HSQLDBChatRepository implements ChatRepository {
 
 			do {
 				String otherAddress = resultSet.getString(1);
-				String name = resultSet.getString(2);
-				long timestamp = resultSet.getLong(3);
-				String sender = resultSet.getString(4);
-				String senderName = resultSet.getString(5);
+				long timestamp = resultSet.getLong(2);
+				String sender = resultSet.getString(3);
+
+				String name = this.getName(otherAddress);
+				String senderName = this.getName(sender);
 
 				DirectChat directChat = new DirectChat(otherAddress, name, timestamp, sender, senderName);
 				directChats.add(directChat);
@@ -272,4 +305,122 @@ public class HSQLDBChatRepository implements ChatRepository {
 		return directChats;
 	}
 
+	private static void checkCriteria(Integer txGroupId, List<String> involving) throws DataException {
+		// Check args meet expectations
+		if ((txGroupId != null && involving != null && !involving.isEmpty())
+				|| (txGroupId == null && (involving == null || involving.size() != 2)))
+			throw new DataException("Invalid criteria for fetching chat messages from repository");
+	}
+
+	private static void addChatWhereClauses(Integer txGroupId, List<String> involving, List<String> whereClauses, List<Object> bindParams) {
+		if (txGroupId != null) {
+			whereClauses.add("ChatTransactions.tx_group_id = " + txGroupId); // int safe to use literally
+			whereClauses.add("participant_a IS NULL");
+		} else {
+			String[] participants = getParticipants(involving.get(0), involving.get(1));
+
+			whereClauses.add("participant_a = ?");
+			bindParams.add(participants[0]);
+			whereClauses.add("participant_b = ?");
+			bindParams.add(participants[1]);
+		}
+	}
+
+	private static void appendWhereClauses(StringBuilder sql, List<String> whereClauses) {
+		if (whereClauses.isEmpty())
+			return;
+
+		sql.append(" WHERE ");
+
+		final int whereClausesSize = whereClauses.size();
+		for (int wci = 0; wci < whereClausesSize; ++wci) {
+			if (wci != 0)
+				sql.append(" AND ");
+
+			sql.append(whereClauses.get(wci));
+		}
+	}
+
+	private List<ChatMessage> fetchChatMessages(String sql, Object... bindParams) throws SQLException {
+		List<ChatMessage> chatMessages = new ArrayList<>();
+
+		try (ResultSet resultSet = this.repository.checkedExecute(sql, bindParams)) {
+			if (resultSet == null)
+				return chatMessages;
+
+			do {
+				long timestamp = resultSet.getLong(1);
+				int groupId = resultSet.getInt(2);
+				byte[] reference = resultSet.getBytes(3);
+				byte[] senderPublicKey = resultSet.getBytes(4);
+				String sender = resultSet.getString(5);
+				String recipient = resultSet.getString(6);
+				byte[] data = resultSet.getBytes(7);
+				boolean isText = resultSet.getBoolean(8);
+				boolean isEncrypted = resultSet.getBoolean(9);
+				byte[] signature = resultSet.getBytes(10);
+
+				String senderName = this.getName(sender);
+				String recipientName = this.getName(recipient);
+
+				ChatMessage chatMessage = new ChatMessage(timestamp, groupId, reference, senderPublicKey, sender,
+						senderName, recipient, recipientName, data, isText, isEncrypted, signature);
+
+				chatMessages.add(chatMessage);
+			} while (resultSet.next());
+		}
+
+		return chatMessages;
+	}
+
+	private Long getCreatedWhen(byte[] signature) throws DataException {
+		String sql = "SELECT created_when FROM ChatTransactions WHERE signature = ?";
+
+		try (ResultSet resultSet = this.repository.checkedExecute(sql, signature)) {
+			if (resultSet == null)
+				return null;
+
+			return resultSet.getLong(1);
+		} catch (SQLException e) {
+			throw new DataException("Unable to fetch chat transaction timestamp from repository", e);
+		}
+	}
+
+	/** Returns (first registered) name owned by address, or null, using cache if possible. */
+	private String getName(String address) throws SQLException {
+		if (address == null)
+			return null;
+
+		final long now = System.currentTimeMillis();
+		// Our transaction can't see names changed since it started, so anything we cache has to be tagged with its version
+		final long version = this.repository.getNameCacheVersion();
+		// Cache is only for committed names, so bypass it if we have changed names ourselves
+		final boolean haveNamesChanged = this.repository.haveNamesChanged();
+
+		CachedName cachedName = NAMES_BY_OWNER.get(address);
+		if (!haveNamesChanged && cachedName != null && cachedName.version == NAME_CACHE_VERSION.get()
+				&& cachedName.cachedWhen > now - NAME_CACHE_EXPIRY)
+			return cachedName.name;
+
+		String name = null;
+
+		String sql = "SELECT name FROM Names WHERE owner = ? ORDER BY registered_when LIMIT 1";
+		try (ResultSet resultSet = this.repository.checkedExecute(sql, address)) {
+			if (resultSet != null)
+				name = resultSet.getString(1);
+		}
+
+		// Don't cache names other sessions might not see, i.e. our own uncommitted changes, or names since changed
+		if (haveNamesChanged || version != NAME_CACHE_VERSION.get())
+			return name;
+
+		// Crude, but simple, bound on cache size
+		if (NAMES_BY_OWNER.size() >= NAME_CACHE_MAX_SIZE)
+			NAMES_BY_OWNER.clear();
+
+		NAMES_BY_OWNER.put(address, new CachedName(name, now, version));
+
+		return name;
+	}
+
 }
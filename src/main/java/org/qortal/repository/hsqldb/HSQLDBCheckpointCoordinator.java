@@ -0,0 +1,220 @@
+package org.qortal.repository.hsqldb;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Coordinates repository CHECKPOINTs with other repository work.
+ * <p>
+ * Query executions share a read lock, so they don't block each other, while a CHECKPOINT takes
+ * the write lock, blocking new executions until it has finished. Previously every execution,
+ * from every session, synchronized on the same monitor.
+ * <p>
+ * Requested CHECKPOINTs are deferred until an idle window, predicted from the timing of recent blocks,
+ * i.e. after a new block has been processed but well before the next block is expected.
+ * If no idle window comes along in time, e.g. while synchronizing, the CHECKPOINT goes ahead anyway.
+ */
+public class HSQLDBCheckpointCoordinator {
+
+	/** How long after a new block before we consider repository idle, to allow for follow-on processing. (ms) */
+	private static final long POST_BLOCK_QUIET_PERIOD = 5 * 1000L;
+	/** How long before the next block is expected that we want CHECKPOINTs to be finished. (ms) */
+	private static final long PRE_BLOCK_MARGIN = 20 * 1000L;
+	/** Maximum time we defer a requested CHECKPOINT while waiting for an idle window. (ms) */
+	private static final long MAX_CHECKPOINT_DEFERRAL = 10 * 60 * 1000L;
+	/** How long an overdue CHECKPOINT waits for in-flight executions to finish. (ms) */
+	private static final long OVERDUE_LOCK_TIMEOUT = 1000L;
+	/** Weight given to latest block interval when updating average. */
+	private static final double BLOCK_INTERVAL_WEIGHT = 0.2;
+
+	public static class CheckpointStats {
+		public AtomicLong checkpoints = new AtomicLong();
+		public AtomicLong idleCheckpoints = new AtomicLong();
+		public AtomicLong overdueCheckpoints = new AtomicLong();
+		public AtomicLong lastCheckpointTime = new AtomicLong();
+		public AtomicLong totalCheckpointTime = new AtomicLong();
+		public AtomicLong maxCheckpointTime = new AtomicLong();
+		/** Query executions that had to wait for a CHECKPOINT to finish. */
+		public AtomicLong blockedExecutions = new AtomicLong();
+		public AtomicLong totalBlockedTime = new AtomicLong();
+		public AtomicLong maxBlockedTime = new AtomicLong();
+
+		public CheckpointStats() {
+		}
+	}
+
+	private static HSQLDBCheckpointCoordinator instance;
+
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private final CheckpointStats stats = new CheckpointStats();
+
+	private long lastBlockTimestamp = 0L;
+	private long averageBlockInterval = 0L;
+	/** When we first noticed the current CHECKPOINT request, or 0 if none. */
+	private long checkpointRequestTimestamp = 0L;
+
+	private HSQLDBCheckpointCoordinator() {
+	}
+
+	public static synchronized HSQLDBCheckpointCoordinator getInstance() {
+		if (instance == null)
+			instance = new HSQLDBCheckpointCoordinator();
+
+		return instance;
+	}
+
+	public CheckpointStats getStats() {
+		return this.stats;
+	}
+
+	// Query executions
+
+	/** Called before executing SQL, blocking if a CHECKPOINT is in progress. Must be paired with {@link #endExecution()}. */
+	public void beginExecution() {
+		Lock readLock = this.lock.readLock();
+
+		if (readLock.tryLock())
+			return;
+
+		long startTime = System.currentTimeMillis();
+		readLock.lock();
+		long blockedTime = System.currentTimeMillis() - startTime;
+
+		this.stats.blockedExecutions.incrementAndGet();
+		this.stats.totalBlockedTime.addAndGet(blockedTime);
+		this.stats.maxBlockedTime.accumulateAndGet(blockedTime, Math::max);
+	}
+
+	public void endExecution() {
+		this.lock.readLock().unlock();
+	}
+
+	// Checkpoints
+
+	/**
+	 * Returns whether a requested CHECKPOINT should be performed now, i.e. during an idle window, or because it's overdue.
+	 * <p>
+	 * @param now current time (ms)
+	 */
+	public synchronized boolean isCheckpointDue(long now) {
+		if (this.checkpointRequestTimestamp == 0L)
+			this.checkpointRequestTimestamp = now;
+
+		return this.isCheckpointOverdue(now) || this.isIdle(now);
+	}
+
+	private boolean isCheckpointOverdue(long now) {
+		return now - this.checkpointRequestTimestamp >= MAX_CHECKPOINT_DEFERRAL;
+	}
+
+	/** Returns whether we're in an idle window between blocks, e.g. for background maintenance. */
+	public synchronized boolean isIdle(long now) {
+		// No block timing info yet, e.g. during startup
+		if (this.lastBlockTimestamp == 0L || this.averageBlockInterval == 0L)
+			return true;
+
+		long sinceLastBlock = now - this.lastBlockTimestamp;
+
+		// No blocks for a while, so not much going on
+		if (sinceLastBlock >= 2 * this.averageBlockInterval)
+			return true;
+
+		return sinceLastBlock >= POST_BLOCK_QUIET_PERIOD && sinceLastBlock <= this.averageBlockInterval - PRE_BLOCK_MARGIN;
+	}
+
+	/**
+	 * Attempts to block new query executions so that a CHECKPOINT can be performed.
+	 * <p>
+	 * Normally gives up immediately if other executions are in progress, as we'll get another chance soon.
+	 * Overdue CHECKPOINTs wait a little while for executions to finish.
+	 * <p>
+	 * @return true if CHECKPOINT can go ahead, in which case caller must call {@link #endCheckpoint(long, boolean)}
+	 */
+	public boolean tryBeginCheckpoint(long now) {
+		boolean isOverdue;
+		synchronized (this) {
+			isOverdue = this.checkpointRequestTimestamp != 0L && this.isCheckpointOverdue(now);
+		}
+
+		Lock writeLock = this.lock.writeLock();
+
+		if (!isOverdue)
+			return writeLock.tryLock();
+
+		try {
+			return writeLock.tryLock(OVERDUE_LOCK_TIMEOUT, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * Unblocks query executions after a CHECKPOINT attempt.
+	 * <p>
+	 * @param startTime when CHECKPOINT started (ms)
+	 * @param isCompleted whether CHECKPOINT actually went ahead
+	 */
+	public void endCheckpoint(long startTime, boolean isCompleted) {
+		try {
+			if (!isCompleted)
+				return;
+
+			long now = System.currentTimeMillis();
+			long checkpointTime = now - startTime;
+
+			this.stats.checkpoints.incrementAndGet();
+			this.stats.lastCheckpointTime.set(checkpointTime);
+			this.stats.totalCheckpointTime.addAndGet(checkpointTime);
+			this.stats.maxCheckpointTime.accumulateAndGet(checkpointTime, Math::max);
+
+			synchronized (this) {
+				if (this.checkpointRequestTimestamp != 0L && this.isCheckpointOverdue(startTime))
+					this.stats.overdueCheckpoints.incrementAndGet();
+				else
+					this.stats.idleCheckpoints.incrementAndGet();
+
+				this.checkpointRequestTimestamp = 0L;
+			}
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Blocks new query executions, for maintenance or backup, until {@link #endMaintenance()} is called.
+	 * <p>
+	 * Unlike {@link #tryBeginCheckpoint(long)}, this waits for in-flight executions to finish.
+	 */
+	public void beginMaintenance() {
+		this.lock.writeLock().lock();
+	}
+
+	public void endMaintenance() {
+		this.lock.writeLock().unlock();
+	}
+
+	/** Returns whether a CHECKPOINT, maintenance or backup is blocking query executions. */
+	public boolean isBlockingExecutions() {
+		return this.lock.isWriteLocked();
+	}
+
+	// Block timing
+
+	/** Called when a new block has been added to our chain, to help predict idle windows. */
+	public synchronized void onNewBlock(long now) {
+		if (this.lastBlockTimestamp != 0L) {
+			long blockInterval = now - this.lastBlockTimestamp;
+
+			if (this.averageBlockInterval == 0L)
+				this.averageBlockInterval = blockInterval;
+			else
+				this.averageBlockInterval = (long) (BLOCK_INTERVAL_WEIGHT * blockInterval + (1.0 - BLOCK_INTERVAL_WEIGHT) * this.averageBlockInterval);
+		}
+
+		this.lastBlockTimestamp = now;
+	}
+
+}
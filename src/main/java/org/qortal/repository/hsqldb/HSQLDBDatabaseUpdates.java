@@ -964,6 +964,30 @@ public class HSQLDBDatabaseUpdates {
 					stmt.execute("DROP TABLE ArbitraryPeers");
 					break;
 
+				case 42:
+					// Chat index: denormalize timestamp and group from Transactions, and add ordered participant pair for direct messages,
+					// so chat messages can be found, in order, using only ChatTransactions indexes
+					stmt.execute("ALTER TABLE ChatTransactions ADD created_when EpochMillis");
+					stmt.execute("ALTER TABLE ChatTransactions ADD tx_group_id GroupID");
+					// participant_a is the 'lesser' of sender and recipient, participant_b the 'greater'. Both NULL for group messages.
+					stmt.execute("ALTER TABLE ChatTransactions ADD participant_a QortalAddress");
+					stmt.execute("ALTER TABLE ChatTransactions ADD participant_b QortalAddress");
+
+					stmt.execute("UPDATE ChatTransactions SET "
+							+ "created_when = (SELECT created_when FROM Transactions WHERE Transactions.signature = ChatTransactions.signature), "
+							+ "tx_group_id = (SELECT tx_group_id FROM Transactions WHERE Transactions.signature = ChatTransactions.signature)");
+					stmt.execute("UPDATE ChatTransactions SET participant_a = LEAST(sender, recipient), participant_b = GREATEST(sender, recipient) "
+							+ "WHERE recipient IS NOT NULL");
+
+					stmt.execute("ALTER TABLE ChatTransactions ALTER COLUMN created_when SET NOT NULL");
+					stmt.execute("ALTER TABLE ChatTransactions ALTER COLUMN tx_group_id SET NOT NULL");
+
+					// For finding group chat messages in timestamp order
+					stmt.execute("CREATE INDEX ChatTransactionsGroupIndex ON ChatTransactions (tx_group_id, participant_a, created_when)");
+					// For finding direct chat messages between two parties in timestamp order
+					stmt.execute("CREATE INDEX ChatTransactionsParticipantsIndex ON ChatTransactions (participant_a, participant_b, created_when)");
+					break;
+
 				default:
 					// nothing to do
 					return false;
@@ -285,6 +285,8 @@ public class HSQLDBNameRepository implements NameRepository {
 		} catch (SQLException e) {
 			throw new DataException("Unable to save name info into repository", e);
 		}
+
+		this.repository.onNamesChanged();
 	}
 
 	@Override
@@ -294,6 +296,8 @@ public class HSQLDBNameRepository implements NameRepository {
 		} catch (SQLException e) {
 			throw new DataException("Unable to delete name info from repository", e);
 		}
+
+		this.repository.onNamesChanged();
 	}
 
 }
@@ -0,0 +1,274 @@
+package org.qortal.repository.hsqldb;
+
+import java.sql.ResultSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hsqldb.jdbc.JDBCResultSet;
+
+/**
+ * Always-on, low-overhead statistics for each distinct SQL statement executed by repository.
+ * <p>
+ * Latencies are collected into power-of-two buckets, so percentiles are approximate
+ * but recording a query is just a few atomic increments. Calling repository methods
+ * are found by walking the stack, but only for a sample of executions.
+ */
+public class HSQLDBQueryStats {
+
+	private static final Logger LOGGER = LogManager.getLogger(HSQLDBQueryStats.class);
+
+	/** Maximum number of distinct SQL statements tracked. Any others are lumped together. */
+	private static final int MAX_STATEMENTS = 2000;
+	/** SQL used for statements beyond {@link #MAX_STATEMENTS}. */
+	private static final String OTHER_SQL = "(other)";
+	/** Look up calling repository method once every this many executions. Must be power of two. */
+	private static final int CALLER_SAMPLE_INTERVAL = 256;
+	/** Maximum number of distinct callers tracked per statement. */
+	private static final int MAX_CALLERS = 8;
+	/** Number of latency buckets. Bucket n holds latencies below 2^n microseconds, with last bucket unbounded. */
+	private static final int LATENCY_BUCKETS = 32;
+
+	/** Stack frames from these classes are never reported as callers. */
+	private static final Set<String> INTERNAL_CLASS_NAMES = Set.of(
+			HSQLDBRepository.class.getName(),
+			HSQLDBSaver.class.getName(),
+			HSQLDBQueryStats.class.getName());
+
+	private static final StackWalker STACK_WALKER = StackWalker.getInstance();
+
+	/** Summary of statistics for one SQL statement, e.g. for API output. */
+	@XmlAccessorType(XmlAccessType.FIELD)
+	public static class QuerySummary {
+		public String sql;
+		public long count;
+		public long errors;
+		/** Total execution time. (ms) */
+		public long totalTime;
+		/** Approximate median execution time. (ms) */
+		public double p50Time;
+		/** Approximate 99th percentile execution time. (ms) */
+		public double p99Time;
+		/** Maximum execution time. (ms) */
+		public double maxTime;
+		/** Rows returned by queries, or changed by updates. */
+		public long rows;
+		/** Calling repository methods, with number of sampled executions. */
+		public Map<String, Long> callers;
+
+		public QuerySummary() {
+		}
+	}
+
+	public enum SortOrder {
+		TOTAL_TIME(Comparator.comparingLong(summary -> summary.totalTime)),
+		COUNT(Comparator.comparingLong(summary -> summary.count)),
+		P99_TIME(Comparator.comparingDouble(summary -> summary.p99Time)),
+		ROWS(Comparator.comparingLong(summary -> summary.rows));
+
+		public final Comparator<QuerySummary> comparator;
+
+		SortOrder(Comparator<QuerySummary> comparator) {
+			this.comparator = comparator;
+		}
+	}
+
+	/** Passed to {@link #record(String, long, long)} when execution failed. */
+	public static final long EXECUTION_FAILED = -1L;
+	/** Returned by {@link #countRows(ResultSet)} when result doesn't say how many rows it has. */
+	public static final long UNKNOWN_ROWS = -2L;
+
+	private static class StatementStats {
+		final LongAdder count = new LongAdder();
+		final LongAdder errors = new LongAdder();
+		final LongAdder totalNanos = new LongAdder();
+		final LongAdder rows = new LongAdder();
+		final AtomicLongArray latencyBuckets = new AtomicLongArray(LATENCY_BUCKETS);
+		volatile long maxNanos = 0L;
+		final Map<String, LongAdder> callers = new ConcurrentHashMap<>();
+	}
+
+	private static HSQLDBQueryStats instance;
+
+	private final Map<String, StatementStats> statementStats = new ConcurrentHashMap<>();
+	private volatile long resetTimestamp = System.currentTimeMillis();
+
+	private HSQLDBQueryStats() {
+	}
+
+	public static synchronized HSQLDBQueryStats getInstance() {
+		if (instance == null)
+			instance = new HSQLDBQueryStats();
+
+		return instance;
+	}
+
+	/**
+	 * Records execution of SQL statement.
+	 * <p>
+	 * @param sql SQL, with placeholders, as passed to repository
+	 * @param startNanos from {@link System#nanoTime()} before execution
+	 * @param rows rows returned or changed, {@link #UNKNOWN_ROWS} if not known, or {@link #EXECUTION_FAILED}
+	 */
+	public void record(String sql, long startNanos, long rows) {
+		long nanos = System.nanoTime() - startNanos;
+
+		StatementStats stats = this.getStatementStats(sql);
+
+		stats.count.increment();
+		stats.totalNanos.add(nanos);
+		stats.latencyBuckets.incrementAndGet(bucketIndex(nanos));
+
+		if (nanos > stats.maxNanos)
+			synchronized (stats) {
+				if (nanos > stats.maxNanos)
+					stats.maxNanos = nanos;
+			}
+
+		if (rows == EXECUTION_FAILED)
+			stats.errors.increment();
+		else if (rows >= 0)
+			stats.rows.add(rows);
+
+		// Only look up caller for first execution and then a sample of those that follow
+		if (stats.callers.isEmpty() || (stats.count.intValue() & (CALLER_SAMPLE_INTERVAL - 1)) == 0)
+			this.recordCaller(stats);
+	}
+
+	/** Returns number of rows in query result, without moving cursor, or {@link #UNKNOWN_ROWS} if not known. */
+	public static long countRows(ResultSet resultSet) {
+		if (resultSet == null)
+			return 0;
+
+		// HSQLDB results from in-process databases are already fully fetched into memory
+		if (resultSet instanceof JDBCResultSet) {
+			JDBCResultSet jdbcResultSet = (JDBCResultSet) resultSet;
+			if (jdbcResultSet.result != null && jdbcResultSet.result.getNavigator() != null)
+				return jdbcResultSet.result.getNavigator().getSize();
+		}
+
+		return UNKNOWN_ROWS;
+	}
+
+	private StatementStats getStatementStats(String sql) {
+		StatementStats stats = this.statementStats.get(sql);
+		if (stats != null)
+			return stats;
+
+		// Avoid unbounded growth if SQL is built dynamically, e.g. with values instead of placeholders
+		if (this.statementStats.size() >= MAX_STATEMENTS)
+			sql = OTHER_SQL;
+
+		return this.statementStats.computeIfAbsent(sql, key -> new StatementStats());
+	}
+
+	private void recordCaller(StatementStats stats) {
+		String caller = STACK_WALKER.walk(frames -> frames
+				.filter(frame -> !INTERNAL_CLASS_NAMES.contains(frame.getClassName()))
+				.findFirst()
+				.map(frame -> {
+					String className = frame.getClassName();
+					return className.substring(className.lastIndexOf('.') + 1) + "." + frame.getMethodName();
+				})
+				.orElse("unknown"));
+
+		LongAdder callerCount = stats.callers.get(caller);
+		if (callerCount == null) {
+			if (stats.callers.size() >= MAX_CALLERS)
+				return;
+
+			callerCount = stats.callers.computeIfAbsent(caller, key -> new LongAdder());
+		}
+
+		callerCount.increment();
+	}
+
+	private static int bucketIndex(long nanos) {
+		long micros = nanos / 1000L;
+		// Bucket n holds latencies in [2^(n-1), 2^n) microseconds
+		int index = 64 - Long.numberOfLeadingZeros(micros);
+		return Math.min(index, LATENCY_BUCKETS - 1);
+	}
+
+	/** Returns approximate percentile latency (ms), using upper bound of bucket containing percentile. */
+	private static double percentile(AtomicLongArray latencyBuckets, long count, double percentile) {
+		if (count == 0)
+			return 0.0;
+
+		long threshold = (long) Math.ceil(count * percentile);
+		long cumulative = 0;
+		for (int i = 0; i < LATENCY_BUCKETS; ++i) {
+			cumulative += latencyBuckets.get(i);
+			if (cumulative >= threshold)
+				return (1L << i) / 1000.0;
+		}
+
+		return (1L << (LATENCY_BUCKETS - 1)) / 1000.0;
+	}
+
+	private static QuerySummary summarize(String sql, StatementStats stats) {
+		QuerySummary summary = new QuerySummary();
+
+		summary.sql = sql;
+		summary.count = stats.count.sum();
+		summary.errors = stats.errors.sum();
+		summary.totalTime = stats.totalNanos.sum() / 1000000L;
+		summary.p50Time = percentile(stats.latencyBuckets, summary.count, 0.50);
+		summary.p99Time = percentile(stats.latencyBuckets, summary.count, 0.99);
+		summary.maxTime = stats.maxNanos / 1000000.0;
+		summary.rows = stats.rows.sum();
+		summary.callers = stats.callers.entrySet().stream()
+				.collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().sum()));
+
+		return summary;
+	}
+
+	/**
+	 * Returns summaries of statements, highest first by <tt>sortOrder</tt>.
+	 * <p>
+	 * @param limit maximum number of summaries, or 0 for all
+	 */
+	public List<QuerySummary> getSummaries(SortOrder sortOrder, int limit) {
+		return this.statementStats.entrySet().stream()
+				.map(entry -> summarize(entry.getKey(), entry.getValue()))
+				.sorted(sortOrder.comparator.reversed())
+				.limit(limit > 0 ? limit : Long.MAX_VALUE)
+				.collect(Collectors.toList());
+	}
+
+	/** Returns when statistics were last reset. (ms) */
+	public long getResetTimestamp() {
+		return this.resetTimestamp;
+	}
+
+	public void reset() {
+		this.statementStats.clear();
+		this.resetTimestamp = System.currentTimeMillis();
+	}
+
+	/** Logs statements with highest total execution time. */
+	public void logSummaries(int limit) {
+		List<QuerySummary> summaries = this.getSummaries(SortOrder.TOTAL_TIME, limit);
+		if (summaries.isEmpty())
+			return;
+
+		long sinceMinutes = (System.currentTimeMillis() - this.resetTimestamp) / 60000L;
+		LOGGER.info(String.format("Top %d repository statements by total time, over last %d minutes:", summaries.size(), sinceMinutes));
+
+		for (QuerySummary summary : summaries)
+			LOGGER.info(String.format("%dms total, %d calls, p50 %.3fms, p99 %.3fms, max %.3fms, %d rows, %d errors, callers %s: %s",
+					summary.totalTime, summary.count, summary.p50Time, summary.p99Time, summary.maxTime,
+					summary.rows, summary.errors, summary.callers.keySet(), summary.sql));
+	}
+
+}
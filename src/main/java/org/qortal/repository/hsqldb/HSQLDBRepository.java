@@ -17,6 +17,7 @@ import java.sql.Savepoint;
 import java.sql.Statement;
 import java.util.*;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
@@ -35,17 +36,25 @@ public class HSQLDBRepository implements Repository {
 
 	private static final Logger LOGGER = LogManager.getLogger(HSQLDBRepository.class);
 
-	public static final Object CHECKPOINT_LOCK = new Object();
-
 	// "serialization failure"
 	private static final Integer DEADLOCK_ERROR_CODE = Integer.valueOf(-4861);
 
+	/** Number of open read-only sessions, as an indication of API load. */
+	private static final AtomicInteger readOnlySessionCount = new AtomicInteger();
+
 	protected Connection connection;
+	protected final boolean isReadOnly;
+	/** Whether session belongs to the node's main repository, so can perform checkpoints requested via RepositoryManager. */
+	protected final boolean isPrimary;
 	protected final Deque<Savepoint> savepoints = new ArrayDeque<>(3);
 	protected boolean debugState = false;
 	protected Long slowQueryThreshold = null;
 	protected List<String> sqlStatements;
 	protected long sessionId;
+	/** Whether Names rows have been changed in the current transaction, so cached names need invalidating once committed. */
+	protected boolean haveNamesChanged = false;
+	/** Name cache version when the current transaction started, as queries can't see name changes committed since. */
+	protected long nameCacheVersion;
 	protected final Map<String, PreparedStatement> preparedStatementCache = new HashMap<>();
 	// We want the same object corresponding to the actual DB
 	protected final Object trimHeightsLock = RepositoryManager.getRepositoryFactory();
@@ -70,7 +79,15 @@ public class HSQLDBRepository implements Repository {
 
 	// NB: no visibility modifier so only callable from within same package
 	/* package */ HSQLDBRepository(Connection connection) throws DataException {
+		this(connection, false, true);
+	}
+
+	/* package */ HSQLDBRepository(Connection connection, boolean isReadOnly, boolean isPrimary) throws DataException {
 		this.connection = connection;
+		this.isReadOnly = isReadOnly;
+		this.isPrimary = isPrimary;
+		// Before our first query starts a transaction
+		this.nameCacheVersion = HSQLDBChatRepository.getNameCacheVersion();
 
 		this.slowQueryThreshold = Settings.getInstance().getSlowQueryThreshold();
 		if (this.slowQueryThreshold != null)
@@ -91,14 +108,25 @@ public class HSQLDBRepository implements Repository {
 			throw new DataException("Unable to fetch session ID from repository", e);
 		}
 
-		// synchronize to block new connections if checkpointing in progress 
-		synchronized (CHECKPOINT_LOCK) {
+		// Block new connections if checkpointing in progress
+		HSQLDBCheckpointCoordinator checkpointCoordinator = HSQLDBCheckpointCoordinator.getInstance();
+		checkpointCoordinator.beginExecution();
+		try {
 			assertEmptyTransaction("connection creation");
+		} finally {
+			checkpointCoordinator.endExecution();
 		}
+
+		if (this.isReadOnly)
+			readOnlySessionCount.incrementAndGet();
 	}
 
 	// Getters / setters
 
+	public static int getReadOnlySessionCount() {
+		return readOnlySessionCount.get();
+	}
+
 	@Override
 	public ATRepository getATRepository() {
 		return this.atRepository;
@@ -174,6 +202,24 @@ public class HSQLDBRepository implements Repository {
 		return this.debugState;
 	}
 
+	@Override
+	public boolean isReadOnly() {
+		return this.isReadOnly;
+	}
+
+	/** Records that Names rows have changed, so that cached names are invalidated when the changes are committed. */
+	/* package */ void onNamesChanged() {
+		this.haveNamesChanged = true;
+	}
+
+	/* package */ boolean haveNamesChanged() {
+		return this.haveNamesChanged;
+	}
+
+	/* package */ long getNameCacheVersion() {
+		return this.nameCacheVersion;
+	}
+
 	@Override
 	public void setDebug(boolean debugState) {
 		this.debugState = debugState;
@@ -188,6 +234,13 @@ public class HSQLDBRepository implements Repository {
 		try {
 			this.connection.commit();
 
+			// Other sessions can only see, and cache, the changed names once committed
+			if (this.haveNamesChanged) {
+				this.haveNamesChanged = false;
+				HSQLDBChatRepository.invalidateNameCache();
+			}
+			this.nameCacheVersion = HSQLDBChatRepository.getNameCacheVersion();
+
 			if (this.slowQueryThreshold != null) {
 				long queryTime = System.currentTimeMillis() - beforeQuery;
 
@@ -218,6 +271,8 @@ public class HSQLDBRepository implements Repository {
 			throw new DataException("rollback error", e);
 		} finally {
 			this.savepoints.clear();
+			this.haveNamesChanged = false;
+			this.nameCacheVersion = HSQLDBChatRepository.getNameCacheVersion();
 
 			// Before clearing statements so we can log what led to assertion error
 			assertEmptyTransaction("transaction rollback");
@@ -280,21 +335,43 @@ public class HSQLDBRepository implements Repository {
 			this.sqlStatements = null;
 			this.savepoints.clear();
 
-			// If a checkpoint has been requested, we could perform that now
-			this.maybeCheckpoint();
+			// If a checkpoint has been requested, we could perform that now,
+			// but not from another repository, e.g. a bootstrap snapshot, as the request isn't for that one
+			if (!this.isReadOnly && this.isPrimary)
+				this.maybeCheckpoint();
 
 			// Give connection back to the pool
 			this.connection.close();
 			this.connection = null;
+
+			if (this.isReadOnly)
+				readOnlySessionCount.decrementAndGet();
 		} catch (SQLException e) {
 			throw new DataException("Error while closing repository", e);
 		}
 	}
 
 	private void maybeCheckpoint() throws DataException {
-		// To serialize checkpointing and to block new sessions when checkpointing in progress
-		synchronized (CHECKPOINT_LOCK) {
-			Boolean quickCheckpointRequest = RepositoryManager.getRequestedCheckpoint();
+		Boolean quickCheckpointRequest = RepositoryManager.getRequestedCheckpoint();
+		if (quickCheckpointRequest == null)
+			return;
+
+		HSQLDBCheckpointCoordinator checkpointCoordinator = HSQLDBCheckpointCoordinator.getInstance();
+
+		// Wait for a quiet moment between blocks, unless we've waited too long already
+		long now = System.currentTimeMillis();
+		if (!checkpointCoordinator.isCheckpointDue(now))
+			return;
+
+		// To serialize checkpointing and to block new executions when checkpointing in progress.
+		// If other sessions are busy then we'll try again when the next session closes.
+		if (!checkpointCoordinator.tryBeginCheckpoint(now))
+			return;
+
+		boolean isCompleted = false;
+		try {
+			// Someone else might have beaten us to it
+			quickCheckpointRequest = RepositoryManager.getRequestedCheckpoint();
 			if (quickCheckpointRequest == null)
 				return;
 
@@ -335,11 +412,14 @@ public class HSQLDBRepository implements Repository {
 				}
 
 				// Completed!
-				LOGGER.info("Repository CHECKPOINT completed!");
+				isCompleted = true;
+				LOGGER.info("Repository CHECKPOINT completed in {}ms", System.currentTimeMillis() - now);
 				RepositoryManager.setRequestedCheckpoint(null);
 			} catch (SQLException e) {
 				throw new DataException("Unable to check repository session status", e);
 			}
+		} finally {
+			checkpointCoordinator.endCheckpoint(now, isCompleted);
 		}
 	}
 
@@ -381,14 +461,14 @@ public class HSQLDBRepository implements Repository {
 
 	@Override
 	public void backup(boolean quick, String name, Long timeout) throws DataException, TimeoutException {
-		synchronized (CHECKPOINT_LOCK) {
+		// We can only perform a CHECKPOINT if no other HSQLDB session is mid-transaction,
+		// otherwise the CHECKPOINT blocks for COMMITs and other threads can't open HSQLDB sessions
+		// due to HSQLDB blocking until CHECKPOINT finishes - i.e. deadlock.
+		// Since we don't want to give up too easily, it's best to wait until the other transaction
+		// count reaches zero, and then continue.
+		this.beginMaintenanceWithNoOtherTransactions(timeout);
 
-			// We can only perform a CHECKPOINT if no other HSQLDB session is mid-transaction,
-			// otherwise the CHECKPOINT blocks for COMMITs and other threads can't open HSQLDB sessions
-			// due to HSQLDB blocking until CHECKPOINT finishes - i.e. deadlock.
-			// Since we don't want to give up too easily, it's best to wait until the other transaction
-			// count reaches zero, and then continue.
-			this.blockUntilNoOtherTransactions(timeout);
+		try {
 
 			if (!quick)
 				// First perform a CHECKPOINT
@@ -402,36 +482,9 @@ public class HSQLDBRepository implements Repository {
 				}
 
 			// Clean out any previous backup
-			try {
-				String connectionUrl = this.connection.getMetaData().getURL();
-				String dbPathname = getDbPathname(connectionUrl);
-				if (dbPathname == null)
-					throw new DataException("Unable to locate repository for backup?");
-
-				// Doesn't really make sense to backup an in-memory database...
-				if (dbPathname.equals("mem")) {
-					LOGGER.debug("Ignoring request to backup in-memory repository!");
-					return;
-				}
-
-				String backupUrl = buildBackupUrl(dbPathname, name);
-				String backupPathname = getDbPathname(backupUrl);
-				if (backupPathname == null)
-					throw new DataException("Unable to determine location for repository backup?");
-
-				Path backupDirPath = Paths.get(backupPathname).getParent();
-				String backupDirPathname = backupDirPath.toString();
-
-				try (Stream<Path> paths = Files.walk(backupDirPath)) {
-					paths.sorted(Comparator.reverseOrder())
-							.map(Path::toFile)
-							.filter(file -> file.getPath().startsWith(backupDirPathname))
-							.forEach(File::delete);
-				}
-			} catch (NoSuchFileException e) {
-				// Nothing to remove
-			} catch (SQLException | IOException e) {
-				throw new DataException("Unable to remove previous repository backup");
+			if (!this.deleteBackup(name)) {
+				LOGGER.debug("Ignoring request to backup in-memory repository!");
+				return;
 			}
 
 			// Actually create backup
@@ -442,30 +495,98 @@ public class HSQLDBRepository implements Repository {
 			} catch (SQLException e) {
 				throw new DataException("Unable to backup repository");
 			}
-
+		} finally {
+			HSQLDBCheckpointCoordinator.getInstance().endMaintenance();
 		}
 	}
 
 	@Override
-	public void performPeriodicMaintenance(Long timeout) throws DataException, TimeoutException {
-		synchronized (CHECKPOINT_LOCK) {
+	public Path snapshot(String name, Long timeout) throws DataException, TimeoutException {
+		if (!this.deleteBackup(name))
+			throw new DataException("Unable to snapshot in-memory repository");
 
-			// We can only perform a CHECKPOINT if no other HSQLDB session is mid-transaction,
-			// otherwise the CHECKPOINT blocks for COMMITs and other threads can't open HSQLDB sessions
-			// due to HSQLDB blocking until CHECKPOINT finishes - i.e. deadlock.
-			// Since we don't want to give up too easily, it's best to wait until the other transaction
-			// count reaches zero, and then continue.
-			this.blockUntilNoOtherTransactions(timeout);
+		// Non-blocking backups copy data as of the latest CHECKPOINT, so perform one now.
+		// This is quick compared to a full backup, so other sessions are only blocked briefly.
+		this.beginMaintenanceWithNoOtherTransactions(timeout);
+		try (Statement stmt = this.connection.createStatement()) {
+			stmt.execute("CHECKPOINT");
+		} catch (SQLException e) {
+			throw new DataException("Unable to prepare repository for snapshot", e);
+		} finally {
+			HSQLDBCheckpointCoordinator.getInstance().endMaintenance();
+		}
 
-			// Defrag DB - takes a while!
-			try (Statement stmt = this.connection.createStatement()) {
-				LOGGER.info("performing maintenance - this will take a while");
-				stmt.execute("CHECKPOINT");
-				stmt.execute("CHECKPOINT DEFRAG");
-				LOGGER.info("maintenance completed");
-			} catch (SQLException e) {
-				throw new DataException("Unable to defrag repository");
+		// Copy files while other sessions carry on as normal
+		try (Statement stmt = this.connection.createStatement()) {
+			LOGGER.info("Creating repository snapshot...");
+			stmt.execute(String.format("BACKUP DATABASE TO '%s/' NOT BLOCKING AS FILES", name));
+			LOGGER.info("Snapshot completed");
+
+			String dbPathname = getDbPathname(this.connection.getMetaData().getURL());
+			return Paths.get(getDbPathname(buildBackupUrl(dbPathname, name))).getParent();
+		} catch (SQLException e) {
+			throw new DataException("Unable to snapshot repository", e);
+		}
+	}
+
+	/**
+	 * Deletes any previous backup with passed <tt>name</tt>.
+	 * <p>
+	 * @return false if repository is in-memory, so can't be backed up
+	 */
+	private boolean deleteBackup(String name) throws DataException {
+		try {
+			String connectionUrl = this.connection.getMetaData().getURL();
+			String dbPathname = getDbPathname(connectionUrl);
+			if (dbPathname == null)
+				throw new DataException("Unable to locate repository for backup?");
+
+			// Doesn't really make sense to backup an in-memory database...
+			if (dbPathname.equals("mem"))
+				return false;
+
+			String backupUrl = buildBackupUrl(dbPathname, name);
+			String backupPathname = getDbPathname(backupUrl);
+			if (backupPathname == null)
+				throw new DataException("Unable to determine location for repository backup?");
+
+			Path backupDirPath = Paths.get(backupPathname).getParent();
+			String backupDirPathname = backupDirPath.toString();
+
+			try (Stream<Path> paths = Files.walk(backupDirPath)) {
+				paths.sorted(Comparator.reverseOrder())
+						.map(Path::toFile)
+						.filter(file -> file.getPath().startsWith(backupDirPathname))
+						.forEach(File::delete);
 			}
+		} catch (NoSuchFileException e) {
+			// Nothing to remove
+		} catch (SQLException | IOException e) {
+			throw new DataException("Unable to remove previous repository backup");
+		}
+
+		return true;
+	}
+
+	@Override
+	public void performPeriodicMaintenance(Long timeout) throws DataException, TimeoutException {
+		// We can only perform a CHECKPOINT if no other HSQLDB session is mid-transaction,
+		// otherwise the CHECKPOINT blocks for COMMITs and other threads can't open HSQLDB sessions
+		// due to HSQLDB blocking until CHECKPOINT finishes - i.e. deadlock.
+		// Since we don't want to give up too easily, it's best to wait until the other transaction
+		// count reaches zero, and then continue.
+		this.beginMaintenanceWithNoOtherTransactions(timeout);
+
+		// Defrag DB - takes a while!
+		try (Statement stmt = this.connection.createStatement()) {
+			LOGGER.info("performing maintenance - this will take a while");
+			stmt.execute("CHECKPOINT");
+			stmt.execute("CHECKPOINT DEFRAG");
+			LOGGER.info("maintenance completed");
+		} catch (SQLException e) {
+			throw new DataException("Unable to defrag repository");
+		} finally {
+			HSQLDBCheckpointCoordinator.getInstance().endMaintenance();
 		}
 	}
 
@@ -586,6 +707,17 @@ public class HSQLDBRepository implements Repository {
 				LOGGER.debug(() -> String.format("Recompiling closed PreparedStatement: %s", sql));
 
 			preparedStatement =  this.connection.prepareStatement(sql);
+
+			if (this.isReadOnly) {
+				// Stop expensive queries, e.g. from API, hogging repository
+				preparedStatement.setQueryTimeout(Settings.getInstance().getRepositoryApiQueryTimeout());
+
+				// Fetch one extra row so checkedExecute() can tell when limit is exceeded, instead of silently truncating results
+				int maxRows = Settings.getInstance().getRepositoryApiMaxRows();
+				if (maxRows > 0)
+					preparedStatement.setMaxRows(maxRows + 1);
+			}
+
 			this.preparedStatementCache.put(sql, preparedStatement);
 		} else {
 			// Clean up ready for reuse
@@ -613,8 +745,34 @@ public class HSQLDBRepository implements Repository {
 		// They are cleaned up when connection/session is closed.
 
 		long beforeQuery = this.slowQueryThreshold == null ? 0 : System.currentTimeMillis();
+		long startNanos = System.nanoTime();
 
-		ResultSet resultSet = this.checkedExecuteResultSet(preparedStatement, objects);
+		ResultSet resultSet;
+		try {
+			resultSet = this.checkedExecuteResultSet(preparedStatement, objects);
+		} catch (SQLException e) {
+			HSQLDBQueryStats.getInstance().record(sql, startNanos, HSQLDBQueryStats.EXECUTION_FAILED);
+			throw e;
+		}
+
+		long rowCount = HSQLDBQueryStats.countRows(resultSet);
+		HSQLDBQueryStats.getInstance().record(sql, startNanos, rowCount);
+
+		if (this.isReadOnly) {
+			int maxRows = Settings.getInstance().getRepositoryApiMaxRows();
+			if (maxRows > 0 && rowCount == HSQLDBQueryStats.UNKNOWN_ROWS) {
+				// Can't tell whether results were truncated, so don't risk returning partial results
+				resultSet.close();
+				throw new SQLException("Unable to check query's row count against repositoryApiMaxRows");
+			}
+
+			if (maxRows > 0 && rowCount > maxRows) {
+				resultSet.close();
+
+				LOGGER.warn(() -> String.format("[Session %d] Read-only query returned more than %d rows: %s", this.sessionId, maxRows, sql));
+				throw new SQLException(String.format("Query returned more than %d rows - use limit/offset, or increase repositoryApiMaxRows", maxRows));
+			}
+		}
 
 		if (this.slowQueryThreshold != null) {
 			long queryTime = System.currentTimeMillis() - beforeQuery;
@@ -661,10 +819,14 @@ public class HSQLDBRepository implements Repository {
 	private ResultSet checkedExecuteResultSet(PreparedStatement preparedStatement, Object... objects) throws SQLException {
 		bindStatementParams(preparedStatement, objects);
 
-		// synchronize to block new executions if checkpointing in progress
-		synchronized (CHECKPOINT_LOCK) {
+		// Block new executions if checkpointing in progress
+		HSQLDBCheckpointCoordinator checkpointCoordinator = HSQLDBCheckpointCoordinator.getInstance();
+		checkpointCoordinator.beginExecution();
+		try {
 			if (!preparedStatement.execute())
 				throw new SQLException("Fetching from database produced no results");
+		} finally {
+			checkpointCoordinator.endExecution();
 		}
 
 		ResultSet resultSet = preparedStatement.getResultSet();
@@ -702,6 +864,8 @@ public class HSQLDBRepository implements Repository {
 		if (batchedObjects == null || batchedObjects.isEmpty())
 			return 0;
 
+		this.assertWritable();
+
 		PreparedStatement preparedStatement = this.prepareStatement(sql);
 		for (Object[] objects : batchedObjects) {
 			this.bindStatementParams(preparedStatement, objects);
@@ -709,11 +873,14 @@ public class HSQLDBRepository implements Repository {
 		}
 
 		long beforeQuery = this.slowQueryThreshold == null ? 0 : System.currentTimeMillis();
+		long startNanos = System.nanoTime();
 
 		int[] updateCounts = null;
 		try {
 			updateCounts = preparedStatement.executeBatch();
 		} catch (SQLException e) {
+			HSQLDBQueryStats.getInstance().record(sql, startNanos, HSQLDBQueryStats.EXECUTION_FAILED);
+
 			if (isDeadlockException(e))
 				// We want more info on what other DB sessions are doing to cause this
 				examineException(e);
@@ -739,9 +906,17 @@ public class HSQLDBRepository implements Repository {
 			totalCount += updateCounts[i];
 		}
 
+		HSQLDBQueryStats.getInstance().record(sql, startNanos, totalCount);
+
 		return totalCount;
 	}
 
+	/** Throws if this session is read-only, before the repository has a chance to complain. */
+	/* package */ void assertWritable() throws SQLException {
+		if (this.isReadOnly)
+			throw new SQLException("Attempted write using read-only repository session");
+	}
+
 	/**
 	 * Fetch last value of IDENTITY column after an INSERT statement.
 	 * <p>
@@ -1045,6 +1220,36 @@ public class HSQLDBRepository implements Repository {
 		}
 	}
 
+	/**
+	 * Blocks new query executions, once no other sessions are mid-transaction.
+	 * <p>
+	 * We wait for other transactions to finish <i>before</i> blocking executions, otherwise they might never finish.
+	 * On success, caller must call {@link HSQLDBCheckpointCoordinator#endMaintenance()}.
+	 */
+	private void beginMaintenanceWithNoOtherTransactions(Long timeout) throws DataException, TimeoutException {
+		HSQLDBCheckpointCoordinator checkpointCoordinator = HSQLDBCheckpointCoordinator.getInstance();
+		long startTime = System.currentTimeMillis();
+
+		while (true) {
+			Long remainingTimeout = timeout == null ? null : Math.max(timeout - (System.currentTimeMillis() - startTime), 0L);
+			this.blockUntilNoOtherTransactions(remainingTimeout);
+
+			checkpointCoordinator.beginMaintenance();
+
+			boolean haveOtherTransactions = true;
+			try {
+				// Another session might have started a transaction while we were acquiring lock
+				haveOtherTransactions = this.otherTransactionsCount() > 0;
+			} finally {
+				if (haveOtherTransactions)
+					checkpointCoordinator.endMaintenance();
+			}
+
+			if (!haveOtherTransactions)
+				return;
+		}
+	}
+
 	private void blockUntilNoOtherTransactions(Long timeout) throws DataException, TimeoutException {
 		try {
 			long startTime = System.currentTimeMillis();
@@ -25,7 +25,11 @@ public class HSQLDBRepositoryFactory implements RepositoryFactory {
 
 	private String connectionUrl;
 	private HSQLDBPool connectionPool;
+	/** Separate pool for read-only sessions, e.g. for API use. */
+	private HSQLDBPool readOnlyConnectionPool;
 	private final boolean wasPristine;
+	/** Whether this is the node's main repository, rather than e.g. a bootstrap snapshot. */
+	private final boolean isPrimary;
 
 	/**
 	 * Constructs new RepositoryFactory using passed <tt>connectionUrl</tt>.
@@ -35,8 +39,24 @@ public class HSQLDBRepositoryFactory implements RepositoryFactory {
 	 * @throws DataException <i>with throwable</i> if repository cannot be opened for some other reason.
 	 */
 	public HSQLDBRepositoryFactory(String connectionUrl) throws DataException {
+		this(connectionUrl, true);
+	}
+
+	/**
+	 * Constructs new RepositoryFactory using passed <tt>connectionUrl</tt>.
+	 * <p>
+	 * Sessions from a non-primary factory, e.g. for a bootstrap snapshot, leave checkpoints
+	 * requested via RepositoryManager for the main repository's sessions to perform.
+	 *
+	 * @param connectionUrl
+	 * @param isPrimary whether this is the node's main repository
+	 * @throws DataException <i>without throwable</i> if repository in use by another process.
+	 * @throws DataException <i>with throwable</i> if repository cannot be opened for some other reason.
+	 */
+	public HSQLDBRepositoryFactory(String connectionUrl, boolean isPrimary) throws DataException {
 		// one-time initialization goes in here
 		this.connectionUrl = connectionUrl;
+		this.isPrimary = isPrimary;
 
 		// Check no-one else is accessing database
 		try (Connection connection = DriverManager.getConnection(this.connectionUrl)) {
@@ -64,6 +84,10 @@ public class HSQLDBRepositoryFactory implements RepositoryFactory {
 		properties.setProperty("close_result", "true"); // Auto-close old ResultSet if Statement creates new ResultSet
 		this.connectionPool.setProperties(properties);
 
+		this.readOnlyConnectionPool = new HSQLDBPool(Settings.getInstance().getRepositoryApiConnectionPoolSize());
+		this.readOnlyConnectionPool.setUrl(this.connectionUrl);
+		this.readOnlyConnectionPool.setProperties(properties);
+
 		// Perform DB updates?
 		try (final Connection connection = this.connectionPool.getConnection()) {
 			this.wasPristine = HSQLDBDatabaseUpdates.updateDatabase(connection);
@@ -79,13 +103,13 @@ public class HSQLDBRepositoryFactory implements RepositoryFactory {
 
 	@Override
 	public RepositoryFactory reopen() throws DataException {
-		return new HSQLDBRepositoryFactory(this.connectionUrl);
+		return new HSQLDBRepositoryFactory(this.connectionUrl, this.isPrimary);
 	}
 
 	@Override
 	public Repository getRepository() throws DataException {
 		try {
-			return new HSQLDBRepository(this.getConnection());
+			return new HSQLDBRepository(this.getConnection(), false, this.isPrimary);
 		} catch (SQLException e) {
 			throw new DataException("Repository instantiation error", e);
 		}
@@ -98,7 +122,16 @@ public class HSQLDBRepositoryFactory implements RepositoryFactory {
 			if (connection == null)
 				return null;
 
-			return new HSQLDBRepository(connection);
+			return new HSQLDBRepository(connection, false, this.isPrimary);
+		} catch (SQLException e) {
+			throw new DataException("Repository instantiation error", e);
+		}
+	}
+
+	@Override
+	public Repository getReadOnlyRepository() throws DataException {
+		try {
+			return new HSQLDBRepository(this.getReadOnlyConnection(), true, this.isPrimary);
 		} catch (SQLException e) {
 			throw new DataException("Repository instantiation error", e);
 		}
@@ -117,6 +150,20 @@ public class HSQLDBRepositoryFactory implements RepositoryFactory {
 		return connection;
 	}
 
+	private Connection getReadOnlyConnection() throws SQLException {
+		final long before = System.currentTimeMillis();
+		Connection connection = this.readOnlyConnectionPool.getConnection();
+		final long delay = System.currentTimeMillis() - before;
+
+		if (delay > SLOW_CONNECTION_THRESHOLD)
+			// Expected during bursts of API requests, as read-only pool is deliberately small
+			LOGGER.debug(() -> String.format("Fetching read-only repository connection from pool took %dms (threshold: %dms)", delay, SLOW_CONNECTION_THRESHOLD));
+
+		setupConnection(connection);
+		connection.setReadOnly(true);
+		return connection;
+	}
+
 	private Connection tryConnection() throws SQLException {
 		Connection connection = this.connectionPool.tryConnection();
 		if (connection == null)
@@ -130,18 +177,29 @@ public class HSQLDBRepositoryFactory implements RepositoryFactory {
 		// Set transaction level
 		connection.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
 		connection.setAutoCommit(false);
+		connection.setReadOnly(false);
 	}
 
 	@Override
 	public void close() throws DataException {
+		this.shutdown("SHUTDOWN");
+	}
+
+	/** Closes repository, rewriting data files to reclaim unused space. Can take a while! */
+	public void closeAndCompact() throws DataException {
+		this.shutdown("SHUTDOWN COMPACT");
+	}
+
+	private void shutdown(String sql) throws DataException {
 		try {
 			// Close all existing connections immediately
+			this.readOnlyConnectionPool.close(0);
 			this.connectionPool.close(0);
 
 			// Now that all connections are closed, create a dedicated connection to shut down repository
 			try (Connection connection = DriverManager.getConnection(this.connectionUrl);
 					Statement stmt = connection.createStatement()) {
-				stmt.execute("SHUTDOWN");
+				stmt.execute(sql);
 			}
 		} catch (SQLException e) {
 			throw new DataException("Error during repository shutdown", e);
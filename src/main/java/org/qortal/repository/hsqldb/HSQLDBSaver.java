@@ -61,15 +61,26 @@ public class HSQLDBSaver {
 	public boolean execute(HSQLDBRepository repository) throws SQLException {
 		String sql = this.formatInsertWithPlaceholders();
 
-		synchronized (HSQLDBRepository.CHECKPOINT_LOCK) {
-			try {
-				PreparedStatement preparedStatement = repository.prepareStatement(sql);
-				this.bindValues(preparedStatement);
-
-				return preparedStatement.execute();
-			} catch (SQLException e) {
-				throw repository.examineException(e);
-			}
+		repository.assertWritable();
+
+		// Block new executions if checkpointing in progress
+		HSQLDBCheckpointCoordinator checkpointCoordinator = HSQLDBCheckpointCoordinator.getInstance();
+		checkpointCoordinator.beginExecution();
+		long startNanos = System.nanoTime();
+		try {
+			PreparedStatement preparedStatement = repository.prepareStatement(sql);
+			this.bindValues(preparedStatement);
+
+			boolean result = preparedStatement.execute();
+
+			HSQLDBQueryStats.getInstance().record(sql, startNanos, Math.max(preparedStatement.getUpdateCount(), 0));
+
+			return result;
+		} catch (SQLException e) {
+			HSQLDBQueryStats.getInstance().record(sql, startNanos, HSQLDBQueryStats.EXECUTION_FAILED);
+			throw repository.examineException(e);
+		} finally {
+			checkpointCoordinator.endExecution();
 		}
 	}
 
@@ -7,6 +7,7 @@ import org.qortal.data.transaction.BaseTransactionData;
 import org.qortal.data.transaction.ChatTransactionData;
 import org.qortal.data.transaction.TransactionData;
 import org.qortal.repository.DataException;
+import org.qortal.repository.hsqldb.HSQLDBChatRepository;
 import org.qortal.repository.hsqldb.HSQLDBRepository;
 import org.qortal.repository.hsqldb.HSQLDBSaver;
 
@@ -47,6 +48,12 @@ public class HSQLDBChatTransactionRepository extends HSQLDBTransactionRepository
 				.bind("is_text", chatTransactionData.getIsText()).bind("is_encrypted", chatTransactionData.getIsEncrypted())
 				.bind("data", chatTransactionData.getData());
 
+		// Chat index columns
+		String[] participants = HSQLDBChatRepository.getParticipants(chatTransactionData.getSender(), chatTransactionData.getRecipient());
+
+		saveHelper.bind("created_when", chatTransactionData.getTimestamp()).bind("tx_group_id", chatTransactionData.getTxGroupId())
+				.bind("participant_a", participants[0]).bind("participant_b", participants[1]);
+
 		try {
 			saveHelper.execute(this.repository);
 		} catch (SQLException e) {
@@ -8,6 +8,7 @@ import java.lang.reflect.Method;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.EnumMap;
 import java.util.EnumSet;
 import java.util.List;
@@ -390,6 +391,22 @@ public class HSQLDBTransactionRepository implements TransactionRepository {
 	public List<byte[]> getSignaturesMatchingCriteria(Integer startBlock, Integer blockLimit, Integer txGroupId,
 													  List<TransactionType> txTypes, Service service, String name, String address,
 													  ConfirmationStatus confirmationStatus, Integer limit, Integer offset, Boolean reverse) throws DataException {
+		return this.getSignaturesMatchingCriteria(startBlock, blockLimit, txGroupId, txTypes, service, name, address,
+				confirmationStatus, false, null, null, limit, offset, reverse);
+	}
+
+	@Override
+	public List<byte[]> getSignaturesMatchingCriteriaAfter(Integer startBlock, Integer blockLimit, Integer txGroupId,
+			List<TransactionType> txTypes, Service service, String name, String address,
+			ConfirmationStatus confirmationStatus, Long afterTimestamp, byte[] afterSignature, Integer limit, Boolean reverse) throws DataException {
+		return this.getSignaturesMatchingCriteria(startBlock, blockLimit, txGroupId, txTypes, service, name, address,
+				confirmationStatus, true, afterTimestamp, afterSignature, limit, null, reverse);
+	}
+
+	private List<byte[]> getSignaturesMatchingCriteria(Integer startBlock, Integer blockLimit, Integer txGroupId,
+			List<TransactionType> txTypes, Service service, String name, String address,
+			ConfirmationStatus confirmationStatus, boolean isKeysetPaged, Long afterTimestamp, byte[] afterSignature,
+			Integer limit, Integer offset, Boolean reverse) throws DataException {
 		List<byte[]> signatures = new ArrayList<>();
 
 		boolean hasAddress = address != null && !address.isEmpty();
@@ -481,6 +498,15 @@ public class HSQLDBTransactionRepository implements TransactionRepository {
 			bindParams.add(address);
 		}
 
+		// Keyset pagination: only results after given timestamp & signature, in requested order
+		if (isKeysetPaged && afterTimestamp != null && afterSignature != null) {
+			String comparison = (reverse == null || !reverse) ? ">" : "<";
+
+			whereClauses.add(String.format("(Transactions.created_when %s ? OR (Transactions.created_when = ? AND %s %s ?))",
+					comparison, signatureColumn, comparison));
+			Collections.addAll(bindParams, afterTimestamp, afterTimestamp, afterSignature);
+		}
+
 		StringBuilder sql = new StringBuilder(1024);
 		sql.append("SELECT ");
 		sql.append(signatureColumn);
@@ -505,6 +531,13 @@ public class HSQLDBTransactionRepository implements TransactionRepository {
 		sql.append(" ORDER BY Transactions.created_when");
 		sql.append((reverse == null || !reverse) ? " ASC" : " DESC");
 
+		// Keyset pagination needs a total ordering
+		if (isKeysetPaged) {
+			sql.append(", ");
+			sql.append(signatureColumn);
+			sql.append((reverse == null || !reverse) ? " ASC" : " DESC");
+		}
+
 		HSQLDBRepository.limitOffsetSql(sql, limit, offset);
 
 		LOGGER.trace(() -> String.format("Transaction search SQL: %s", sql));
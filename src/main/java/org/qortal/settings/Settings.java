@@ -172,6 +172,11 @@ public class Settings {
 	/** How often to attempt archiving (ms). */
 	private long archiveInterval = 7171L; // milliseconds
 
+	/** Share of time that background trimming, pruning and archiving may use while node is busy, e.g. serving API requests. */
+	private double maintenanceBudget = 0.2;
+	/** Share of time that background trimming, pruning and archiving may use while node is otherwise idle. */
+	private double maintenanceIdleBudget = 0.5;
+
 
 	/** Whether to automatically bootstrap instead of syncing from genesis */
 	private boolean bootstrap = true;
@@ -239,10 +244,20 @@ public class Settings {
 	// Repository related
 	/** Queries that take longer than this are logged. (milliseconds) */
 	private Long slowQueryThreshold = null;
+	/** How often to log repository statements with highest total execution time. (milliseconds, 0 to disable) */
+	private long repositoryQueryStatsLogInterval = 60 * 60 * 1000L; // 1 hour
+	/** Number of repository statements to include in periodic log summary. */
+	private int repositoryQueryStatsLogCount = 10;
 	/** Repository storage path. */
 	private String repositoryPath = "db";
 	/** Repository connection pool size. Needs to be a bit bigger than maxNetworkThreadPoolSize */
 	private int repositoryConnectionPoolSize = 100;
+	/** Size of separate repository connection pool for read-only API sessions. Limits how many API requests can query repository at once. */
+	private int repositoryApiConnectionPoolSize = 20;
+	/** Read-only API queries that take longer than this are cancelled. (seconds, 0 for no limit) */
+	private int repositoryApiQueryTimeout = 30;
+	/** Maximum number of rows returned by a single read-only API query. Queries that would return more fail instead. (0 for no limit) */
+	private int repositoryApiMaxRows = 100000;
 	private List<String> fixedNetwork;
 
 	// Export/import
@@ -308,6 +323,8 @@ public class Settings {
 
 	/** Expiry time (ms) for (unencrypted) built/cached data */
 	private Long builtDataExpiryInterval = 30 * 24 * 60 * 60 * 1000L; // 30 days
+	/** Maximum total size of built (decrypted, uncompressed) data, in bytes. Least valuable resources are evicted beyond this. Unlimited if null */
+	private Long maxBuiltDataCacheSize = 10 * 1024 * 1024 * 1024L; // 10GiB
 
 	/** Whether to validate every layer when building arbitrary data, or just the final layer */
 	private boolean validateAllDataLayers = false;
@@ -474,6 +491,9 @@ public class Settings {
 		if (this.apiKey != null && this.apiKey.trim().length() < 8)
 			throwValidationError("apiKey must be at least 8 characters");
 
+		if (this.maintenanceBudget <= 0 || this.maintenanceBudget > 1 || this.maintenanceIdleBudget <= 0 || this.maintenanceIdleBudget > 1)
+			throwValidationError("maintenanceBudget and maintenanceIdleBudget must be greater than 0 and at most 1");
+
 		try {
 			StoragePolicy.valueOf(this.storagePolicy);
 		} catch (IllegalArgumentException ex) {
@@ -714,6 +734,14 @@ public class Settings {
 		return this.slowQueryThreshold;
 	}
 
+	public long getRepositoryQueryStatsLogInterval() {
+		return this.repositoryQueryStatsLogInterval;
+	}
+
+	public int getRepositoryQueryStatsLogCount() {
+		return this.repositoryQueryStatsLogCount;
+	}
+
 	public String getRepositoryPath() {
 		return this.repositoryPath;
 	}
@@ -722,6 +750,18 @@ public class Settings {
 		return this.repositoryConnectionPoolSize;
 	}
 
+	public int getRepositoryApiConnectionPoolSize() {
+		return this.repositoryApiConnectionPoolSize;
+	}
+
+	public int getRepositoryApiQueryTimeout() {
+		return this.repositoryApiQueryTimeout;
+	}
+
+	public int getRepositoryApiMaxRows() {
+		return this.repositoryApiMaxRows;
+	}
+
 	public String getExportPath() {
 		return this.exportPath;
 	}
@@ -866,6 +906,14 @@ public class Settings {
 		return this.archiveInterval;
 	}
 
+	public double getMaintenanceBudget() {
+		return this.maintenanceBudget;
+	}
+
+	public double getMaintenanceIdleBudget() {
+		return this.maintenanceIdleBudget;
+	}
+
 
 	public boolean getBootstrap() {
 		return this.bootstrap;
@@ -908,6 +956,10 @@ public class Settings {
 		return this.builtDataExpiryInterval;
 	}
 
+	public Long getMaxBuiltDataCacheSize() {
+		return this.maxBuiltDataCacheSize;
+	}
+
 	public boolean shouldValidateAllDataLayers() {
 		return this.validateAllDataLayers;
 	}
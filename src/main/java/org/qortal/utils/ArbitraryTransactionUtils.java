@@ -6,6 +6,7 @@ import org.apache.logging.log4j.Logger;
 import org.qortal.arbitrary.ArbitraryDataFile;
 import org.qortal.arbitrary.ArbitraryDataFileChunk;
 import org.qortal.arbitrary.misc.Service;
+import org.qortal.controller.arbitrary.ArbitraryDataHostedCatalog;
 import org.qortal.data.transaction.ArbitraryTransactionData;
 import org.qortal.data.transaction.TransactionData;
 import org.qortal.repository.DataException;
@@ -291,6 +292,18 @@ public class ArbitraryTransactionUtils {
         }
     }
 
+    private static void relocateFile(Path oldPath, Path newPath) throws IOException {
+        long size = ArbitraryDataHostedCatalog.getFileSize(oldPath);
+        long previousSize = ArbitraryDataHostedCatalog.getFileSize(newPath);
+
+        Files.createDirectories(newPath.getParent());
+        Files.move(oldPath, newPath, REPLACE_EXISTING);
+
+        ArbitraryDataHostedCatalog hostedCatalog = ArbitraryDataHostedCatalog.getInstance();
+        hostedCatalog.onFileDeleted(oldPath, size);
+        hostedCatalog.onFileWritten(newPath, previousSize);
+    }
+
     /**
      * When first uploaded, files go into a _misc folder as they are not yet associated with a
      * transaction signature. Once the transaction is broadcast, they need to be moved to the
@@ -323,10 +336,9 @@ public class ArbitraryTransactionUtils {
                         Path oldPath = chunk.getFilePath();
                         Path newPath = newChunk.getFilePath();
 
-                        // Ensure parent directories exist, then copy the file
+                        // Ensure parent directories exist, then move the file
                         LOGGER.info("Relocating chunk from {} to {}...", oldPath, newPath);
-                        Files.createDirectories(newPath.getParent());
-                        Files.move(oldPath, newPath, REPLACE_EXISTING);
+                        relocateFile(oldPath, newPath);
                         filesRelocatedCount++;
 
                         // Delete empty parent directories
@@ -341,10 +353,9 @@ public class ArbitraryTransactionUtils {
                 Path oldPath = arbitraryDataFile.getFilePath();
                 Path newPath = newCompleteFile.getFilePath();
 
-                // Ensure parent directories exist, then copy the file
+                // Ensure parent directories exist, then move the file
                 LOGGER.info("Relocating complete file from {} to {}...", oldPath, newPath);
-                Files.createDirectories(newPath.getParent());
-                Files.move(oldPath, newPath, REPLACE_EXISTING);
+                relocateFile(oldPath, newPath);
                 filesRelocatedCount++;
 
                 // Delete empty parent directories
@@ -358,10 +369,9 @@ public class ArbitraryTransactionUtils {
                 Path oldPath = arbitraryDataFile.getMetadataFile().getFilePath();
                 Path newPath = newCompleteFile.getFilePath();
 
-                // Ensure parent directories exist, then copy the file
+                // Ensure parent directories exist, then move the file
                 LOGGER.info("Relocating metadata file from {} to {}...", oldPath, newPath);
-                Files.createDirectories(newPath.getParent());
-                Files.move(oldPath, newPath, REPLACE_EXISTING);
+                relocateFile(oldPath, newPath);
                 filesRelocatedCount++;
 
                 // Delete empty parent directories
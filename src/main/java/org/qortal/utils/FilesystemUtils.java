@@ -9,6 +9,7 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.util.stream.Stream;
 
 public class FilesystemUtils {
 
@@ -51,6 +52,57 @@ public class FilesystemUtils {
     }
 
 
+    /**
+     * linkOrCopyDirectory
+     * Populates destination with the contents of source, using hard links instead of copies
+     * where possible, so that only directory entries are created rather than duplicating file data.
+     *
+     * Linked files are shared with the source, so they must only ever be replaced or deleted in
+     * the destination, never modified in place. For this reason, files in the .qortal folder (which
+     * are rewritten in place) are always copied, and hard links are only used when the source is
+     * inside our own data or temp path. Falls back to copying if hard links aren't supported.
+     *
+     * @param source
+     * @param dest
+     * @throws IOException
+     */
+    public static void linkOrCopyDirectory(Path source, Path dest) throws IOException {
+        Files.createDirectories(dest);
+
+        // If the destination directory isn't empty, delete its contents
+        if (!FilesystemUtils.isDirectoryEmpty(dest)) {
+            FileUtils.deleteDirectory(dest.toFile());
+            Files.createDirectories(dest);
+        }
+
+        boolean canLink = FilesystemUtils.pathInsideDataOrTempPath(source);
+
+        try (Stream<Path> paths = Files.walk(source)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                Path relativePath = source.relativize(path);
+                Path destination = Paths.get(dest.toString(), relativePath.toString());
+
+                if (Files.isDirectory(path)) {
+                    Files.createDirectories(destination);
+                    continue;
+                }
+
+                if (canLink && !relativePath.startsWith(".qortal")) {
+                    try {
+                        Files.createLink(destination, path);
+                        continue;
+                    } catch (UnsupportedOperationException | IOException e) {
+                        // Probably a different filesystem, or one without hard links, so copy from now on
+                        canLink = false;
+                    }
+                }
+
+                Files.copy(path, destination, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+
     /**
      * moveFile
      * Allows files to be moved between filesystems
@@ -33,6 +33,8 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Paths;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
@@ -41,13 +43,21 @@ import java.util.zip.ZipOutputStream;
 public class ZipUtils {
 
     public static void zip(String sourcePath, String destFilePath, String enclosingFolderName) throws IOException, InterruptedException {
+        try (FileOutputStream fileOutputStream = new FileOutputStream(destFilePath)) {
+            ZipUtils.zip(sourcePath, fileOutputStream, enclosingFolderName);
+        }
+    }
+
+    /**
+     * Zips sourcePath into outputStream, which is left open so that callers can
+     * chain further stages (e.g. encryption) without an intermediate file.
+     */
+    public static void zip(String sourcePath, OutputStream outputStream, String enclosingFolderName) throws IOException, InterruptedException {
         File sourceFile = new File(sourcePath);
         boolean isSingleFile = Paths.get(sourcePath).toFile().isFile();
-        FileOutputStream fileOutputStream = new FileOutputStream(destFilePath);
-        ZipOutputStream zipOutputStream = new ZipOutputStream(fileOutputStream);
+        ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream);
         ZipUtils.zip(sourceFile, enclosingFolderName, zipOutputStream, isSingleFile);
-        zipOutputStream.close();
-        fileOutputStream.close();
+        zipOutputStream.finish();
     }
 
     public static void zip(final File fileToZip, final String enclosingFolderName, final ZipOutputStream zipOut, boolean isSingleFile) throws IOException, InterruptedException {
@@ -91,9 +101,19 @@ public class ZipUtils {
     }
 
     public static void unzip(String sourcePath, String destPath) throws IOException {
+        try (FileInputStream fileInputStream = new FileInputStream(sourcePath)) {
+            ZipUtils.unzip(fileInputStream, destPath);
+        }
+    }
+
+    /**
+     * Unzips from inputStream into destPath. The stream is read to the end, so that
+     * any checks performed by earlier stages (e.g. decryption padding) are applied.
+     */
+    public static void unzip(InputStream inputStream, String destPath) throws IOException {
         final File destDir = new File(destPath);
-        final byte[] buffer = new byte[1024];
-        final ZipInputStream zis = new ZipInputStream(new FileInputStream(sourcePath));
+        final byte[] buffer = new byte[8192];
+        final ZipInputStream zis = new ZipInputStream(inputStream);
         ZipEntry zipEntry = zis.getNextEntry();
         while (zipEntry != null) {
             final File newFile = ZipUtils.newFile(destDir, zipEntry);
@@ -117,7 +137,9 @@ public class ZipUtils {
             zipEntry = zis.getNextEntry();
         }
         zis.closeEntry();
-        zis.close();
+
+        // Consume anything after the last entry, such as the central directory
+        inputStream.transferTo(OutputStream.nullOutputStream());
     }
 
     /**
@@ -0,0 +1,238 @@
+package org.qortal.test;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.qortal.crypto.Crypto;
+import org.qortal.repository.BootstrapArchiveReader;
+import org.qortal.repository.BootstrapArchiveWriter;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BootstrapArchiveTests {
+
+    private Path tempDir;
+
+    @Before
+    public void beforeTest() throws IOException {
+        this.tempDir = Files.createTempDirectory("qortal-bootstrap-archive");
+    }
+
+    @After
+    public void afterTest() throws IOException {
+        FileUtils.deleteDirectory(this.tempDir.toFile());
+    }
+
+    @Test
+    public void testWriteAndExtract() throws IOException {
+        Path inputPath = this.tempDir.resolve("input");
+        Files.createDirectories(inputPath.resolve("archive"));
+
+        Files.write(inputPath.resolve("blockchain.properties"), "test".getBytes());
+        Files.write(inputPath.resolve("empty.log"), new byte[0]);
+        // Big enough to be split across multiple xz streams
+        Files.write(inputPath.resolve("blockchain.data"), randomishBytes(3 * 1024 * 1024 + 123));
+        Files.write(inputPath.resolve("archive").resolve("2-900.dat"), randomishBytes(100_000));
+
+        Path archivePath = this.tempDir.resolve("bootstrap.tar.xz");
+        String checksum;
+        try (BootstrapArchiveWriter archiveWriter = new BootstrapArchiveWriter(archivePath, null)) {
+            archiveWriter.setChunkSize(1024 * 1024);
+            archiveWriter.addDirectory(inputPath, "bootstrap", false);
+            checksum = archiveWriter.finish();
+        }
+
+        // Checksum was generated while writing
+        assertEquals(Crypto.digestHexString(archivePath.toFile(), 1024 * 1024), checksum);
+
+        Files.writeString(checksumPath(archivePath), checksum);
+
+        Path outputPath = this.tempDir.resolve("output");
+        new BootstrapArchiveReader(BootstrapArchiveReader.fileSource(archivePath), outputPath, "bootstrap/").extract();
+
+        assertExtracted(inputPath, outputPath);
+    }
+
+    @Test
+    public void testChecksumMismatch() throws IOException {
+        Path inputPath = this.tempDir.resolve("input");
+        Files.createDirectories(inputPath);
+        Files.write(inputPath.resolve("blockchain.data"), randomishBytes(100_000));
+
+        Path archivePath = this.tempDir.resolve("bootstrap.tar.xz");
+        try (BootstrapArchiveWriter archiveWriter = new BootstrapArchiveWriter(archivePath, null)) {
+            archiveWriter.addDirectory(inputPath, "bootstrap", false);
+            archiveWriter.finish();
+        }
+
+        Files.writeString(checksumPath(archivePath), "00".repeat(32) + "  bootstrap.tar.xz\n");
+
+        Path outputPath = this.tempDir.resolve("output");
+        try {
+            new BootstrapArchiveReader(BootstrapArchiveReader.fileSource(archivePath), outputPath, "bootstrap/").extract();
+            fail("Bootstrap with wrong checksum should not be extracted");
+        } catch (IOException e) {
+            // Expected
+        }
+
+        // Nothing is left behind to be resumed
+        assertFalse(Files.exists(outputPath));
+    }
+
+    @Test
+    public void testResume() throws IOException {
+        Path inputPath = this.tempDir.resolve("input");
+        Files.createDirectories(inputPath.resolve("archive"));
+
+        Files.write(inputPath.resolve("blockchain.properties"), "test".getBytes());
+        Files.write(inputPath.resolve("empty.log"), new byte[0]);
+        Files.write(inputPath.resolve("blockchain.data"), randomishBytes(3 * 1024 * 1024 + 123));
+        Files.write(inputPath.resolve("archive").resolve("2-900.dat"), randomishBytes(100_000));
+
+        Path archivePath = this.tempDir.resolve("bootstrap.tar.xz");
+        try (BootstrapArchiveWriter archiveWriter = new BootstrapArchiveWriter(archivePath, null)) {
+            archiveWriter.setChunkSize(256 * 1024);
+            archiveWriter.addDirectory(inputPath, "bootstrap", false);
+            Files.writeString(checksumPath(archivePath), archiveWriter.finish());
+        }
+
+        BootstrapArchiveReader.Source fileSource = BootstrapArchiveReader.fileSource(archivePath);
+        long archiveSize = fileSource.getSize();
+        Path outputPath = this.tempDir.resolve("output");
+
+        // First attempt fails partway through, e.g. due to lost connection
+        BootstrapArchiveReader archiveReader = new BootstrapArchiveReader(new TestSource(fileSource, archiveSize * 3 / 4), outputPath, "bootstrap/");
+        archiveReader.setProgressInterval(1);
+        try {
+            archiveReader.extract();
+            fail("Truncated bootstrap should not be extracted");
+        } catch (IOException e) {
+            // Expected
+        }
+
+        // Second attempt carries on from where first left off
+        TestSource resumingSource = new TestSource(fileSource, archiveSize);
+        new BootstrapArchiveReader(resumingSource, outputPath, "bootstrap/").extract();
+
+        assertTrue(resumingSource.openOffset > 0);
+        assertExtracted(inputPath, outputPath);
+    }
+
+    @Test
+    public void testCachedFilesReused() throws IOException {
+        Path cachePath = this.tempDir.resolve("cache");
+        Path archiveFile1 = this.tempDir.resolve("2-900.dat");
+        Path archiveFile2 = this.tempDir.resolve("901-1800.dat");
+        Files.write(archiveFile1, randomishBytes(200_000));
+        Files.write(archiveFile2, randomishBytes(300_000));
+
+        Path firstArchivePath = this.tempDir.resolve("first.tar.xz");
+        try (BootstrapArchiveWriter archiveWriter = new BootstrapArchiveWriter(firstArchivePath, cachePath)) {
+            archiveWriter.addFile(archiveFile1, "bootstrap/archive/2-900.dat", true);
+            archiveWriter.finish();
+
+            assertEquals(0, archiveWriter.getReusedFileCount());
+        }
+
+        // Second bootstrap has an extra archive file
+        Path secondArchivePath = this.tempDir.resolve("second.tar.xz");
+        try (BootstrapArchiveWriter archiveWriter = new BootstrapArchiveWriter(secondArchivePath, cachePath)) {
+            archiveWriter.addFile(archiveFile1, "bootstrap/archive/2-900.dat", true);
+            archiveWriter.addFile(archiveFile2, "bootstrap/archive/901-1800.dat", true);
+            archiveWriter.finish();
+
+            assertEquals(1, archiveWriter.getReusedFileCount());
+        }
+
+        Path outputPath = this.tempDir.resolve("output");
+        new BootstrapArchiveReader(BootstrapArchiveReader.fileSource(secondArchivePath), outputPath, "bootstrap/").extract();
+
+        assertArrayEquals(Files.readAllBytes(archiveFile1), Files.readAllBytes(outputPath.resolve(Paths.get("archive", "2-900.dat"))));
+        assertArrayEquals(Files.readAllBytes(archiveFile2), Files.readAllBytes(outputPath.resolve(Paths.get("archive", "901-1800.dat"))));
+
+        // Third bootstrap no longer has first file, so its cache entry is removed
+        Path thirdArchivePath = this.tempDir.resolve("third.tar.xz");
+        try (BootstrapArchiveWriter archiveWriter = new BootstrapArchiveWriter(thirdArchivePath, cachePath)) {
+            archiveWriter.addFile(archiveFile2, "bootstrap/archive/901-1800.dat", true);
+            archiveWriter.finish();
+
+            assertEquals(1, archiveWriter.getReusedFileCount());
+        }
+
+        assertEquals(1, cachePath.toFile().list().length);
+    }
+
+    /** Wraps source, failing once <tt>failOffset</tt> is reached, and recording where it was opened */
+    private static class TestSource implements BootstrapArchiveReader.Source {
+        private final BootstrapArchiveReader.Source source;
+        private final long failOffset;
+        private long openOffset = -1;
+
+        TestSource(BootstrapArchiveReader.Source source, long failOffset) {
+            this.source = source;
+            this.failOffset = failOffset;
+        }
+
+        @Override
+        public long getSize() throws IOException {
+            return this.source.getSize();
+        }
+
+        @Override
+        public String getChecksum() throws IOException {
+            return this.source.getChecksum();
+        }
+
+        @Override
+        public InputStream open(long offset) throws IOException {
+            this.openOffset = offset;
+            InputStream in = this.source.open(offset);
+
+            return new FilterInputStream(in) {
+                private long position = offset;
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    if (this.position >= failOffset && failOffset < getSize())
+                        throw new IOException("Connection lost");
+
+                    int bytesRead = super.read(b, off, (int) Math.min(len, Math.max(1, failOffset - this.position)));
+                    if (bytesRead > 0)
+                        this.position += bytesRead;
+
+                    return bytesRead;
+                }
+            };
+        }
+    }
+
+    private static Path checksumPath(Path archivePath) {
+        return Paths.get(archivePath.toString() + ".sha256");
+    }
+
+    private static void assertExtracted(Path inputPath, Path outputPath) throws IOException {
+        for (String filename : new String[] { "blockchain.properties", "empty.log", "blockchain.data", "archive/2-900.dat" })
+            assertArrayEquals(filename, Files.readAllBytes(inputPath.resolve(filename)), Files.readAllBytes(outputPath.resolve(filename)));
+    }
+
+    /** Returns bytes that are somewhat compressible, like real repository data */
+    private static byte[] randomishBytes(int length) {
+        Random random = new Random(length);
+        byte[] bytes = new byte[length];
+
+        for (int i = 0; i < length; ++i)
+            bytes[i] = (byte) (random.nextInt(16) == 0 ? random.nextInt() : i / 1024);
+
+        return bytes;
+    }
+
+}
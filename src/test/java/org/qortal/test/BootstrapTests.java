@@ -20,7 +20,6 @@ import java.io.PrintWriter;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.nio.file.Files;
-import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
@@ -240,31 +239,17 @@ public class BootstrapTests extends Common {
     }
 
     private void deleteBootstraps() throws IOException {
-        try {
-            Path archivePath = Paths.get(String.format("%s%s", Settings.getInstance().getBootstrapFilenamePrefix(), "bootstrap-archive.7z"));
-            Files.delete(archivePath);
-
-            Path sha256Path = Paths.get(String.format("%s%s", Settings.getInstance().getBootstrapFilenamePrefix(), "bootstrap-archive.7z.sha256"));
-            Files.delete(sha256Path);
-
-        } catch (NoSuchFileException e) {
-            // Nothing to delete
-        }
-
-        try {
-            Path path = Paths.get(String.format("%s%s", Settings.getInstance().getBootstrapFilenamePrefix(), "bootstrap-toponly.7z"));
-            Files.delete(path);
+        String[] bootstrapFilenames = { "bootstrap-archive", "bootstrap-toponly", "bootstrap-full" };
+        String[] extensions = { ".tar.xz", ".7z" };
 
-        } catch (NoSuchFileException e) {
-            // Nothing to delete
-        }
+        for (String bootstrapFilename : bootstrapFilenames) {
+            for (String extension : extensions) {
+                Path path = Paths.get(String.format("%s%s%s", Settings.getInstance().getBootstrapFilenamePrefix(), bootstrapFilename, extension));
+                Files.deleteIfExists(path);
 
-        try {
-            Path path = Paths.get(String.format("%s%s", Settings.getInstance().getBootstrapFilenamePrefix(), "bootstrap-full.7z"));
-            Files.delete(path);
-
-        } catch (NoSuchFileException e) {
-            // Nothing to delete
+                Path sha256Path = Paths.get(String.format("%s.sha256", path.toString()));
+                Files.deleteIfExists(sha256Path);
+            }
         }
     }
 
@@ -0,0 +1,169 @@
+package org.qortal.test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.qortal.account.PrivateKeyAccount;
+import org.qortal.data.chat.ChatMessage;
+import org.qortal.data.naming.NameData;
+import org.qortal.data.transaction.BaseTransactionData;
+import org.qortal.data.transaction.ChatTransactionData;
+import org.qortal.group.Group;
+import org.qortal.repository.DataException;
+import org.qortal.repository.Repository;
+import org.qortal.repository.RepositoryManager;
+import org.qortal.test.common.Common;
+import org.qortal.transaction.Transaction.ApprovalStatus;
+import org.qortal.transform.Transformer;
+
+public class ChatRepositoryTests extends Common {
+
+	private static final long TIMESTAMP = 1600000000000L;
+
+	private final Random random = new Random();
+
+	@Before
+	public void beforeTest() throws DataException {
+		Common.useDefaultSettings();
+	}
+
+	private ChatTransactionData saveChat(Repository repository, PrivateKeyAccount sender, String recipient, long timestamp) throws DataException {
+		byte[] reference = new byte[Transformer.SIGNATURE_LENGTH];
+		byte[] signature = new byte[Transformer.SIGNATURE_LENGTH];
+		this.random.nextBytes(reference);
+		this.random.nextBytes(signature);
+
+		BaseTransactionData baseTransactionData = new BaseTransactionData(timestamp, Group.NO_GROUP, reference, sender.getPublicKey(), 0L,
+				ApprovalStatus.NOT_REQUIRED, null, null, signature);
+		ChatTransactionData chatTransactionData = new ChatTransactionData(baseTransactionData, sender.getAddress(), 0, recipient,
+				"hello".getBytes(), true, false);
+
+		repository.getTransactionRepository().save(chatTransactionData);
+		return chatTransactionData;
+	}
+
+	@Test
+	public void testMessagesAfter() throws DataException {
+		try (final Repository repository = RepositoryManager.getRepository()) {
+			PrivateKeyAccount alice = Common.getTestAccount(repository, "alice");
+			PrivateKeyAccount bob = Common.getTestAccount(repository, "bob");
+			PrivateKeyAccount chloe = Common.getTestAccount(repository, "chloe");
+
+			// Some messages share a timestamp, so paging has to use signature as a tie-break
+			List<ChatTransactionData> expectedMessages = new ArrayList<>();
+			long[] timestamps = { TIMESTAMP, TIMESTAMP + 1, TIMESTAMP + 1, TIMESTAMP + 1, TIMESTAMP + 2 };
+			for (int i = 0; i < timestamps.length; ++i) {
+				PrivateKeyAccount sender = i % 2 == 0 ? alice : bob;
+				String recipient = sender == alice ? bob.getAddress() : alice.getAddress();
+				expectedMessages.add(this.saveChat(repository, sender, recipient, timestamps[i]));
+			}
+
+			// Other conversations aren't included
+			this.saveChat(repository, alice, chloe.getAddress(), TIMESTAMP + 1);
+			this.saveChat(repository, chloe, null, TIMESTAMP + 1);
+
+			repository.saveChanges();
+
+			// Either participant order gives the same conversation
+			List<String> involving = Arrays.asList(bob.getAddress(), alice.getAddress());
+
+			List<ChatMessage> allMessages = repository.getChatRepository().getMessagesAfter(null, involving, null, null);
+			assertEquals(expectedMessages.size(), allMessages.size());
+
+			// Page through, two at a time, picking up where the previous page left off
+			List<ChatMessage> pagedMessages = new ArrayList<>();
+			byte[] afterSignature = null;
+			while (true) {
+				List<ChatMessage> page = repository.getChatRepository().getMessagesAfter(null, involving, afterSignature, 2);
+				assertNotNull(page);
+				assertTrue(page.size() <= 2);
+
+				if (page.isEmpty())
+					break;
+
+				pagedMessages.addAll(page);
+				afterSignature = page.get(page.size() - 1).getSignature();
+			}
+
+			// Same messages in the same order, without gaps or repeats
+			assertEquals(allMessages.size(), pagedMessages.size());
+			for (int i = 0; i < allMessages.size(); ++i) {
+				assertArrayEquals(allMessages.get(i).getSignature(), pagedMessages.get(i).getSignature());
+
+				if (i > 0)
+					assertTrue(allMessages.get(i).getTimestamp() >= allMessages.get(i - 1).getTimestamp());
+			}
+
+			for (ChatTransactionData expectedMessage : expectedMessages)
+				assertTrue(pagedMessages.stream().anyMatch(message -> Arrays.equals(message.getSignature(), expectedMessage.getSignature())));
+
+			// Unknown signature
+			byte[] unknownSignature = new byte[Transformer.SIGNATURE_LENGTH];
+			this.random.nextBytes(unknownSignature);
+			assertNull(repository.getChatRepository().getMessagesAfter(null, involving, unknownSignature, 2));
+		}
+	}
+
+	@Test
+	public void testNameCacheInvalidatedOnCommit() throws DataException {
+		try (final Repository repository = RepositoryManager.getRepository();
+				final Repository otherRepository = RepositoryManager.getRepository()) {
+			PrivateKeyAccount alice = Common.getTestAccount(repository, "alice");
+			PrivateKeyAccount bob = Common.getTestAccount(repository, "bob");
+			List<String> involving = Arrays.asList(alice.getAddress(), bob.getAddress());
+
+			this.saveChat(repository, alice, bob.getAddress(), TIMESTAMP);
+			repository.saveChanges();
+
+			assertNull(getSenderName(otherRepository, involving, true));
+
+			// Uncommitted name isn't visible to other sessions, so they cache the lack of a name
+			String name = "alice-name";
+			NameData nameData = new NameData(name, name, alice.getAddress(), "", TIMESTAMP, null, Group.NO_GROUP);
+			repository.getNameRepository().save(nameData);
+
+			assertEquals(name, getSenderName(repository, involving, false));
+			assertNull(getSenderName(otherRepository, involving, true));
+
+			repository.saveChanges();
+
+			// Transaction started before the commit still can't see the name, but mustn't cache that
+			assertNull(getSenderName(otherRepository, involving, false));
+
+			// Once committed, the cached lack of a name is discarded
+			try (final Repository newRepository = RepositoryManager.getRepository()) {
+				assertEquals(name, getSenderName(newRepository, involving, true));
+			}
+			assertEquals(name, getSenderName(otherRepository, involving, true));
+
+			// Discarded changes leave the cached name alone
+			repository.getNameRepository().delete(name);
+			repository.discardChanges();
+
+			assertEquals(name, getSenderName(otherRepository, involving, true));
+
+			// Deleting name, once committed, is also picked up
+			repository.getNameRepository().delete(name);
+			repository.saveChanges();
+
+			assertNull(getSenderName(otherRepository, involving, true));
+		}
+	}
+
+	/** Returns name of sender of the only message in conversation, optionally in a new transaction as if serving a new request. */
+	private static String getSenderName(Repository repository, List<String> involving, boolean newTransaction) throws DataException {
+		if (newTransaction)
+			repository.discardChanges();
+
+		List<ChatMessage> messages = repository.getChatRepository().getMessagesAfter(null, involving, null, null);
+		assertEquals(1, messages.size());
+		return messages.get(0).getSenderName();
+	}
+
+}
@@ -14,6 +14,8 @@ import static org.junit.Assert.*;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -368,4 +370,50 @@ public class CryptoTests extends Common {
 
 	}
 
+	@Test
+	public void testAESStreams() throws NoSuchAlgorithmException, InvalidAlgorithmParameterException, NoSuchPaddingException,
+			BadPaddingException, IllegalBlockSizeException, IOException, InvalidKeyException {
+
+		String algorithm = "AES/CBC/PKCS5Padding";
+		byte[] randomBytes = new byte[100000];
+		new Random().nextBytes(randomBytes);
+
+		Path encryptedPath = Files.createTempFile("qortal-aes-stream", ".encrypted");
+		Path decryptedPath = Files.createTempFile("qortal-aes-stream", ".decrypted");
+		Path inputPath = Files.createTempFile("qortal-aes-stream", ".input");
+
+		try {
+			SecretKey aesKey = AES.generateKey(256);
+
+			// Encrypt using a stream, and decrypt the file
+			try (OutputStream outputStream = AES.encryptingOutputStream(algorithm, aesKey, Files.newOutputStream(encryptedPath))) {
+				outputStream.write(randomBytes);
+			}
+			AES.decryptFile(algorithm, aesKey, encryptedPath.toString(), decryptedPath.toString());
+			assertArrayEquals(randomBytes, Files.readAllBytes(decryptedPath));
+
+			// Encrypt the file, and decrypt using a stream
+			Files.write(inputPath, randomBytes);
+			AES.encryptFile(algorithm, aesKey, inputPath.toString(), encryptedPath.toString());
+			try (InputStream inputStream = AES.decryptingInputStream(algorithm, aesKey, Files.newInputStream(encryptedPath))) {
+				assertArrayEquals(randomBytes, inputStream.readAllBytes());
+			}
+
+			// Decrypting with the wrong key doesn't give back the plaintext.
+			// Usually padding is invalid, so it fails at the end of the stream, but garbage occasionally has valid padding.
+			SecretKey wrongKey = AES.generateKey(256);
+			try (InputStream inputStream = AES.decryptingInputStream(algorithm, wrongKey, Files.newInputStream(encryptedPath))) {
+				byte[] wrongKeyBytes = inputStream.readAllBytes();
+				assertFalse("Decrypting with the wrong key should not return plaintext", Arrays.equals(randomBytes, wrongKeyBytes));
+			} catch (IOException e) {
+				// Also fine
+			}
+
+		} finally {
+			Files.deleteIfExists(encryptedPath);
+			Files.deleteIfExists(decryptedPath);
+			Files.deleteIfExists(inputPath);
+		}
+	}
+
 }
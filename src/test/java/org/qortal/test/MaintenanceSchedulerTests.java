@@ -0,0 +1,137 @@
+package org.qortal.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.qortal.controller.repository.MaintenanceJob;
+import org.qortal.controller.repository.MaintenanceScheduler;
+import org.qortal.controller.repository.MaintenanceScheduler.JobSummary;
+import org.qortal.repository.DataException;
+import org.qortal.repository.Repository;
+import org.qortal.test.common.Common;
+
+public class MaintenanceSchedulerTests extends Common {
+
+	/** Job that has a fixed amount of work, processed in batches of 10 * batchScale items. */
+	private static class TestJob implements MaintenanceJob {
+		private final String name;
+		private int remainingItems;
+		private double lastBatchScale;
+		/** How long each batch takes, to simulate a slow repository. (ms) */
+		private long batchTime = 0;
+
+		private TestJob(String name, int remainingItems) {
+			this.name = name;
+			this.remainingItems = remainingItems;
+		}
+
+		@Override
+		public String getName() {
+			return this.name;
+		}
+
+		@Override
+		public long getInterval() {
+			return 60 * 1000L;
+		}
+
+		@Override
+		public Result runBatch(Repository repository, double batchScale) throws DataException {
+			this.lastBatchScale = batchScale;
+
+			if (this.batchTime > 0)
+				try {
+					Thread.sleep(this.batchTime);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+
+			int itemCount = Math.min(this.remainingItems, MaintenanceJob.scaleBatchSize(10, batchScale));
+			this.remainingItems -= itemCount;
+
+			return this.remainingItems > 0 ? Result.moreWork(itemCount) : Result.caughtUp(itemCount);
+		}
+	}
+
+	@Test
+	public void testBatchScaleGrowsWhenIdle() throws InterruptedException {
+		MaintenanceScheduler scheduler = new MaintenanceScheduler();
+		TestJob job = new TestJob("idle", 1_000_000);
+		scheduler.addJob(job);
+
+		for (int i = 0; i < 10; ++i)
+			assertNotNull(scheduler.runNextBatch(null, System.currentTimeMillis(), true));
+
+		// Quick batches while idle should have grown to the limit
+		JobSummary summary = scheduler.getJobSummaries().get(0);
+		assertEquals(16.0, summary.batchScale, 0.0);
+		assertEquals(16.0, job.lastBatchScale, 0.0);
+		assertEquals(10, summary.batches);
+		assertEquals(1_000_000 - job.remainingItems, summary.items);
+	}
+
+	@Test
+	public void testBatchScaleUnchangedWhenBusy() throws InterruptedException {
+		MaintenanceScheduler scheduler = new MaintenanceScheduler();
+		TestJob job = new TestJob("busy", 1_000_000);
+		scheduler.addJob(job);
+
+		for (int i = 0; i < 10; ++i)
+			assertNotNull(scheduler.runNextBatch(null, System.currentTimeMillis(), false));
+
+		assertEquals(1.0, scheduler.getJobSummaries().get(0).batchScale, 0.0);
+		assertEquals(1_000_000 - 10 * 10, job.remainingItems);
+	}
+
+	@Test
+	public void testBatchScaleRecoversWhenBusy() throws InterruptedException {
+		MaintenanceScheduler scheduler = new MaintenanceScheduler();
+		TestJob job = new TestJob("recovering", 1_000_000);
+		scheduler.addJob(job);
+
+		// Slow batches shrink batch size
+		job.batchTime = 1100L;
+		for (int i = 0; i < 2; ++i)
+			assertNotNull(scheduler.runNextBatch(null, System.currentTimeMillis(), false));
+
+		assertEquals(0.25, scheduler.getJobSummaries().get(0).batchScale, 0.0);
+
+		// Quick batches grow it back to configured size, even though node isn't idle, but no further
+		job.batchTime = 0;
+		for (int i = 0; i < 10; ++i)
+			assertNotNull(scheduler.runNextBatch(null, System.currentTimeMillis(), false));
+
+		assertEquals(1.0, scheduler.getJobSummaries().get(0).batchScale, 0.0);
+		assertEquals(1.0, job.lastBatchScale, 0.0);
+	}
+
+	@Test
+	public void testCaughtUpJobWaits() throws InterruptedException {
+		MaintenanceScheduler scheduler = new MaintenanceScheduler();
+		TestJob smallJob = new TestJob("small", 5);
+		TestJob bigJob = new TestJob("big", 1_000_000);
+		scheduler.addJob(smallJob);
+		scheduler.addJob(bigJob);
+
+		// Both jobs get a turn, then small job has caught up
+		for (int i = 0; i < 10; ++i)
+			assertNotNull(scheduler.runNextBatch(null, System.currentTimeMillis(), false));
+
+		assertEquals(0, smallJob.remainingItems);
+		assertEquals(1_000_000 - 9 * 10, bigJob.remainingItems);
+
+		JobSummary smallSummary = scheduler.getJobSummaries().get(0);
+		assertTrue(smallSummary.caughtUp);
+		assertEquals(1, smallSummary.batches);
+		assertFalse(scheduler.getJobSummaries().get(1).caughtUp);
+
+		// Once caught up, job isn't run again until its interval has passed
+		MaintenanceScheduler otherScheduler = new MaintenanceScheduler();
+		otherScheduler.addJob(new TestJob("other", 0));
+
+		assertNotNull(otherScheduler.runNextBatch(null, System.currentTimeMillis(), false));
+		assertNull(otherScheduler.runNextBatch(null, System.currentTimeMillis(), false));
+		assertNotNull(otherScheduler.runNextBatch(null, System.currentTimeMillis() + 60 * 1000L, false));
+	}
+
+}
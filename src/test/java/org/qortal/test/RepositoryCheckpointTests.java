@@ -0,0 +1,113 @@
+package org.qortal.test;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.qortal.repository.hsqldb.HSQLDBCheckpointCoordinator;
+
+public class RepositoryCheckpointTests {
+
+	@Test
+	public void testExecutionsDontBlockEachOther() throws InterruptedException {
+		HSQLDBCheckpointCoordinator checkpointCoordinator = HSQLDBCheckpointCoordinator.getInstance();
+
+		checkpointCoordinator.beginExecution();
+		try {
+			// Another thread can execute at the same time
+			CountDownLatch otherExecutionLatch = new CountDownLatch(1);
+			Thread otherThread = new Thread(() -> {
+				checkpointCoordinator.beginExecution();
+				checkpointCoordinator.endExecution();
+				otherExecutionLatch.countDown();
+			});
+			otherThread.start();
+
+			assertTrue("Concurrent execution was blocked", otherExecutionLatch.await(5, TimeUnit.SECONDS));
+
+			// Checkpoint can't start while execution in progress
+			assertFalse(tryBeginCheckpointOnOtherThread(checkpointCoordinator));
+		} finally {
+			checkpointCoordinator.endExecution();
+		}
+	}
+
+	@Test
+	public void testCheckpointBlocksExecutions() throws InterruptedException {
+		HSQLDBCheckpointCoordinator checkpointCoordinator = HSQLDBCheckpointCoordinator.getInstance();
+		long blockedExecutions = checkpointCoordinator.getStats().blockedExecutions.get();
+		long checkpoints = checkpointCoordinator.getStats().checkpoints.get();
+
+		long startTime = System.currentTimeMillis();
+		assertTrue(checkpointCoordinator.tryBeginCheckpoint(startTime));
+
+		CountDownLatch executionLatch = new CountDownLatch(1);
+		Thread executionThread = new Thread(() -> {
+			checkpointCoordinator.beginExecution();
+			checkpointCoordinator.endExecution();
+			executionLatch.countDown();
+		});
+
+		try {
+			executionThread.start();
+
+			assertFalse("Execution wasn't blocked by checkpoint", executionLatch.await(200, TimeUnit.MILLISECONDS));
+		} finally {
+			checkpointCoordinator.endCheckpoint(startTime, true);
+		}
+
+		assertTrue(executionLatch.await(5, TimeUnit.SECONDS));
+		assertEquals(blockedExecutions + 1, checkpointCoordinator.getStats().blockedExecutions.get());
+		assertEquals(checkpoints + 1, checkpointCoordinator.getStats().checkpoints.get());
+	}
+
+	@Test
+	public void testCheckpointWaitsForIdleWindow() {
+		HSQLDBCheckpointCoordinator checkpointCoordinator = HSQLDBCheckpointCoordinator.getInstance();
+
+		// Blocks every minute, with latest block a little while ago
+		long blockInterval = 60 * 1000L;
+		long lastBlockTimestamp = System.currentTimeMillis() - 10 * blockInterval;
+		for (long timestamp = lastBlockTimestamp - 20 * blockInterval; timestamp <= lastBlockTimestamp; timestamp += blockInterval)
+			checkpointCoordinator.onNewBlock(timestamp);
+
+		try {
+			// Too soon after block
+			assertFalse(checkpointCoordinator.isCheckpointDue(lastBlockTimestamp + 1000L));
+			// Quiet period between blocks
+			assertTrue(checkpointCoordinator.isCheckpointDue(lastBlockTimestamp + 20 * 1000L));
+			// Too close to next block
+			assertFalse(checkpointCoordinator.isCheckpointDue(lastBlockTimestamp + 50 * 1000L));
+			// No blocks for ages
+			assertTrue(checkpointCoordinator.isCheckpointDue(lastBlockTimestamp + 3 * blockInterval));
+
+			// Requested checkpoint goes ahead anyway if deferred for too long
+			long nextBlockTimestamp = lastBlockTimestamp + 20 * blockInterval;
+			checkpointCoordinator.onNewBlock(nextBlockTimestamp);
+			assertTrue(checkpointCoordinator.isCheckpointDue(nextBlockTimestamp + 1000L));
+		} finally {
+			// Reset pending request
+			long now = System.currentTimeMillis();
+			assertTrue(checkpointCoordinator.tryBeginCheckpoint(now));
+			checkpointCoordinator.endCheckpoint(now, true);
+		}
+	}
+
+	private static boolean tryBeginCheckpointOnOtherThread(HSQLDBCheckpointCoordinator checkpointCoordinator) throws InterruptedException {
+		boolean[] result = new boolean[1];
+
+		Thread thread = new Thread(() -> {
+			long now = System.currentTimeMillis();
+			result[0] = checkpointCoordinator.tryBeginCheckpoint(now);
+			if (result[0])
+				checkpointCoordinator.endCheckpoint(now, false);
+		});
+		thread.start();
+		thread.join();
+
+		return result[0];
+	}
+
+}
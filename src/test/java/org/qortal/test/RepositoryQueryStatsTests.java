@@ -0,0 +1,105 @@
+package org.qortal.test;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.util.List;
+
+import org.junit.Test;
+import org.qortal.repository.hsqldb.HSQLDBQueryStats;
+import org.qortal.repository.hsqldb.HSQLDBQueryStats.QuerySummary;
+import org.qortal.repository.hsqldb.HSQLDBQueryStats.SortOrder;
+
+public class RepositoryQueryStatsTests {
+
+	@Test
+	public void testRecord() {
+		HSQLDBQueryStats queryStats = HSQLDBQueryStats.getInstance();
+		String sql = "SELECT 'testRecord' FROM Test WHERE x = ?";
+
+		// Mostly fast executions, with one slow one
+		for (int i = 0; i < 99; ++i)
+			queryStats.record(sql, System.nanoTime() - 100_000L, 2);
+		queryStats.record(sql, System.nanoTime() - 200_000_000L, 2);
+		queryStats.record(sql, System.nanoTime(), -1);
+
+		QuerySummary summary = findSummary(queryStats, sql);
+
+		assertEquals(101, summary.count);
+		assertEquals(1, summary.errors);
+		assertEquals(200, summary.rows);
+		assertTrue(summary.totalTime >= 200);
+
+		// Percentiles are approximate, but slow execution only affects tail
+		assertTrue(summary.p50Time >= 0.1 && summary.p50Time < 1.0);
+		assertTrue(summary.p99Time < 1.0);
+		assertTrue(summary.maxTime >= 200.0);
+
+		// Caller is whoever called repository, i.e. us
+		assertTrue(summary.callers.containsKey(RepositoryQueryStatsTests.class.getSimpleName() + ".testRecord"));
+	}
+
+	@Test
+	public void testSortOrder() {
+		HSQLDBQueryStats queryStats = HSQLDBQueryStats.getInstance();
+		String frequentSql = "SELECT 'testSortOrder' FROM Frequent";
+		String slowSql = "SELECT 'testSortOrder' FROM Slow";
+
+		for (int i = 0; i < 1000; ++i)
+			queryStats.record(frequentSql, System.nanoTime(), 1);
+		queryStats.record(slowSql, System.nanoTime() - 10_000_000_000L, 1);
+
+		List<QuerySummary> byCount = queryStats.getSummaries(SortOrder.COUNT, 0);
+		assertTrue(indexOf(byCount, frequentSql) < indexOf(byCount, slowSql));
+
+		List<QuerySummary> byTotalTime = queryStats.getSummaries(SortOrder.TOTAL_TIME, 0);
+		assertTrue(indexOf(byTotalTime, slowSql) < indexOf(byTotalTime, frequentSql));
+
+		assertEquals(1, queryStats.getSummaries(SortOrder.TOTAL_TIME, 1).size());
+	}
+
+	@Test
+	public void testCountRowsUnknown() {
+		assertEquals(0, HSQLDBQueryStats.countRows(null));
+
+		// Other ResultSet implementations don't tell us how many rows there are
+		ResultSet resultSet = (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[] { ResultSet.class },
+				(proxy, method, args) -> {
+					throw new UnsupportedOperationException();
+				});
+		assertEquals(HSQLDBQueryStats.UNKNOWN_ROWS, HSQLDBQueryStats.countRows(resultSet));
+	}
+
+	@Test
+	public void testRecordUnknownRows() {
+		HSQLDBQueryStats queryStats = HSQLDBQueryStats.getInstance();
+		String sql = "SELECT 'testRecordUnknownRows' FROM Test";
+
+		queryStats.record(sql, System.nanoTime(), 3);
+		queryStats.record(sql, System.nanoTime(), HSQLDBQueryStats.UNKNOWN_ROWS);
+
+		// Unknown row count isn't an error, and doesn't affect row total
+		QuerySummary summary = findSummary(queryStats, sql);
+		assertEquals(2, summary.count);
+		assertEquals(0, summary.errors);
+		assertEquals(3, summary.rows);
+	}
+
+	private static QuerySummary findSummary(HSQLDBQueryStats queryStats, String sql) {
+		return queryStats.getSummaries(SortOrder.TOTAL_TIME, 0).stream()
+				.filter(summary -> summary.sql.equals(sql))
+				.findFirst()
+				.orElseThrow(() -> new AssertionError("No stats for " + sql));
+	}
+
+	private static int indexOf(List<QuerySummary> summaries, String sql) {
+		for (int i = 0; i < summaries.size(); ++i)
+			if (summaries.get(i).sql.equals(sql))
+				return i;
+
+		fail("No stats for " + sql);
+		return -1;
+	}
+
+}
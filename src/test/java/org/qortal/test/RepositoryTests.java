@@ -13,6 +13,8 @@ import org.qortal.repository.DataException;
 import org.qortal.repository.Repository;
 import org.qortal.repository.RepositoryManager;
 import org.qortal.repository.hsqldb.HSQLDBRepository;
+import org.qortal.repository.hsqldb.HSQLDBRepositoryFactory;
+import org.qortal.settings.Settings;
 import org.qortal.test.common.BlockUtils;
 import org.qortal.test.common.Common;
 
@@ -28,6 +30,7 @@ import java.util.List;
 import java.util.Random;
 import java.util.concurrent.*;
 
+import org.apache.commons.lang3.reflect.FieldUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -411,6 +414,26 @@ public class RepositoryTests extends Common {
 		}
 	}
 
+	/** Sessions from another repository, e.g. a bootstrap snapshot, mustn't consume the main repository's checkpoint request */
+	@Test
+	public void testNonPrimaryRepositoryIgnoresCheckpointRequest() throws DataException {
+		HSQLDBRepositoryFactory otherRepositoryFactory = new HSQLDBRepositoryFactory("jdbc:hsqldb:mem:otherdb", false);
+		try {
+			RepositoryManager.setRequestedCheckpoint(Boolean.TRUE);
+
+			try (final Repository otherRepository = otherRepositoryFactory.getRepository()) {
+				otherRepository.getBlockRepository().getBlockchainHeight();
+				otherRepository.discardChanges();
+			}
+
+			// Still waiting for main repository to perform it
+			assertEquals(Boolean.TRUE, RepositoryManager.getRequestedCheckpoint());
+		} finally {
+			RepositoryManager.setRequestedCheckpoint(null);
+			otherRepositoryFactory.close();
+		}
+	}
+
 	/** Specifically test LATERAL() usage in Chat repository */
 	@Test
 	public void testChatLateral() {
@@ -514,6 +537,59 @@ public class RepositoryTests extends Common {
 		}
 	}
 
+	@Test
+	public void testReadOnlyRepository() throws DataException {
+		try (final Repository repository = RepositoryManager.getReadOnlyRepository()) {
+			assertTrue(repository.isReadOnly());
+
+			// Reads are fine
+			repository.getBlockRepository().getBlockchainHeight();
+
+			String address = Crypto.toAddress(new byte[32]);
+
+			try {
+				repository.getAccountRepository().ensureAccount(new AccountData(address));
+				fail("Read-only repository allowed write");
+			} catch (DataException e) {
+				// Expected
+			}
+
+			try {
+				repository.getAccountRepository().setLastReference(new AccountData(address));
+				fail("Read-only repository allowed write");
+			} catch (DataException e) {
+				// Expected
+			}
+		}
+
+		try (final Repository repository = RepositoryManager.getRepository()) {
+			assertFalse(repository.isReadOnly());
+		}
+	}
+
+	@Test
+	public void testReadOnlyRowLimit() throws DataException, IllegalAccessException, SQLException {
+		int maxRows = Settings.getInstance().getRepositoryApiMaxRows();
+		FieldUtils.writeField(Settings.getInstance(), "repositoryApiMaxRows", 2, true);
+
+		try (final HSQLDBRepository repository = (HSQLDBRepository) RepositoryManager.getReadOnlyRepository()) {
+			// Up to limit is fine
+			try (ResultSet resultSet = repository.checkedExecute("SELECT n FROM (VALUES (1), (2)) AS T(n)")) {
+				assertNotNull(resultSet);
+			}
+
+			// Results mustn't be silently truncated
+			try {
+				repository.checkedExecute("SELECT n FROM (VALUES (1), (2), (3)) AS T(n)");
+				fail("Read-only repository returned truncated results");
+			} catch (SQLException e) {
+				// Expected
+			}
+		} finally {
+			FieldUtils.writeField(Settings.getInstance(), "repositoryApiMaxRows", maxRows, true);
+		}
+	}
+
 	private void populateWithRandomData(HSQLDBRepository repository) throws DataException {
 		Random random = new Random();
 
@@ -2,11 +2,19 @@ package org.qortal.test.api;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.json.JSONArray;
 import org.junit.Before;
 import org.junit.Test;
+import org.qortal.api.ApiError;
 import org.qortal.api.resource.ArbitraryResource;
 import org.qortal.api.resource.TransactionsResource.ConfirmationStatus;
 import org.qortal.arbitrary.misc.Service;
+import org.qortal.data.arbitrary.ArbitraryResourceInfo;
 import org.qortal.test.common.ApiCommon;
 
 public class ArbitraryApiTests extends ApiCommon {
@@ -43,4 +51,28 @@ public class ArbitraryApiTests extends ApiCommon {
 								}
 	}
 
+	@Test
+	public void testStreamResources() throws IOException {
+		Service[] services = new Service[] { null, Service.WEBSITE };
+		String[] identifiers = new String[] { null, "", "test" };
+
+		for (Service service : services)
+			for (String identifier : identifiers)
+				for (Boolean defaultResource : ALL_BOOLEAN_VALUES) {
+					if (Boolean.TRUE.equals(defaultResource) && identifier != null && !identifier.isEmpty())
+						continue;
+
+					List<ArbitraryResourceInfo> resources = this.arbitraryResource.getResources(service, identifier, defaultResource, null, null, null, null, null);
+
+					ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+					this.arbitraryResource.streamResources(service, identifier, defaultResource, null, null, null, null, null).write(outputStream);
+					JSONArray streamedResources = new JSONArray(new String(outputStream.toByteArray(), StandardCharsets.UTF_8));
+
+					assertEquals(resources.size(), streamedResources.length());
+				}
+
+		// Criteria are checked before streaming starts
+		assertApiError(ApiError.INVALID_CRITERIA, () -> this.arbitraryResource.streamResources(null, "test", true, null, null, null, null, null));
+	}
+
 }
@@ -2,16 +2,21 @@ package org.qortal.test.api;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
+import org.json.JSONArray;
 import org.junit.Before;
 import org.junit.Test;
 import org.qortal.api.ApiError;
 import org.qortal.api.ApiException;
 import org.qortal.api.resource.AssetsResource;
 import org.qortal.api.resource.TransactionsResource.ConfirmationStatus;
+import org.qortal.data.account.AccountBalanceData;
 import org.qortal.repository.Repository;
 import org.qortal.repository.RepositoryManager;
 import org.qortal.repository.AccountRepository.BalanceOrdering;
@@ -97,6 +102,24 @@ public class AssetsApiTests extends ApiCommon {
 		}
 	}
 
+	@Test
+	public void testStreamAssetBalances() throws IOException {
+		List<String> addresses = Arrays.asList(aliceAddress, bobAddress);
+		List<Long> assetIds = Arrays.asList(0L, 1L, 2L, 3L);
+
+		for (BalanceOrdering balanceOrdering : BalanceOrdering.values()) {
+			for (Boolean excludeZero : ALL_BOOLEAN_VALUES) {
+				List<AccountBalanceData> balances = this.assetsResource.getAssetBalances(addresses, assetIds, balanceOrdering, excludeZero, null, null, null);
+
+				ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+				this.assetsResource.streamAssetBalances(addresses, assetIds, balanceOrdering, excludeZero, null, null, null).write(outputStream);
+				JSONArray streamedBalances = new JSONArray(new String(outputStream.toByteArray(), StandardCharsets.UTF_8));
+
+				assertEquals(balances.size(), streamedBalances.length());
+			}
+		}
+	}
+
 	@Test
 	public void testGetAssetInfo() {
 		assertNotNull(this.assetsResource.getAssetInfo((int) 0L, null));
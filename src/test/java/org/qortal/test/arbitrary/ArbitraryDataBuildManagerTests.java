@@ -0,0 +1,166 @@
+package org.qortal.test.arbitrary;
+
+import org.apache.commons.lang3.reflect.FieldUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.qortal.arbitrary.ArbitraryDataBuildQueueItem;
+import org.qortal.arbitrary.ArbitraryDataFile.ResourceIdType;
+import org.qortal.arbitrary.misc.Service;
+import org.qortal.controller.arbitrary.ArbitraryDataBuildManager;
+import org.qortal.repository.DataException;
+import org.qortal.test.common.Common;
+import org.qortal.utils.NTP;
+
+import java.util.concurrent.BlockingQueue;
+
+import static org.junit.Assert.*;
+
+public class ArbitraryDataBuildManagerTests extends Common {
+
+    private ArbitraryDataBuildManager buildManager;
+
+    @Before
+    public void beforeTest() throws DataException {
+        Common.useDefaultSettings();
+
+        // Builder threads aren't started, so the tests take items from the queues themselves
+        this.buildManager = new ArbitraryDataBuildManager();
+    }
+
+    private static ArbitraryDataBuildQueueItem queueItem(String name, int priority) {
+        ArbitraryDataBuildQueueItem queueItem = new ArbitraryDataBuildQueueItem(name, ResourceIdType.NAME, Service.WEBSITE, null);
+        queueItem.setPriority(priority);
+        return queueItem;
+    }
+
+    @SuppressWarnings("unchecked")
+    private BlockingQueue<ArbitraryDataBuildQueueItem> getQueue(boolean highPriority) throws IllegalAccessException {
+        String fieldName = highPriority ? "highPriorityBuildQueue" : "buildQueue";
+        return (BlockingQueue<ArbitraryDataBuildQueueItem>) FieldUtils.readField(this.buildManager, fieldName, true);
+    }
+
+    @Test
+    public void testPriorityOrdering() throws IllegalAccessException {
+        ArbitraryDataBuildQueueItem low = queueItem("low", 1);
+        ArbitraryDataBuildQueueItem firstHigh = queueItem("firstHigh", 5);
+        ArbitraryDataBuildQueueItem medium = queueItem("medium", 3);
+        ArbitraryDataBuildQueueItem secondHigh = queueItem("secondHigh", 5);
+
+        assertTrue(this.buildManager.addToBuildQueue(low));
+        assertTrue(this.buildManager.addToBuildQueue(firstHigh));
+        assertTrue(this.buildManager.addToBuildQueue(medium));
+        assertTrue(this.buildManager.addToBuildQueue(secondHigh));
+
+        // Highest priority first, then first come, first served
+        BlockingQueue<ArbitraryDataBuildQueueItem> queue = this.getQueue(false);
+        assertSame(firstHigh, queue.poll());
+        assertSame(secondHigh, queue.poll());
+        assertSame(medium, queue.poll());
+        assertSame(low, queue.poll());
+        assertNull(queue.poll());
+
+        // Only high priority items are in the high priority queue
+        BlockingQueue<ArbitraryDataBuildQueueItem> highPriorityQueue = this.getQueue(true);
+        assertSame(firstHigh, highPriorityQueue.poll());
+        assertSame(secondHigh, highPriorityQueue.poll());
+        assertNull(highPriorityQueue.poll());
+    }
+
+    @Test
+    public void testCoalescing() throws IllegalAccessException {
+        ArbitraryDataBuildQueueItem other = queueItem("other", 3);
+        ArbitraryDataBuildQueueItem original = queueItem("test", 1);
+        ArbitraryDataBuildQueueItem duplicate = queueItem("test", 1);
+
+        assertTrue(this.buildManager.addToBuildQueue(other));
+        assertTrue(this.buildManager.addToBuildQueue(original));
+        assertTrue(this.buildManager.addToBuildQueue(duplicate));
+
+        // Duplicate request is coalesced with the original
+        assertEquals(2, this.buildManager.arbitraryDataBuildQueue.size());
+        assertEquals(2, this.buildManager.getQueuedCount());
+        assertSame(original, this.buildManager.arbitraryDataBuildQueue.get(original.getUniqueKey()));
+
+        // Higher priority request raises the queued item's priority, moving it ahead
+        ArbitraryDataBuildQueueItem urgent = queueItem("test", 5);
+        assertTrue(this.buildManager.addToBuildQueue(urgent));
+        assertEquals(5, original.getPriority().intValue());
+        assertEquals(2, this.buildManager.getQueuedCount());
+
+        assertSame(original, this.getQueue(false).poll());
+        assertSame(original, this.getQueue(true).poll());
+
+        // Lower priority request doesn't lower it again
+        assertTrue(this.buildManager.addToBuildQueue(queueItem("test", 1)));
+        assertEquals(5, original.getPriority().intValue());
+    }
+
+    @Test
+    public void testClaimRace() throws IllegalAccessException {
+        ArbitraryDataBuildQueueItem queueItem = queueItem("test", 5);
+        assertTrue(this.buildManager.addToBuildQueue(queueItem));
+
+        // High priority items are in both queues, so two builder threads can take the same item
+        ArbitraryDataBuildQueueItem fromHighPriorityQueue = this.getQueue(true).poll();
+        ArbitraryDataBuildQueueItem fromQueue = this.getQueue(false).poll();
+        assertSame(queueItem, fromHighPriorityQueue);
+        assertSame(queueItem, fromQueue);
+
+        // Only one of them builds it
+        assertTrue(this.buildManager.claimForBuild(fromHighPriorityQueue));
+        assertFalse(this.buildManager.claimForBuild(fromQueue));
+
+        // Still tracked while it is being built
+        assertTrue(this.buildManager.isInBuildQueue(queueItem));
+        assertTrue(queueItem.isBuilding());
+
+        // Requests during the build are coalesced, rather than queued again
+        assertTrue(this.buildManager.addToBuildQueue(queueItem("test", 5)));
+        assertEquals(0, this.buildManager.getQueuedCount());
+
+        this.buildManager.onBuildFinished(queueItem);
+        assertFalse(this.buildManager.isInBuildQueue(queueItem));
+    }
+
+    @Test
+    public void testClaimReplacedItem() throws IllegalAccessException {
+        ArbitraryDataBuildQueueItem queueItem = queueItem("test", 1);
+        assertTrue(this.buildManager.addToBuildQueue(queueItem));
+        ArbitraryDataBuildQueueItem taken = this.getQueue(false).poll();
+
+        // Removed from the map, e.g. by cleanupQueues, and requested again
+        this.buildManager.arbitraryDataBuildQueue.remove(queueItem.getUniqueKey());
+        ArbitraryDataBuildQueueItem newItem = queueItem("test", 1);
+        assertTrue(this.buildManager.addToBuildQueue(newItem));
+
+        // Stale item is skipped, without affecting the new one
+        assertFalse(this.buildManager.claimForBuild(taken));
+        assertSame(newItem, this.buildManager.arbitraryDataBuildQueue.get(newItem.getUniqueKey()));
+        assertTrue(this.buildManager.claimForBuild(this.getQueue(false).poll()));
+    }
+
+    @Test
+    public void testClaimWithoutNtp() throws IllegalAccessException {
+        ArbitraryDataBuildQueueItem queueItem = queueItem("test", 5);
+        assertTrue(this.buildManager.addToBuildQueue(queueItem));
+        ArbitraryDataBuildQueueItem taken = this.getQueue(true).poll();
+
+        boolean wasOffsetSet = (boolean) FieldUtils.readStaticField(NTP.class, "isOffsetSet", true);
+        FieldUtils.writeStaticField(NTP.class, "isOffsetSet", false, true);
+        try {
+            assertFalse(this.buildManager.claimForBuild(taken));
+        } finally {
+            FieldUtils.writeStaticField(NTP.class, "isOffsetSet", wasOffsetSet, true);
+        }
+
+        // Not left behind as a queued item that will never be built
+        assertFalse(this.buildManager.isInBuildQueue(queueItem));
+        assertEquals(0, this.buildManager.getQueuedCount());
+        assertTrue(queueItem.isQueued());
+
+        // Can be requested again
+        assertTrue(this.buildManager.addToBuildQueue(queueItem("test", 5)));
+        assertTrue(this.buildManager.claimForBuild(this.getQueue(true).poll()));
+    }
+
+}
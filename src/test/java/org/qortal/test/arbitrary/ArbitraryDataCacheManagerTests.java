@@ -0,0 +1,158 @@
+package org.qortal.test.arbitrary;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.reflect.FieldUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.qortal.controller.arbitrary.ArbitraryDataCacheManager;
+import org.qortal.repository.DataException;
+import org.qortal.settings.Settings;
+import org.qortal.test.common.Common;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.Assert.*;
+
+public class ArbitraryDataCacheManagerTests extends Common {
+
+    private static final int RESOURCE_SIZE = 1000;
+
+    private ArbitraryDataCacheManager cacheManager;
+
+    @Before
+    public void beforeTest() throws DataException, IOException, IllegalAccessException {
+        Common.useDefaultSettings();
+        this.deleteReaderDirectory();
+
+        // Start with an empty cache manager, so that it only knows about this test's resources
+        FieldUtils.writeStaticField(ArbitraryDataCacheManager.class, "instance", null, true);
+        this.cacheManager = ArbitraryDataCacheManager.getInstance();
+    }
+
+    @After
+    public void afterTest() throws IOException, IllegalAccessException {
+        this.deleteReaderDirectory();
+        FieldUtils.writeStaticField(ArbitraryDataCacheManager.class, "instance", null, true);
+    }
+
+    private void deleteReaderDirectory() throws IOException {
+        FileUtils.deleteDirectory(getReaderPath().toFile());
+    }
+
+    private static Path getReaderPath() {
+        return Paths.get(Settings.getInstance().getTempDataPath(), "reader");
+    }
+
+    private void setMaxSize(long maxSize) throws IllegalAccessException {
+        FieldUtils.writeField(Settings.getInstance(), "maxBuiltDataCacheSize", maxSize, true);
+    }
+
+    /** Creates a built resource, as if left over from a previous run <tt>age</tt> ms ago. */
+    private static Path createResource(String name, long age) throws IOException {
+        Path workingPath = getReaderPath().resolve(Paths.get("NAME", name, "WEBSITE", "default"));
+        Files.createDirectories(workingPath);
+        Files.write(workingPath.resolve("index.html"), new byte[RESOURCE_SIZE]);
+        Files.setLastModifiedTime(workingPath, FileTime.fromMillis(System.currentTimeMillis() - age));
+        return workingPath;
+    }
+
+    @Test
+    public void testEvictionOrder() throws IOException, IllegalAccessException {
+        long hour = 60 * 60 * 1000L;
+        Path oldest = createResource("oldest", 3 * hour);
+        Path middle = createResource("middle", 2 * hour);
+        Path newest = createResource("newest", hour);
+
+        // Room for two of them, so least recently used is evicted
+        this.setMaxSize(2 * RESOURCE_SIZE + RESOURCE_SIZE / 2);
+        this.cacheManager.enforceBudget();
+
+        assertFalse(Files.exists(oldest));
+        assertTrue(Files.exists(middle));
+        assertTrue(Files.exists(newest));
+        assertEquals(2, this.cacheManager.getResourceCount());
+        assertEquals(2 * RESOURCE_SIZE, this.cacheManager.getTotalSize());
+
+        // Recently accessed resources are kept, even if that leaves us over budget
+        this.cacheManager.onCacheHit(middle);
+        this.setMaxSize(RESOURCE_SIZE / 2);
+        this.cacheManager.enforceBudget();
+
+        assertTrue(Files.exists(middle));
+        assertFalse(Files.exists(newest));
+        assertEquals(RESOURCE_SIZE, this.cacheManager.getTotalSize());
+    }
+
+    @Test
+    public void testBuildingResourceNotEvicted() throws IOException, IllegalAccessException {
+        long hour = 60 * 60 * 1000L;
+        Path oldest = createResource("oldest", 3 * hour);
+        Path newest = createResource("newest", 2 * hour);
+
+        // Register existing resources before building starts, otherwise a miss would have nothing to mark
+        this.setMaxSize(Long.MAX_VALUE);
+        this.cacheManager.enforceBudget();
+
+        this.cacheManager.onBuildStarted(oldest);
+        this.setMaxSize(RESOURCE_SIZE + RESOURCE_SIZE / 2);
+        this.cacheManager.enforceBudget();
+
+        // Newer resource is evicted instead of the one being built
+        assertTrue(Files.exists(oldest));
+        assertFalse(Files.exists(newest));
+
+        // Once finished, it can be evicted again
+        this.cacheManager.onBuildFinished(oldest);
+        this.setMaxSize(RESOURCE_SIZE / 2);
+        this.cacheManager.enforceBudget();
+
+        assertFalse(Files.exists(oldest));
+        assertEquals(0, this.cacheManager.getResourceCount());
+    }
+
+    @Test
+    public void testCacheMissNotEvicted() throws IOException, IllegalAccessException {
+        Path resource = createResource("missed", 60 * 60 * 1000L);
+
+        this.setMaxSize(Long.MAX_VALUE);
+        this.cacheManager.enforceBudget();
+
+        // About to be rebuilt, so shouldn't be deleted underneath the build
+        this.cacheManager.onCacheMiss(resource);
+        this.setMaxSize(RESOURCE_SIZE / 2);
+        this.cacheManager.enforceBudget();
+
+        assertTrue(Files.exists(resource));
+    }
+
+    @Test
+    public void testInvalidation() throws IOException {
+        Path resource = createResource("test", 0);
+        assertFalse(this.cacheManager.isRecentlyValidated(resource));
+
+        this.cacheManager.onResourceBuilt(resource);
+        assertTrue(this.cacheManager.isRecentlyValidated(resource));
+
+        // e.g. newer transaction arrived
+        this.cacheManager.invalidate(resource);
+        assertFalse(this.cacheManager.isRecentlyValidated(resource));
+
+        this.cacheManager.onCacheHit(resource);
+        assertTrue(this.cacheManager.isRecentlyValidated(resource));
+
+        this.cacheManager.onCacheMiss(resource);
+        assertFalse(this.cacheManager.isRecentlyValidated(resource));
+
+        // Forgotten resources are never considered valid
+        this.cacheManager.onCacheHit(resource);
+        this.cacheManager.remove(resource);
+        assertFalse(this.cacheManager.isRecentlyValidated(resource));
+        assertEquals(0, this.cacheManager.getResourceCount());
+    }
+
+}
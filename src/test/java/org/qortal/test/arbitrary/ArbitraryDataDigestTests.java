@@ -1,9 +1,11 @@
 package org.qortal.test.arbitrary;
 
+import org.apache.commons.io.FileUtils;
 import org.junit.Before;
 import org.junit.Test;
 import org.qortal.arbitrary.ArbitraryDataDigest;
 import org.qortal.repository.DataException;
+import org.qortal.settings.Settings;
 import org.qortal.test.common.Common;
 
 import java.io.FileWriter;
@@ -11,6 +13,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
 import java.util.UUID;
 
 import static org.junit.Assert.*;
@@ -58,4 +61,66 @@ public class ArbitraryDataDigestTests extends Common {
         }
     }
 
+    @Test
+    public void testDigestManifest() throws IOException, DataException {
+        // Manifests are only written to directories inside the temp or data paths
+        Path dataPath = Paths.get(Settings.getInstance().getTempDataPath(), "digest-test", UUID.randomUUID().toString());
+        FileUtils.copyDirectory(Paths.get("src/test/resources/arbitrary/demo1").toFile(), dataPath.toFile());
+        String expectedHash58 = "DKyMuonWKoneJqiVHgw26Vk1ytrZG9PGsE9xfBg3GKDp";
+
+        try {
+            ArbitraryDataDigest digest = new ArbitraryDataDigest(dataPath);
+            digest.setShouldPersistManifest(true);
+            digest.compute();
+            assertEquals(expectedHash58, digest.getHash58());
+
+            Path manifestPath = Paths.get(dataPath.toString(), ".qortal", "digest");
+            assertTrue(Files.exists(manifestPath));
+
+            // Cached result is the same as computing from scratch
+            digest = new ArbitraryDataDigest(dataPath);
+            digest.setShouldPersistManifest(true);
+            digest.compute();
+            assertEquals(expectedHash58, digest.getHash58());
+
+            // Modify a file, keeping its size and modification time, to prove that the manifest was used
+            Path filePath = Files.walk(dataPath).filter(Files::isRegularFile)
+                    .filter(path -> !path.startsWith(Paths.get(dataPath.toString(), ".qortal")))
+                    .findFirst().orElseThrow();
+            FileTime modifiedTime = Files.getLastModifiedTime(filePath);
+            byte[] fileContent = Files.readAllBytes(filePath);
+            fileContent[0] ^= 0x01;
+            Files.write(filePath, fileContent);
+            Files.setLastModifiedTime(filePath, modifiedTime);
+
+            digest = new ArbitraryDataDigest(dataPath);
+            digest.setShouldPersistManifest(true);
+            digest.compute();
+            assertEquals(expectedHash58, digest.getHash58());
+
+            // Without the manifest, the change is detected
+            digest = new ArbitraryDataDigest(dataPath);
+            digest.compute();
+            assertFalse(expectedHash58.equals(digest.getHash58()));
+
+            // A file modified no earlier than the manifest was written isn't trusted, as it could
+            // have changed again within the same timestamp tick, even with the same size and modification time
+            Files.setLastModifiedTime(filePath, Files.getLastModifiedTime(manifestPath));
+            digest = new ArbitraryDataDigest(dataPath);
+            digest.setShouldPersistManifest(true);
+            digest.compute();
+            assertFalse(expectedHash58.equals(digest.getHash58()));
+
+            // And a changed modification time invalidates the manifest
+            Files.setLastModifiedTime(filePath, FileTime.fromMillis(modifiedTime.toMillis() + 1000L));
+            digest = new ArbitraryDataDigest(dataPath);
+            digest.setShouldPersistManifest(true);
+            digest.compute();
+            assertFalse(expectedHash58.equals(digest.getHash58()));
+
+        } finally {
+            FileUtils.deleteDirectory(dataPath.getParent().toFile());
+        }
+    }
+
 }
@@ -0,0 +1,155 @@
+package org.qortal.test.arbitrary;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.qortal.controller.arbitrary.ArbitraryDataFileRequestScheduler;
+import org.qortal.data.arbitrary.ArbitraryFileListResponseInfo;
+import org.qortal.data.network.PeerData;
+import org.qortal.network.Peer;
+import org.qortal.network.PeerAddress;
+import org.qortal.repository.DataException;
+import org.qortal.test.common.Common;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ArbitraryDataFileRequestSchedulerTests extends Common {
+
+    private static final String SIGNATURE58 = "signature";
+    private static final long EXPIRY = 60 * 1000L;
+    private static final long NOW = 1000000L;
+
+    @Before
+    public void beforeTest() throws DataException {
+        Common.useDefaultSettings();
+    }
+
+    private static Peer peer(String address) {
+        return new Peer(new PeerData(PeerAddress.fromString(address)));
+    }
+
+    private static ArbitraryFileListResponseInfo response(String hash58, Peer peer, int hops) {
+        return new ArbitraryFileListResponseInfo(hash58, SIGNATURE58, peer, NOW, NOW, hops);
+    }
+
+    @Test
+    public void testRarestFirst() {
+        Peer peerA = peer("127.0.0.1:12392");
+        Peer peerB = peer("127.0.0.2:12392");
+
+        List<ArbitraryFileListResponseInfo> responses = new ArrayList<>();
+        responses.add(response("common", peerA, 0));
+        responses.add(response("common", peerB, 0));
+        responses.add(response("rare", peerB, 0));
+
+        ArbitraryDataFileRequestScheduler scheduler = new ArbitraryDataFileRequestScheduler();
+
+        ArbitraryFileListResponseInfo next = scheduler.nextRequest(responses, hash58 -> false, NOW, EXPIRY);
+        assertNotNull(next);
+        assertEquals("rare", next.getHash58());
+        assertSame(peerB, next.getPeer());
+        assertEquals(2, responses.size());
+
+        // Same chunk isn't handed out twice while in progress
+        next = scheduler.nextRequest(responses, hash58 -> false, NOW, EXPIRY);
+        assertNotNull(next);
+        assertEquals("common", next.getHash58());
+
+        assertNull(scheduler.nextRequest(responses, hash58 -> false, NOW, EXPIRY));
+    }
+
+    @Test
+    public void testWindowLimitsInFlight() {
+        Peer peerA = peer("127.0.0.1:12392");
+        Peer peerB = peer("127.0.0.2:12392");
+
+        List<ArbitraryFileListResponseInfo> responses = new ArrayList<>();
+        for (int i = 0; i < 10; ++i)
+            responses.add(response("hash" + i, peerA, 0));
+        responses.add(response("other", peerB, 5));
+
+        ArbitraryDataFileRequestScheduler scheduler = new ArbitraryDataFileRequestScheduler();
+
+        int fromPeerA = 0;
+        int fromPeerB = 0;
+        ArbitraryFileListResponseInfo next;
+        while ((next = scheduler.nextRequest(responses, hash58 -> false, NOW, EXPIRY)) != null) {
+            if (next.getPeer() == peerA)
+                ++fromPeerA;
+            else
+                ++fromPeerB;
+        }
+
+        // Peer A is limited to its initial window, but peer B is still used
+        assertEquals(ArbitraryDataFileRequestScheduler.INITIAL_WINDOW, fromPeerA);
+        assertEquals(1, fromPeerB);
+        assertEquals(ArbitraryDataFileRequestScheduler.INITIAL_WINDOW, scheduler.getInFlight(peerA));
+    }
+
+    @Test
+    public void testAdaptiveWindow() {
+        Peer peerA = peer("127.0.0.1:12392");
+
+        ArbitraryDataFileRequestScheduler scheduler = new ArbitraryDataFileRequestScheduler();
+        assertEquals(ArbitraryDataFileRequestScheduler.INITIAL_WINDOW, scheduler.getWindow(peerA));
+
+        // Steady throughput grows window up to maximum
+        for (int i = 0; i < 20; ++i)
+            scheduler.onRequestCompleted(peerA, "hash", true, 512 * 1024L, 100L);
+
+        assertEquals(ArbitraryDataFileRequestScheduler.MAX_WINDOW, scheduler.getWindow(peerA));
+
+        // Failure halves window
+        scheduler.onRequestCompleted(peerA, "hash", false, 0L, 12000L);
+        assertEquals(ArbitraryDataFileRequestScheduler.MAX_WINDOW / 2, scheduler.getWindow(peerA));
+
+        // Collapsing throughput doesn't grow window
+        scheduler.onRequestCompleted(peerA, "hash", true, 1024L, 10000L);
+        assertEquals(ArbitraryDataFileRequestScheduler.MAX_WINDOW / 2, scheduler.getWindow(peerA));
+
+        // Repeated failures don't go below minimum
+        for (int i = 0; i < 10; ++i)
+            scheduler.onRequestCompleted(peerA, "hash", false, 0L, 12000L);
+
+        assertEquals(ArbitraryDataFileRequestScheduler.MIN_WINDOW, scheduler.getWindow(peerA));
+    }
+
+    @Test
+    public void testCancelledRequest() {
+        Peer peerA = peer("127.0.0.1:12392");
+
+        List<ArbitraryFileListResponseInfo> responses = new ArrayList<>();
+        responses.add(response("hash", peerA, 0));
+
+        ArbitraryDataFileRequestScheduler scheduler = new ArbitraryDataFileRequestScheduler();
+
+        ArbitraryFileListResponseInfo next = scheduler.nextRequest(responses, hash58 -> false, NOW, EXPIRY);
+        assertNotNull(next);
+        assertEquals(1, scheduler.getInFlight(peerA));
+
+        // No request was sent, e.g. chunk was already present, so slot is released without shrinking window
+        scheduler.onRequestCancelled(peerA, next.getHash58());
+        assertEquals(0, scheduler.getInFlight(peerA));
+        assertEquals(ArbitraryDataFileRequestScheduler.INITIAL_WINDOW, scheduler.getWindow(peerA));
+
+        // Hash is no longer reserved, so can be handed out again
+        responses.add(next);
+        assertSame(next, scheduler.nextRequest(responses, hash58 -> false, NOW, EXPIRY));
+    }
+
+    @Test
+    public void testExpiredResponsesRemoved() {
+        Peer peerA = peer("127.0.0.1:12392");
+
+        List<ArbitraryFileListResponseInfo> responses = new ArrayList<>();
+        responses.add(response("old", peerA, 0));
+
+        ArbitraryDataFileRequestScheduler scheduler = new ArbitraryDataFileRequestScheduler();
+
+        assertNull(scheduler.nextRequest(responses, hash58 -> false, NOW + EXPIRY, EXPIRY));
+        assertTrue(responses.isEmpty());
+    }
+
+}
@@ -4,9 +4,25 @@ import org.junit.Before;
 import org.junit.Test;
 import org.qortal.repository.DataException;
 import org.qortal.arbitrary.ArbitraryDataFile;
+import org.qortal.arbitrary.ArbitraryDataFileChunk;
+import org.qortal.arbitrary.ArbitraryDataFileOutputStream;
+import org.qortal.settings.Settings;
 import org.qortal.test.common.Common;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.*;
 
@@ -74,4 +90,112 @@ public class ArbitraryDataFileTests extends Common {
 		assertEquals(originalFileDigest, arbitraryDataFile.digest58());
 	}
 
+	@Test
+	public void testSplitAndJoinWithDuplicateChunks() throws DataException, IOException {
+		// Chunks 0, 1, 2 and 4 have identical content, so share the same path
+		byte[] repeatedChunk = new byte[1000];
+		new Random().nextBytes(repeatedChunk);
+		byte[] uniqueChunk = new byte[1000];
+		new Random().nextBytes(uniqueChunk);
+
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		for (byte[] chunk : new byte[][] { repeatedChunk, repeatedChunk, repeatedChunk, uniqueChunk, repeatedChunk })
+			data.write(chunk);
+
+		ArbitraryDataFile arbitraryDataFile = new ArbitraryDataFile(data.toByteArray(), null);
+		String originalFileDigest = arbitraryDataFile.digest58();
+
+		arbitraryDataFile.split(1000);
+		assertEquals(5, arbitraryDataFile.chunkCount());
+
+		List<ArbitraryDataFileChunk> chunks = arbitraryDataFile.getChunks();
+		for (int i : new int[] { 1, 2, 4 })
+			assertArrayEquals(chunks.get(0).getHash(), chunks.get(i).getHash());
+		assertFalse(Arrays.equals(chunks.get(0).getHash(), chunks.get(3).getHash()));
+
+		for (ArbitraryDataFileChunk chunk : chunks) {
+			assertEquals(ArbitraryDataFile.ValidationResult.OK, chunk.isValid());
+			assertEquals(1000, chunk.size());
+		}
+
+		arbitraryDataFile.delete();
+		assertFalse(arbitraryDataFile.exists());
+
+		assertTrue(arbitraryDataFile.join());
+		assertEquals(5000, arbitraryDataFile.size());
+		assertEquals(originalFileDigest, arbitraryDataFile.digest58());
+	}
+
+	@Test
+	public void testConcurrentJoins() throws DataException, InterruptedException, ExecutionException, IOException {
+		int fileSize = (int) (2.5f * 1024 * 1024); // 2.5MiB
+		byte[] randomData = new byte[fileSize];
+		new Random().nextBytes(randomData); // No need for SecureRandom here
+
+		// Each instance knows about the same chunks
+		List<ArbitraryDataFile> joiningFiles = new ArrayList<>();
+		for (int i = 0; i < 4; ++i) {
+			ArbitraryDataFile joiningFile = new ArbitraryDataFile(randomData, null);
+			joiningFile.split(1 * 1024 * 1024);
+			joiningFiles.add(joiningFile);
+		}
+
+		ArbitraryDataFile arbitraryDataFile = joiningFiles.get(0);
+		String originalFileDigest = arbitraryDataFile.digest58();
+		arbitraryDataFile.delete();
+
+		// Each join writes to its own temporary file, so they don't interfere
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Boolean>> joins = new ArrayList<>();
+			for (ArbitraryDataFile joiningFile : joiningFiles) {
+				joins.add(executor.submit(joiningFile::join));
+			}
+
+			for (Future<Boolean> join : joins)
+				assertTrue(join.get());
+		} finally {
+			executor.shutdownNow();
+		}
+
+		assertTrue(arbitraryDataFile.exists());
+		assertEquals(originalFileDigest, arbitraryDataFile.digest58());
+
+		// No temporary files left behind
+		try (Stream<Path> paths = Files.list(arbitraryDataFile.getFilePath().getParent())) {
+			assertFalse(paths.anyMatch(path -> path.getFileName().toString().endsWith(".tmp")));
+		}
+	}
+
+	@Test
+	public void testStreamingSplit() throws DataException, IOException {
+		int fileSize = (int) (2.5f * 1024 * 1024); // 2.5MiB
+		byte[] randomData = new byte[fileSize];
+		new Random().nextBytes(randomData); // No need for SecureRandom here
+
+		// Write the data in uneven pieces, so that writes straddle chunk boundaries
+		Path tempPath = Paths.get(Settings.getInstance().getTempDataPath(), "streaming-split-test");
+		ArbitraryDataFileOutputStream outputStream = new ArbitraryDataFileOutputStream(tempPath, null, 1 * 1024 * 1024);
+		for (int offset = 0; offset < fileSize; offset += 100000) {
+			outputStream.write(randomData, offset, Math.min(100000, fileSize - offset));
+		}
+		outputStream.close();
+		assertFalse(Files.exists(tempPath));
+
+		ArbitraryDataFile streamedFile = outputStream.getArbitraryDataFile();
+		assertNotNull(streamedFile);
+		assertTrue(streamedFile.exists());
+		assertEquals(fileSize, streamedFile.size());
+		assertEquals(3, streamedFile.chunkCount());
+
+		// Should match writing the complete file and then splitting it
+		ArbitraryDataFile arbitraryDataFile = new ArbitraryDataFile(randomData, null);
+		arbitraryDataFile.split(1 * 1024 * 1024);
+		assertEquals(arbitraryDataFile.digest58(), streamedFile.digest58());
+		assertEquals(arbitraryDataFile.chunkHashList().size(), streamedFile.chunkHashList().size());
+		for (int i = 0; i < arbitraryDataFile.chunkCount(); i++) {
+			assertArrayEquals(arbitraryDataFile.getChunks().get(i).getHash(), streamedFile.getChunks().get(i).getHash());
+		}
+	}
+
 }
@@ -0,0 +1,150 @@
+package org.qortal.test.arbitrary;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.qortal.arbitrary.ArbitraryDataFile;
+import org.qortal.controller.arbitrary.ArbitraryDataHostedCatalog;
+import org.qortal.repository.DataException;
+import org.qortal.settings.Settings;
+import org.qortal.test.common.Common;
+import org.qortal.utils.Base58;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ArbitraryDataHostedCatalogTests extends Common {
+
+    @Before
+    public void beforeTest() throws DataException {
+        Common.useDefaultSettings();
+        this.deleteDataDirectories();
+    }
+
+    @After
+    public void afterTest() throws DataException {
+        ArbitraryDataHostedCatalog.getInstance().shutdown();
+        this.deleteDataDirectories();
+    }
+
+    @Test
+    public void testWritesAndDeletes() throws DataException {
+        ArbitraryDataHostedCatalog catalog = ArbitraryDataHostedCatalog.getInstance();
+        catalog.rebuild();
+        assertTrue(catalog.isReady());
+        assertEquals(0, catalog.getTotalSize());
+
+        byte[] signature = randomBytes(64);
+        byte[] data1 = randomBytes(1000);
+        ArbitraryDataFile file1 = new ArbitraryDataFile(data1, signature);
+        ArbitraryDataFile file2 = new ArbitraryDataFile(randomBytes(2000), signature);
+        // Not yet associated with a transaction, so stored in the misc folder
+        ArbitraryDataFile file3 = new ArbitraryDataFile(randomBytes(500), null);
+
+        assertEquals(3500, catalog.getTotalSize());
+        assertEquals(1, catalog.getTransactionCount());
+        assertEquals(ArbitraryDataHostedCatalog.getDirectory(Base58.encode(signature)), catalog.getHostedPaths().get(0));
+
+        // Rewriting an existing file doesn't change anything
+        new ArbitraryDataFile(data1, signature);
+        assertEquals(3500, catalog.getTotalSize());
+
+        assertTrue(file1.delete());
+        assertEquals(2500, catalog.getTotalSize());
+        assertEquals(1, catalog.getTransactionCount());
+
+        // Transaction is forgotten once its last file is deleted
+        assertTrue(file2.delete());
+        assertEquals(500, catalog.getTotalSize());
+        assertEquals(0, catalog.getTransactionCount());
+
+        assertTrue(file3.delete());
+        assertEquals(0, catalog.getTotalSize());
+
+        // Deleting a file we knew nothing about doesn't affect total
+        new ArbitraryDataFile(randomBytes(1000), randomBytes(64));
+        Path unknownDirectory = ArbitraryDataHostedCatalog.getDirectory(Base58.encode(randomBytes(64)));
+        catalog.onFileDeleted(unknownDirectory.resolve(Base58.encode(randomBytes(32))), 400);
+        assertEquals(1000, catalog.getTotalSize());
+        assertEquals(1, catalog.getTransactionCount());
+    }
+
+    @Test
+    public void testSaveAndLoad() throws DataException {
+        ArbitraryDataHostedCatalog catalog = ArbitraryDataHostedCatalog.getInstance();
+        catalog.rebuild();
+
+        new ArbitraryDataFile(randomBytes(1000), randomBytes(64));
+        new ArbitraryDataFile(randomBytes(2000), randomBytes(64));
+        new ArbitraryDataFile(randomBytes(500), null);
+        assertEquals(3500, catalog.getTotalSize());
+
+        // Clean shutdown saves the catalog
+        catalog.shutdown();
+        Path catalogPath = Paths.get(Settings.getInstance().getDataPath(), ".hosted-catalog");
+        assertTrue(Files.exists(catalogPath));
+
+        catalog = ArbitraryDataHostedCatalog.getInstance();
+        assertFalse(catalog.isReady());
+        catalog.loadOrRebuild();
+        assertTrue(catalog.isReady());
+        assertEquals(3500, catalog.getTotalSize());
+        assertEquals(2, catalog.getTransactionCount());
+
+        // Saved copy is removed once loaded, so that it can't be used after an unclean shutdown
+        assertFalse(Files.exists(catalogPath));
+    }
+
+    @Test
+    public void testRebuildAfterUncleanShutdown() throws DataException {
+        ArbitraryDataHostedCatalog catalog = ArbitraryDataHostedCatalog.getInstance();
+        catalog.rebuild();
+
+        byte[] signature = randomBytes(64);
+        new ArbitraryDataFile(randomBytes(1000), signature);
+        new ArbitraryDataFile(randomBytes(2000), signature);
+        new ArbitraryDataFile(randomBytes(500), null);
+
+        // Simulate an unclean shutdown by discarding the saved catalog
+        catalog.shutdown();
+        Path catalogPath = Paths.get(Settings.getInstance().getDataPath(), ".hosted-catalog");
+        assertTrue(catalogPath.toFile().delete());
+
+        catalog = ArbitraryDataHostedCatalog.getInstance();
+        catalog.loadOrRebuild();
+        assertTrue(catalog.isReady());
+        assertEquals(3500, catalog.getTotalSize());
+        assertEquals(1, catalog.getTransactionCount());
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random().nextBytes(bytes);
+        return bytes;
+    }
+
+    private void deleteDataDirectories() {
+        // Delete data directory if exists
+        Path dataPath = Paths.get(Settings.getInstance().getDataPath());
+        try {
+            FileUtils.deleteDirectory(dataPath.toFile());
+        } catch (IOException e) {
+
+        }
+
+        // Delete temp data directory if exists
+        Path tempDataPath = Paths.get(Settings.getInstance().getTempDataPath());
+        try {
+            FileUtils.deleteDirectory(tempDataPath.toFile());
+        } catch (IOException e) {
+
+        }
+    }
+
+}
@@ -0,0 +1,63 @@
+package org.qortal.test.arbitrary;
+
+import org.junit.Test;
+import org.qortal.arbitrary.ArbitraryDataRenderer;
+
+import static org.junit.Assert.*;
+
+public class ArbitraryDataRendererTests {
+
+    @Test
+    public void testParseRange() {
+        // No range, or unsupported range, serves whole file
+        assertNull(ArbitraryDataRenderer.parseRange(null, 1000));
+        assertNull(ArbitraryDataRenderer.parseRange("items=0-10", 1000));
+        assertNull(ArbitraryDataRenderer.parseRange("bytes=0-10,20-30", 1000));
+        assertNull(ArbitraryDataRenderer.parseRange("bytes=abc-", 1000));
+        assertNull(ArbitraryDataRenderer.parseRange("bytes=50-10", 1000));
+
+        assertArrayEquals(new long[] { 0, 499 }, ArbitraryDataRenderer.parseRange("bytes=0-499", 1000));
+        assertArrayEquals(new long[] { 500, 999 }, ArbitraryDataRenderer.parseRange("bytes=500-", 1000));
+        assertArrayEquals(new long[] { 900, 999 }, ArbitraryDataRenderer.parseRange("bytes=-100", 1000));
+
+        // Ranges extending beyond the end are truncated
+        assertArrayEquals(new long[] { 500, 999 }, ArbitraryDataRenderer.parseRange("bytes=500-5000", 1000));
+        assertArrayEquals(new long[] { 0, 999 }, ArbitraryDataRenderer.parseRange("bytes=-5000", 1000));
+
+        // Unsatisfiable
+        assertEquals(0, ArbitraryDataRenderer.parseRange("bytes=1000-", 1000).length);
+        assertEquals(0, ArbitraryDataRenderer.parseRange("bytes=-0", 1000).length);
+    }
+
+    @Test
+    public void testEtags() {
+        String etag = ArbitraryDataRenderer.buildEtag("signature", "/index.html");
+        assertNotNull(etag);
+        assertTrue(etag.startsWith("\"") && etag.endsWith("\""));
+
+        // Same inputs give same ETag, but anything else changes it
+        assertEquals(etag, ArbitraryDataRenderer.buildEtag("signature", "/index.html"));
+        assertFalse(etag.equals(ArbitraryDataRenderer.buildEtag("signature2", "/index.html")));
+        assertFalse(etag.equals(ArbitraryDataRenderer.buildEtag("signature", "/other.html")));
+
+        // Unknown build means no ETag
+        assertNull(ArbitraryDataRenderer.buildEtag(null, "/index.html"));
+
+        assertTrue(ArbitraryDataRenderer.matchesEtag(etag, etag));
+        assertTrue(ArbitraryDataRenderer.matchesEtag("\"other\", " + etag, etag));
+        assertTrue(ArbitraryDataRenderer.matchesEtag("W/" + etag, etag));
+        assertTrue(ArbitraryDataRenderer.matchesEtag("*", etag));
+        assertFalse(ArbitraryDataRenderer.matchesEtag("\"other\"", etag));
+        assertFalse(ArbitraryDataRenderer.matchesEtag(null, etag));
+    }
+
+    @Test
+    public void testAcceptsGzip() {
+        assertTrue(ArbitraryDataRenderer.acceptsGzip("gzip, deflate, br"));
+        assertTrue(ArbitraryDataRenderer.acceptsGzip("br;q=1.0, gzip;q=0.8"));
+        assertFalse(ArbitraryDataRenderer.acceptsGzip("gzip;q=0"));
+        assertFalse(ArbitraryDataRenderer.acceptsGzip("deflate, br"));
+        assertFalse(ArbitraryDataRenderer.acceptsGzip(null));
+    }
+
+}
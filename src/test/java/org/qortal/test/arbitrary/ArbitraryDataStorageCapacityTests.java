@@ -9,6 +9,7 @@ import org.qortal.account.PrivateKeyAccount;
 import org.qortal.arbitrary.ArbitraryDataFile;
 import org.qortal.arbitrary.misc.Service;
 import org.qortal.controller.arbitrary.ArbitraryDataCleanupManager;
+import org.qortal.controller.arbitrary.ArbitraryDataHostedCatalog;
 import org.qortal.controller.arbitrary.ArbitraryDataManager;
 import org.qortal.controller.arbitrary.ArbitraryDataStorageManager;
 import org.qortal.data.transaction.ArbitraryTransactionData;
@@ -189,6 +190,41 @@ public class ArbitraryDataStorageCapacityTests extends Common {
         }
     }
 
+    @Test
+    public void testNameSize() throws DataException, IOException {
+        try (final Repository repository = RepositoryManager.getRepository()) {
+            String identifier = null; // Not used for this test
+            Service service = Service.ARBITRARY_DATA;
+            int chunkSize = 100;
+            int dataLength = 900; // Actual data length will be longer due to encryption
+
+            PrivateKeyAccount alice = Common.getTestAccount(repository, "alice");
+            String aliceName = "alice";
+            RegisterNameTransactionData transactionData = new RegisterNameTransactionData(TestTransaction.generateBase(alice), aliceName, "");
+            transactionData.setFee(new RegisterNameTransaction(null, null).getUnitFee(transactionData.getTimestamp()));
+            TransactionUtils.signAndMint(repository, transactionData, alice);
+
+            ArbitraryDataHostedCatalog catalog = ArbitraryDataHostedCatalog.getInstance();
+            assertEquals(0, catalog.getNameSize(repository, aliceName));
+
+            // Alice hosts two resources
+            long expectedSize = 0;
+            for (int i = 0; i < 2; i++) {
+                Path path = ArbitraryUtils.generateRandomDataPath(dataLength);
+                ArbitraryDataFile arbitraryDataFile = ArbitraryUtils.createAndMintTxn(repository, Base58.encode(alice.getPublicKey()), path, aliceName, identifier, ArbitraryTransactionData.Method.PUT, service, alice, chunkSize);
+                ArbitraryTransactionData arbitraryTransactionData = (ArbitraryTransactionData) repository.getTransactionRepository().fromSignature(arbitraryDataFile.getSignature());
+                expectedSize += arbitraryTransactionData.getSize();
+            }
+
+            // Per-name usage is the size declared by the transactions, as it was before the catalog was introduced,
+            // rather than bytes on disk, which also include chunks alongside the complete file
+            // Data was written before its transactions existed, so look them up again
+            catalog.invalidate();
+            assertEquals(expectedSize, catalog.getNameSize(repository, aliceName));
+            assertEquals(0, catalog.getNameSize(repository, "bob"));
+        }
+    }
+
     private void deleteListsDirectory() {
         // Delete lists directory if exists
         Path listsPath = Paths.get(Settings.getInstance().getListsPath());
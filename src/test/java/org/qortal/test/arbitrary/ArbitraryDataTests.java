@@ -4,6 +4,7 @@ import org.apache.commons.lang3.reflect.FieldUtils;
 import org.junit.Before;
 import org.junit.Test;
 import org.qortal.account.PrivateKeyAccount;
+import org.qortal.arbitrary.ArbitraryDataBuilder;
 import org.qortal.arbitrary.ArbitraryDataDigest;
 import org.qortal.arbitrary.ArbitraryDataFile;
 import org.qortal.arbitrary.ArbitraryDataFile.*;
@@ -95,6 +96,57 @@ public class ArbitraryDataTests extends Common {
         }
     }
 
+    @Test
+    public void testIncrementalBuildFromSnapshot() throws DataException, IOException, MissingDataException {
+        try (final Repository repository = RepositoryManager.getRepository()) {
+            PrivateKeyAccount alice = Common.getTestAccount(repository, "alice");
+            String publicKey58 = Base58.encode(alice.getPublicKey());
+            String name = "TEST"; // Can be anything for this test
+            String identifier = null; // Not used for this test
+            Service service = Service.ARBITRARY_DATA;
+
+            // Register the name to Alice
+            RegisterNameTransactionData transactionData = new RegisterNameTransactionData(TestTransaction.generateBase(alice), name, "");
+            transactionData.setFee(new RegisterNameTransaction(null, null).getUnitFee(transactionData.getTimestamp()));
+            TransactionUtils.signAndMint(repository, transactionData, alice);
+
+            // Create PUT transaction
+            Path path1 = Paths.get("src/test/resources/arbitrary/demo1");
+            ArbitraryDataFile putDataFile = ArbitraryUtils.createAndMintTxn(repository, publicKey58, path1, name, identifier, Method.PUT, service, alice);
+
+            // Create PATCH transaction
+            Path path2 = Paths.get("src/test/resources/arbitrary/demo2");
+            ArbitraryUtils.createAndMintTxn(repository, publicKey58, path2, name, identifier, Method.PATCH, service, alice);
+
+            // Build the latest state, which should leave a snapshot behind
+            ArbitraryDataReader arbitraryDataReader = new ArbitraryDataReader(name, ResourceIdType.NAME, service, identifier);
+            arbitraryDataReader.loadSynchronously(true);
+            Path snapshotPath = arbitraryDataReader.getFilePath().resolveSibling(ArbitraryDataBuilder.SNAPSHOT_DIRECTORY);
+            assertTrue(Files.exists(snapshotPath));
+
+            // Delete the PUT's data, so that it can no longer be replayed
+            assertTrue(putDataFile.deleteAll());
+
+            // Create another PATCH transaction, which requires building the previous state
+            Path path3 = Paths.get("src/test/resources/arbitrary/demo3");
+            ArbitraryUtils.createAndMintTxn(repository, publicKey58, path3, name, identifier, Method.PATCH, service, alice);
+
+            // Rebuild - this only works if the new layer is applied on top of the snapshot
+            arbitraryDataReader = new ArbitraryDataReader(name, ResourceIdType.NAME, service, identifier);
+            arbitraryDataReader.setCanRequestMissingFiles(false);
+            arbitraryDataReader.loadSynchronously(true);
+            Path finalPath = arbitraryDataReader.getFilePath();
+            assertEquals(3, arbitraryDataReader.getLayerCount());
+
+            // Its directory hash should match the hash of demo3
+            ArbitraryDataDigest path3Digest = new ArbitraryDataDigest(path3);
+            path3Digest.compute();
+            ArbitraryDataDigest finalPathDigest = new ArbitraryDataDigest(finalPath);
+            finalPathDigest.compute();
+            assertEquals(path3Digest.getHash58(), finalPathDigest.getHash58());
+        }
+    }
+
     @Test
     public void testPatchBeforePut() throws DataException, IOException {
         try (final Repository repository = RepositoryManager.getRepository()) {
@@ -0,0 +1,73 @@
+package org.qortal.test.assets;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.qortal.asset.OrderBook;
+import org.qortal.data.asset.OrderData;
+import org.qortal.utils.Amounts;
+
+public class OrderBookTests {
+
+	private static final long HAVE_ASSET_ID = 1L;
+	private static final long WANT_ASSET_ID = 0L;
+
+	private static OrderData order(long amount, long fulfilled, long price, long timestamp, boolean isClosed) {
+		return new OrderData(null, null, HAVE_ASSET_ID, WANT_ASSET_ID, amount * Amounts.MULTIPLIER, fulfilled * Amounts.MULTIPLIER,
+				price * Amounts.MULTIPLIER, timestamp, isClosed, false);
+	}
+
+	private static OrderBook buildOrderBook() {
+		List<OrderData> openOrders = Arrays.asList(
+				order(10, 0, 5, 1000L, false),
+				order(20, 5, 5, 3000L, false),
+				order(7, 0, 3, 2000L, false),
+				order(100, 0, 4, 4000L, true), // closed, so ignored
+				order(1, 0, 9, 5000L, false));
+
+		return new OrderBook(HAVE_ASSET_ID, "GOLD", WANT_ASSET_ID, "QORT", openOrders);
+	}
+
+	@Test
+	public void testAggregation() {
+		OrderBook orderBook = buildOrderBook();
+
+		assertEquals(3, orderBook.getPriceLevelCount());
+		assertEquals(4, orderBook.getOrderCount());
+
+		List<OrderData> orders = orderBook.getAggregatedOrders(null, null, null);
+		assertEquals(3, orders.size());
+
+		// Lowest price first
+		assertEquals(3 * Amounts.MULTIPLIER, orders.get(0).getPrice());
+		assertEquals(7 * Amounts.MULTIPLIER, orders.get(0).getAmount());
+
+		// Unfulfilled amounts summed, latest timestamp used
+		assertEquals(5 * Amounts.MULTIPLIER, orders.get(1).getPrice());
+		assertEquals((10 + 20 - 5) * Amounts.MULTIPLIER, orders.get(1).getAmount());
+		assertEquals(3000L, orders.get(1).getTimestamp());
+
+		assertEquals(9 * Amounts.MULTIPLIER, orders.get(2).getPrice());
+	}
+
+	@Test
+	public void testPaging() {
+		OrderBook orderBook = buildOrderBook();
+
+		List<OrderData> orders = orderBook.getAggregatedOrders(1, 1, null);
+		assertEquals(1, orders.size());
+		assertEquals(5 * Amounts.MULTIPLIER, orders.get(0).getPrice());
+
+		orders = orderBook.getAggregatedOrders(2, null, true);
+		assertEquals(2, orders.size());
+		assertEquals(9 * Amounts.MULTIPLIER, orders.get(0).getPrice());
+		assertEquals(5 * Amounts.MULTIPLIER, orders.get(1).getPrice());
+
+		orders = orderBook.getAggregatedOrders(null, 5, null);
+		assertTrue(orders.isEmpty());
+	}
+
+}
@@ -0,0 +1,265 @@
+package org.qortal.test.crosschain;
+
+import static org.junit.Assert.*;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bitcoinj.core.Address;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.crypto.ChildNumber;
+import org.bitcoinj.crypto.DeterministicKey;
+import org.bitcoinj.crypto.HDKeyDerivation;
+import org.bitcoinj.params.TestNet3Params;
+import org.bitcoinj.script.Script.ScriptType;
+import org.bitcoinj.script.ScriptBuilder;
+import org.junit.Before;
+import org.junit.Test;
+import org.qortal.crosschain.Bitcoiny;
+import org.qortal.crosschain.BitcoinyBlockchainProvider;
+import org.qortal.crosschain.BitcoinyTransaction;
+import org.qortal.crosschain.ForeignBlockchainException;
+import org.qortal.crosschain.SimpleTransaction;
+import org.qortal.crosschain.TransactionHash;
+import org.qortal.crosschain.UnspentOutput;
+import org.qortal.utils.NTP;
+
+import com.google.common.hash.HashCode;
+
+/** Tests HD wallet scanning against an in-memory blockchain provider. */
+public class BitcoinyWalletScanTests {
+
+	private static final NetworkParameters PARAMS = TestNet3Params.get();
+
+	private DeterministicKey masterKey;
+	private TestProvider provider;
+	private TestBitcoiny bitcoiny;
+
+	@Before
+	public void beforeTest() {
+		NTP.setFixedOffset(0L);
+
+		byte[] seed = new byte[32];
+		new SecureRandom().nextBytes(seed);
+		this.masterKey = HDKeyDerivation.createMasterPrivateKey(seed);
+
+		this.provider = new TestProvider();
+		this.bitcoiny = new TestBitcoiny(this.provider);
+	}
+
+	@Test
+	public void testScan() throws ForeignBlockchainException {
+		this.provider.addTransaction("aa01", receiveAddress(0), 1000L);
+		this.provider.addTransaction("aa02", receiveAddress(10), 2000L);
+
+		List<SimpleTransaction> transactions = this.bitcoiny.getWalletTransactions(this.xprv());
+		assertEquals(2, transactions.size());
+		assertEquals(3000L, (long) this.bitcoiny.getWalletBalanceFromTransactions(this.xprv()));
+	}
+
+	@Test
+	public void testIncrementalRescan() throws ForeignBlockchainException {
+		this.provider.addTransaction("aa01", receiveAddress(0), 1000L);
+		this.provider.addTransaction("aa02", receiveAddress(10), 2000L);
+
+		assertEquals(2, this.bitcoiny.getWalletTransactions(this.xprv()).size());
+		int historyCount = this.provider.historyCount.get();
+		assertEquals(2, this.provider.transactionCount.get());
+
+		// Recent results are served without rescanning, including for the xpub of the same wallet
+		assertEquals(2, this.bitcoiny.getWalletTransactions(this.xpub()).size());
+		assertEquals(historyCount, this.provider.historyCount.get());
+
+		TestBitcoiny.setCacheTimeout(0L);
+		try {
+			this.provider.addTransaction("aa03", receiveAddress(5), 500L);
+
+			assertEquals(3, this.bitcoiny.getWalletTransactions(this.xpub()).size());
+
+			// Keys are rescanned, but not rediscovered batch by batch, and only the new transaction is fetched
+			assertEquals(2 * historyCount, this.provider.historyCount.get());
+			assertEquals(3, this.provider.transactionCount.get());
+		} finally {
+			TestBitcoiny.setCacheTimeout(2 * 60 * 1000L);
+		}
+	}
+
+	@Test
+	public void testScanExtendsToNewKeys() throws ForeignBlockchainException {
+		this.provider.addTransaction("aa01", receiveAddress(0), 1000L);
+		assertEquals(1, this.bitcoiny.getWalletTransactions(this.xprv()).size());
+
+		TestBitcoiny.setCacheTimeout(0L);
+		try {
+			// Beyond the keys scanned so far, but within the gap of the last used key once it's found
+			this.provider.addTransaction("aa02", receiveAddress(20), 2000L);
+			this.provider.addTransaction("aa03", receiveAddress(40), 4000L);
+
+			assertEquals(3, this.bitcoiny.getWalletTransactions(this.xprv()).size());
+		} finally {
+			TestBitcoiny.setCacheTimeout(2 * 60 * 1000L);
+		}
+	}
+
+	@Test
+	public void testUnconfirmedTransactionConfirms() throws ForeignBlockchainException {
+		this.provider.addTransaction("aa01", receiveAddress(0), 1000L);
+		this.provider.addUnconfirmedTransaction("aa02", receiveAddress(1), 2000L);
+
+		List<SimpleTransaction> transactions = this.bitcoiny.getWalletTransactions(this.xprv());
+		assertEquals(2, transactions.size());
+		assertNull(findTransaction(transactions, "aa02").getTimestamp());
+
+		TestBitcoiny.setCacheTimeout(0L);
+		try {
+			this.provider.confirmTransaction("aa02");
+
+			// Previously unconfirmed transaction is fetched again, but confirmed one isn't
+			int transactionCount = this.provider.transactionCount.get();
+			transactions = this.bitcoiny.getWalletTransactions(this.xprv());
+			assertEquals(2, transactions.size());
+			assertNotNull(findTransaction(transactions, "aa02").getTimestamp());
+			assertEquals(transactionCount + 1, this.provider.transactionCount.get());
+		} finally {
+			TestBitcoiny.setCacheTimeout(2 * 60 * 1000L);
+		}
+	}
+
+	private static SimpleTransaction findTransaction(List<SimpleTransaction> transactions, String txHash) {
+		return transactions.stream()
+				.filter(transaction -> transaction.getTxHash().equals(txHash))
+				.findFirst()
+				.orElseThrow(() -> new AssertionError("Missing transaction " + txHash));
+	}
+
+	private String xprv() {
+		return this.masterKey.serializePrivB58(PARAMS);
+	}
+
+	private String xpub() {
+		return this.masterKey.serializePubB58(PARAMS);
+	}
+
+	private String receiveAddress(int index) {
+		DeterministicKey receiveChainKey = HDKeyDerivation.deriveChildKey(this.masterKey, ChildNumber.ZERO);
+		DeterministicKey key = HDKeyDerivation.deriveChildKey(receiveChainKey, new ChildNumber(index, false));
+		return Address.fromKey(PARAMS, key, ScriptType.P2PKH).toString();
+	}
+
+	private static class TestBitcoiny extends Bitcoiny {
+		TestBitcoiny(BitcoinyBlockchainProvider provider) {
+			super(provider, new Context(PARAMS), "TEST");
+		}
+
+		static void setCacheTimeout(long timeout) {
+			TRANSACTIONS_CACHE_TIMEOUT = timeout;
+		}
+
+		@Override
+		public long getP2shFee(Long timestamp) {
+			return 0L;
+		}
+	}
+
+	/** Provider with a set of transactions, each paying a wallet address, plus change to an external address. */
+	private static class TestProvider extends BitcoinyBlockchainProvider {
+		private final Map<String, List<TransactionHash>> histories = Collections.synchronizedMap(new HashMap<>());
+		private final Map<String, BitcoinyTransaction> transactions = Collections.synchronizedMap(new HashMap<>());
+
+		final AtomicInteger historyCount = new AtomicInteger();
+		final AtomicInteger transactionCount = new AtomicInteger();
+
+		void addTransaction(String txHash, String address, long value) {
+			this.addTransaction(txHash, address, value, 1600000000 + this.transactions.size());
+		}
+
+		void addUnconfirmedTransaction(String txHash, String address, long value) {
+			this.addTransaction(txHash, address, value, null);
+		}
+
+		/** Replaces unconfirmed transaction with confirmed version. */
+		void confirmTransaction(String txHash) {
+			BitcoinyTransaction transaction = this.transactions.get(txHash);
+			this.transactions.put(txHash, new BitcoinyTransaction(txHash, transaction.size, transaction.locktime,
+					1600000000 + this.transactions.size(), transaction.inputs, transaction.outputs));
+		}
+
+		private void addTransaction(String txHash, String address, long value, Integer timestamp) {
+			Context.propagate(new Context(PARAMS));
+			String script = HashCode.fromBytes(ScriptBuilder.createOutputScript(Address.fromString(PARAMS, address)).getProgram()).toString();
+
+			Address externalAddress = Address.fromKey(PARAMS, new ECKey(), ScriptType.P2PKH);
+			String externalScript = HashCode.fromBytes(ScriptBuilder.createOutputScript(externalAddress).getProgram()).toString();
+
+			List<BitcoinyTransaction.Output> outputs = Arrays.asList(
+					new BitcoinyTransaction.Output(script, value, Collections.singletonList(address)),
+					new BitcoinyTransaction.Output(externalScript, 1L, Collections.singletonList(externalAddress.toString())));
+			this.transactions.put(txHash, new BitcoinyTransaction(txHash, 100, 0, timestamp, new ArrayList<>(), outputs));
+			this.histories.computeIfAbsent(script, s -> new ArrayList<>()).add(new TransactionHash(100, txHash));
+		}
+
+		@Override
+		public String getNetId() {
+			return "Test";
+		}
+
+		@Override
+		public List<TransactionHash> getAddressTransactions(byte[] scriptPubKey, boolean includeUnconfirmed) {
+			this.historyCount.incrementAndGet();
+			return this.histories.getOrDefault(HashCode.fromBytes(scriptPubKey).toString(), Collections.emptyList());
+		}
+
+		@Override
+		public BitcoinyTransaction getTransaction(String txHash) throws ForeignBlockchainException {
+			BitcoinyTransaction transaction = this.transactions.get(txHash);
+			if (transaction == null)
+				throw new ForeignBlockchainException.NotFoundException();
+
+			this.transactionCount.incrementAndGet();
+			return transaction;
+		}
+
+		@Override
+		public int getCurrentHeight() {
+			return 1000;
+		}
+
+		@Override
+		public List<byte[]> getRawBlockHeaders(int startHeight, int count) {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public long getConfirmedBalance(byte[] scriptPubKey) {
+			return 0L;
+		}
+
+		@Override
+		public byte[] getRawTransaction(String txHash) throws ForeignBlockchainException {
+			throw new ForeignBlockchainException.NotFoundException();
+		}
+
+		@Override
+		public byte[] getRawTransaction(byte[] txHash) throws ForeignBlockchainException {
+			throw new ForeignBlockchainException.NotFoundException();
+		}
+
+		@Override
+		public List<UnspentOutput> getUnspentOutputs(byte[] scriptPubKey, boolean includeUnconfirmed) {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public void broadcastTransaction(byte[] rawTransaction) {
+		}
+	}
+
+}
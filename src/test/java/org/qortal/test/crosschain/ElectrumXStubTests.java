@@ -0,0 +1,405 @@
+package org.qortal.test.crosschain;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.qortal.crosschain.BitcoinyTransaction;
+import org.qortal.crosschain.ElectrumX;
+import org.qortal.crosschain.ElectrumX.Server.ConnectionType;
+import org.qortal.crosschain.ForeignBlockchainException;
+import org.qortal.crosschain.TransactionHash;
+
+import com.google.common.hash.HashCode;
+
+/** Tests ElectrumX client behaviour against local stub servers, so no network access is needed. */
+public class ElectrumXStubTests {
+
+	private static final String GENESIS_HASH = "000000000933ea01ad0ee984209779baaec3ced90fa3f408719526f8d77f4943";
+	private static final String MISSING_TX_HASH = "00000000000000000000000000000000000000000000000000000000deadbeef";
+
+	private static final Map<ElectrumX.Server.ConnectionType, Integer> DEFAULT_ELECTRUMX_PORTS = new EnumMap<>(ElectrumX.Server.ConnectionType.class);
+	static {
+		DEFAULT_ELECTRUMX_PORTS.put(ConnectionType.TCP, 50001);
+		DEFAULT_ELECTRUMX_PORTS.put(ConnectionType.SSL, 50002);
+	}
+
+	private final List<StubServer> stubServers = new ArrayList<>();
+	private ExecutorService executor;
+
+	@Before
+	public void beforeTest() {
+		this.executor = Executors.newFixedThreadPool(16);
+	}
+
+	@After
+	public void afterTest() {
+		this.executor.shutdownNow();
+
+		for (StubServer stubServer : this.stubServers)
+			stubServer.close();
+
+		this.stubServers.clear();
+	}
+
+	private ElectrumX getInstance(int serverCount) throws IOException {
+		List<ElectrumX.Server> servers = new ArrayList<>();
+		for (int i = 0; i < serverCount; ++i) {
+			StubServer stubServer = new StubServer();
+			this.stubServers.add(stubServer);
+			servers.add(new ElectrumX.Server("localhost", ConnectionType.TCP, stubServer.getPort()));
+		}
+
+		return new ElectrumX("Stub", GENESIS_HASH, servers, DEFAULT_ELECTRUMX_PORTS);
+	}
+
+	@Test
+	public void testPipelinedRequests() throws Exception {
+		ElectrumX electrumX = getInstance(1);
+		StubServer stubServer = this.stubServers.get(0);
+
+		// Connect first, so we're only timing the requests
+		assertEquals(1000, electrumX.getCurrentHeight());
+
+		stubServer.responseDelay = 300L; // ms
+
+		final int requestCount = 12;
+		List<Future<Integer>> futures = new ArrayList<>();
+
+		long startTime = System.currentTimeMillis();
+		for (int i = 0; i < requestCount; ++i)
+			futures.add(this.executor.submit(electrumX::getCurrentHeight));
+
+		for (Future<Integer> future : futures)
+			assertEquals(1000, (int) future.get(10, TimeUnit.SECONDS));
+
+		long duration = System.currentTimeMillis() - startTime;
+
+		// Serialized requests would take at least requestCount * responseDelay
+		assertTrue(String.format("Took %dms", duration), duration < requestCount * stubServer.responseDelay / 2);
+		assertEquals(1, stubServer.connectionCount.get());
+	}
+
+	@Test
+	public void testOutOfOrderResponses() throws Exception {
+		ElectrumX electrumX = getInstance(1);
+		StubServer stubServer = this.stubServers.get(0);
+		stubServer.randomizeDelays = true;
+
+		List<String> txHashes = new ArrayList<>();
+		List<Future<byte[]>> futures = new ArrayList<>();
+		for (int i = 0; i < 20; ++i) {
+			String txHash = String.format("%064x", i + 1);
+			txHashes.add(txHash);
+			futures.add(this.executor.submit(() -> electrumX.getRawTransaction(txHash)));
+		}
+
+		// Each caller gets the response to its own request
+		for (int i = 0; i < futures.size(); ++i)
+			assertEquals(txHashes.get(i), HashCode.fromBytes(futures.get(i).get(10, TimeUnit.SECONDS)).toString());
+	}
+
+	@Test
+	public void testConnectionPool() throws Exception {
+		ElectrumX electrumX = getInstance(5);
+		for (StubServer stubServer : this.stubServers)
+			stubServer.responseDelay = 200L; // ms
+
+		List<Future<Integer>> futures = new ArrayList<>();
+		for (int i = 0; i < 16; ++i)
+			futures.add(this.executor.submit(electrumX::getCurrentHeight));
+
+		for (Future<Integer> future : futures)
+			assertEquals(1000, (int) future.get(10, TimeUnit.SECONDS));
+
+		// Concurrent requests can use more than one connection, but the pool is bounded
+		int connectionCount = this.stubServers.stream().mapToInt(stubServer -> stubServer.connectionCount.get()).sum();
+		assertTrue(connectionCount >= 1);
+		assertTrue(String.format("%d connections", connectionCount), connectionCount <= 3);
+	}
+
+	@Test
+	public void testBatchRequests() throws ForeignBlockchainException, IOException {
+		ElectrumX electrumX = getInstance(1);
+		StubServer stubServer = this.stubServers.get(0);
+
+		List<String> txHashes = new ArrayList<>();
+		for (int i = 0; i < 5; ++i)
+			txHashes.add(String.format("%064x", i + 100));
+
+		List<BitcoinyTransaction> transactions = electrumX.getTransactions(txHashes);
+		assertEquals(txHashes.size(), transactions.size());
+		for (int i = 0; i < txHashes.size(); ++i)
+			assertEquals(txHashes.get(i), transactions.get(i).txHash);
+
+		assertEquals(1, stubServer.batchCount.get());
+
+		// Cached transactions aren't requested again
+		transactions = electrumX.getTransactions(txHashes);
+		assertEquals(txHashes.size(), transactions.size());
+		assertEquals(1, stubServer.batchCount.get());
+
+		List<byte[]> scripts = Arrays.asList(new byte[] { 1 }, new byte[] { 2 }, new byte[] { 3 });
+		List<List<TransactionHash>> addressTransactions = electrumX.getAddressTransactions(scripts, false);
+		assertEquals(scripts.size(), addressTransactions.size());
+		for (List<TransactionHash> transactionHashes : addressTransactions)
+			assertEquals(1, transactionHashes.size());
+
+		assertEquals(2, stubServer.batchCount.get());
+	}
+
+	@Test
+	public void testBatchRequestErrors() throws ForeignBlockchainException, IOException {
+		ElectrumX electrumX = getInstance(1);
+
+		List<String> txHashes = Arrays.asList(String.format("%064x", 200), MISSING_TX_HASH);
+
+		try {
+			electrumX.getTransactions(txHashes);
+			fail("Missing transaction should cause NotFoundException");
+		} catch (ForeignBlockchainException.NotFoundException e) {
+			// Expected
+		}
+
+		// The rest of the batch was still usable
+		assertEquals(1, electrumX.getTransactions(Collections.singletonList(txHashes.get(0))).size());
+	}
+
+	@Test
+	public void testConnectionLoss() throws IOException {
+		ElectrumX electrumX = getInstance(1);
+		StubServer stubServer = this.stubServers.get(0);
+		stubServer.dropConnections = true;
+
+		long startTime = System.currentTimeMillis();
+		try {
+			electrumX.getCurrentHeight();
+			fail("Lost connection should cause NetworkException");
+		} catch (ForeignBlockchainException e) {
+			assertTrue(e instanceof ForeignBlockchainException.NetworkException);
+		}
+
+		// Failure is detected from the closed connection, rather than waiting for a timeout
+		assertTrue(System.currentTimeMillis() - startTime < 5000L);
+	}
+
+	/** Minimal ElectrumX server that answers requests concurrently, so responses can arrive out of order. */
+	private static class StubServer {
+		private final ServerSocket serverSocket;
+		private final ExecutorService responseExecutor = Executors.newCachedThreadPool();
+
+		final AtomicInteger connectionCount = new AtomicInteger();
+		final AtomicInteger batchCount = new AtomicInteger();
+		volatile long responseDelay = 0L;
+		volatile boolean randomizeDelays = false;
+		volatile boolean dropConnections = false;
+
+		StubServer() throws IOException {
+			this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+
+			Thread acceptThread = new Thread(this::acceptConnections);
+			acceptThread.setDaemon(true);
+			acceptThread.start();
+		}
+
+		int getPort() {
+			return this.serverSocket.getLocalPort();
+		}
+
+		void close() {
+			try {
+				this.serverSocket.close();
+			} catch (IOException e) {
+				// Already closed
+			}
+			this.responseExecutor.shutdownNow();
+		}
+
+		private void acceptConnections() {
+			try {
+				while (true) {
+					Socket socket = this.serverSocket.accept();
+					this.responseExecutor.execute(() -> this.handleConnection(socket));
+				}
+			} catch (IOException e) {
+				// Server closed
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		private void handleConnection(Socket socket) {
+			try (Socket s = socket) {
+				BufferedReader reader = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+				OutputStream outputStream = s.getOutputStream();
+				boolean isCounted = false;
+
+				String line;
+				while ((line = reader.readLine()) != null) {
+					Object requestObj = JSONValue.parse(line);
+
+					if (requestObj instanceof JSONArray) {
+						this.batchCount.incrementAndGet();
+
+						JSONArray responses = new JSONArray();
+						for (Object request : (JSONArray) requestObj)
+							responses.add(this.respond((JSONObject) request));
+
+						write(outputStream, responses.toJSONString());
+						continue;
+					}
+
+					JSONObject request = (JSONObject) requestObj;
+					String method = (String) request.get("method");
+
+					if (!method.startsWith("server.")) {
+						if (this.dropConnections)
+							return;
+
+						if (!isCounted) {
+							// Only count connections that were used for requests, rather than just checked
+							this.connectionCount.incrementAndGet();
+							isCounted = true;
+						}
+					}
+
+					this.responseExecutor.execute(() -> {
+						try {
+							long delay = this.randomizeDelays ? (long) (Math.random() * 100) : this.responseDelay;
+							if (!method.startsWith("server.") && delay > 0)
+								Thread.sleep(delay);
+
+							write(outputStream, this.respond(request).toJSONString());
+						} catch (InterruptedException | IOException e) {
+							// Stub shutting down
+						}
+					});
+				}
+			} catch (IOException e) {
+				// Connection closed
+			}
+		}
+
+		private static void write(OutputStream outputStream, String response) throws IOException {
+			synchronized (outputStream) {
+				outputStream.write((response + "\n").getBytes(StandardCharsets.UTF_8));
+				outputStream.flush();
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		private JSONObject respond(JSONObject request) {
+			String method = (String) request.get("method");
+			JSONArray params = (JSONArray) request.get("params");
+
+			JSONObject response = new JSONObject();
+			response.put("jsonrpc", "2.0");
+			response.put("id", request.get("id"));
+
+			switch (method) {
+				case "server.features": {
+					JSONObject features = new JSONObject();
+					features.put("protocol_min", "1.4");
+					features.put("genesis_hash", GENESIS_HASH);
+					response.put("result", features);
+					break;
+				}
+
+				case "server.peers.subscribe":
+					response.put("result", new JSONArray());
+					break;
+
+				case "blockchain.headers.subscribe": {
+					JSONObject header = new JSONObject();
+					header.put("height", 1000L);
+					response.put("result", header);
+					break;
+				}
+
+				case "blockchain.scripthash.get_history": {
+					JSONObject entry = new JSONObject();
+					entry.put("tx_hash", String.format("%064x", 300));
+					entry.put("height", 10L);
+					JSONArray history = new JSONArray();
+					history.add(entry);
+					response.put("result", history);
+					break;
+				}
+
+				case "blockchain.transaction.get": {
+					String txHash = (String) params.get(0);
+
+					if (txHash.equals(MISSING_TX_HASH)) {
+						JSONObject error = new JSONObject();
+						error.put("code", 2L);
+						error.put("message", "daemon error: DaemonError({'code': -5, 'message': 'No such mempool or blockchain transaction. Use gettransaction for wallet transactions.'})");
+						response.put("error", error);
+						break;
+					}
+
+					if (!Boolean.TRUE.equals(params.get(1))) {
+						// Raw transaction - just echo the hash back, so callers can check they got the right response
+						response.put("result", txHash);
+						break;
+					}
+
+					JSONObject scriptPubKey = new JSONObject();
+					scriptPubKey.put("hex", "76a914");
+					JSONArray addresses = new JSONArray();
+					addresses.add("mxStubAddress");
+					scriptPubKey.put("addresses", addresses);
+
+					JSONObject output = new JSONObject();
+					output.put("value", 0.5);
+					output.put("scriptPubKey", scriptPubKey);
+					JSONArray outputs = new JSONArray();
+					outputs.add(output);
+
+					JSONObject transaction = new JSONObject();
+					transaction.put("txid", txHash);
+					transaction.put("size", 100L);
+					transaction.put("locktime", 0L);
+					transaction.put("time", 1600000000L);
+					transaction.put("vin", new JSONArray());
+					transaction.put("vout", outputs);
+					response.put("result", transaction);
+					break;
+				}
+
+				default: {
+					JSONObject error = new JSONObject();
+					error.put("code", -32601L);
+					error.put("message", "unknown method");
+					response.put("error", error);
+					break;
+				}
+			}
+
+			return response;
+		}
+	}
+
+}
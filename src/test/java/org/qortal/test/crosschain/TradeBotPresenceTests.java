@@ -1,12 +1,23 @@
 package org.qortal.test.crosschain;
 
+import org.bouncycastle.crypto.params.Ed25519PrivateKeyParameters;
 import org.junit.Test;
+import org.qortal.controller.tradebot.TradePresenceIndex;
+import org.qortal.crypto.Crypto;
+import org.qortal.data.network.TradePresenceData;
 import org.qortal.utils.ByteArray;
 
+import com.google.common.primitives.Longs;
+
 import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+import static org.junit.Assert.*;
+
 public class TradeBotPresenceTests {
 
     public static final long ROUNDING = 15 * 60 * 1000L; // to nearest X mins
@@ -102,6 +113,91 @@ public class TradeBotPresenceTests {
         System.out.println("Peer's expiry time");
     }
 
+    @Test
+    public void testPresenceIndexKeepsLatest() {
+        TradePresenceIndex index = new TradePresenceIndex(100);
+
+        TradePresenceData bobPresence = signedPresence(newPrivateKey(), LIFETIME, "AT1");
+        assertTrue(index.putIfNewer(bobPresence));
+
+        // Same or older timestamps are ignored
+        assertFalse(index.putIfNewer(new TradePresenceData(LIFETIME, bobPresence.getPublicKey(), bobPresence.getSignature(), "AT1")));
+        assertFalse(index.putIfNewer(new TradePresenceData(LIFETIME - ROUNDING, bobPresence.getPublicKey(), bobPresence.getSignature(), "AT1")));
+
+        TradePresenceData newerBobPresence = new TradePresenceData(LIFETIME + ROUNDING, bobPresence.getPublicKey(), bobPresence.getSignature(), "AT1");
+        assertTrue(index.putIfNewer(newerBobPresence));
+
+        TradePresenceData alicePresence = signedPresence(newPrivateKey(), LIFETIME, "AT1");
+        assertTrue(index.putIfNewer(alicePresence));
+        assertTrue(index.putIfNewer(signedPresence(newPrivateKey(), LIFETIME, "AT2")));
+
+        assertEquals(3, index.size());
+        assertEquals(newerBobPresence, index.get(ByteArray.wrap(bobPresence.getPublicKey())));
+        assertEquals(2, index.getByAtAddress("AT1").size());
+        assertTrue(index.getByAtAddress("AT1").contains(newerBobPresence));
+        assertTrue(index.getByAtAddress("AT1").contains(alicePresence));
+        assertTrue(index.getByAtAddress("AT3").isEmpty());
+
+        // Expiry removes from all indexes
+        assertEquals(2, index.expire(LIFETIME).size());
+        assertEquals(1, index.size());
+        assertEquals(1, index.getByAtAddress("AT1").size());
+        assertTrue(index.getByAtAddress("AT2").isEmpty());
+    }
+
+    @Test
+    public void testPresenceIndexEvictsSoonestExpiry() {
+        TradePresenceIndex index = new TradePresenceIndex(2);
+
+        TradePresenceData laterPresence = signedPresence(newPrivateKey(), LIFETIME + ROUNDING, "AT1");
+        TradePresenceData soonerPresence = signedPresence(newPrivateKey(), LIFETIME, "AT2");
+        assertTrue(index.putIfNewer(laterPresence));
+        assertTrue(index.putIfNewer(soonerPresence));
+
+        // Full, so new presence expiring sooner than everything else is evicted immediately
+        assertFalse(index.putIfNewer(signedPresence(newPrivateKey(), LIFETIME - ROUNDING, "AT3")));
+
+        // Otherwise presence expiring soonest makes way
+        TradePresenceData latestPresence = signedPresence(newPrivateKey(), LIFETIME + 2 * ROUNDING, "AT4");
+        assertTrue(index.putIfNewer(latestPresence));
+
+        assertEquals(2, index.size());
+        assertNull(index.get(ByteArray.wrap(soonerPresence.getPublicKey())));
+        assertTrue(index.getByAtAddress("AT2").isEmpty());
+        assertEquals(latestPresence, index.get(ByteArray.wrap(latestPresence.getPublicKey())));
+    }
+
+    @Test
+    public void testBatchSignatureVerification() {
+        List<TradePresenceData> presences = new ArrayList<>();
+        List<TradePresenceData> expectedPresences = new ArrayList<>();
+
+        // Enough presences to be verified in parallel, with every third one having a bad signature
+        for (int i = 0; i < 50; ++i) {
+            TradePresenceData presence = signedPresence(newPrivateKey(), LIFETIME + i, "AT" + i);
+
+            if (i % 3 == 0) {
+                presence = new TradePresenceData(presence.getTimestamp() + 1, presence.getPublicKey(), presence.getSignature(), presence.getAtAddress());
+            } else {
+                expectedPresences.add(presence);
+            }
+
+            presences.add(presence);
+        }
+
+        assertEquals(expectedPresences, TradePresenceIndex.verifySignatures(presences));
+        assertEquals(expectedPresences.subList(0, 3), TradePresenceIndex.verifySignatures(presences.subList(0, 5)));
+    }
+
+    private static Ed25519PrivateKeyParameters newPrivateKey() {
+        return new Ed25519PrivateKeyParameters(new SecureRandom());
+    }
+
+    private static TradePresenceData signedPresence(Ed25519PrivateKeyParameters privateKey, long timestamp, String atAddress) {
+        byte[] signature = Crypto.sign(privateKey, Longs.toByteArray(timestamp));
+        return new TradePresenceData(timestamp, privateKey.generatePublicKey().getEncoded(), signature, atAddress);
+    }
+
     private long generateExpiry(long timestamp) {
         return ((timestamp - 1) / ROUNDING) * ROUNDING + LIFETIME;
     }
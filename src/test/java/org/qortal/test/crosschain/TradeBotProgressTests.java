@@ -0,0 +1,229 @@
+package org.qortal.test.crosschain;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import org.apache.commons.lang3.reflect.FieldUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.qortal.api.model.crosschain.TradeBotCreateRequest;
+import org.qortal.controller.Synchronizer;
+import org.qortal.controller.tradebot.AcctTradeBot;
+import org.qortal.controller.tradebot.TradeBot;
+import org.qortal.crosschain.ACCT;
+import org.qortal.crosschain.BitcoinACCTv1;
+import org.qortal.data.at.ATData;
+import org.qortal.data.at.ATStateData;
+import org.qortal.data.crosschain.CrossChainTradeData;
+import org.qortal.data.crosschain.TradeBotData;
+import org.qortal.repository.DataException;
+import org.qortal.repository.Repository;
+import org.qortal.repository.RepositoryManager;
+import org.qortal.settings.Settings;
+import org.qortal.test.common.Common;
+import org.qortal.utils.ByteArray;
+import org.qortal.utils.NTP;
+
+public class TradeBotProgressTests extends Common {
+
+	private static final String WAITING_STATE = "WAITING";
+	private static final String END_STATE = "ENDED";
+	private static final String AT_ADDRESS = "AT_ADDRESS";
+
+	/** Stands in for an ACCT-specific trade-bot, counting how often entries are progressed. */
+	private static class StubTradeBot implements AcctTradeBot {
+		private int progressCount = 0;
+
+		@Override
+		public List<String> getEndStates() {
+			return Collections.singletonList(END_STATE);
+		}
+
+		@Override
+		public byte[] createTrade(Repository repository, TradeBotCreateRequest tradeBotCreateRequest) {
+			return null;
+		}
+
+		@Override
+		public ResponseResult startResponse(Repository repository, ATData atData, ACCT acct,
+				CrossChainTradeData crossChainTradeData, String foreignKey, String receivingAddress) {
+			return ResponseResult.OK;
+		}
+
+		@Override
+		public boolean canDelete(Repository repository, TradeBotData tradeBotData) {
+			return true;
+		}
+
+		@Override
+		public synchronized void progress(Repository repository, TradeBotData tradeBotData) {
+			this.progressCount++;
+		}
+
+		@Override
+		public boolean isWaitingForAtStateChange(TradeBotData tradeBotData, ATData atData) {
+			return WAITING_STATE.equals(tradeBotData.getState());
+		}
+
+		public synchronized int getProgressCount() {
+			return this.progressCount;
+		}
+	}
+
+	private final Random random = new Random();
+
+	private Map<Class<? extends ACCT>, Supplier<AcctTradeBot>> acctTradeBotSuppliers;
+	private Supplier<AcctTradeBot> originalSupplier;
+	private StubTradeBot stubTradeBot;
+
+	@Before
+	@SuppressWarnings("unchecked")
+	public void beforeTest() throws DataException, IllegalAccessException {
+		Common.useDefaultSettings();
+
+		// Lite nodes are always up to date, so trade-bot entries are progressed without needing peers
+		FieldUtils.writeField(Settings.getInstance(), "lite", true, true);
+
+		// Fresh trade-bot, so nothing is remembered from other tests
+		FieldUtils.writeStaticField(TradeBot.class, "instance", null, true);
+
+		this.stubTradeBot = new StubTradeBot();
+		this.acctTradeBotSuppliers = (Map<Class<? extends ACCT>, Supplier<AcctTradeBot>>) FieldUtils.readStaticField(TradeBot.class, "acctTradeBotSuppliers", true);
+		this.originalSupplier = this.acctTradeBotSuppliers.put(BitcoinACCTv1.class, () -> this.stubTradeBot);
+	}
+
+	@After
+	public void afterTest() throws IllegalAccessException {
+		this.acctTradeBotSuppliers.put(BitcoinACCTv1.class, this.originalSupplier);
+		FieldUtils.writeStaticField(TradeBot.class, "instance", null, true);
+	}
+
+	private TradeBotData saveTradeBotData(Repository repository, String state) throws DataException {
+		byte[] tradePrivateKey = new byte[32];
+		this.random.nextBytes(tradePrivateKey);
+		String address = Common.getTestAccount(repository, "alice").getAddress();
+
+		TradeBotData tradeBotData = new TradeBotData(tradePrivateKey, BitcoinACCTv1.NAME, state, 1,
+				address, AT_ADDRESS,
+				NTP.getTime(), 0L,
+				new byte[32], new byte[20], address,
+				null, null,
+				"BITCOIN", new byte[33], new byte[20],
+				0L, null,
+				null, null, new byte[20]);
+
+		repository.getCrossChainRepository().save(tradeBotData);
+		repository.saveChanges();
+		return tradeBotData;
+	}
+
+	private void saveAtState(Repository repository, int height) throws DataException {
+		byte[] stateHash = new byte[32];
+		this.random.nextBytes(stateHash);
+
+		repository.getATRepository().save(new ATStateData(AT_ADDRESS, height, new byte[1], stateHash, 0L, false, null));
+		repository.saveChanges();
+	}
+
+	private void saveAt(Repository repository) throws DataException {
+		repository.getATRepository().save(new ATData(AT_ADDRESS, new byte[32], NTP.getTime(), 1, 0L, new byte[1], new byte[32],
+				false, null, false, false, false, null, null));
+		repository.saveChanges();
+
+		this.saveAtState(repository, 1);
+	}
+
+	private static void newChainTip() {
+		TradeBot.getInstance().listen(new Synchronizer.NewChainTipEvent(null, null));
+	}
+
+	@Test
+	public void testProgressingEntryNotProgressedAgain() throws DataException, IllegalAccessException {
+		try (final Repository repository = RepositoryManager.getRepository()) {
+			TradeBotData tradeBotData = this.saveTradeBotData(repository, "PROGRESSING");
+
+			newChainTip();
+			assertEquals(1, this.stubTradeBot.getProgressCount());
+
+			// Still progressing from a previous chain tip, e.g. waiting on a foreign blockchain
+			@SuppressWarnings("unchecked")
+			Set<ByteArray> progressingEntries = (Set<ByteArray>) FieldUtils.readField(TradeBot.getInstance(), "progressingEntries", true);
+			ByteArray tradePrivateKey = ByteArray.wrap(tradeBotData.getTradePrivateKey());
+			progressingEntries.add(tradePrivateKey);
+
+			newChainTip();
+			assertEquals(1, this.stubTradeBot.getProgressCount());
+			assertTrue(progressingEntries.contains(tradePrivateKey));
+
+			// Once finished, it is progressed again on the next chain tip
+			progressingEntries.remove(tradePrivateKey);
+
+			newChainTip();
+			assertEquals(2, this.stubTradeBot.getProgressCount());
+			assertTrue(progressingEntries.isEmpty());
+		}
+	}
+
+	@Test
+	public void testUnchangedAtSkipped() throws DataException {
+		try (final Repository repository = RepositoryManager.getRepository()) {
+			this.saveAt(repository);
+			this.saveTradeBotData(repository, WAITING_STATE);
+
+			newChainTip();
+			assertEquals(1, this.stubTradeBot.getProgressCount());
+
+			// AT hasn't changed, so there's nothing to do
+			newChainTip();
+			assertEquals(1, this.stubTradeBot.getProgressCount());
+			assertEquals(1, TradeBot.getInstance().getStateTimings().get(WAITING_STATE).getSkipCount());
+
+			// AT has changed
+			this.saveAtState(repository, 2);
+
+			newChainTip();
+			assertEquals(2, this.stubTradeBot.getProgressCount());
+
+			newChainTip();
+			assertEquals(2, this.stubTradeBot.getProgressCount());
+
+			// Progress is still called now and again, for any time-based steps
+			NTP.setFixedOffset(Settings.getInstance().getTestNtpOffset() + 2 * 60 * 1000L);
+
+			newChainTip();
+			assertEquals(3, this.stubTradeBot.getProgressCount());
+		}
+	}
+
+	@Test
+	public void testEntryNotWaitingForAtAlwaysProgressed() throws DataException {
+		try (final Repository repository = RepositoryManager.getRepository()) {
+			this.saveAt(repository);
+			this.saveTradeBotData(repository, "PROGRESSING");
+
+			newChainTip();
+			newChainTip();
+			assertEquals(2, this.stubTradeBot.getProgressCount());
+			assertEquals(0, TradeBot.getInstance().getStateTimings().get("PROGRESSING").getSkipCount());
+		}
+	}
+
+	@Test
+	public void testEndedEntrySkipped() throws DataException {
+		try (final Repository repository = RepositoryManager.getRepository()) {
+			this.saveTradeBotData(repository, END_STATE);
+
+			newChainTip();
+			assertEquals(0, this.stubTradeBot.getProgressCount());
+			assertNull(TradeBot.getInstance().getStateTimings().get(END_STATE));
+		}
+	}
+
+}
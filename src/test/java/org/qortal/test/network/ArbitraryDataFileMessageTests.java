@@ -0,0 +1,85 @@
+package org.qortal.test.network;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.qortal.arbitrary.ArbitraryDataFile;
+import org.qortal.network.message.ArbitraryDataFileMessage;
+import org.qortal.network.message.Message;
+import org.qortal.network.message.MessageException;
+import org.qortal.repository.DataException;
+import org.qortal.test.common.Common;
+import org.qortal.transform.Transformer;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ArbitraryDataFileMessageTests extends Common {
+
+	@Before
+	public void beforeTest() throws DataException {
+		Common.useDefaultSettings();
+	}
+
+	@Test
+	public void testStreamedMatchesInMemory() throws Exception {
+		byte[] signature = new byte[Transformer.SIGNATURE_LENGTH];
+		byte[] data = new byte[100 * 1024];
+		Random random = new Random();
+		random.nextBytes(signature);
+		random.nextBytes(data);
+
+		ArbitraryDataFile arbitraryDataFile = new ArbitraryDataFile(data, signature);
+
+		try {
+			ArbitraryDataFileMessage inMemoryMessage = new ArbitraryDataFileMessage(signature, arbitraryDataFile);
+			inMemoryMessage.setId(1234);
+
+			ArbitraryDataFileMessage streamedMessage = ArbitraryDataFileMessage.fromFile(signature, arbitraryDataFile);
+			streamedMessage.setId(1234);
+			assertTrue(streamedMessage.hasPayloadFile());
+			assertEquals(data.length, streamedMessage.getPayloadFileLength());
+
+			byte[] expectedBytes = inMemoryMessage.toBytes();
+
+			// Header followed by file contents should be identical to in-memory serialization
+			byte[] headerBytes = streamedMessage.toHeaderBytes();
+			assertEquals(expectedBytes.length, headerBytes.length + data.length);
+			assertArrayEquals(Arrays.copyOf(expectedBytes, headerBytes.length), headerBytes);
+
+			ByteBuffer fileBuffer = ByteBuffer.allocate(data.length);
+			try (FileChannel fileChannel = streamedMessage.openPayloadFile()) {
+				while (fileBuffer.hasRemaining() && fileChannel.read(fileBuffer) != -1);
+			}
+			assertArrayEquals(data, fileBuffer.array());
+
+			assertArrayEquals(expectedBytes, streamedMessage.toBytes());
+
+			// Cached checksum gives same result
+			Message cachedMessage = ArbitraryDataFileMessage.fromFile(signature, arbitraryDataFile);
+			cachedMessage.setId(1234);
+			assertArrayEquals(expectedBytes, cachedMessage.toBytes());
+		} finally {
+			arbitraryDataFile.deleteAll();
+		}
+	}
+
+	@Test
+	public void testMissingFile() throws DataException {
+		byte[] signature = new byte[Transformer.SIGNATURE_LENGTH];
+		new Random().nextBytes(signature);
+
+		ArbitraryDataFile arbitraryDataFile = ArbitraryDataFile.fromHash58("3eyjYjturyVe61grRX42bprGr3Cvw6ehTy4iknVnosDj", signature);
+
+		try {
+			ArbitraryDataFileMessage.fromFile(signature, arbitraryDataFile);
+			fail("Message shouldn't be built for missing file");
+		} catch (MessageException e) {
+			// Expected
+		}
+	}
+
+}